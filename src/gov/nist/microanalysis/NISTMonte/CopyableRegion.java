@@ -0,0 +1,32 @@
+package gov.nist.microanalysis.NISTMonte;
+
+import gov.nist.microanalysis.NISTMonte.MonteCarloSS.Region;
+import gov.nist.microanalysis.NISTMonte.MonteCarloSS.RegionBase;
+
+import java.util.Map;
+
+/**
+ * Region which can be copied inside another parent region, for instance to
+ * reuse a geometry built once in several simulations. The copy shares the
+ * shapes and the other data of this region which are not modified during a
+ * simulation. Only the scatter models are replaced.
+ *
+ * @author ppinard
+ * @see RegionCopier
+ */
+public interface CopyableRegion {
+
+    /**
+     * Copies this region and its sub-regions inside a parent region.
+     *
+     * @param parent
+     *            parent of the copy
+     * @param models
+     *            replacement of the scatter models of this region and its
+     *            sub-regions, a model without replacement is shared
+     * @return copy of this region
+     */
+    public RegionBase copy(Region parent,
+            Map<IMaterialScatterModel, IMaterialScatterModel> models);
+
+}
@@ -2,46 +2,49 @@ package gov.nist.microanalysis.NISTMonte;
 
 import gov.nist.microanalysis.EPQLibrary.EPQException;
 import gov.nist.microanalysis.EPQLibrary.Material;
-import gov.nist.microanalysis.NISTMonte.MonteCarloSS.Region;
 import gov.nist.microanalysis.NISTMonte.MonteCarloSS.RegionBase;
 import gov.nist.microanalysis.Utility.Math2;
 
+/**
+ * Region made of a regular grid of cuboids (voxels) inside the box
+ * <code>[x0, x1] x [y0, y1] x [z0, z1]</code>. The region itself (the
+ * surrounding material) fills the space below <code>z1</code> outside the
+ * box. The space above <code>z1</code> is outside this region.
+ * <p/>
+ * The boundary crossings are found with a 3D digital differential analyzer
+ * (Amanatides and Woo, 1987), using scalar arithmetic only, so that no object
+ * is allocated at each step.
+ */
 public class CuboidRegion extends IndexedRegion {
 
-    private static class Cuboid extends IndexedRegion {
+    static class Cuboid extends IndexedRegion {
 
-        public final double x0;
+        public final int i;
 
-        public final double x1;
+        public final int j;
 
-        public final double y0;
+        public final int k;
 
-        public final double y1;
+        /** Linear index of the cuboid in the grid (x fastest). */
+        public final int voxelId;
 
-        public final double z0;
 
-        public final double z1;
 
-
-
-        public Cuboid(Region parent, IMaterialScatterModel msm, double[] dims,
-                double[] point, int index) {
+        public Cuboid(CuboidRegion parent, IMaterialScatterModel msm,
+                double[] dims, double[] point, int index, int i, int j, int k) {
             super(parent, msm, MultiPlaneShape.createBlock(dims, point, 0.0,
                     0.0, 0.0), index);
-
-            x0 = point[0] - dims[0] / 2.0;
-            x1 = point[0] + dims[0] / 2.0;
-            y0 = point[1] - dims[1] / 2.0;
-            y1 = point[1] + dims[1] / 2.0;
-            z0 = point[2] - dims[2] / 2.0;
-            z1 = point[2] + dims[2] / 2.0;
+            this.i = i;
+            this.j = j;
+            this.k = k;
+            this.voxelId = (k * parent.ny + j) * parent.nx + i;
         }
 
 
 
         @Override
         public RegionBase findEndOfStep(double[] pos0, double[] pos1) {
-            return mParent.findEndOfStep(pos0, pos1);
+            return ((CuboidRegion) mParent).findEndOfStep(i, j, k, pos0, pos1);
         }
 
 
@@ -69,7 +72,8 @@ public class CuboidRegion extends IndexedRegion {
             double y0, double y1, int ny,
             double z0, double z1, int nz) throws EPQException {
         super(null, new BasicMaterialModel(Material.Null),
-                MultiPlaneShape.createSubstrate(Math2.Z_AXIS, Math2.ORIGIN_3D), 0);
+                MultiPlaneShape.createSubstrate(Math2.Z_AXIS, new double[] {
+                        0.0, 0.0, z1 }), 0);
 
         if (x1 <= x0)
             throw new IllegalArgumentException("x1 must be greater than x0");
@@ -114,7 +118,7 @@ public class CuboidRegion extends IndexedRegion {
                     point =
                             new double[] { x0 + (i + 0.5) * dx,
                                     y0 + (j + 0.5) * dy, z0 + (k + 0.5) * dz };
-                    cuboid = new Cuboid(this, msm, dims, point, index);
+                    cuboid = new Cuboid(this, msm, dims, point, index, i, j, k);
 
                     cuboids[i][j][k] = cuboid;
                     this.mSubRegions.add(cuboid);
@@ -181,149 +185,193 @@ public class CuboidRegion extends IndexedRegion {
 
 
 
-    @Override
-    protected RegionBase containingSubRegion(double[] pos) {
-        int[] indices = getCuboidIndices(pos);
-        int i = indices[0];
-        int j = indices[1];
-        int k = indices[2];
+    /**
+     * Returns the linear index in the grid (x fastest) of a cuboid region, or
+     * -1 if the region is not a cuboid.
+     *
+     * @param region
+     *            region
+     * @return voxel id
+     */
+    public static int getVoxelId(RegionBase region) {
+        if (region instanceof Cuboid)
+            return ((Cuboid) region).voxelId;
+        return -1;
+    }
 
-        if (i < 0 || i >= nx)
-            return this;
-        if (j < 0 || j >= ny)
-            return this;
-        if (k < 0)
-            return this;
+
+
+    /**
+     * Returns the region of the cuboid at the specified indices. If the
+     * indices are outside the grid, this region (surrounding material) is
+     * returned, or <code>null</code> if the cuboid would be above the grid.
+     *
+     * @param i
+     *            index in x
+     * @param j
+     *            index in y
+     * @param k
+     *            index in z
+     * @return region
+     */
+    private RegionBase getRegion(int i, int j, int k) {
         if (k >= nz)
             return null; // Vacuum (BSE)
-
+        if (i < 0 || i >= nx || j < 0 || j >= ny || k < 0)
+            return this;
         return cuboids[i][j][k];
     }
 
 
 
-    private int[] getCuboidIndices(double[] pos) {
+    @Override
+    protected RegionBase containingSubRegion(double[] pos) {
+        if (pos[2] >= z1)
+            return null; // Vacuum (BSE)
+
         int i = (int) Math.floor((pos[0] - x0) / dx);
         int j = (int) Math.floor((pos[1] - y0) / dy);
         int k = (int) Math.floor((pos[2] - z0) / dz);
 
-        return new int[] { i, j, k };
+        return getRegion(i, j, k);
+    }
+
+
+
+    /**
+     * Finds the end of a step starting inside the cuboid (i, j, k). If the
+     * step crosses a face of the cuboid, <code>pos1</code> is moved to the
+     * crossing point and the neighbouring region is returned.
+     *
+     * @param i
+     *            index in x of the current cuboid
+     * @param j
+     *            index in y of the current cuboid
+     * @param k
+     *            index in z of the current cuboid
+     * @param pos0
+     *            start of the step
+     * @param pos1
+     *            end of the step (modified)
+     * @return region at the end of the step
+     */
+    protected RegionBase findEndOfStep(int i, int j, int k, double[] pos0,
+            double[] pos1) {
+        double vx = pos1[0] - pos0[0];
+        double vy = pos1[1] - pos0[1];
+        double vz = pos1[2] - pos0[2];
+
+        // Parametric distance to the exit face along each axis
+        double tx = Double.POSITIVE_INFINITY;
+        if (vx > 0.0)
+            tx = (x0 + (i + 1) * dx - pos0[0]) / vx;
+        else if (vx < 0.0)
+            tx = (x0 + i * dx - pos0[0]) / vx;
+
+        double ty = Double.POSITIVE_INFINITY;
+        if (vy > 0.0)
+            ty = (y0 + (j + 1) * dy - pos0[1]) / vy;
+        else if (vy < 0.0)
+            ty = (y0 + j * dy - pos0[1]) / vy;
+
+        double tz = Double.POSITIVE_INFINITY;
+        if (vz > 0.0)
+            tz = (z0 + (k + 1) * dz - pos0[2]) / vz;
+        else if (vz < 0.0)
+            tz = (z0 + k * dz - pos0[2]) / vz;
+
+        double t = Math.min(tx, Math.min(ty, tz));
+        if (t >= 1.0)
+            return cuboids[i][j][k]; // Step ends inside the cuboid
+        if (t < 0.0)
+            t = 0.0;
+
+        // Update pos1
+        pos1[0] = pos0[0] + t * vx;
+        pos1[1] = pos0[1] + t * vy;
+        pos1[2] = pos0[2] + t * vz;
+
+        // Step to the neighbouring cuboid(s)
+        if (tx == t)
+            i += vx > 0.0 ? 1 : -1;
+        if (ty == t)
+            j += vy > 0.0 ? 1 : -1;
+        if (tz == t)
+            k += vz > 0.0 ? 1 : -1;
+
+        return getRegion(i, j, k);
     }
 
 
 
     @Override
     public RegionBase findEndOfStep(double[] pos0, double[] pos1) {
-        RegionBase pos0Region = containingSubRegion(pos0);
-        RegionBase pos1Region = containingSubRegion(pos1);
-
-        if (pos0Region == pos1Region)
-            return pos0Region;
-
-        if (pos0Region instanceof Cuboid) {
-            Cuboid cuboid = (Cuboid) pos0Region;
-
-            double v[] = Math2.minus(pos1, pos0);
-
-            double x = v[0] > 0 ? cuboid.x1 : cuboid.x0;
-            double y = v[1] > 0 ? cuboid.y1 : cuboid.y0;
-            double z = v[2] > 0 ? cuboid.z1 : cuboid.z0;
-
-            // Find intersecting point
-            double t0 = v[0] != 0 ? (x - pos0[0]) / v[0] : 1;
-            double t1 = v[1] != 0 ? (y - pos0[1]) / v[1] : 1;
-            double t2 = v[2] != 0 ? (z - pos0[2]) / v[2] : 1;
-
-            double t = Math.min(t0, Math.min(t1, t2));
-
-            double[] posi = Math2.plus(pos0, Math2.multiply(t, v));
-
-            // Update pos1
-            pos1[0] = posi[0];
-            pos1[1] = posi[1];
-            pos1[2] = posi[2];
-
-            // Find next region
-            int[] indices = getCuboidIndices(posi);
-            int i = indices[0];
-            int j = indices[1];
-            int k = indices[2];
-
-            if (v[0] < 0)
-                i--;
-            if (v[1] < 0)
-                j--;
-            if (v[2] < 0)
-                k--;
-
-            if (i < 0 || i >= nx)
-                return this;
-            if (j < 0 || j >= ny)
-                return this;
-            if (k < 0)
-                return this;
-            if (k >= nz)
-                return null; // Vacuum (BSE)
+        // Step starting in the surrounding material
+        double vx = pos1[0] - pos0[0];
+        double vy = pos1[1] - pos0[1];
+        double vz = pos1[2] - pos0[2];
+
+        // Entry in the grid (slab method)
+        double tEnter = 0.0;
+        double tExit = 1.0;
+        double ta, tb;
+
+        if (vx != 0.0) {
+            ta = (x0 - pos0[0]) / vx;
+            tb = (x1 - pos0[0]) / vx;
+            tEnter = Math.max(tEnter, Math.min(ta, tb));
+            tExit = Math.min(tExit, Math.max(ta, tb));
+        } else if (pos0[0] < x0 || pos0[0] > x1) {
+            tExit = -1.0;
+        }
 
-            return cuboids[i][j][k];
-        } else if (pos1Region instanceof Cuboid) {
-            double v[] = Math2.minus(pos1, pos0);
-
-            double x = v[0] > 0 ? x1 : x0;
-            double y = v[1] > 0 ? y1 : y0;
-            double z = v[2] > 0 ? z1 : z0;
-
-            // Find intersecting point
-            double t0 = v[0] != 0 ? (x - pos0[0]) / v[0] : 1;
-            double t1 = v[1] != 0 ? (y - pos0[1]) / v[1] : 1;
-            double t2 = v[2] != 0 ? (z - pos0[2]) / v[2] : 1;
-
-            double t = Math.min(t0, Math.min(t1, t2));
-
-            double[] posi = Math2.plus(pos0, Math2.multiply(t, v));
-
-            // Update pos1
-            pos1[0] = posi[0];
-            pos1[1] = posi[1];
-            pos1[2] = posi[2];
-
-            // Find next region
-            int[] indices = getCuboidIndices(posi);
-            int i = indices[0];
-            int j = indices[1];
-            int k = indices[2];
-
-            if (v[0] < 0)
-                i--;
-            if (v[1] < 0)
-                j--;
-            if (v[2] < 0)
-                k--;
-
-            if (i < 0 || i >= nx)
-                return this;
-            if (j < 0 || j >= ny)
-                return this;
-            if (k < 0)
-                return this;
-            if (k >= nz)
-                return null; // Vacuum (BSE)
+        if (vy != 0.0) {
+            ta = (y0 - pos0[1]) / vy;
+            tb = (y1 - pos0[1]) / vy;
+            tEnter = Math.max(tEnter, Math.min(ta, tb));
+            tExit = Math.min(tExit, Math.max(ta, tb));
+        } else if (pos0[1] < y0 || pos0[1] > y1) {
+            tExit = -1.0;
+        }
 
-            return cuboids[i][j][k];
-        } else {
-            // Check for exiting to vacuum
-            double v[] = Math2.minus(pos1, pos0);
-            double t = (z0 - pos0[2]) / v[2];
+        if (vz != 0.0) {
+            ta = (z0 - pos0[2]) / vz;
+            tb = (z1 - pos0[2]) / vz;
+            tEnter = Math.max(tEnter, Math.min(ta, tb));
+            tExit = Math.min(tExit, Math.max(ta, tb));
+        } else if (pos0[2] < z0 || pos0[2] > z1) {
+            tExit = -1.0;
+        }
 
-            double[] posi = Math2.plus(pos0, Math2.multiply(t, v));
+        if (tEnter <= tExit) {
+            pos1[0] = pos0[0] + tEnter * vx;
+            pos1[1] = pos0[1] + tEnter * vy;
+            pos1[2] = pos0[2] + tEnter * vz;
 
-            // Update pos1
-            pos1[0] = posi[0];
-            pos1[1] = posi[1];
-            pos1[2] = posi[2];
+            int i = (int) Math.floor((pos1[0] - x0) / dx);
+            int j = (int) Math.floor((pos1[1] - y0) / dy);
+            int k = (int) Math.floor((pos1[2] - z0) / dz);
 
-            return this;
+            // Correct round-off at the entry face
+            i = Math.min(Math.max(i, 0), nx - 1);
+            j = Math.min(Math.max(j, 0), ny - 1);
+            k = Math.min(Math.max(k, 0), nz - 1);
+
+            return cuboids[i][j][k];
         }
+
+        // Exit to vacuum through the top surface
+        if (vz > 0.0) {
+            double t = (z1 - pos0[2]) / vz;
+            if (t <= 1.0) {
+                pos1[0] = pos0[0] + t * vx;
+                pos1[1] = pos0[1] + t * vy;
+                pos1[2] = z1;
+                return null; // Vacuum (BSE)
+            }
+        }
+
+        return this;
     }
 
 }
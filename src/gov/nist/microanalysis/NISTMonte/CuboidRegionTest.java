@@ -0,0 +1,134 @@
+package gov.nist.microanalysis.NISTMonte;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import gov.nist.microanalysis.EPQLibrary.Material;
+import gov.nist.microanalysis.NISTMonte.MonteCarloSS.RegionBase;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class CuboidRegionTest {
+
+    private CuboidRegion region;
+
+
+
+    @Before
+    public void setUp() throws Exception {
+        region = new CuboidRegion(-1.0, 1.0, 2, -1.0, 1.0, 2, -2.0, 0.0, 2);
+    }
+
+
+
+    @Test
+    public void testContainingSubRegion() {
+        RegionBase cuboid =
+                region.containingSubRegion(new double[] { -0.5, -0.5, -0.5 });
+        assertSame(region.cuboids[0][0][1], cuboid);
+
+        assertSame(region,
+                region.containingSubRegion(new double[] { 5.0, 0.0, -0.5 }));
+        assertNull(region.containingSubRegion(new double[] { 0.0, 0.0, 1.0 }));
+    }
+
+
+
+    @Test
+    public void testFindEndOfStepCuboid() {
+        double[] pos0 = new double[] { -0.5, -0.5, -0.5 };
+        double[] pos1 = new double[] { 0.5, -0.5, -0.5 };
+        RegionBase next = region.cuboids[0][0][1].findEndOfStep(pos0, pos1);
+
+        assertSame(region.cuboids[1][0][1], next);
+        assertArrayEquals(new double[] { 0.0, -0.5, -0.5 }, pos1, 1e-9);
+    }
+
+
+
+    @Test
+    public void testFindEndOfStepCuboidNegative() {
+        double[] pos0 = new double[] { 0.5, -0.5, -0.5 };
+        double[] pos1 = new double[] { -0.5, -0.6, -0.5 };
+        RegionBase next = region.cuboids[1][0][1].findEndOfStep(pos0, pos1);
+
+        assertSame(region.cuboids[0][0][1], next);
+        assertArrayEquals(new double[] { 0.0, -0.55, -0.5 }, pos1, 1e-9);
+    }
+
+
+
+    @Test
+    public void testFindEndOfStepCuboidInside() {
+        double[] pos0 = new double[] { -0.5, -0.5, -0.5 };
+        double[] pos1 = new double[] { -0.4, -0.4, -0.4 };
+        RegionBase next = region.cuboids[0][0][1].findEndOfStep(pos0, pos1);
+
+        assertSame(region.cuboids[0][0][1], next);
+        assertArrayEquals(new double[] { -0.4, -0.4, -0.4 }, pos1, 1e-9);
+    }
+
+
+
+    @Test
+    public void testFindEndOfStepCuboidVacuum() {
+        double[] pos0 = new double[] { -0.5, -0.5, -0.5 };
+        double[] pos1 = new double[] { -0.5, -0.5, 1.0 };
+        RegionBase next = region.cuboids[0][0][1].findEndOfStep(pos0, pos1);
+
+        assertNull(next);
+        assertArrayEquals(new double[] { -0.5, -0.5, 0.0 }, pos1, 1e-9);
+    }
+
+
+
+    @Test
+    public void testFindEndOfStepSurroundingEnter() {
+        double[] pos0 = new double[] { -3.0, -0.5, -0.5 };
+        double[] pos1 = new double[] { -0.5, -0.5, -0.5 };
+        RegionBase next = region.findEndOfStep(pos0, pos1);
+
+        assertSame(region.cuboids[0][0][1], next);
+        assertArrayEquals(new double[] { -1.0, -0.5, -0.5 }, pos1, 1e-9);
+    }
+
+
+
+    @Test
+    public void testFindEndOfStepSurroundingVacuum() {
+        double[] pos0 = new double[] { -3.0, 0.0, -0.5 };
+        double[] pos1 = new double[] { -3.0, 0.0, 1.0 };
+        RegionBase next = region.findEndOfStep(pos0, pos1);
+
+        assertNull(next);
+        assertArrayEquals(new double[] { -3.0, 0.0, 0.0 }, pos1, 1e-9);
+    }
+
+
+
+    @Test
+    public void testFindEndOfStepSurrounding() {
+        double[] pos0 = new double[] { -3.0, 0.0, -0.5 };
+        double[] pos1 = new double[] { -4.0, 0.0, -0.5 };
+        RegionBase next = region.findEndOfStep(pos0, pos1);
+
+        assertSame(region, next);
+        assertArrayEquals(new double[] { -4.0, 0.0, -0.5 }, pos1, 1e-9);
+    }
+
+
+
+    @Test
+    public void testUpdateMaterialPrivateModel() throws Exception {
+        // Models created from a material are not the shared cached models
+        region.updateSurroundingMaterial(Material.Null);
+        region.updateCuboidMaterial(Material.Null);
+
+        IMaterialScatterModel shared = MaterialModelCache.get(Material.Null);
+        assertNotSame(shared, region.getScatterModel());
+        assertNotSame(shared, region.cuboids[0][0][0].getScatterModel());
+    }
+
+}
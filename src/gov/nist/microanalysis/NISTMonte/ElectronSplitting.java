@@ -0,0 +1,309 @@
+package gov.nist.microanalysis.NISTMonte;
+
+import gov.nist.microanalysis.Utility.Math2;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Splitting and Russian roulette of the electrons at depth planes, a variance
+ * reduction technique for the deep parts of thick samples. The depth is
+ * measured along -z from the plane z = 0. When an electron crosses a plane
+ * downwards, it is split into <i>N</i> electrons (the electron itself and
+ * <i>N</i> - 1 copies tracked as secondary electrons), each with 1/<i>N</i>
+ * of its weight. When it crosses a plane upwards, it survives with a
+ * probability 1/<i>N</i> and its weight is multiplied by <i>N</i>; otherwise
+ * its trajectory is ended. The expected weight is therefore preserved. The
+ * secondary electrons created by the physics inherit the weight of the
+ * electron which created them.
+ * <p/>
+ * The accumulators weight the x-rays by {@link #getWeight()}, the weight of
+ * the electron being tracked. This listener must be registered to the
+ * {@link MonteCarloSS} after the x-ray generations, so that the x-rays of the
+ * step crossing a plane are weighted with the weight before the split.
+ *
+ * @author ppinard
+ */
+public class ElectronSplitting implements ActionListener {
+
+    /** Weight and depth level of an electron. */
+    private static class State {
+
+        public double weight;
+
+        public int level;
+
+
+
+        public State(double weight, int level) {
+            this.weight = weight;
+            this.level = level;
+        }
+    }
+
+    /** Monte Carlo simulator. */
+    private final MonteCarloSS mcss;
+
+    /** Depths of the planes (in meters), in increasing order. */
+    private final double[] depths;
+
+    /** Splitting factor at each plane. */
+    private final int factor;
+
+    /** State of the electrons of the current shower. */
+    private final Map<Electron, State> states = new IdentityHashMap<>();
+
+    /** Electron tracked at the last event. */
+    private Electron tracked;
+
+    /** Number of copies created since the last reset. */
+    private long splitCount;
+
+    /** Number of electrons killed by the roulette since the last reset. */
+    private long killCount;
+
+
+
+    /**
+     * Creates a new <code>ElectronSplitting</code>.
+     *
+     * @param mcss
+     *            Monte Carlo simulator
+     * @param depths
+     *            depths of the planes (in meters)
+     * @param factor
+     *            splitting factor at each plane
+     */
+    public ElectronSplitting(MonteCarloSS mcss, double[] depths, int factor) {
+        if (mcss == null)
+            throw new NullPointerException("mcss == null");
+        if (depths == null)
+            throw new NullPointerException("depths == null");
+        if (depths.length == 0)
+            throw new IllegalArgumentException("No depth plane");
+        if (factor < 2)
+            throw new IllegalArgumentException("Splitting factor < 2: "
+                    + factor);
+
+        this.mcss = mcss;
+        this.depths = depths.clone();
+        Arrays.sort(this.depths);
+        this.factor = factor;
+    }
+
+
+
+    /**
+     * Returns the depth level of a position: the number of planes above it.
+     *
+     * @param pos
+     *            position
+     * @return depth level
+     */
+    private int getLevel(double[] pos) {
+        double depth = -pos[2];
+        int level = 0;
+        while (level < depths.length && depths[level] <= depth)
+            level++;
+        return level;
+    }
+
+
+
+    /**
+     * Returns the weight of an electron.
+     *
+     * @param electron
+     *            electron
+     * @return weight, 1 for an electron not seen yet or <code>null</code>
+     */
+    double getWeight(Electron electron) {
+        State state = electron == null ? null : states.get(electron);
+        return state == null ? 1.0 : state.weight;
+    }
+
+
+
+    /**
+     * Returns the state of an electron. An electron not seen yet inherits the
+     * weight of the electron tracked before it: a secondary electron takes
+     * the weight of the electron which created it, and a primary electron has
+     * a weight of 1.
+     *
+     * @param electron
+     *            electron
+     * @return state
+     */
+    private State getState(Electron electron) {
+        State state = states.get(electron);
+        if (state == null) {
+            state =
+                    new State(getWeight(tracked),
+                            getLevel(electron.getPosition()));
+            states.put(electron, state);
+        }
+        return state;
+    }
+
+
+
+    @Override
+    public void actionPerformed(ActionEvent ae) {
+        switch (ae.getID()) {
+        case MonteCarloSS.FirstTrajectoryEvent:
+            splitCount = 0;
+            killCount = 0;
+            states.clear();
+            tracked = null;
+            break;
+        case MonteCarloSS.TrajectoryStartEvent:
+            states.clear();
+            tracked = null;
+            break;
+        case MonteCarloSS.StartSecondaryEvent:
+            startSecondary(mcss.getElectron());
+            break;
+        case MonteCarloSS.ScatterEvent:
+        case MonteCarloSS.NonScatterEvent:
+            step(mcss.getElectron());
+            break;
+        default:
+            break;
+        }
+    }
+
+
+
+    /**
+     * Starts the tracking of a secondary electron. A secondary electron
+     * created by the physics inherits the weight of the electron being
+     * tracked; the copies of a split already have their weight.
+     *
+     * @param electron
+     *            secondary electron
+     */
+    void startSecondary(Electron electron) {
+        if (electron == null)
+            return;
+
+        getState(electron);
+        tracked = electron;
+    }
+
+
+
+    /**
+     * Splits or plays the roulette on an electron which crossed planes during
+     * its last step.
+     *
+     * @param electron
+     *            electron being tracked
+     */
+    void step(Electron electron) {
+        if (electron == null || electron.isTrajectoryComplete())
+            return;
+
+        State state = getState(electron);
+        tracked = electron;
+
+        int level = getLevel(electron.getPosition());
+        int crossed = level - state.level;
+        state.level = level;
+        if (crossed == 0)
+            return;
+
+        int n = (int) Math.round(Math.pow(factor, Math.abs(crossed)));
+        if (crossed > 0) { // Downwards: split
+            state.weight /= n;
+
+            Electron copy;
+            for (int i = 1; i < n; i++) {
+                copy =
+                        new Electron(electron, electron.getTheta(),
+                                electron.getPhi(), electron.getEnergy());
+                states.put(copy, new State(state.weight, level));
+                trackCopy(copy);
+                splitCount++;
+            }
+        } else { // Upwards: roulette
+            if (Math2.rgen.nextDouble() * n < 1.0) {
+                state.weight *= n;
+            } else {
+                electron.setTrajectoryComplete(true);
+                killCount++;
+            }
+        }
+    }
+
+
+
+    /**
+     * Tracks a copy of a split electron as a secondary electron.
+     *
+     * @param copy
+     *            copy of the electron
+     */
+    protected void trackCopy(Electron copy) {
+        mcss.trackSecondaryElectron(copy);
+    }
+
+
+
+    /**
+     * Returns the weight of the electron being tracked.
+     *
+     * @return weight, 1 if no electron is tracked
+     */
+    public double getWeight() {
+        return getWeight(mcss.getElectron());
+    }
+
+
+
+    /**
+     * Returns the depths of the planes.
+     *
+     * @return depths (in meters)
+     */
+    public double[] getDepths() {
+        return depths.clone();
+    }
+
+
+
+    /**
+     * Returns the splitting factor at each plane.
+     *
+     * @return splitting factor
+     */
+    public int getFactor() {
+        return factor;
+    }
+
+
+
+    /**
+     * Returns the number of copies created since the first trajectory.
+     *
+     * @return number of copies
+     */
+    public long getSplitCount() {
+        return splitCount;
+    }
+
+
+
+    /**
+     * Returns the number of electrons killed by the roulette since the first
+     * trajectory.
+     *
+     * @return number of killed electrons
+     */
+    public long getKillCount() {
+        return killCount;
+    }
+
+}
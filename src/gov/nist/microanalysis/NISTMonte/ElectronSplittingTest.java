@@ -0,0 +1,179 @@
+package gov.nist.microanalysis.NISTMonte;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import gov.nist.microanalysis.EPQLibrary.ToSI;
+import gov.nist.microanalysis.Utility.Math2;
+
+import java.awt.event.ActionEvent;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ElectronSplittingTest {
+
+    private MonteCarloSS mcss;
+
+    private ElectronSplitting splitting;
+
+    private List<Electron> copies;
+
+
+
+    @Before
+    public void setUp() throws Exception {
+        Math2.rgen.setSeed(1234);
+        copies = new ArrayList<>();
+        mcss = new MonteCarloSS();
+        splitting =
+                new ElectronSplitting(mcss, new double[] { 2e-6, 1e-6, 3e-6 },
+                        4) {
+
+                    @Override
+                    protected void trackCopy(Electron copy) {
+                        copies.add(copy);
+                    }
+                };
+    }
+
+
+
+    private static Electron createElectron(double depth) {
+        return new Electron(new double[] { 0.0, 0.0, -depth }, 0.3, 1.2,
+                ToSI.keV(15.0));
+    }
+
+
+
+    private void startTrajectory() {
+        splitting.actionPerformed(new ActionEvent(mcss,
+                MonteCarloSS.TrajectoryStartEvent, "Start trajectory"));
+    }
+
+
+
+    private static void moveTo(Electron electron, double depth) {
+        electron.setPosition(new double[] { 0.0, 0.0, -depth });
+    }
+
+
+
+    @Test
+    public void testStepDownwards() {
+        Electron electron = createElectron(0.5e-6);
+        splitting.step(electron);
+        assertEquals(1.0, splitting.getWeight(electron), 0.0);
+        assertEquals(0, copies.size());
+
+        moveTo(electron, 1.5e-6);
+        splitting.step(electron);
+
+        assertEquals(0.25, splitting.getWeight(electron), 1e-12);
+        assertEquals(3, copies.size());
+        assertEquals(3, splitting.getSplitCount());
+        for (Electron copy : copies) {
+            assertEquals(0.25, splitting.getWeight(copy), 1e-12);
+            assertEquals(electron.getEnergy(), copy.getEnergy(), 0.0);
+            assertEquals(electron.getTheta(), copy.getTheta(), 1e-12);
+            assertEquals(electron.getPhi(), copy.getPhi(), 1e-12);
+        }
+
+        // Step within the same level
+        moveTo(electron, 1.8e-6);
+        splitting.step(electron);
+        assertEquals(0.25, splitting.getWeight(electron), 1e-12);
+        assertEquals(3, copies.size());
+    }
+
+
+
+    @Test
+    public void testStepDownwardsSeveralPlanes() {
+        Electron electron = createElectron(0.5e-6);
+        splitting.step(electron);
+
+        moveTo(electron, 3.5e-6);
+        splitting.step(electron);
+
+        assertEquals(1.0 / 64.0, splitting.getWeight(electron), 1e-12);
+        assertEquals(63, copies.size());
+        for (Electron copy : copies)
+            assertEquals(1.0 / 64.0, splitting.getWeight(copy), 1e-12);
+    }
+
+
+
+    @Test
+    public void testStepUpwards() {
+        int trials = 20000;
+        double sum = 0.0;
+        Electron electron;
+        for (int n = 0; n < trials; n++) {
+            startTrajectory();
+            electron = createElectron(1.5e-6);
+            splitting.step(electron);
+
+            moveTo(electron, 0.5e-6);
+            splitting.step(electron);
+
+            if (electron.isTrajectoryComplete()) {
+                assertEquals(1.0, splitting.getWeight(electron), 0.0);
+            } else {
+                assertEquals(4.0, splitting.getWeight(electron), 0.0);
+                sum += splitting.getWeight(electron);
+            }
+        }
+
+        assertEquals(1.0, sum / trials, 0.05);
+        assertTrue(splitting.getKillCount() > 0);
+        assertEquals(0, copies.size());
+    }
+
+
+
+    @Test
+    public void testStepUpwardsSeveralPlanes() {
+        int trials = 20000;
+        double sum = 0.0;
+        Electron electron;
+        for (int n = 0; n < trials; n++) {
+            startTrajectory();
+            electron = createElectron(2.5e-6);
+            splitting.step(electron);
+
+            moveTo(electron, 0.5e-6);
+            splitting.step(electron);
+
+            if (!electron.isTrajectoryComplete()) {
+                assertEquals(16.0, splitting.getWeight(electron), 0.0);
+                sum += splitting.getWeight(electron);
+            }
+        }
+
+        assertEquals(1.0, sum / trials, 0.1);
+    }
+
+
+
+    @Test
+    public void testStartSecondary() {
+        Electron electron = createElectron(0.5e-6);
+        splitting.step(electron);
+        moveTo(electron, 2.5e-6);
+        splitting.step(electron);
+        assertEquals(1.0 / 16.0, splitting.getWeight(electron), 1e-12);
+
+        // Secondary created by the physics
+        Electron secondary = createElectron(2.5e-6);
+        splitting.startSecondary(secondary);
+        assertEquals(1.0 / 16.0, splitting.getWeight(secondary), 1e-12);
+
+        // Copies keep their weight
+        Electron copy = copies.get(0);
+        splitting.startSecondary(copy);
+        assertEquals(1.0 / 16.0, splitting.getWeight(copy), 1e-12);
+    }
+
+}
@@ -0,0 +1,360 @@
+package gov.nist.microanalysis.NISTMonte;
+
+import gov.nist.microanalysis.NISTMonte.MonteCarloSS.Region;
+import gov.nist.microanalysis.NISTMonte.MonteCarloSS.RegionBase;
+import gov.nist.microanalysis.NISTMonte.MonteCarloSS.Shape;
+import gov.nist.microanalysis.Utility.Math2;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Container region for geometries with many sub-regions (e.g. layers). The
+ * default implementation of <code>MonteCarloSS.Region</code> tests every
+ * sub-region at each step. This region instead sorts its sub-regions in a
+ * uniform grid of bins along an axis (e.g. the normal of the layers), using
+ * the extent of each sub-region along this axis. Only the sub-regions in the
+ * bins spanned by a step are tested.
+ * <p/>
+ * The extent of the sub-regions must be registered with
+ * {@link #setExtent(RegionBase, double, double)}. A sub-region without extent
+ * is tested at every step. The axis follows the rotations and translations of
+ * the region. The sub-regions must be copyable with {@link RegionCopier} for
+ * the region to be copied.
+ *
+ * @author ppinard
+ */
+public class GridContainerRegion extends Region implements
+        CopyableRegion {
+
+    /** Small displacement to find the region over a boundary. */
+    private static final double SMALL_DISP = 1.0e-15;
+
+    /** Maximum number of bins. */
+    private static final int MAX_BINS = 4096;
+
+    /** Unit vector of the axis along which the sub-regions are sorted. */
+    private double[] axis;
+
+    /** Origin of the axis. */
+    private double[] origin;
+
+    /** Extent of the sub-regions along the axis. */
+    private final Map<RegionBase, double[]> extents = new HashMap<>();
+
+    /** Sub-regions at the time the grid was built, or <code>null</code>. */
+    private RegionBase[] children = null;
+
+    /** Indexes of the sub-regions in each bin, in sub-region order. */
+    private int[][] bins;
+
+    /** Lower limit of the bins along the axis. */
+    private double binMin;
+
+    /** Width of a bin. */
+    private double binWidth;
+
+    /** Stamp of the last query testing each sub-region. */
+    private int[] stamps;
+
+    /** Stamp of the current query. */
+    private int stamp = 0;
+
+
+
+    /**
+     * Creates a new <code>GridContainerRegion</code>.
+     *
+     * @param parent
+     *            parent region
+     * @param msm
+     *            scatter model of the space not covered by the sub-regions
+     * @param shape
+     *            shape enclosing all sub-regions
+     * @param axis
+     *            axis along which the sub-regions are sorted
+     * @param origin
+     *            origin of the axis
+     */
+    public GridContainerRegion(Region parent, IMaterialScatterModel msm,
+            Shape shape, double[] axis, double[] origin) {
+        super(parent, msm, shape);
+
+        if (axis == null)
+            throw new NullPointerException("axis == null");
+        if (origin == null)
+            throw new NullPointerException("origin == null");
+        this.axis = Math2.normalize(axis);
+        this.origin = origin.clone();
+    }
+
+
+
+    /**
+     * Sets the extent of a sub-region along the axis. The extent is measured
+     * from the origin of the axis and can be infinite.
+     *
+     * @param region
+     *            sub-region of this region
+     * @param min
+     *            lower limit
+     * @param max
+     *            upper limit
+     */
+    public void setExtent(RegionBase region, double min, double max) {
+        if (region == null)
+            throw new NullPointerException("region == null");
+        if (!mSubRegions.contains(region))
+            throw new IllegalArgumentException(
+                    "Region is not a sub-region of this region");
+        if (max < min)
+            throw new IllegalArgumentException("max < min");
+
+        extents.put(region, new double[] { min, max });
+        children = null;
+    }
+
+
+
+    @Override
+    public RegionBase copy(Region parent,
+            Map<IMaterialScatterModel, IMaterialScatterModel> models) {
+        GridContainerRegion copy =
+                new GridContainerRegion(parent, RegionCopier.substitute(
+                        mScatterModel, models), mShape, axis, origin);
+        copy.axis = axis.clone();
+
+        RegionBase subRegionCopy;
+        double[] extent;
+        for (RegionBase subRegion : mSubRegions) {
+            subRegionCopy = RegionCopier.copy(subRegion, copy, models);
+            extent = extents.get(subRegion);
+            if (extent != null)
+                copy.extents.put(subRegionCopy, extent.clone());
+        }
+
+        return copy;
+    }
+
+
+
+    /**
+     * Builds the grid if the sub-regions changed since it was last built.
+     */
+    private void buildGrid() {
+        if (children != null && children.length == mSubRegions.size())
+            return;
+
+        RegionBase[] regions =
+                mSubRegions.toArray(new RegionBase[mSubRegions.size()]);
+
+        // Limits of the finite extents
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        double[] extent;
+        for (RegionBase region : regions) {
+            extent = extents.get(region);
+            if (extent == null)
+                continue;
+            for (double value : extent) {
+                if (Double.isInfinite(value))
+                    continue;
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+            }
+        }
+
+        int count = 1;
+        if (max > min)
+            count = Math.min(MAX_BINS, 2 * regions.length);
+        else
+            min = max = 0.0;
+        binMin = min;
+        binWidth = count > 1 ? (max - min) / count : 1.0;
+
+        List<List<Integer>> lists = new ArrayList<>(count);
+        for (int b = 0; b < count; b++)
+            lists.add(new ArrayList<Integer>());
+
+        // Margin for positions rounded on the other side of a boundary
+        double margin = 1e-6 * binWidth;
+
+        int b0, b1;
+        for (int n = 0; n < regions.length; n++) {
+            extent = extents.get(regions[n]);
+            if (extent == null) {
+                b0 = 0;
+                b1 = count - 1;
+            } else {
+                b0 = getBin(extent[0] - margin, count);
+                b1 = getBin(extent[1] + margin, count);
+            }
+
+            for (int b = b0; b <= b1; b++)
+                lists.get(b).add(n);
+        }
+
+        bins = new int[count][];
+        for (int b = 0; b < count; b++) {
+            bins[b] = new int[lists.get(b).size()];
+            for (int n = 0; n < bins[b].length; n++)
+                bins[b][n] = lists.get(b).get(n);
+        }
+
+        stamps = new int[regions.length];
+        stamp = 0;
+        children = regions;
+    }
+
+
+
+    /**
+     * Returns the bin of a coordinate along the axis. Coordinates outside the
+     * grid are in the first or last bin.
+     *
+     * @param s
+     *            coordinate along the axis
+     * @param count
+     *            number of bins
+     * @return bin
+     */
+    private int getBin(double s, int count) {
+        if (!(s > binMin)) // Also for NaN
+            return 0;
+        double u = (s - binMin) / binWidth;
+        if (u >= count)
+            return count - 1;
+        return (int) u;
+    }
+
+
+
+    /**
+     * Returns the coordinate of a position along the axis.
+     *
+     * @param pos
+     *            position
+     * @return coordinate along the axis
+     */
+    private double project(double[] pos) {
+        return (pos[0] - origin[0]) * axis[0] + (pos[1] - origin[1]) * axis[1]
+                + (pos[2] - origin[2]) * axis[2];
+    }
+
+
+
+    @Override
+    protected RegionBase containingSubRegion(double[] pos) {
+        if (!mShape.contains(pos))
+            return null;
+
+        buildGrid();
+
+        RegionBase csr;
+        for (int n : bins[getBin(project(pos), bins.length)]) {
+            csr = children[n].containingSubRegion(pos);
+            if (csr != null)
+                return csr;
+        }
+
+        return this;
+    }
+
+
+
+    @Override
+    public RegionBase findEndOfStep(double[] pos0, double[] pos1) {
+        buildGrid();
+
+        RegionBase base = this;
+        double t = mShape.getFirstIntersection(pos0, pos1);
+        if (t <= 1.0)
+            base = mParent;
+
+        // Test the sub-regions in the bins spanned by the step
+        int b0 = getBin(project(pos0), bins.length);
+        int b1 = getBin(project(pos1), bins.length);
+        if (b1 < b0) {
+            int tmp = b0;
+            b0 = b1;
+            b1 = tmp;
+        }
+
+        stamp++;
+        if (stamp == 0) { // Overflow
+            Arrays.fill(stamps, 0);
+            stamp = 1;
+        }
+
+        int best = Integer.MAX_VALUE;
+        double candidate;
+        for (int b = b0; b <= b1; b++) {
+            for (int n : bins[b]) {
+                if (stamps[n] == stamp)
+                    continue;
+                stamps[n] = stamp;
+
+                candidate =
+                        children[n].getShape().getFirstIntersection(pos0, pos1);
+                // On ties, keep the first sub-region in order, as the
+                // default implementation
+                if (candidate > 1.0)
+                    continue;
+                if (candidate < t
+                        || (candidate == t && n < best && base != mParent)) {
+                    t = candidate;
+                    base = children[n];
+                    best = n;
+                }
+            }
+        }
+
+        if (t > 1.0)
+            return this;
+
+        // Put pos1 exactly on the boundary
+        double dx = pos1[0] - pos0[0];
+        double dy = pos1[1] - pos0[1];
+        double dz = pos1[2] - pos0[2];
+        pos1[0] = pos0[0] + t * dx;
+        pos1[1] = pos0[1] + t * dy;
+        pos1[2] = pos0[2] + t * dz;
+
+        // Find the region just over the boundary
+        double norm = Math.sqrt(dx * dx + dy * dy + dz * dz);
+        double[] over =
+                new double[] { pos1[0] + SMALL_DISP * dx / norm,
+                        pos1[1] + SMALL_DISP * dy / norm,
+                        pos1[2] + SMALL_DISP * dz / norm };
+        RegionBase res;
+        while (base != null) {
+            res = base.containingSubRegion(over);
+            if (res != null)
+                return res;
+            base = base.mParent;
+        }
+
+        return null; // Not contained by the chamber
+    }
+
+
+
+    @Override
+    public void rotate(double[] pivot, double phi, double theta, double psi) {
+        super.rotate(pivot, phi, theta, psi);
+        origin = Transform3D.rotate(origin, pivot, phi, theta, psi);
+        axis = Transform3D.rotate(axis, phi, theta, psi);
+    }
+
+
+
+    @Override
+    public void translate(double[] distance) {
+        super.translate(distance);
+        origin = Math2.plus(origin, distance);
+    }
+
+}
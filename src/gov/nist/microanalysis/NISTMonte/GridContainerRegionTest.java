@@ -0,0 +1,197 @@
+package gov.nist.microanalysis.NISTMonte;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import gov.nist.microanalysis.NISTMonte.MonteCarloSS.Region;
+import gov.nist.microanalysis.NISTMonte.MonteCarloSS.RegionBase;
+import gov.nist.microanalysis.Utility.Math2;
+
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class GridContainerRegionTest {
+
+    private static final int LAYER_COUNT = 50;
+
+    private Region plain;
+
+    private GridContainerRegion grid;
+
+    /** Depth of the top of each layer. */
+    private double[] tops;
+
+    /** Depth of the bottom of each layer. */
+    private double[] bottoms;
+
+    private Random random;
+
+
+
+    @Before
+    public void setUp() throws Exception {
+        random = new Random(1234);
+        IMaterialScatterModel msm = new BlackBodyMaterialModel();
+
+        Region chamber1 =
+                new Region(null, msm, new Sphere(Math2.ORIGIN_3D, 1000.0));
+        plain =
+                new Region(chamber1, msm, MultiPlaneShape.createSubstrate(
+                        Math2.Z_AXIS, Math2.ORIGIN_3D));
+
+        Region chamber2 =
+                new Region(null, msm, new Sphere(Math2.ORIGIN_3D, 1000.0));
+        grid =
+                new GridContainerRegion(chamber2, msm,
+                        MultiPlaneShape.createSubstrate(Math2.Z_AXIS,
+                                Math2.ORIGIN_3D), Math2.MINUS_Z_AXIS,
+                        Math2.ORIGIN_3D);
+
+        // Layers sharing their boundaries, with a gap every third layer
+        tops = new double[LAYER_COUNT];
+        bottoms = new double[LAYER_COUNT];
+        double depth = 0.0;
+        double thickness;
+        IndexedRegion layer;
+        for (int i = 0; i < LAYER_COUNT; i++) {
+            thickness = 0.5 + random.nextDouble();
+            tops[i] = depth;
+            bottoms[i] = depth + thickness;
+
+            new IndexedRegion(plain, msm, createFilm(depth, thickness), i + 1);
+            layer =
+                    new IndexedRegion(grid, msm, createFilm(depth, thickness),
+                            i + 1);
+            grid.setExtent(layer, tops[i], bottoms[i]);
+
+            depth += thickness;
+            if (i % 3 == 2)
+                depth += 0.25;
+        }
+    }
+
+
+
+    private static MultiPlaneShape createFilm(double depth, double thickness) {
+        return MultiPlaneShape.createFilm(Math2.Z_AXIS, new double[] { 0.0,
+                0.0, -depth }, thickness);
+    }
+
+
+
+    /**
+     * Returns a description of a region, which does not depend on the
+     * container.
+     */
+    private static String describe(RegionBase region, Region container) {
+        if (region == null)
+            return "null";
+        if (region == container)
+            return "container";
+        if (region == container.mParent)
+            return "chamber";
+        return "layer " + IndexedRegion.indexOf(region);
+    }
+
+
+
+    private double[] randomPosition(double zmin, double zmax) {
+        return new double[] { 10.0 * (random.nextDouble() - 0.5),
+                10.0 * (random.nextDouble() - 0.5),
+                zmin + (zmax - zmin) * random.nextDouble() };
+    }
+
+
+
+    private double[] randomEnd(double[] pos0, double length) {
+        double theta = Math.acos(2.0 * random.nextDouble() - 1.0);
+        double phi = 2.0 * Math.PI * random.nextDouble();
+        return new double[] {
+                pos0[0] + length * Math.sin(theta) * Math.cos(phi),
+                pos0[1] + length * Math.sin(theta) * Math.sin(phi),
+                pos0[2] + length * Math.cos(theta) };
+    }
+
+
+
+    /**
+     * Compares a step through the grid container with the same step through
+     * the plain container.
+     */
+    private void assertSameStep(double[] pos0, double[] pos1) {
+        RegionBase start1 = plain.containingSubRegion(pos0);
+        RegionBase start2 = grid.containingSubRegion(pos0);
+        assertEquals(describe(start1, plain), describe(start2, grid));
+        if (start1 == null)
+            return;
+
+        double[] end1 = pos1.clone();
+        double[] end2 = pos1.clone();
+        RegionBase next1 = start1.findEndOfStep(pos0, end1);
+        RegionBase next2 = start2.findEndOfStep(pos0, end2);
+
+        assertArrayEquals(end1, end2, 1e-9);
+        assertEquals(describe(next1, plain), describe(next2, grid));
+    }
+
+
+
+    @Test
+    public void testContainingSubRegion() {
+        double bottom = bottoms[LAYER_COUNT - 1];
+        double[] pos;
+        for (int n = 0; n < 2000; n++) {
+            pos = randomPosition(-bottom - 2.0, 1.0);
+            assertEquals(describe(plain.containingSubRegion(pos), plain),
+                    describe(grid.containingSubRegion(pos), grid));
+        }
+    }
+
+
+
+    @Test
+    public void testFindEndOfStepRandom() {
+        double bottom = bottoms[LAYER_COUNT - 1];
+        double[] pos0;
+        for (int n = 0; n < 5000; n++) {
+            pos0 = randomPosition(-bottom - 2.0, -1e-3);
+            assertSameStep(pos0, randomEnd(pos0, 5.0 * random.nextDouble()));
+        }
+    }
+
+
+
+    @Test
+    public void testFindEndOfStepLong() {
+        // Steps spanning many bins
+        double bottom = bottoms[LAYER_COUNT - 1];
+        double[] pos0;
+        for (int n = 0; n < 500; n++) {
+            pos0 = randomPosition(-bottom - 2.0, -1e-3);
+            assertSameStep(pos0, randomEnd(pos0, bottom * random.nextDouble()));
+        }
+    }
+
+
+
+    @Test
+    public void testFindEndOfStepBoundaries() {
+        // Steps starting or ending exactly on the boundaries of the layers
+        double[] pos0, pos1;
+        for (int i = 0; i < LAYER_COUNT; i++) {
+            pos0 = new double[] { 0.1, 0.2, -0.5 * (tops[i] + bottoms[i]) };
+
+            pos1 = new double[] { 0.3, 0.2, -bottoms[i] };
+            assertSameStep(pos0, pos1);
+            assertSameStep(pos1, new double[] { 0.3, 0.2, -bottoms[i] - 3.0 });
+            assertSameStep(pos1, new double[] { 0.3, 0.2, -tops[i] + 0.1 });
+
+            pos1 = new double[] { 0.3, 0.2, -tops[i] };
+            assertSameStep(pos0, pos1);
+            assertSameStep(pos1, new double[] { 0.5, 0.2, -tops[i] + 3.0 });
+            assertSameStep(pos1, new double[] { 0.5, 0.2, -bottoms[i] - 0.1 });
+        }
+    }
+
+}
@@ -1,6 +1,7 @@
 package gov.nist.microanalysis.NISTMonte;
 
 import gov.nist.microanalysis.NISTMonte.MonteCarloSS.Region;
+import gov.nist.microanalysis.NISTMonte.MonteCarloSS.RegionBase;
 import gov.nist.microanalysis.NISTMonte.MonteCarloSS.Shape;
 
 /**
@@ -10,6 +11,9 @@ import gov.nist.microanalysis.NISTMonte.MonteCarloSS.Shape;
  */
 public class IndexedRegion extends Region {
 
+    /** Index of a region which is not an <code>IndexedRegion</code>. */
+    public static final int NO_INDEX = -1;
+
     /** Index of region. */
     private final int index;
 
@@ -35,4 +39,20 @@ public class IndexedRegion extends Region {
         return index;
     }
 
+
+
+    /**
+     * Returns the index of a region, or {@link #NO_INDEX} if the region is
+     * <code>null</code> or not an <code>IndexedRegion</code>.
+     * 
+     * @param region
+     *            region
+     * @return index of the region
+     */
+    public static int indexOf(RegionBase region) {
+        if (region instanceof IndexedRegion)
+            return ((IndexedRegion) region).index;
+        return NO_INDEX;
+    }
+
 }
@@ -0,0 +1,250 @@
+package gov.nist.microanalysis.NISTMonte;
+
+import gov.nist.microanalysis.EPQLibrary.XRayTransition;
+import gov.nist.microanalysis.NISTMonte.Gen3.BaseXRayGeneration3;
+import gov.nist.microanalysis.NISTMonte.Gen3.BaseXRayGeneration3.CharacteristicXRay;
+import gov.nist.microanalysis.NISTMonte.Gen3.BaseXRayGeneration3.XRay;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Accumulator of the generated and emitted intensities of a fixed set of
+ * characteristic x-ray transitions, replacing an
+ * {@link gov.nist.microanalysis.NISTMonte.Gen3.XRayAccumulator3}. The
+ * transitions are mapped to dense indices at creation and the intensities are
+ * tallied per shower in primitive arrays, giving the standard error of the
+ * intensity per shower.
+ * <p/>
+ * The sources (x-ray transports or generations) are registered with
+ * {@link #addSource(BaseXRayGeneration3)}, or with
+ * {@link #addSource(BaseXRayGeneration3, PhotonSplitting, int)} for the
+ * copies of a split fluorescence generation, whose photons are weighted. The
+ * accumulator must also be registered to the {@link MonteCarloSS}, to be
+ * notified of the end of each shower.
+ *
+ * @author ppinard
+ */
+public class IndexedXRayAccumulator implements ActionListener {
+
+    /** Accumulated transitions. */
+    private final XRayTransitionIndex index;
+
+    /** Generated intensities by transition index. */
+    private final ShowerTally generated;
+
+    /** Emitted intensities by transition index. */
+    private final ShowerTally emitted;
+
+    /** Registered sources and the weights of their photons. */
+    private final WeightedXRaySources sources;
+
+
+    /** Electron splitting weighting the x-rays, <code>null</code> if none. */
+    private ElectronSplitting electronSplitting = null;
+
+
+
+    /**
+     * Creates a new <code>IndexedXRayAccumulator</code>.
+     *
+     * @param transitions
+     *            x-ray transitions to accumulate
+     */
+    public IndexedXRayAccumulator(Collection<XRayTransition> transitions) {
+        index = new XRayTransitionIndex(transitions);
+        generated = new ShowerTally(index.size());
+        emitted = new ShowerTally(index.size());
+        sources = new WeightedXRaySources(index);
+    }
+
+
+
+    /**
+     * Registers the accumulator to a source.
+     *
+     * @param source
+     *            x-ray transport or generation
+     */
+    public void addSource(BaseXRayGeneration3 source) {
+        sources.add(source);
+        source.addXRayListener(this);
+    }
+
+
+
+    /**
+     * Registers the accumulator to a copy of a split fluorescence generation
+     * (or of its transport), whose photons are weighted.
+     *
+     * @param source
+     *            x-ray transport or generation
+     * @param splitting
+     *            photon splitting
+     * @param copy
+     *            index of the copy
+     */
+    public void addSource(BaseXRayGeneration3 source,
+            PhotonSplitting splitting, int copy) {
+        sources.add(source, splitting, copy);
+        source.addXRayListener(this);
+    }
+
+
+
+    /**
+     * Sets the electron splitting whose electron weights are applied to the
+     * accumulated x-rays.
+     *
+     * @param splitting
+     *            electron splitting (<code>null</code> for none)
+     */
+    public void setElectronSplitting(ElectronSplitting splitting) {
+        electronSplitting = splitting;
+    }
+
+
+
+    @Override
+    public void actionPerformed(ActionEvent ae) {
+        if (ae.getSource() instanceof MonteCarloSS) {
+            switch (ae.getID()) {
+            case MonteCarloSS.FirstTrajectoryEvent:
+                clear();
+                break;
+            case MonteCarloSS.TrajectoryEndEvent:
+                generated.endShower();
+                emitted.endShower();
+                break;
+            default:
+                break;
+            }
+            return;
+        }
+
+        if (ae.getID() != BaseXRayGeneration3.XRayGeneration)
+            return;
+
+        double[] weights = sources.find(ae.getSource());
+        if (weights == null)
+            return;
+
+        double electronWeight =
+                electronSplitting == null ? 1.0 : electronSplitting
+                        .getWeight();
+
+        BaseXRayGeneration3 source = (BaseXRayGeneration3) ae.getSource();
+        XRay xray;
+        int i;
+        double w;
+        for (int n = source.getEventCount() - 1; n >= 0; n--) {
+            xray = source.getXRay(n);
+            if (!(xray instanceof CharacteristicXRay))
+                continue;
+
+            i = index.indexOf(((CharacteristicXRay) xray).getTransition());
+            if (i < 0)
+                continue;
+
+            w = weights[i] * electronWeight;
+            if (w == 0.0)
+                continue;
+
+            generated.add(i, xray.getGenerated() * w);
+            emitted.add(i, xray.getIntensity() * w);
+        }
+    }
+
+
+
+    /**
+     * Clears the accumulated intensities.
+     */
+    public void clear() {
+        generated.clear();
+        emitted.clear();
+    }
+
+
+
+    /**
+     * Returns the accumulated transitions.
+     *
+     * @return x-ray transitions
+     */
+    public List<XRayTransition> getTransitions() {
+        return index.getTransitions();
+    }
+
+
+
+    /**
+     * Returns the number of completed showers.
+     *
+     * @return number of showers
+     */
+    public long getShowerCount() {
+        return generated.getShowerCount();
+    }
+
+
+
+    /**
+     * Returns the generated intensity of a transition.
+     *
+     * @param xrt
+     *            x-ray transition
+     * @return generated intensity, 0 for an unknown transition
+     */
+    public double getGenerated(XRayTransition xrt) {
+        int i = index.indexOf(xrt);
+        return i < 0 ? 0.0 : generated.getSum(i);
+    }
+
+
+
+    /**
+     * Returns the standard error of the generated intensity per shower of a
+     * transition.
+     *
+     * @param xrt
+     *            x-ray transition
+     * @return standard error, 0 for an unknown transition
+     */
+    public double getGeneratedError(XRayTransition xrt) {
+        int i = index.indexOf(xrt);
+        return i < 0 ? 0.0 : generated.getStandardError(i);
+    }
+
+
+
+    /**
+     * Returns the emitted intensity of a transition.
+     *
+     * @param xrt
+     *            x-ray transition
+     * @return emitted intensity, 0 for an unknown transition
+     */
+    public double getEmitted(XRayTransition xrt) {
+        int i = index.indexOf(xrt);
+        return i < 0 ? 0.0 : emitted.getSum(i);
+    }
+
+
+
+    /**
+     * Returns the standard error of the emitted intensity per shower of a
+     * transition.
+     *
+     * @param xrt
+     *            x-ray transition
+     * @return standard error, 0 for an unknown transition
+     */
+    public double getEmittedError(XRayTransition xrt) {
+        int i = index.indexOf(xrt);
+        return i < 0 ? 0.0 : emitted.getStandardError(i);
+    }
+
+}
@@ -0,0 +1,171 @@
+package gov.nist.microanalysis.NISTMonte;
+
+import gov.nist.microanalysis.EPQLibrary.AlgorithmUser;
+import gov.nist.microanalysis.EPQLibrary.EPQException;
+import gov.nist.microanalysis.EPQLibrary.Element;
+import gov.nist.microanalysis.EPQLibrary.Material;
+import gov.nist.microanalysis.EPQLibrary.Strategy;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Cache of {@link BasicMaterialModel}, so that regions of the same material
+ * share one scatter model instead of each one computing its own cross
+ * sections, across regions and across simulations run in the same JVM. The
+ * models are keyed by the name, composition and density of the material, the
+ * absorption energy and the global strategy of algorithms when the model is
+ * created; the strategy of a simulation must therefore be applied before its
+ * geometry is built. When the cache is full, the least recently used model is
+ * evicted.
+ * <p/>
+ * The cached models are shared: they must not be modified (e.g. with
+ * {@link IMaterialScatterModel#setMinEforTracking(double)}). The cache is
+ * therefore only used by the geometry extractors, which own the models of
+ * their regions; the regions create private models for the materials they
+ * are given (e.g. {@link CuboidRegion#updateCuboidMaterial(Material)}).
+ *
+ * @author ppinard
+ */
+public final class MaterialModelCache {
+
+    /** Maximum number of cached models. */
+    private static final int CAPACITY = 256;
+
+    /** Cached models in access order. */
+    private static final Map<String, IMaterialScatterModel> models =
+            new LinkedHashMap<String, IMaterialScatterModel>(16, 0.75f, true) {
+
+                private static final long serialVersionUID = 1L;
+
+
+
+                @Override
+                protected boolean removeEldestEntry(
+                        Entry<String, IMaterialScatterModel> eldest) {
+                    return size() > CAPACITY;
+                }
+            };
+
+
+
+    private MaterialModelCache() {
+    }
+
+
+
+    /**
+     * Returns the key of a material in the cache.
+     *
+     * @param material
+     *            material
+     * @param minEforTracking
+     *            absorption energy (in J), or <code>NaN</code> for the default
+     *            of the model
+     * @return key
+     */
+    private static String getKey(Material material, double minEforTracking) {
+        StringBuilder sb = new StringBuilder();
+
+        sb.append(material.getName()).append(';');
+
+        List<Element> elements = new ArrayList<>(material.getElementSet());
+        Collections.sort(elements, new Comparator<Element>() {
+
+            @Override
+            public int compare(Element o1, Element o2) {
+                return Integer.compare(o1.getAtomicNumber(),
+                        o2.getAtomicNumber());
+            }
+        });
+        for (Element element : elements)
+            sb.append(element.getAtomicNumber()).append('=')
+                    .append(material.weightFraction(element, false))
+                    .append(',');
+
+        sb.append(';').append(material.getDensity());
+        sb.append(';').append(minEforTracking);
+
+        Strategy strategy = AlgorithmUser.getGlobalStrategy();
+        for (String algClass : strategy.listAlgorithmClasses())
+            sb.append(';').append(algClass).append('=')
+                    .append(strategy.getAlgorithm(algClass));
+
+        return sb.toString();
+    }
+
+
+
+    /**
+     * Returns the shared scatter model of a material, with the default
+     * absorption energy.
+     *
+     * @param material
+     *            material
+     * @return scatter model
+     * @throws EPQException
+     *             if the scatter model cannot be created
+     */
+    public static IMaterialScatterModel get(Material material)
+            throws EPQException {
+        return get(material, Double.NaN);
+    }
+
+
+
+    /**
+     * Returns the shared scatter model of a material.
+     *
+     * @param material
+     *            material
+     * @param minEforTracking
+     *            absorption energy (in J), or <code>NaN</code> for the default
+     *            of the model
+     * @return scatter model
+     * @throws EPQException
+     *             if the scatter model cannot be created
+     */
+    public static synchronized IMaterialScatterModel get(Material material,
+            double minEforTracking) throws EPQException {
+        if (material == null)
+            throw new NullPointerException("material == null");
+
+        String key = getKey(material, minEforTracking);
+        IMaterialScatterModel model = models.get(key);
+        if (model != null)
+            return model;
+
+        model = new BasicMaterialModel(material);
+        if (!Double.isNaN(minEforTracking))
+            model.setMinEforTracking(minEforTracking);
+        models.put(key, model);
+
+        return model;
+    }
+
+
+
+    /**
+     * Removes all cached models.
+     */
+    public static synchronized void clear() {
+        models.clear();
+    }
+
+
+
+    /**
+     * Returns the number of cached models.
+     *
+     * @return number of cached models
+     */
+    public static synchronized int size() {
+        return models.size();
+    }
+
+}
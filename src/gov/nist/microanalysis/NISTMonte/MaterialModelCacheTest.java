@@ -0,0 +1,58 @@
+package gov.nist.microanalysis.NISTMonte;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import gov.nist.microanalysis.EPQLibrary.Material;
+import gov.nist.microanalysis.EPQLibrary.MaterialFactory;
+import gov.nist.microanalysis.EPQLibrary.ToSI;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class MaterialModelCacheTest {
+
+    private Material material;
+
+
+
+    @Before
+    public void setUp() throws Exception {
+        MaterialModelCache.clear();
+        material = MaterialFactory.createCompound("Al2O3", 4.53);
+    }
+
+
+
+    @Test
+    public void testGet() throws Exception {
+        IMaterialScatterModel model =
+                MaterialModelCache.get(material, ToSI.eV(50));
+
+        assertEquals(ToSI.eV(50), model.getMinEforTracking(), 1e-30);
+        assertSame(material, model.getMaterial());
+        assertEquals(1, MaterialModelCache.size());
+
+        // Equal material
+        Material other = MaterialFactory.createCompound("Al2O3", 4.53);
+        assertSame(model, MaterialModelCache.get(other, ToSI.eV(50)));
+        assertEquals(1, MaterialModelCache.size());
+    }
+
+
+
+    @Test
+    public void testGetDifferent() throws Exception {
+        IMaterialScatterModel model =
+                MaterialModelCache.get(material, ToSI.eV(50));
+
+        assertNotSame(model, MaterialModelCache.get(material, ToSI.eV(100)));
+        assertNotSame(model, MaterialModelCache.get(material));
+
+        Material other = MaterialFactory.createCompound("Al2O3", 3.0);
+        assertNotSame(model, MaterialModelCache.get(other, ToSI.eV(50)));
+
+        assertEquals(4, MaterialModelCache.size());
+    }
+
+}
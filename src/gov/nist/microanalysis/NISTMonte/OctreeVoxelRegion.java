@@ -0,0 +1,304 @@
+package gov.nist.microanalysis.NISTMonte;
+
+import gov.nist.microanalysis.EPQLibrary.EPQException;
+import gov.nist.microanalysis.NISTMonte.MonteCarloSS.Region;
+import gov.nist.microanalysis.NISTMonte.MonteCarloSS.RegionBase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link VoxelRegion} for mostly homogeneous samples. The voxels are grouped
+ * in an octree: for each voxel, the largest aligned block of
+ * <code>2^L x 2^L x 2^L</code> voxels of the same material containing it is
+ * stored. An electron then crosses a uniform block in a single jump instead of
+ * visiting each of its voxels, so the cost of a step depends on the number of
+ * material interfaces along it rather than on the voxel size.
+ * <p/>
+ * The octree is built the first time a step is computed after the labels are
+ * modified. A copy shares the octree of this region.
+ *
+ * @author ppinard
+ */
+public class OctreeVoxelRegion extends VoxelRegion {
+
+    /** Label of a block with voxels of different materials. */
+    private static final int MIXED = -1;
+
+    /**
+     * Level of the uniform block of each voxel, or <code>null</code> if the
+     * octree must be (re)built. Once built, it is read without lock.
+     */
+    private volatile byte[] levels = null;
+
+
+
+    public OctreeVoxelRegion(double x0, double x1, int nx,
+            double y0, double y1, int ny,
+            double z0, double z1, int nz) throws EPQException {
+        super(x0, x1, nx, y0, y1, ny, z0, z1, nz);
+    }
+
+
+
+    public OctreeVoxelRegion(Region parent, double x0, double x1, int nx,
+            double y0, double y1, int ny,
+            double z0, double z1, int nz) throws EPQException {
+        super(parent, x0, x1, nx, y0, y1, ny, z0, z1, nz);
+    }
+
+
+
+    /**
+     * Creates a copy of an <code>OctreeVoxelRegion</code> inside a parent
+     * region.
+     *
+     * @param parent
+     *            parent region of the copy
+     * @param region
+     *            region to copy
+     * @param models
+     *            replacement of the scatter models, a model without
+     *            replacement is shared
+     */
+    protected OctreeVoxelRegion(Region parent, OctreeVoxelRegion region,
+            Map<IMaterialScatterModel, IMaterialScatterModel> models) {
+        super(parent, region, models);
+        levels = region.getLevels();
+    }
+
+
+
+    @Override
+    public RegionBase copy(Region parent,
+            Map<IMaterialScatterModel, IMaterialScatterModel> models) {
+        return new OctreeVoxelRegion(parent, this, models);
+    }
+
+
+
+    @Override
+    protected void setLabel(int n, int label) {
+        super.setLabel(n, label);
+        levels = null;
+    }
+
+
+
+    /**
+     * Returns the level of the uniform block of each voxel, building the
+     * octree if needed. The lock is only acquired when the octree is built.
+     *
+     * @return level of each voxel
+     */
+    protected byte[] getLevels() {
+        byte[] result = levels;
+        if (result != null)
+            return result;
+
+        synchronized (this) {
+            result = levels;
+            if (result == null)
+                levels = result = buildLevels();
+        }
+        return result;
+    }
+
+
+
+    /**
+     * Builds the octree. Each level is a grid of blocks with half the number
+     * of voxels in each direction of the level below, and the label of a
+     * block is {@link #MIXED} unless all its children have the same label.
+     * The voxels of each uniform block whose parent is mixed are then
+     * assigned its level.
+     *
+     * @return level of each voxel
+     */
+    private byte[] buildLevels() {
+        List<int[]> pyramid = new ArrayList<>();
+        List<int[]> shapes = new ArrayList<>();
+
+        int[] labels = new int[nx * ny * nz];
+        for (int n = 0; n < labels.length; n++)
+            labels[n] = getLabel(n);
+        pyramid.add(labels);
+        shapes.add(new int[] { nx, ny, nz });
+
+        int[] prev = labels;
+        int[] prevShape = shapes.get(0);
+        while (prevShape[0] > 1 || prevShape[1] > 1 || prevShape[2] > 1) {
+            int cx = (prevShape[0] + 1) / 2;
+            int cy = (prevShape[1] + 1) / 2;
+            int cz = (prevShape[2] + 1) / 2;
+            int[] cur = new int[cx * cy * cz];
+
+            int label, child;
+            for (int bk = 0; bk < cz; bk++) {
+                for (int bj = 0; bj < cy; bj++) {
+                    for (int bi = 0; bi < cx; bi++) {
+                        label = Integer.MIN_VALUE;
+                        for (int k = 2 * bk; k < Math.min(2 * bk + 2,
+                                prevShape[2]); k++) {
+                            for (int j = 2 * bj; j < Math.min(2 * bj + 2,
+                                    prevShape[1]); j++) {
+                                for (int i = 2 * bi; i < Math.min(2 * bi + 2,
+                                        prevShape[0]); i++) {
+                                    child =
+                                            prev[(k * prevShape[1] + j)
+                                                    * prevShape[0] + i];
+                                    if (label == Integer.MIN_VALUE)
+                                        label = child;
+                                    else if (label != child)
+                                        label = MIXED;
+                                }
+                            }
+                        }
+                        cur[(bk * cy + bj) * cx + bi] = label;
+                    }
+                }
+            }
+
+            pyramid.add(cur);
+            prevShape = new int[] { cx, cy, cz };
+            shapes.add(prevShape);
+            prev = cur;
+        }
+
+        // Assign to each voxel the level of its largest uniform block
+        byte[] result = new byte[labels.length];
+        int top = pyramid.size() - 1;
+        int[] cur, shape, parent, parentShape;
+        int size;
+        for (int level = top; level > 0; level--) {
+            cur = pyramid.get(level);
+            shape = shapes.get(level);
+            parent = level < top ? pyramid.get(level + 1) : null;
+            parentShape = level < top ? shapes.get(level + 1) : null;
+            size = 1 << level;
+
+            for (int bk = 0; bk < shape[2]; bk++) {
+                for (int bj = 0; bj < shape[1]; bj++) {
+                    for (int bi = 0; bi < shape[0]; bi++) {
+                        if (cur[(bk * shape[1] + bj) * shape[0] + bi] == MIXED)
+                            continue;
+                        if (parent != null
+                                && parent[((bk / 2) * parentShape[1] + bj / 2)
+                                        * parentShape[0] + bi / 2] != MIXED)
+                            continue; // Assigned at a higher level
+
+                        for (int k = bk * size; k < Math.min((bk + 1) * size,
+                                nz); k++)
+                            for (int j = bj * size; j < Math.min((bj + 1)
+                                    * size, ny); j++)
+                                for (int i = bi * size; i < Math.min((bi + 1)
+                                        * size, nx); i++)
+                                    result[(k * ny + j) * nx + i] =
+                                            (byte) level;
+                    }
+                }
+            }
+        }
+
+        return result;
+    }
+
+
+
+    /**
+     * Finds the end of a step starting inside a voxel of the specified label.
+     * Each uniform block of the octree along the step is crossed in one jump,
+     * until a voxel of a different label, or the end of the grid, is reached.
+     * <code>pos1</code> is then moved to this boundary.
+     *
+     * @param label
+     *            material label of the current sub-region
+     * @param pos0
+     *            start of the step
+     * @param pos1
+     *            end of the step (modified)
+     * @return region at the end of the step
+     */
+    @Override
+    protected RegionBase findEndOfStep(int label, double[] pos0,
+            double[] pos1) {
+        byte[] blockLevels = getLevels();
+
+        double vx = pos1[0] - pos0[0];
+        double vy = pos1[1] - pos0[1];
+        double vz = pos1[2] - pos0[2];
+
+        int i = getCellIndex(pos0[0], x0, dx, vx);
+        int j = getCellIndex(pos0[1], y0, dy, vy);
+        int k = getCellIndex(pos0[2], z0, dz, vz);
+
+        int level, i0, i1, j0, j1, k0, k1;
+        double tx, ty, tz, t = 0.0;
+        RegionBase region = getRegion(i, j, k);
+        while (region == phases.get(label)) {
+            // Uniform block containing the voxel
+            level = blockLevels[(k * ny + j) * nx + i];
+            i0 = (i >> level) << level;
+            i1 = Math.min(i0 + (1 << level), nx);
+            j0 = (j >> level) << level;
+            j1 = Math.min(j0 + (1 << level), ny);
+            k0 = (k >> level) << level;
+            k1 = Math.min(k0 + (1 << level), nz);
+
+            // Parametric distance to the exit face along each axis
+            tx = Double.POSITIVE_INFINITY;
+            if (vx > 0.0)
+                tx = (x0 + i1 * dx - pos0[0]) / vx;
+            else if (vx < 0.0)
+                tx = (x0 + i0 * dx - pos0[0]) / vx;
+
+            ty = Double.POSITIVE_INFINITY;
+            if (vy > 0.0)
+                ty = (y0 + j1 * dy - pos0[1]) / vy;
+            else if (vy < 0.0)
+                ty = (y0 + j0 * dy - pos0[1]) / vy;
+
+            tz = Double.POSITIVE_INFINITY;
+            if (vz > 0.0)
+                tz = (z0 + k1 * dz - pos0[2]) / vz;
+            else if (vz < 0.0)
+                tz = (z0 + k0 * dz - pos0[2]) / vz;
+
+            t = Math.min(tx, Math.min(ty, tz));
+            if (t >= 1.0)
+                return region; // Step ends inside the sub-region
+            if (t < 0.0)
+                t = 0.0;
+
+            // Voxel after the exit face, within the block on the other axes
+            if (tx == t)
+                i = vx > 0.0 ? i1 : i0 - 1;
+            else
+                i = Math.min(Math.max((int) Math.floor((pos0[0] + t * vx - x0)
+                        / dx), i0), i1 - 1);
+
+            if (ty == t)
+                j = vy > 0.0 ? j1 : j0 - 1;
+            else
+                j = Math.min(Math.max((int) Math.floor((pos0[1] + t * vy - y0)
+                        / dy), j0), j1 - 1);
+
+            if (tz == t)
+                k = vz > 0.0 ? k1 : k0 - 1;
+            else
+                k = Math.min(Math.max((int) Math.floor((pos0[2] + t * vz - z0)
+                        / dz), k0), k1 - 1);
+
+            region = getRegion(i, j, k);
+        }
+
+        // Update pos1
+        pos1[0] = pos0[0] + t * vx;
+        pos1[1] = pos0[1] + t * vy;
+        pos1[2] = pos0[2] + t * vz;
+
+        return region;
+    }
+
+}
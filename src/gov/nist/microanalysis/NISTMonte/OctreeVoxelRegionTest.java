@@ -0,0 +1,106 @@
+package gov.nist.microanalysis.NISTMonte;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import gov.nist.microanalysis.NISTMonte.MonteCarloSS.RegionBase;
+
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class OctreeVoxelRegionTest {
+
+    private VoxelRegion reference;
+
+    private OctreeVoxelRegion region;
+
+
+
+    private static void setup(VoxelRegion region, IMaterialScatterModel model1,
+            IMaterialScatterModel model2) {
+        int label1 = region.addMaterial(model1);
+        int label2 = region.addMaterial(model2);
+
+        // Sphere of material 1 and slab of material 2
+        for (int k = 0; k < 9; k++) {
+            for (int j = 0; j < 7; j++) {
+                for (int i = 0; i < 13; i++) {
+                    if ((i - 6) * (i - 6) + (j - 3) * (j - 3) + (k - 4)
+                            * (k - 4) < 9)
+                        region.setLabel(i, j, k, label1);
+                    if (i > 10)
+                        region.setLabel(i, j, k, label2);
+                }
+            }
+        }
+    }
+
+
+
+    @Before
+    public void setUp() throws Exception {
+        IMaterialScatterModel model1 = new BlackBodyMaterialModel();
+        IMaterialScatterModel model2 = new BlackBodyMaterialModel();
+
+        reference = new VoxelRegion(-1.0, 1.0, 13, -0.5, 0.5, 7, -2.0, 0.0, 9);
+        setup(reference, model1, model2);
+
+        region =
+                new OctreeVoxelRegion(-1.0, 1.0, 13, -0.5, 0.5, 7, -2.0, 0.0,
+                        9);
+        setup(region, model1, model2);
+    }
+
+
+
+    @Test
+    public void testGetLevels() {
+        byte[] levels = region.getLevels();
+        assertEquals(13 * 7 * 9, levels.length);
+        assertEquals(0, levels[region.getVoxelIndex(10, 0, 0)]); // Interface
+        assertEquals(1, levels[region.getVoxelIndex(6, 3, 4)]);
+        assertEquals(2, levels[region.getVoxelIndex(0, 0, 0)]);
+
+        region.setLabel(0, 0, 0, 1);
+        assertEquals(0, region.getLevels()[region.getVoxelIndex(0, 0, 0)]);
+    }
+
+
+
+    @Test
+    public void testFindEndOfStep() {
+        Random random = new Random(1);
+
+        double[] pos0 = new double[3];
+        double[] pos1, expected;
+        RegionBase start, next, expectedNext;
+        for (int n = 0; n < 10000; n++) {
+            pos0[0] = -1.0 + 2.0 * random.nextDouble();
+            pos0[1] = -0.5 + random.nextDouble();
+            pos0[2] = -2.0 + 2.0 * random.nextDouble();
+
+            pos1 = new double[3];
+            for (int a = 0; a < 3; a++)
+                pos1[a] = pos0[a] + 3.0 * (random.nextDouble() - 0.5);
+            expected = pos1.clone();
+
+            start = reference.containingSubRegion(pos0);
+            expectedNext = start.findEndOfStep(pos0, expected);
+
+            start = region.containingSubRegion(pos0);
+            next = start.findEndOfStep(pos0, pos1);
+
+            if (expectedNext instanceof VoxelRegion.Phase)
+                assertEquals(((VoxelRegion.Phase) expectedNext).label,
+                        ((VoxelRegion.Phase) next).label);
+            else if (expectedNext == reference)
+                assertSame(region, next);
+            else
+                assertSame(expectedNext, next);
+            assertArrayEquals(expected, pos1, 1e-9);
+        }
+    }
+
+}
@@ -0,0 +1,212 @@
+package gov.nist.microanalysis.NISTMonte;
+
+import gov.nist.microanalysis.EPQLibrary.XRayTransition;
+import gov.nist.microanalysis.NISTMonte.Gen3.BaseXRayGeneration3;
+import gov.nist.microanalysis.NISTMonte.Gen3.BaseXRayGeneration3.CharacteristicXRay;
+import gov.nist.microanalysis.NISTMonte.Gen3.BaseXRayGeneration3.XRay;
+import gov.nist.microanalysis.NISTMonte.Gen3.XRayTransport3;
+import gov.nist.microanalysis.Utility.HistogramDouble;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Listener to bin the generated and emitted characteristic x-rays along z, a
+ * phi-rho-z distribution. The x-rays are weighted by the weight of the
+ * electron being tracked when an {@link ElectronSplitting} is set.
+ *
+ * @author ppinard
+ */
+public class PhiRhoZListener implements ActionListener {
+
+    /** Event listener for x-rays. */
+    private final XRayTransport3 xrayEventListener;
+
+    private final HistogramDouble emptyDistribution;
+
+    private final TreeMap<XRayTransition, HistogramDouble> emittedDistributions;
+
+    private final TreeMap<XRayTransition, HistogramDouble> generatedDistributions;
+
+    /** X-ray transitions to bin, <code>null</code> for all. */
+    private final Set<XRayTransition> transitions;
+
+    /** Electron splitting weighting the x-rays, <code>null</code> if none. */
+    private ElectronSplitting electronSplitting = null;
+
+
+
+    /**
+     * Creates a new <code>PhiRhoZListener</code>.
+     *
+     * @param xrel
+     *            x-ray transport
+     * @param zMin
+     *            minimum z of the distribution (in meters)
+     * @param zMax
+     *            maximum z of the distribution (in meters)
+     * @param nBins
+     *            number of bins
+     */
+    public PhiRhoZListener(XRayTransport3 xrel, double zMin, double zMax,
+            int nBins) {
+        this(xrel, zMin, zMax, nBins, null);
+    }
+
+
+
+    /**
+     * Creates a new <code>PhiRhoZListener</code> binning only some x-ray
+     * transitions.
+     *
+     * @param xrel
+     *            x-ray transport
+     * @param zMin
+     *            minimum z of the distribution (in meters)
+     * @param zMax
+     *            maximum z of the distribution (in meters)
+     * @param nBins
+     *            number of bins
+     * @param transitions
+     *            x-ray transitions to bin, <code>null</code> for all
+     */
+    public PhiRhoZListener(XRayTransport3 xrel, double zMin, double zMax,
+            int nBins, Collection<XRayTransition> transitions) {
+        if (xrel == null)
+            throw new NullPointerException("xrel == null");
+        xrayEventListener = xrel;
+
+        emptyDistribution = new HistogramDouble(zMin, zMax, nBins);
+
+        emittedDistributions = new TreeMap<>();
+        generatedDistributions = new TreeMap<>();
+
+        if (transitions == null)
+            this.transitions = null;
+        else
+            this.transitions = new HashSet<>(transitions);
+    }
+
+
+
+    /**
+     * Sets the electron splitting whose electron weights are applied to the
+     * accumulated x-rays.
+     *
+     * @param splitting
+     *            electron splitting (<code>null</code> for none)
+     */
+    public void setElectronSplitting(ElectronSplitting splitting) {
+        electronSplitting = splitting;
+    }
+
+
+
+    @Override
+    public void actionPerformed(ActionEvent ae) {
+        assert ae.getSource() == xrayEventListener;
+
+        switch (ae.getID()) {
+        case BaseXRayGeneration3.XRayGeneration: {
+            double weight =
+                    electronSplitting == null ? 1.0 : electronSplitting
+                            .getWeight();
+            for (int i = xrayEventListener.getEventCount() - 1; i >= 0; i--) {
+                XRay xray = xrayEventListener.getXRay(i);
+
+                if (xray instanceof CharacteristicXRay) {
+                    XRayTransition xrt =
+                            ((CharacteristicXRay) xray).getTransition();
+                    if (xrt == null
+                            || (transitions != null && !transitions
+                                    .contains(xrt)))
+                        continue;
+
+                    double z = xray.getGenerationPos()[2];
+
+                    HistogramDouble emittedDistribution =
+                            emittedDistributions.get(xrt);
+                    if (emittedDistribution == null) {
+                        emittedDistribution = emptyDistribution.clone();
+                        emittedDistributions.put(xrt, emittedDistribution);
+                    }
+                    emittedDistribution.add(z, xray.getIntensity() * weight);
+
+                    HistogramDouble generatedDistribution =
+                            generatedDistributions.get(xrt);
+                    if (generatedDistribution == null) {
+                        generatedDistribution = emptyDistribution.clone();
+                        generatedDistributions.put(xrt, generatedDistribution);
+                    }
+                    generatedDistribution.add(z, xray.getGenerated() * weight);
+                }
+            }
+        }
+            break;
+        case MonteCarloSS.FirstTrajectoryEvent:
+            emittedDistributions.clear();
+            generatedDistributions.clear();
+            break;
+        }
+    }
+
+
+
+    /**
+     * Returns the width of the bins.
+     *
+     * @return bin width (in meters)
+     */
+    public double binWidth() {
+        return emptyDistribution.maxValue(0) - emptyDistribution.minValue(0);
+    }
+
+
+
+    /**
+     * Returns the emitted distribution of the specified x-ray transition.
+     *
+     * @param xrt
+     *            x-ray transition
+     * @return emitted distribution
+     */
+    public HistogramDouble getEmittedDistribution(XRayTransition xrt) {
+        HistogramDouble distribution = emittedDistributions.get(xrt);
+        if (distribution == null)
+            distribution = emptyDistribution.clone();
+        return distribution;
+    }
+
+
+
+    /**
+     * Returns the generated distribution of the specified x-ray transition.
+     *
+     * @param xrt
+     *            x-ray transition
+     * @return generated distribution
+     */
+    public HistogramDouble getGeneratedDistribution(XRayTransition xrt) {
+        HistogramDouble distribution = generatedDistributions.get(xrt);
+        if (distribution == null)
+            distribution = emptyDistribution.clone();
+        return distribution;
+    }
+
+
+
+    /**
+     * Returns the x-ray transitions for which a distribution exists.
+     *
+     * @return x-ray transitions
+     */
+    public Set<XRayTransition> getTransitions() {
+        return Collections.unmodifiableSet(generatedDistributions.keySet());
+    }
+
+}
@@ -0,0 +1,87 @@
+package gov.nist.microanalysis.NISTMonte;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import gov.nist.microanalysis.EPQLibrary.Element;
+import gov.nist.microanalysis.EPQLibrary.MaterialFactory;
+import gov.nist.microanalysis.EPQLibrary.ToSI;
+import gov.nist.microanalysis.EPQLibrary.XRayTransition;
+import gov.nist.microanalysis.NISTMonte.Gen3.CharacteristicXRayGeneration3;
+import gov.nist.microanalysis.NISTMonte.Gen3.XRayTransport3;
+import gov.nist.microanalysis.Utility.HistogramDouble;
+import gov.nist.microanalysis.Utility.Math2;
+
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class PhiRhoZListenerTest {
+
+    private MonteCarloSS mcss;
+
+    private XRayTransport3 transport;
+
+    private final XRayTransition siKa1 = new XRayTransition(Element.Si,
+            XRayTransition.KA1);
+
+
+
+    @Before
+    public void setUp() throws Exception {
+        mcss = new MonteCarloSS();
+        mcss.setBeamEnergy(ToSI.keV(5.0));
+        new IndexedRegion(mcss.getChamber(), new BasicMaterialModel(
+                MaterialFactory.createPureElement(Element.Si)),
+                MultiPlaneShape.createSubstrate(Math2.Z_AXIS, Math2.ORIGIN_3D),
+                1);
+
+        double angle = Math.toRadians(40.0);
+        double[] position =
+                Math2.multiply(0.999 * MonteCarloSS.ChamberRadius,
+                        new double[] { Math.cos(angle), 0.0, Math.sin(angle) });
+
+        CharacteristicXRayGeneration3 characGen =
+                CharacteristicXRayGeneration3.create(mcss);
+        transport = XRayTransport3.create(mcss, position, characGen);
+    }
+
+
+
+    @Test
+    public void testActionPerformed() throws Exception {
+        PhiRhoZListener listener =
+                new PhiRhoZListener(transport, -1e-6, 0.0, 50);
+        transport.addXRayListener(listener);
+        mcss.runMultipleTrajectories(50);
+
+        assertEquals(2e-8, listener.binWidth(), 1e-15);
+        assertTrue(listener.getTransitions().contains(siKa1));
+
+        HistogramDouble generated = listener.getGeneratedDistribution(siKa1);
+        HistogramDouble emitted = listener.getEmittedDistribution(siKa1);
+        assertEquals(50, generated.binCount());
+        assertTrue(generated.totalSum() > 0.0);
+        assertTrue(emitted.totalSum() > 0.0);
+        assertTrue(emitted.totalSum() <= generated.totalSum());
+    }
+
+
+
+    @Test
+    public void testActionPerformedTransitions() throws Exception {
+        XRayTransition siKa2 = new XRayTransition(Element.Si,
+                XRayTransition.KA2);
+        PhiRhoZListener listener =
+                new PhiRhoZListener(transport, -1e-6, 0.0, 50,
+                        Collections.singleton(siKa2));
+        transport.addXRayListener(listener);
+        mcss.runMultipleTrajectories(10);
+
+        assertFalse(listener.getTransitions().contains(siKa1));
+        assertEquals(0.0, listener.getGeneratedDistribution(siKa1)
+                .totalSum(), 0.0);
+    }
+
+}
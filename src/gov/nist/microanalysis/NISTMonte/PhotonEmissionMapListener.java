@@ -10,7 +10,9 @@ import gov.nist.microanalysis.Utility.HistogramUtil;
 
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.Set;
 import java.util.TreeMap;
 
@@ -27,12 +29,34 @@ public class PhotonEmissionMapListener implements ActionListener {
 
     private final TreeMap<XRayTransition, HistogramDouble3D> generatedDistributions;
 
+    /** X-ray transitions to bin, <code>null</code> for all. */
+    private final Set<XRayTransition> transitions;
+
+
+    /** Electron splitting weighting the x-rays, <code>null</code> if none. */
+    private ElectronSplitting electronSplitting = null;
+
 
 
     public PhotonEmissionMapListener(XRayTransport3 xrel,
             double xMin, double xMax, int xBins,
             double yMin, double yMax, int yBins,
             double zMin, double zMax, int zBins) {
+        this(xrel, xMin, xMax, xBins, yMin, yMax, yBins, zMin, zMax, zBins,
+                null);
+    }
+
+
+
+    /**
+     * Creates a new <code>PhotonEmissionMapListener</code> binning only the
+     * specified x-ray transitions (all of them if <code>null</code>).
+     */
+    public PhotonEmissionMapListener(XRayTransport3 xrel,
+            double xMin, double xMax, int xBins,
+            double yMin, double yMax, int yBins,
+            double zMin, double zMax, int zBins,
+            Collection<XRayTransition> transitions) {
         if (xrel == null)
             throw new NullPointerException("xrel == null");
         xrayEventListener = xrel;
@@ -47,6 +71,24 @@ public class PhotonEmissionMapListener implements ActionListener {
 
         emittedDistributions = new TreeMap<>();
         generatedDistributions = new TreeMap<>();
+
+        if (transitions == null)
+            this.transitions = null;
+        else
+            this.transitions = new HashSet<>(transitions);
+    }
+
+
+
+    /**
+     * Sets the electron splitting whose electron weights are applied to the
+     * accumulated x-rays.
+     *
+     * @param splitting
+     *            electron splitting (<code>null</code> for none)
+     */
+    public void setElectronSplitting(ElectronSplitting splitting) {
+        electronSplitting = splitting;
     }
 
 
@@ -57,12 +99,18 @@ public class PhotonEmissionMapListener implements ActionListener {
 
         switch (ae.getID()) {
         case BaseXRayGeneration3.XRayGeneration: {
+            double weight =
+                    electronSplitting == null ? 1.0 : electronSplitting
+                            .getWeight();
             for (int i = xrayEventListener.getEventCount() - 1; i >= 0; i--) {
                 XRay xray = xrayEventListener.getXRay(i);
 
                 if (xray instanceof CharacteristicXRay) {
                     XRayTransition xrt =
                             ((CharacteristicXRay) xray).getTransition();
+                    if (transitions != null && !transitions.contains(xrt))
+                        continue;
+
                     double[] pos = xray.getPosition();
 
                     HistogramDouble3D emittedDistribution =
@@ -72,7 +120,7 @@ public class PhotonEmissionMapListener implements ActionListener {
                         emittedDistributions.put(xrt, emittedDistribution);
                     }
                     emittedDistribution.add(pos[0], pos[1], pos[2],
-                            xray.getIntensity());
+                            xray.getIntensity() * weight);
 
                     HistogramDouble3D generatedDistribution =
                             generatedDistributions.get(xrt);
@@ -81,7 +129,7 @@ public class PhotonEmissionMapListener implements ActionListener {
                         generatedDistributions.put(xrt, generatedDistribution);
                     }
                     generatedDistribution.add(pos[0], pos[1], pos[2],
-                            xray.getGenerated());
+                            xray.getGenerated() * weight);
                 }
             }
         }
@@ -10,7 +10,9 @@ import gov.nist.microanalysis.Utility.Math2;
 
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.Set;
 import java.util.TreeMap;
 
@@ -29,6 +31,9 @@ public class PhotonRadialDistributionListener implements ActionListener {
 
     private final TreeMap<XRayTransition, HistogramDouble> generatedDistributions;
 
+    /** X-ray transitions to bin, <code>null</code> for all. */
+    private final Set<XRayTransition> transitions;
+
 
 
     /**
@@ -51,6 +56,35 @@ public class PhotonRadialDistributionListener implements ActionListener {
     public PhotonRadialDistributionListener(XRayTransport3 xrel,
             double[] center, double[] normal,
             double rmax, int nBins, boolean equalArea) {
+        this(xrel, center, normal, rmax, nBins, equalArea, null);
+    }
+
+
+
+    /**
+     * Creates a new <code>PhotonRadialDistributionListener</code> binning
+     * only some x-ray transitions.
+     * 
+     * @param center
+     *            centre of the radial distribution. Distance are evaluated to
+     *            this point. Coordinates in meters.
+     * @param normal
+     *            normal to the entering region's surface
+     * @param rmax
+     *            maximum radius of the distribution (in meters)
+     * @param nBins
+     *            number of bins
+     * @param equalArea
+     *            if <code>true</code> the values of the bins are calculated to
+     *            have an equal area, if <code>false</code> the values of the
+     *            bins have are radially equidistant.
+     * @param transitions
+     *            x-ray transitions to bin, <code>null</code> for all
+     */
+    public PhotonRadialDistributionListener(XRayTransport3 xrel,
+            double[] center, double[] normal,
+            double rmax, int nBins, boolean equalArea,
+            Collection<XRayTransition> transitions) {
         if (xrel == null)
             throw new NullPointerException("xrel == null");
         xrayEventListener = xrel;
@@ -71,6 +105,11 @@ public class PhotonRadialDistributionListener implements ActionListener {
 
         emittedDistributions = new TreeMap<>();
         generatedDistributions = new TreeMap<>();
+
+        if (transitions == null)
+            this.transitions = null;
+        else
+            this.transitions = new HashSet<>(transitions);
     }
 
 
@@ -87,7 +126,9 @@ public class PhotonRadialDistributionListener implements ActionListener {
                 if (xray instanceof CharacteristicXRay) {
                     XRayTransition xrt =
                             ((CharacteristicXRay) xray).getTransition();
-                    if (xrt != null) {
+                    if (xrt != null
+                            && (transitions == null || transitions
+                                    .contains(xrt))) {
 
                         // From
                         // http://mathworld.wolfram.com/Point-LineDistance3-Dimensional.html
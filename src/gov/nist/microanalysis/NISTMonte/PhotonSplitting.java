@@ -0,0 +1,111 @@
+package gov.nist.microanalysis.NISTMonte;
+
+import gov.nist.microanalysis.EPQLibrary.Element;
+import gov.nist.microanalysis.EPQLibrary.XRayTransition;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Splitting of the fluorescence x-rays of chosen elements, a variance
+ * reduction technique. The fluorescence generation samples a single
+ * absorption site for each primary x-ray; with a splitting factor
+ * <i>N</i>, <i>N</i> independent fluorescence generations listen to the same
+ * primary generation and each of their photons of the chosen elements is
+ * weighted by 1/<i>N</i>. The photons of the other elements are only
+ * recorded from the first copy, with a weight of 1, so that the intensities
+ * remain unbiased.
+ * <p>
+ * Every copy samples the fluorescence of all the elements, so the cost of the
+ * fluorescence generation and transport is multiplied by <i>N</i> regardless
+ * of the number of split elements.
+ *
+ * @author ppinard
+ */
+public class PhotonSplitting {
+
+    /** Splitting factor. */
+    private final int factor;
+
+    /** Elements whose fluorescence x-rays are split. */
+    private final Set<Element> elements;
+
+
+
+    /**
+     * Creates a new <code>PhotonSplitting</code>.
+     *
+     * @param factor
+     *            splitting factor, number of copies of the fluorescence
+     *            generations
+     * @param elements
+     *            elements whose fluorescence x-rays are split
+     */
+    public PhotonSplitting(int factor, Collection<Element> elements) {
+        if (factor < 1)
+            throw new IllegalArgumentException("Splitting factor < 1: "
+                    + factor);
+        if (elements == null)
+            throw new NullPointerException("elements == null");
+        this.factor = factor;
+        this.elements = new HashSet<>(elements);
+    }
+
+
+
+    /**
+     * Returns the splitting factor.
+     *
+     * @return splitting factor
+     */
+    public int getFactor() {
+        return factor;
+    }
+
+
+
+    /**
+     * Returns the elements whose fluorescence x-rays are split.
+     *
+     * @return elements
+     */
+    public Set<Element> getElements() {
+        return Collections.unmodifiableSet(elements);
+    }
+
+
+
+    /**
+     * Returns whether the x-rays of a transition are split.
+     *
+     * @param xrt
+     *            x-ray transition
+     * @return <code>true</code> if the element of the transition is split
+     */
+    public boolean isSplit(XRayTransition xrt) {
+        return factor > 1 && elements.contains(xrt.getElement());
+    }
+
+
+
+    /**
+     * Returns the weight of the photons of a transition from a copy of the
+     * fluorescence generation.
+     *
+     * @param copy
+     *            index of the copy, between 0 and the factor
+     * @param xrt
+     *            x-ray transition
+     * @return weight, 0 if the photons of this copy are not recorded
+     */
+    public double getWeight(int copy, XRayTransition xrt) {
+        if (copy < 0 || copy >= factor)
+            throw new IllegalArgumentException("Invalid copy: " + copy);
+        if (isSplit(xrt))
+            return 1.0 / factor;
+        return copy == 0 ? 1.0 : 0.0;
+    }
+
+}
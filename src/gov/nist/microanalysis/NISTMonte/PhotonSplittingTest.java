@@ -0,0 +1,61 @@
+package gov.nist.microanalysis.NISTMonte;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import gov.nist.microanalysis.EPQLibrary.Element;
+import gov.nist.microanalysis.EPQLibrary.XRayTransition;
+
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class PhotonSplittingTest {
+
+    private PhotonSplitting splitting;
+
+    private XRayTransition feKa;
+
+    private XRayTransition siKa;
+
+
+
+    @Before
+    public void setUp() throws Exception {
+        splitting = new PhotonSplitting(4, Collections.singleton(Element.Fe));
+        feKa = new XRayTransition(Element.Fe, XRayTransition.KA1);
+        siKa = new XRayTransition(Element.Si, XRayTransition.KA1);
+    }
+
+
+
+    @Test
+    public void testIsSplit() {
+        assertTrue(splitting.isSplit(feKa));
+        assertFalse(splitting.isSplit(siKa));
+
+        PhotonSplitting none =
+                new PhotonSplitting(1, Collections.singleton(Element.Fe));
+        assertFalse(none.isSplit(feKa));
+    }
+
+
+
+    @Test
+    public void testGetWeight() {
+        // Unbiased: the weights of all copies sum to 1
+        double fe = 0.0, si = 0.0;
+        for (int i = 0; i < splitting.getFactor(); i++) {
+            fe += splitting.getWeight(i, feKa);
+            si += splitting.getWeight(i, siKa);
+        }
+        assertEquals(1.0, fe, 1e-12);
+        assertEquals(1.0, si, 1e-12);
+
+        assertEquals(0.25, splitting.getWeight(3, feKa), 1e-12);
+        assertEquals(1.0, splitting.getWeight(0, siKa), 1e-12);
+        assertEquals(0.0, splitting.getWeight(3, siKa), 1e-12);
+    }
+
+}
@@ -0,0 +1,553 @@
+package gov.nist.microanalysis.NISTMonte;
+
+import gov.nist.microanalysis.EPQLibrary.EPQException;
+import gov.nist.microanalysis.EPQLibrary.Material;
+import gov.nist.microanalysis.EPQLibrary.MassAbsorptionCoefficient;
+import gov.nist.microanalysis.EPQLibrary.XRayTransition;
+import gov.nist.microanalysis.NISTMonte.Gen3.BaseXRayGeneration3;
+import gov.nist.microanalysis.NISTMonte.Gen3.BaseXRayGeneration3.CharacteristicXRay;
+import gov.nist.microanalysis.NISTMonte.Gen3.BaseXRayGeneration3.XRay;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Accumulator of the generated and emitted intensities of characteristic
+ * x-rays in a {@link StratifiedRegion}, replacing a
+ * {@link gov.nist.microanalysis.NISTMonte.Gen3.XRayTransport3} for planar
+ * samples. Instead of tracing each photon through the regions, the absorption
+ * towards the detector is computed in closed form: the path length in each
+ * layer between the emission point and the top of the stack is the thickness
+ * of the layer divided by the cosine between the direction of the detector
+ * and the axis of the stack. The linear absorption coefficient of each
+ * (material, transition) and the cumulated absorption down to the top of each
+ * layer are computed once, at creation.
+ * <p/>
+ * One accumulator serves several detectors: the depth of each photon and the
+ * absorption along the axis are computed once, and only the cosine and the
+ * exponential are evaluated for each detector direction.
+ * <p/>
+ * The accumulator listens directly to x-ray generations (see
+ * {@link #addSource(BaseXRayGeneration3)}), and to the {@link MonteCarloSS}
+ * to tally the intensities per shower. The photons
+ * generated above the first layer are considered to leave the sample without
+ * absorption; those generated below the last layer are absorbed by the
+ * material of the container until the bottom of the stack. Photons going away
+ * from the surface are not emitted.
+ *
+ * @author ppinard
+ */
+public class PlanarXRayAccumulator implements ActionListener {
+
+    /** Stack of layers. */
+    private final StratifiedRegion region;
+
+    /** Positions of the detectors. */
+    private final double[][] detectorPositions;
+
+    /** Unit vector of the axis of the stack. */
+    private final double[] axis;
+
+    /** Origin of the axis. */
+    private final double[] origin;
+
+    /** Depths of the boundaries of the layers. */
+    private final double[] depths;
+
+    /** Accumulated transitions. */
+    private final XRayTransitionIndex index;
+
+    /**
+     * Linear absorption coefficients (1/m) by transition index, for each
+     * layer and the container below the stack.
+     */
+    private final double[][] absorptions;
+
+    /**
+     * Absorption (without unit) along the axis from the top of the stack to
+     * the top of each layer and to the bottom of the stack, by transition
+     * index.
+     */
+    private final double[][] cumulatedAbsorptions;
+
+    /** Generated intensities by transition index. */
+    private final ShowerTally generated;
+
+    /**
+     * Emitted intensities by transition index and detector, at
+     * <code>transition * detectors + detector</code>.
+     */
+    private final ShowerTally emitted;
+
+    /** Registered generations and the weights of their photons. */
+    private final WeightedXRaySources sources;
+
+
+    /** Electron splitting weighting the x-rays, <code>null</code> if none. */
+    private ElectronSplitting electronSplitting = null;
+
+
+    /**
+     * Creates a new <code>PlanarXRayAccumulator</code> for one detector.
+     *
+     * @param region
+     *            stack of layers
+     * @param detectorPosition
+     *            position of the detector (in meters)
+     * @param transitions
+     *            x-ray transitions to accumulate
+     * @param mac
+     *            mass absorption coefficient algorithm
+     * @throws EPQException
+     *             if a mass absorption coefficient cannot be calculated
+     */
+    public PlanarXRayAccumulator(StratifiedRegion region,
+            double[] detectorPosition, Collection<XRayTransition> transitions,
+            MassAbsorptionCoefficient mac) throws EPQException {
+        this(region, new double[][] { detectorPosition }, transitions, mac);
+    }
+
+
+
+    /**
+     * Creates a new <code>PlanarXRayAccumulator</code> for several
+     * detectors. The detectors are identified by their index in the array of
+     * positions.
+     *
+     * @param region
+     *            stack of layers
+     * @param detectorPositions
+     *            positions of the detectors (in meters)
+     * @param transitions
+     *            x-ray transitions to accumulate
+     * @param mac
+     *            mass absorption coefficient algorithm
+     * @throws EPQException
+     *             if a mass absorption coefficient cannot be calculated
+     */
+    public PlanarXRayAccumulator(StratifiedRegion region,
+            double[][] detectorPositions,
+            Collection<XRayTransition> transitions,
+            MassAbsorptionCoefficient mac) throws EPQException {
+        if (region == null)
+            throw new NullPointerException("region == null");
+        if (detectorPositions == null)
+            throw new NullPointerException("detectorPositions == null");
+        if (detectorPositions.length == 0)
+            throw new IllegalArgumentException("No detector position");
+        if (transitions == null)
+            throw new NullPointerException("transitions == null");
+        if (mac == null)
+            throw new NullPointerException("mac == null");
+
+        this.region = region;
+        this.detectorPositions = new double[detectorPositions.length][];
+        for (int i = 0; i < detectorPositions.length; i++) {
+            if (detectorPositions[i] == null)
+                throw new NullPointerException("detectorPositions[" + i
+                        + "] == null");
+            this.detectorPositions[i] = detectorPositions[i].clone();
+        }
+        axis = region.getAxis();
+        origin = region.getOrigin();
+        depths = region.getDepths();
+
+        int layerCount = region.getLayerCount();
+        Material[] materials = new Material[layerCount + 1];
+        for (int i = 0; i < layerCount; i++)
+            materials[i] = region.getLayer(i).getMaterial();
+        materials[layerCount] = region.getMaterial();
+
+        index = new XRayTransitionIndex(transitions);
+        absorptions = new double[index.size()][];
+        cumulatedAbsorptions = new double[index.size()][];
+        generated = new ShowerTally(index.size());
+        emitted = new ShowerTally(index.size() * detectorPositions.length);
+        sources = new WeightedXRaySources(index);
+
+        Map<Material, Double> cache = new HashMap<>();
+        double[] mus, cumulated;
+        Double mu;
+        XRayTransition xrt;
+        for (int t = 0; t < index.size(); t++) {
+            xrt = index.get(t);
+            cache.clear();
+
+            mus = new double[layerCount + 1];
+            for (int i = 0; i <= layerCount; i++) {
+                mu = cache.get(materials[i]);
+                if (mu == null) {
+                    mu = getLinearAbsorption(mac, materials[i], xrt);
+                    cache.put(materials[i], mu);
+                }
+                mus[i] = mu;
+            }
+
+            cumulated = new double[layerCount + 1];
+            for (int i = 0; i < layerCount; i++)
+                cumulated[i + 1] =
+                        cumulated[i] + mus[i] * (depths[i + 1] - depths[i]);
+
+            absorptions[t] = mus;
+            cumulatedAbsorptions[t] = cumulated;
+        }
+    }
+
+
+
+    /**
+     * Returns the linear absorption coefficient of a material.
+     *
+     * @param mac
+     *            mass absorption coefficient algorithm
+     * @param material
+     *            material
+     * @param xrt
+     *            x-ray transition
+     * @return linear absorption coefficient (1/m)
+     * @throws EPQException
+     *             if the mass absorption coefficient cannot be calculated
+     */
+    private static double getLinearAbsorption(MassAbsorptionCoefficient mac,
+            Material material, XRayTransition xrt) throws EPQException {
+        if (material.getElementSet().isEmpty()
+                || !(material.getDensity() > 0.0))
+            return 0.0; // Vacuum
+        return mac.compute(material, xrt) * material.getDensity();
+    }
+
+
+
+    /**
+     * Returns the absorption (without unit) along the axis between a
+     * position and the top of the stack.
+     *
+     * @param t
+     *            index of the x-ray transition
+     * @param pos
+     *            generation position
+     * @return absorption, 0 above the stack
+     */
+    private double getAxialAbsorption(int t, double[] pos) {
+        double[] mus = absorptions[t];
+
+        double depth =
+                (pos[0] - origin[0]) * axis[0] + (pos[1] - origin[1])
+                        * axis[1] + (pos[2] - origin[2]) * axis[2];
+
+        int position = depths.length - 1; // Below the stack
+        if (depth < depths[0])
+            return 0.0; // Above the stack
+        if (depth < depths[position]) {
+            int lo = 0, hi = position;
+            while (hi - lo > 1) {
+                int mid = (lo + hi) >>> 1;
+                if (depth < depths[mid])
+                    hi = mid;
+                else
+                    lo = mid;
+            }
+            position = lo;
+        }
+
+        return cumulatedAbsorptions[t][position] + mus[position]
+                * (depth - depths[position]);
+    }
+
+
+
+    /**
+     * Returns the cosine between the direction from a position to a detector
+     * and the normal of the surface.
+     *
+     * @param detector
+     *            index of the detector
+     * @param pos
+     *            generation position
+     * @return cosine, negative or zero towards the inside of the sample
+     */
+    private double getCosine(int detector, double[] pos) {
+        double[] detectorPosition = detectorPositions[detector];
+        double dx = detectorPosition[0] - pos[0];
+        double dy = detectorPosition[1] - pos[1];
+        double dz = detectorPosition[2] - pos[2];
+        return -(dx * axis[0] + dy * axis[1] + dz * axis[2])
+                / Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+
+
+    /**
+     * Returns the fraction of the x-rays of a transition generated at a
+     * position that reaches the first detector.
+     *
+     * @param xrt
+     *            x-ray transition
+     * @param pos
+     *            generation position
+     * @return fraction between 0 and 1
+     */
+    public double getTransmission(XRayTransition xrt, double[] pos) {
+        return getTransmission(0, xrt, pos);
+    }
+
+
+
+    /**
+     * Returns the fraction of the x-rays of a transition generated at a
+     * position that reaches a detector.
+     *
+     * @param detector
+     *            index of the detector
+     * @param xrt
+     *            x-ray transition
+     * @param pos
+     *            generation position
+     * @return fraction between 0 and 1
+     */
+    public double getTransmission(int detector, XRayTransition xrt,
+            double[] pos) {
+        int t = index.indexOf(xrt);
+        if (t < 0)
+            throw new IllegalArgumentException("Unknown transition: " + xrt);
+
+        double cos = getCosine(detector, pos);
+        if (!(cos > 0.0))
+            return 0.0; // Towards the inside of the sample
+        return Math.exp(-getAxialAbsorption(t, pos) / cos);
+    }
+
+
+
+    /**
+     * Registers the accumulator to an x-ray generation.
+     *
+     * @param source
+     *            x-ray generation
+     */
+    public void addSource(BaseXRayGeneration3 source) {
+        sources.add(source);
+        source.addXRayListener(this);
+    }
+
+
+
+    /**
+     * Registers the accumulator to a copy of a split fluorescence generation,
+     * whose photons are weighted.
+     *
+     * @param source
+     *            x-ray generation
+     * @param splitting
+     *            photon splitting
+     * @param copy
+     *            index of the copy
+     */
+    public void addSource(BaseXRayGeneration3 source,
+            PhotonSplitting splitting, int copy) {
+        sources.add(source, splitting, copy);
+        source.addXRayListener(this);
+    }
+
+
+
+    /**
+     * Sets the electron splitting whose electron weights are applied to the
+     * accumulated x-rays.
+     *
+     * @param splitting
+     *            electron splitting (<code>null</code> for none)
+     */
+    public void setElectronSplitting(ElectronSplitting splitting) {
+        electronSplitting = splitting;
+    }
+
+
+
+    @Override
+    public void actionPerformed(ActionEvent ae) {
+        if (ae.getSource() instanceof MonteCarloSS) {
+            switch (ae.getID()) {
+            case MonteCarloSS.FirstTrajectoryEvent:
+                clear();
+                break;
+            case MonteCarloSS.TrajectoryEndEvent:
+                generated.endShower();
+                emitted.endShower();
+                break;
+            default:
+                break;
+            }
+            return;
+        }
+
+        if (ae.getID() != BaseXRayGeneration3.XRayGeneration)
+            return;
+
+        double[] weights = sources.find(ae.getSource());
+        if (weights == null)
+            return;
+
+        double electronWeight =
+                electronSplitting == null ? 1.0 : electronSplitting
+                        .getWeight();
+
+        BaseXRayGeneration3 source = (BaseXRayGeneration3) ae.getSource();
+        int detectors = detectorPositions.length;
+        XRay xray;
+        int t;
+        double[] pos;
+        double w, absorption, intensity, cos;
+        for (int i = source.getEventCount() - 1; i >= 0; i--) {
+            xray = source.getXRay(i);
+            if (!(xray instanceof CharacteristicXRay))
+                continue;
+
+            t = index.indexOf(((CharacteristicXRay) xray).getTransition());
+            if (t < 0)
+                continue;
+
+            w = weights[t] * electronWeight;
+            if (w == 0.0)
+                continue;
+
+            generated.add(t, xray.getGenerated() * w);
+
+            pos = xray.getGenerationPos();
+            absorption = getAxialAbsorption(t, pos);
+            intensity = xray.getIntensity() * w;
+            for (int d = 0; d < detectors; d++) {
+                cos = getCosine(d, pos);
+                if (cos > 0.0)
+                    emitted.add(t * detectors + d, intensity
+                            * Math.exp(-absorption / cos));
+            }
+        }
+    }
+
+
+
+    /**
+     * Clears the accumulated intensities.
+     */
+    public void clear() {
+        generated.clear();
+        emitted.clear();
+    }
+
+
+
+    /**
+     * Returns the stack of layers.
+     *
+     * @return stack of layers
+     */
+    public StratifiedRegion getRegion() {
+        return region;
+    }
+
+
+
+    /**
+     * Returns the accumulated x-ray transitions.
+     *
+     * @return x-ray transitions
+     */
+    public List<XRayTransition> getTransitions() {
+        return index.getTransitions();
+    }
+
+
+
+    /**
+     * Returns the generated intensity of a transition.
+     *
+     * @param xrt
+     *            x-ray transition
+     * @return generated intensity, 0 for an unknown transition
+     */
+    public double getGenerated(XRayTransition xrt) {
+        int t = index.indexOf(xrt);
+        return t < 0 ? 0.0 : generated.getSum(t);
+    }
+
+
+
+    /**
+     * Returns the standard error of the generated intensity per shower of a
+     * transition.
+     *
+     * @param xrt
+     *            x-ray transition
+     * @return standard error, 0 for an unknown transition
+     */
+    public double getGeneratedError(XRayTransition xrt) {
+        int t = index.indexOf(xrt);
+        return t < 0 ? 0.0 : generated.getStandardError(t);
+    }
+
+
+
+    /**
+     * Returns the number of detectors.
+     *
+     * @return number of detectors
+     */
+    public int getDetectorCount() {
+        return detectorPositions.length;
+    }
+
+
+
+    /**
+     * Returns the emitted intensity of a transition towards the first
+     * detector.
+     *
+     * @param xrt
+     *            x-ray transition
+     * @return emitted intensity, 0 for an unknown transition
+     */
+    public double getEmitted(XRayTransition xrt) {
+        return getEmitted(0, xrt);
+    }
+
+
+
+    /**
+     * Returns the emitted intensity of a transition towards a detector.
+     *
+     * @param detector
+     *            index of the detector
+     * @param xrt
+     *            x-ray transition
+     * @return emitted intensity, 0 for an unknown transition
+     */
+    public double getEmitted(int detector, XRayTransition xrt) {
+        int t = index.indexOf(xrt);
+        return t < 0 ? 0.0 : emitted.getSum(t * detectorPositions.length
+                + detector);
+    }
+
+
+
+    /**
+     * Returns the standard error of the emitted intensity per shower of a
+     * transition towards a detector.
+     *
+     * @param detector
+     *            index of the detector
+     * @param xrt
+     *            x-ray transition
+     * @return standard error, 0 for an unknown transition
+     */
+    public double getEmittedError(int detector, XRayTransition xrt) {
+        int t = index.indexOf(xrt);
+        return t < 0 ? 0.0 : emitted.getStandardError(t
+                * detectorPositions.length + detector);
+    }
+
+}
@@ -0,0 +1,143 @@
+package gov.nist.microanalysis.NISTMonte;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import gov.nist.microanalysis.EPQLibrary.Element;
+import gov.nist.microanalysis.EPQLibrary.MassAbsorptionCoefficient;
+import gov.nist.microanalysis.EPQLibrary.Material;
+import gov.nist.microanalysis.EPQLibrary.MaterialFactory;
+import gov.nist.microanalysis.EPQLibrary.XRayTransition;
+import gov.nist.microanalysis.Utility.Math2;
+
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class PlanarXRayAccumulatorTest {
+
+    private static final MassAbsorptionCoefficient MAC =
+            MassAbsorptionCoefficient.Chantler2005;
+
+    private Material cu;
+
+    private Material si;
+
+    private XRayTransition xrt;
+
+    private double takeOffAngle;
+
+    private StratifiedRegion region;
+
+    private PlanarXRayAccumulator accumulator;
+
+
+
+    @Before
+    public void setUp() throws Exception {
+        cu = MaterialFactory.createPureElement(Element.Cu);
+        si = MaterialFactory.createPureElement(Element.Si);
+        xrt = new XRayTransition(Element.Si, XRayTransition.KA1);
+
+        MultiPlaneShape shape =
+                MultiPlaneShape.createSubstrate(Math2.Z_AXIS, Math2.ORIGIN_3D);
+        region =
+                new StratifiedRegion(null, new BlackBodyMaterialModel(),
+                        shape, Math2.MINUS_Z_AXIS, Math2.ORIGIN_3D, 0.0);
+
+        shape = MultiPlaneShape.createFilm(Math2.Z_AXIS, Math2.ORIGIN_3D, 1e-7);
+        region.addLayer(new BasicMaterialModel(cu), shape, 1e-7, 1);
+        shape =
+                MultiPlaneShape.createFilm(Math2.Z_AXIS, new double[] { 0.0,
+                        0.0, -1e-7 }, 1e-3);
+        region.addLayer(new BasicMaterialModel(si), shape, 1e-3, 2);
+
+        takeOffAngle = Math.toRadians(40.0);
+        double[] detectorPosition =
+                Math2.multiply(0.999 * MonteCarloSS.ChamberRadius,
+                        new double[] { Math.cos(takeOffAngle), 0.0,
+                                Math.sin(takeOffAngle) });
+
+        accumulator =
+                new PlanarXRayAccumulator(region, detectorPosition,
+                        Collections.singleton(xrt), MAC);
+    }
+
+
+
+    @Test
+    public void testGetTransmission() throws Exception {
+        double muCu = MAC.compute(cu, xrt) * cu.getDensity();
+        double muSi = MAC.compute(si, xrt) * si.getDensity();
+
+        double expected =
+                Math.exp(-(muCu * 1e-7 + muSi * 1e-7) / Math.sin(takeOffAngle));
+        double actual =
+                accumulator.getTransmission(xrt,
+                        new double[] { 0.0, 0.0, -2e-7 });
+        assertEquals(expected, actual, expected * 1e-4);
+
+        expected = Math.exp(-(muCu * 5e-8) / Math.sin(takeOffAngle));
+        actual =
+                accumulator.getTransmission(xrt, new double[] { 0.0, 0.0,
+                        -5e-8 });
+        assertEquals(expected, actual, expected * 1e-4);
+    }
+
+
+
+    @Test
+    public void testGetTransmissionOutside() {
+        assertEquals(1.0, accumulator.getTransmission(xrt, new double[] { 0.0,
+                0.0, 1e-6 }), 0.0);
+
+        double actual =
+                accumulator.getTransmission(xrt, new double[] { 0.0, 0.0,
+                        -2e-3 });
+        assertTrue(actual >= 0.0 && actual < 1e-6);
+    }
+
+
+
+    @Test
+    public void testGetTransmissionDirections() throws Exception {
+        double[] high =
+                Math2.multiply(0.999 * MonteCarloSS.ChamberRadius,
+                        new double[] { 0.0, Math.cos(Math.toRadians(75.0)),
+                                Math.sin(Math.toRadians(75.0)) });
+        double[] low =
+                Math2.multiply(0.999 * MonteCarloSS.ChamberRadius,
+                        new double[] { Math.cos(Math.toRadians(10.0)), 0.0,
+                                Math.sin(Math.toRadians(10.0)) });
+        PlanarXRayAccumulator multi =
+                new PlanarXRayAccumulator(region, new double[][] { high, low },
+                        Collections.singleton(xrt), MAC);
+        assertEquals(2, multi.getDetectorCount());
+
+        double[] pos = new double[] { 0.0, 0.0, -2e-7 };
+        double expected =
+                new PlanarXRayAccumulator(region, high,
+                        Collections.singleton(xrt), MAC).getTransmission(xrt,
+                        pos);
+        assertEquals(expected, multi.getTransmission(0, xrt, pos), 1e-12);
+
+        expected =
+                new PlanarXRayAccumulator(region, low,
+                        Collections.singleton(xrt), MAC).getTransmission(xrt,
+                        pos);
+        assertEquals(expected, multi.getTransmission(1, xrt, pos), 1e-12);
+        assertTrue(multi.getTransmission(0, xrt, pos) > multi
+                .getTransmission(1, xrt, pos));
+    }
+
+
+
+    @Test
+    public void testClear() {
+        assertEquals(1, accumulator.getTransitions().size());
+        accumulator.clear();
+        assertEquals(0.0, accumulator.getGenerated(xrt), 0.0);
+        assertEquals(0.0, accumulator.getEmitted(xrt), 0.0);
+    }
+
+}
@@ -0,0 +1,257 @@
+package gov.nist.microanalysis.NISTMonte;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Label volume stored in a raw file (e.g. a segmented tomogram), without
+ * header. Each voxel is an unsigned 8-bit or 16-bit integer, with x varying
+ * the fastest, then y, then z. The file is memory-mapped and read in a single
+ * pass to set the materials of a {@link VoxelRegion} or a
+ * {@link CuboidRegion}. One scatter model is shared by all the voxels of the
+ * same label.
+ *
+ * @author ppinard
+ */
+public class RawLabelVolume {
+
+    /** Maximum number of bytes mapped at once. */
+    private static final long WINDOW_SIZE = 1L << 28;
+
+    /** Raw file. */
+    private final File file;
+
+    /** Number of voxels in x. */
+    private final int nx;
+
+    /** Number of voxels in y. */
+    private final int ny;
+
+    /** Number of voxels in z. */
+    private final int nz;
+
+    /** Number of bytes per voxel (1 or 2). */
+    private final int bytesPerVoxel;
+
+    /** Byte order of 16-bit labels. */
+    private final ByteOrder order;
+
+
+
+    /**
+     * Creates a new <code>RawLabelVolume</code>.
+     *
+     * @param file
+     *            raw file
+     * @param nx
+     *            number of voxels in x
+     * @param ny
+     *            number of voxels in y
+     * @param nz
+     *            number of voxels in z
+     * @param bytesPerVoxel
+     *            1 for uint8 labels, 2 for uint16 labels
+     * @param order
+     *            byte order of uint16 labels
+     * @throws IOException
+     *             if the size of the file does not match the dimensions
+     */
+    public RawLabelVolume(File file, int nx, int ny, int nz,
+            int bytesPerVoxel, ByteOrder order) throws IOException {
+        if (file == null)
+            throw new NullPointerException("file == null");
+        if (nx < 1 || ny < 1 || nz < 1)
+            throw new IllegalArgumentException(
+                    "Dimensions must be greater or equal to 1");
+        if (bytesPerVoxel != 1 && bytesPerVoxel != 2)
+            throw new IllegalArgumentException("Bytes per voxel must be 1 or 2");
+        if (order == null)
+            throw new NullPointerException("order == null");
+
+        long expected = (long) nx * ny * nz * bytesPerVoxel;
+        if (file.length() != expected)
+            throw new IOException("Size of " + file + " (" + file.length()
+                    + " bytes) does not match the dimensions (" + expected
+                    + " bytes)");
+
+        this.file = file;
+        this.nx = nx;
+        this.ny = ny;
+        this.nz = nz;
+        this.bytesPerVoxel = bytesPerVoxel;
+        this.order = order;
+    }
+
+
+
+    /**
+     * Interface to receive the labels read from the file.
+     */
+    private interface LabelVisitor {
+
+        /**
+         * Called for each voxel, in file order.
+         *
+         * @param n
+         *            linear index of the voxel (x fastest)
+         * @param label
+         *            label of the voxel
+         * @throws IOException
+         *             if the label is invalid
+         */
+        public void visit(int n, int label) throws IOException;
+    }
+
+
+
+    /**
+     * Reads all labels of the file.
+     *
+     * @param visitor
+     *            receiver of the labels
+     * @throws IOException
+     *             if an error occurs while reading the file
+     */
+    private void read(LabelVisitor visitor) throws IOException {
+        long size = (long) nx * ny * nz * bytesPerVoxel;
+        int n = 0;
+
+        try (FileChannel channel =
+                FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long position = 0;
+            long length;
+            MappedByteBuffer buffer;
+            while (position < size) {
+                length = Math.min(WINDOW_SIZE, size - position);
+                buffer = channel.map(MapMode.READ_ONLY, position, length);
+                buffer.order(order);
+
+                if (bytesPerVoxel == 1) {
+                    while (buffer.hasRemaining())
+                        visitor.visit(n++, buffer.get() & 0xFF);
+                } else {
+                    while (buffer.hasRemaining())
+                        visitor.visit(n++, buffer.getShort() & 0xFFFF);
+                }
+
+                position += length;
+            }
+        }
+    }
+
+
+
+    /**
+     * Creates the lookup table of scatter models indexed by label.
+     *
+     * @param materials
+     *            scatter model of each label
+     * @return lookup table
+     */
+    private IMaterialScatterModel[] createLookup(
+            Map<Integer, IMaterialScatterModel> materials) {
+        IMaterialScatterModel[] lookup =
+                new IMaterialScatterModel[1 << (8 * bytesPerVoxel)];
+
+        int label;
+        for (Entry<Integer, IMaterialScatterModel> entry : materials.entrySet()) {
+            label = entry.getKey();
+            if (label < 0 || label >= lookup.length)
+                throw new IllegalArgumentException("Invalid label: " + label);
+            if (entry.getValue() == null)
+                throw new NullPointerException("No model for label " + label);
+            lookup[label] = entry.getValue();
+        }
+
+        return lookup;
+    }
+
+
+
+    private void checkDimensions(int nx, int ny, int nz) {
+        if (nx != this.nx || ny != this.ny || nz != this.nz)
+            throw new IllegalArgumentException(String.format(
+                    "Grid (%d, %d, %d) does not match volume (%d, %d, %d)", nx,
+                    ny, nz, this.nx, this.ny, this.nz));
+    }
+
+
+
+    /**
+     * Sets the material of all voxels of a region from the labels of the
+     * file.
+     *
+     * @param region
+     *            voxel region with the same dimensions as the file
+     * @param materials
+     *            scatter model of each label found in the file
+     * @throws IOException
+     *             if an error occurs while reading the file or if a label has
+     *             no scatter model
+     */
+    public void apply(final VoxelRegion region,
+            Map<Integer, IMaterialScatterModel> materials) throws IOException {
+        checkDimensions(region.getNx(), region.getNy(), region.getNz());
+
+        // Palette label of each file label
+        IMaterialScatterModel[] lookup = createLookup(materials);
+        final int[] palette = new int[lookup.length];
+        for (int label = 0; label < lookup.length; label++)
+            palette[label] =
+                    lookup[label] != null ? region.addMaterial(lookup[label])
+                            : -1;
+
+        read(new LabelVisitor() {
+
+            @Override
+            public void visit(int n, int label) throws IOException {
+                if (palette[label] < 0)
+                    throw new IOException("No material for label " + label);
+                region.setLabel(n, palette[label]);
+            }
+        });
+    }
+
+
+
+    /**
+     * Sets the material of all cuboids of a region from the labels of the
+     * file.
+     *
+     * @param region
+     *            cuboid region with the same dimensions as the file
+     * @param materials
+     *            scatter model of each label found in the file
+     * @throws IOException
+     *             if an error occurs while reading the file or if a label has
+     *             no scatter model
+     */
+    public void apply(final CuboidRegion region,
+            Map<Integer, IMaterialScatterModel> materials) throws IOException {
+        checkDimensions(region.nx, region.ny, region.nz);
+
+        final IMaterialScatterModel[] lookup = createLookup(materials);
+
+        read(new LabelVisitor() {
+
+            @Override
+            public void visit(int n, int label) throws IOException {
+                if (lookup[label] == null)
+                    throw new IOException("No material for label " + label);
+
+                int i = n % nx;
+                int j = (n / nx) % ny;
+                int k = n / (nx * ny);
+                region.updateCuboidMaterial(i, j, k, lookup[label]);
+            }
+        });
+    }
+
+}
@@ -0,0 +1,110 @@
+package gov.nist.microanalysis.NISTMonte;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import pymontecarlo.util.TestCase;
+
+public class RawLabelVolumeTest extends TestCase {
+
+    private Map<Integer, IMaterialScatterModel> materials;
+
+    private IMaterialScatterModel model1;
+
+    private IMaterialScatterModel model2;
+
+
+
+    private File createVolumeFile(int bytesPerVoxel, ByteOrder order)
+            throws IOException {
+        // 2 x 2 x 2 volume, label 7 for x = 1, label 300 (or 3) otherwise
+        ByteBuffer buffer = ByteBuffer.allocate(8 * bytesPerVoxel);
+        buffer.order(order);
+        for (int n = 0; n < 8; n++) {
+            if (bytesPerVoxel == 1)
+                buffer.put((byte) (n % 2 == 1 ? 7 : 3));
+            else
+                buffer.putShort((short) (n % 2 == 1 ? 7 : 300));
+        }
+
+        File file = createTempFile("raw");
+        Files.write(file.toPath(), buffer.array());
+        return file;
+    }
+
+
+
+    @Before
+    public void setUp() throws Exception {
+        model1 = new BlackBodyMaterialModel();
+        model2 = new BlackBodyMaterialModel();
+
+        materials = new HashMap<>();
+        materials.put(7, model1);
+    }
+
+
+
+    @Test
+    public void testApplyUInt8() throws Exception {
+        materials.put(3, model2);
+        File file = createVolumeFile(1, ByteOrder.LITTLE_ENDIAN);
+
+        VoxelRegion region =
+                new VoxelRegion(0.0, 1.0, 2, 0.0, 1.0, 2, -1.0, 0.0, 2);
+        new RawLabelVolume(file, 2, 2, 2, 1, ByteOrder.LITTLE_ENDIAN).apply(
+                region, materials);
+
+        assertEquals(3, region.getMaterialCount());
+        assertSame(model1, region.getMaterialModel(region.getLabel(1, 0, 1)));
+        assertSame(model2, region.getMaterialModel(region.getLabel(0, 1, 0)));
+    }
+
+
+
+    @Test
+    public void testApplyUInt16() throws Exception {
+        materials.put(300, model2);
+        File file = createVolumeFile(2, ByteOrder.BIG_ENDIAN);
+
+        CuboidRegion region =
+                new CuboidRegion(0.0, 1.0, 2, 0.0, 1.0, 2, -1.0, 0.0, 2);
+        new RawLabelVolume(file, 2, 2, 2, 2, ByteOrder.BIG_ENDIAN).apply(
+                region, materials);
+
+        assertSame(model1, region.cuboids[1][1][0].getScatterModel());
+        assertSame(model2, region.cuboids[0][0][1].getScatterModel());
+    }
+
+
+
+    @Test(expected = IOException.class)
+    public void testApplyUnknownLabel() throws Exception {
+        File file = createVolumeFile(1, ByteOrder.LITTLE_ENDIAN);
+
+        VoxelRegion region =
+                new VoxelRegion(0.0, 1.0, 2, 0.0, 1.0, 2, -1.0, 0.0, 2);
+        new RawLabelVolume(file, 2, 2, 2, 1, ByteOrder.LITTLE_ENDIAN).apply(
+                region, materials);
+    }
+
+
+
+    @Test(expected = IOException.class)
+    public void testRawLabelVolumeWrongSize() throws Exception {
+        File file = createVolumeFile(1, ByteOrder.LITTLE_ENDIAN);
+        new RawLabelVolume(file, 2, 2, 3, 1, ByteOrder.LITTLE_ENDIAN);
+    }
+
+}
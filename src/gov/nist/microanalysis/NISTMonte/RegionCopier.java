@@ -0,0 +1,113 @@
+package gov.nist.microanalysis.NISTMonte;
+
+import gov.nist.microanalysis.NISTMonte.MonteCarloSS.Region;
+import gov.nist.microanalysis.NISTMonte.MonteCarloSS.RegionBase;
+
+import java.util.Map;
+
+/**
+ * Utilities to copy a tree of regions inside another parent region. Plain
+ * {@link Region} and {@link IndexedRegion} are copied with the same shape;
+ * other regions must implement {@link CopyableRegion}.
+ *
+ * @author ppinard
+ */
+public final class RegionCopier {
+
+    private RegionCopier() {
+    }
+
+
+
+    /**
+     * Returns whether a region and its sub-regions can be copied.
+     *
+     * @param region
+     *            region
+     * @return <code>true</code> if the region can be copied
+     */
+    public static boolean isCopyable(RegionBase region) {
+        if (region == null)
+            throw new NullPointerException("region == null");
+
+        // Responsible for its own sub-regions
+        if (region instanceof CopyableRegion)
+            return true;
+
+        if (region.getClass() != Region.class
+                && region.getClass() != IndexedRegion.class)
+            return false;
+
+        for (RegionBase subRegion : region.mSubRegions)
+            if (!isCopyable(subRegion))
+                return false;
+
+        return true;
+    }
+
+
+
+    /**
+     * Returns the replacement of a scatter model, or the model itself if it
+     * has no replacement.
+     *
+     * @param model
+     *            scatter model
+     * @param models
+     *            replacement of the scatter models
+     * @return replacement
+     */
+    public static IMaterialScatterModel substitute(
+            IMaterialScatterModel model,
+            Map<IMaterialScatterModel, IMaterialScatterModel> models) {
+        IMaterialScatterModel replacement = models.get(model);
+        return replacement != null ? replacement : model;
+    }
+
+
+
+    /**
+     * Copies a region and its sub-regions inside a parent region.
+     *
+     * @param region
+     *            region to copy
+     * @param parent
+     *            parent of the copy
+     * @param models
+     *            replacement of the scatter models, a model without
+     *            replacement is shared
+     * @return copy
+     * @throws IllegalArgumentException
+     *             if the region cannot be copied
+     */
+    public static RegionBase copy(RegionBase region, Region parent,
+            Map<IMaterialScatterModel, IMaterialScatterModel> models) {
+        if (region == null)
+            throw new NullPointerException("region == null");
+        if (models == null)
+            throw new NullPointerException("models == null");
+
+        if (region instanceof CopyableRegion)
+            return ((CopyableRegion) region).copy(parent, models);
+
+        IMaterialScatterModel msm =
+                substitute(region.getScatterModel(), models);
+
+        Region copy;
+        if (region.getClass() == IndexedRegion.class)
+            copy =
+                    new IndexedRegion(parent, msm, region.getShape(),
+                            ((IndexedRegion) region).getIndex());
+        else if (region.getClass() == Region.class)
+            copy = new Region(parent, msm, region.getShape());
+        else
+            throw new IllegalArgumentException("Cannot copy region of type "
+                    + region.getClass().getName());
+
+        for (RegionBase subRegion : region.mSubRegions)
+            copy(subRegion, copy, models);
+
+        return copy;
+    }
+
+}
@@ -0,0 +1,387 @@
+package gov.nist.microanalysis.NISTMonte;
+
+import gov.nist.microanalysis.NISTMonte.MonteCarloSS.RegionBase;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+/**
+ * Listener to tally the number of scattering events and the energy deposited
+ * in each region of a simulation. The tallies are keyed by the index of the
+ * {@link IndexedRegion} and stored in flat arrays; events in other regions are
+ * ignored. The energy lost along a step is deposited in the region where the
+ * step started, and the remaining energy of an absorbed electron in the region
+ * where it stopped.
+ * <p>
+ * Optionally, the same tallies are kept by voxel for the cuboids of a
+ * {@link CuboidRegion} and the voxels of a {@link VoxelRegion}, keyed by
+ * their linear index in the grid. The geometry should then contain a single
+ * grid.
+ *
+ * @author ppinard
+ */
+public class RegionTallyListener implements ActionListener {
+
+    /** Monte Carlo simulator. */
+    private final MonteCarloSS mcss;
+
+    /** Number of scattering events by region index. */
+    private long[] events = new long[0];
+
+    /** Deposited energy (in J) by region index. */
+    private double[] energies = new double[0];
+
+    /** Whether the tallies are also kept by voxel. */
+    private final boolean voxels;
+
+    /** Number of scattering events by voxel id. */
+    private long[] voxelEvents = new long[0];
+
+    /** Deposited energy (in J) by voxel id. */
+    private double[] voxelEnergies = new double[0];
+
+    /** Number of trajectories. */
+    private int trajectoryCount;
+
+    /**
+     * Energy, region index, escape flag and voxel id at the last event of the
+     * electrons being simulated (primary and secondaries).
+     */
+    private final Deque<double[]> states = new ArrayDeque<>();
+
+    /** Region of the last index lookup. */
+    private RegionBase lastRegion = null;
+
+    /** Index of the region of the last index lookup. */
+    private int lastIndex = IndexedRegion.NO_INDEX;
+
+
+
+    /**
+     * Creates a new <code>RegionTallyListener</code>.
+     *
+     * @param mcss
+     *            Monte Carlo simulator
+     */
+    public RegionTallyListener(MonteCarloSS mcss) {
+        this(mcss, false);
+    }
+
+
+
+    /**
+     * Creates a new <code>RegionTallyListener</code>.
+     *
+     * @param mcss
+     *            Monte Carlo simulator
+     * @param voxels
+     *            whether to also keep the tallies by voxel
+     */
+    public RegionTallyListener(MonteCarloSS mcss, boolean voxels) {
+        if (mcss == null)
+            throw new NullPointerException("mcss == null");
+        this.mcss = mcss;
+        this.voxels = voxels;
+    }
+
+
+
+    /**
+     * Returns the index of a region. Consecutive events mostly occur in the
+     * same region, so the index of the last region is kept.
+     *
+     * @param region
+     *            region
+     * @return index of the region, or {@link IndexedRegion#NO_INDEX}
+     */
+    private int getRegionIndex(RegionBase region) {
+        if (region != lastRegion) {
+            lastRegion = region;
+            lastIndex = IndexedRegion.indexOf(region);
+        }
+        return lastIndex;
+    }
+
+
+
+    /**
+     * Returns the voxel id of the position of an electron. Cuboids carry their
+     * id; the id of a voxel is computed from the position.
+     *
+     * @param electron
+     *            electron
+     * @return voxel id, or -1 if the electron is not in a voxel
+     */
+    private int getVoxelId(Electron electron) {
+        if (!voxels)
+            return -1;
+
+        RegionBase region = electron.getCurrentRegion();
+        int id = CuboidRegion.getVoxelId(region);
+        if (id < 0 && region instanceof VoxelRegion.Phase)
+            id =
+                    ((VoxelRegion) region.mParent).getVoxelId(electron
+                            .getPosition());
+        return id;
+    }
+
+
+
+    /**
+     * Grows the tally arrays to include the specified region index.
+     *
+     * @param index
+     *            region index
+     */
+    private void ensureCapacity(int index) {
+        if (index < events.length)
+            return;
+        int length = Math.max(index + 1, 2 * events.length);
+        events = Arrays.copyOf(events, length);
+        energies = Arrays.copyOf(energies, length);
+    }
+
+
+
+    /**
+     * Grows the voxel tally arrays to include the specified voxel id.
+     *
+     * @param id
+     *            voxel id
+     */
+    private void ensureVoxelCapacity(int id) {
+        if (id < voxelEvents.length)
+            return;
+        int length = Math.max(id + 1, 2 * voxelEvents.length);
+        voxelEvents = Arrays.copyOf(voxelEvents, length);
+        voxelEnergies = Arrays.copyOf(voxelEnergies, length);
+    }
+
+
+
+    /**
+     * Adds energy to the region and voxel of a state.
+     *
+     * @param state
+     *            state of an electron
+     * @param energy
+     *            energy (in J)
+     */
+    private void addEnergy(double[] state, double energy) {
+        int index = (int) state[1];
+        if (index >= 0) {
+            ensureCapacity(index);
+            energies[index] += energy;
+        }
+
+        int id = (int) state[3];
+        if (id >= 0) {
+            ensureVoxelCapacity(id);
+            voxelEnergies[id] += energy;
+        }
+    }
+
+
+
+    /**
+     * Deposits the energy lost by the electron since its last event in the
+     * region of this event, and updates its state.
+     *
+     * @param state
+     *            state of the electron at its last event
+     * @param electron
+     *            electron
+     */
+    private void deposit(double[] state, Electron electron) {
+        addEnergy(state, state[0] - electron.getEnergy());
+
+        state[0] = electron.getEnergy();
+        state[1] = getRegionIndex(electron.getCurrentRegion());
+        state[3] = getVoxelId(electron);
+    }
+
+
+
+    @Override
+    public void actionPerformed(ActionEvent ae) {
+        assert (ae.getSource() == mcss);
+
+        Electron electron = mcss.getElectron();
+        double[] state;
+        int index, id;
+
+        switch (ae.getID()) {
+        case MonteCarloSS.FirstTrajectoryEvent:
+            reset();
+            break;
+        case MonteCarloSS.TrajectoryStartEvent:
+            trajectoryCount++;
+            // Fall through
+        case MonteCarloSS.StartSecondaryEvent:
+            states.push(new double[] { electron.getEnergy(),
+                    getRegionIndex(electron.getCurrentRegion()), 0.0,
+                    getVoxelId(electron) });
+            break;
+        case MonteCarloSS.ScatterEvent:
+            state = states.peek();
+            if (state == null)
+                break;
+            deposit(state, electron);
+
+            index = (int) state[1];
+            if (index >= 0) {
+                ensureCapacity(index);
+                events[index]++;
+            }
+
+            id = (int) state[3];
+            if (id >= 0) {
+                ensureVoxelCapacity(id);
+                voxelEvents[id]++;
+            }
+            break;
+        case MonteCarloSS.NonScatterEvent:
+            state = states.peek();
+            if (state != null)
+                deposit(state, electron);
+            break;
+        case MonteCarloSS.BackscatterEvent:
+            state = states.peek();
+            if (state != null) {
+                deposit(state, electron);
+                state[2] = 1.0; // Escaped with its remaining energy
+            }
+            break;
+        case MonteCarloSS.EndSecondaryEvent:
+        case MonteCarloSS.TrajectoryEndEvent:
+            state = states.poll();
+            if (state == null || state[2] > 0.0)
+                break;
+            deposit(state, electron);
+
+            // Absorbed: the remaining energy is deposited locally
+            addEnergy(state, electron.getEnergy());
+            break;
+        default:
+            break;
+        }
+    }
+
+
+
+    /**
+     * Clears the tallies.
+     */
+    public void reset() {
+        events = new long[0];
+        energies = new double[0];
+        voxelEvents = new long[0];
+        voxelEnergies = new double[0];
+        trajectoryCount = 0;
+        states.clear();
+        lastRegion = null;
+        lastIndex = IndexedRegion.NO_INDEX;
+    }
+
+
+
+    /**
+     * Returns the number of trajectories.
+     *
+     * @return number of trajectories
+     */
+    public int getTrajectoryCount() {
+        return trajectoryCount;
+    }
+
+
+
+    /**
+     * Returns the number of scattering events in a region.
+     *
+     * @param index
+     *            index of the region
+     * @return number of events
+     */
+    public long getEventCount(int index) {
+        if (index < 0)
+            throw new IllegalArgumentException("index < 0");
+        return index < events.length ? events[index] : 0;
+    }
+
+
+
+    /**
+     * Returns the energy deposited in a region.
+     *
+     * @param index
+     *            index of the region
+     * @return deposited energy (in J)
+     */
+    public double getEnergyDeposit(int index) {
+        if (index < 0)
+            throw new IllegalArgumentException("index < 0");
+        return index < energies.length ? energies[index] : 0.0;
+    }
+
+
+
+    /**
+     * Returns the energy deposited in each region, indexed by region index.
+     *
+     * @return deposited energies (in J)
+     */
+    public double[] getEnergyDeposits() {
+        return energies.clone();
+    }
+
+
+
+    /**
+     * Returns the number of scattering events in each region, indexed by
+     * region index.
+     *
+     * @return number of events
+     */
+    public long[] getEventCounts() {
+        return events.clone();
+    }
+
+
+
+    /**
+     * Returns whether the tallies are also kept by voxel.
+     *
+     * @return <code>true</code> if the tallies are kept by voxel
+     */
+    public boolean isVoxelTally() {
+        return voxels;
+    }
+
+
+
+    /**
+     * Returns the energy deposited in each voxel, indexed by voxel id.
+     *
+     * @return deposited energies (in J)
+     */
+    public double[] getVoxelEnergyDeposits() {
+        return voxelEnergies.clone();
+    }
+
+
+
+    /**
+     * Returns the number of scattering events in each voxel, indexed by voxel
+     * id.
+     *
+     * @return number of events
+     */
+    public long[] getVoxelEventCounts() {
+        return voxelEvents.clone();
+    }
+
+}
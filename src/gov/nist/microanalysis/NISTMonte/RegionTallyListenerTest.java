@@ -0,0 +1,114 @@
+package gov.nist.microanalysis.NISTMonte;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import gov.nist.microanalysis.EPQLibrary.Element;
+import gov.nist.microanalysis.EPQLibrary.Material;
+import gov.nist.microanalysis.EPQLibrary.MaterialFactory;
+import gov.nist.microanalysis.EPQLibrary.ToSI;
+import gov.nist.microanalysis.NISTMonte.MonteCarloSS.Shape;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class RegionTallyListenerTest {
+
+    private RegionTallyListener listener;
+
+
+
+    @Before
+    public void setUp() throws Exception {
+        // Setup
+        MonteCarloSS mcss = new MonteCarloSS();
+        mcss.setBeamEnergy(ToSI.keV(20.0));
+        mcss.setElectronGun(new GaussianBeam(10e-9));
+
+        Material mat = MaterialFactory.createPureElement(Element.Si);
+        Shape shape =
+                MultiPlaneShape.createSubstrate(new double[] { 0, 0, -1 },
+                        new double[] { 0, 0, 0 });
+        new IndexedRegion(mcss.getChamber(), new BasicMaterialModel(mat),
+                shape, 2);
+
+        listener = new RegionTallyListener(mcss);
+        mcss.addActionListener(listener);
+
+        // Run
+        mcss.runMultipleTrajectories(10);
+    }
+
+
+
+    @Test
+    public void testGetTrajectoryCount() {
+        assertEquals(10, listener.getTrajectoryCount());
+    }
+
+
+
+    @Test
+    public void testGetEventCount() {
+        assertTrue(listener.getEventCount(2) > 0);
+        assertEquals(0, listener.getEventCount(1));
+        assertEquals(0, listener.getEventCount(100));
+        assertEquals(3, listener.getEventCounts().length);
+    }
+
+
+
+    @Test
+    public void testGetEnergyDeposit() {
+        double deposit = listener.getEnergyDeposit(2);
+        assertTrue(deposit > 0.0);
+        assertTrue(deposit <= 10 * ToSI.keV(20.0) * (1.0 + 1e-9));
+        assertEquals(0.0, listener.getEnergyDeposit(0), 0.0);
+    }
+
+
+
+    @Test
+    public void testVoxelTally() throws Exception {
+        assertFalse(listener.isVoxelTally());
+        assertEquals(0, listener.getVoxelEventCounts().length);
+
+        MonteCarloSS mcss = new MonteCarloSS();
+        mcss.setBeamEnergy(ToSI.keV(20.0));
+        mcss.setElectronGun(new GaussianBeam(10e-9));
+
+        VoxelRegion region =
+                new VoxelRegion(mcss.getChamber(), -2e-6, 2e-6, 2, -2e-6,
+                        2e-6, 2, -4e-6, 0.0, 2);
+        int label =
+                region.addMaterial(MaterialFactory
+                        .createPureElement(Element.Si));
+        for (int i = 0; i < 2; i++)
+            for (int j = 0; j < 2; j++)
+                for (int k = 0; k < 2; k++)
+                    region.setLabel(i, j, k, label);
+
+        RegionTallyListener voxelListener = new RegionTallyListener(mcss, true);
+        mcss.addActionListener(voxelListener);
+        mcss.runMultipleTrajectories(10);
+
+        // Beam at the corner of the four voxels in z = 0 (k = 1)
+        long[] events = voxelListener.getVoxelEventCounts();
+        double[] deposits = voxelListener.getVoxelEnergyDeposits();
+        assertTrue(events.length <= 8);
+        assertEquals(events.length, deposits.length);
+
+        long eventSum = 0;
+        double depositSum = 0.0;
+        for (int n = 0; n < events.length; n++) {
+            eventSum += events[n];
+            depositSum += deposits[n];
+        }
+        assertTrue(eventSum > 0);
+        assertTrue(eventSum <= voxelListener.getEventCount(label + 1));
+        assertTrue(depositSum > 0.0);
+        assertTrue(depositSum <= voxelListener.getEnergyDeposit(label + 1)
+                * (1.0 + 1e-9));
+    }
+
+}
@@ -0,0 +1,161 @@
+package gov.nist.microanalysis.NISTMonte;
+
+import java.util.Arrays;
+
+/**
+ * Tally of a fixed number of quantities over the showers of a simulation. The
+ * values of the current shower are summed in a primitive array; at the end of
+ * each shower, the shower totals are added to the overall sums and sums of
+ * squares, from which the standard error of the mean per shower is computed.
+ * Only the quantities touched during a shower are flushed.
+ *
+ * @author ppinard
+ */
+public class ShowerTally {
+
+    /** Values of the current shower. */
+    private final double[] current;
+
+    /** Indices of the quantities touched during the current shower. */
+    private final int[] touched;
+
+    /** Number of quantities touched during the current shower. */
+    private int touchedCount;
+
+    /** Whether each quantity was touched during the current shower. */
+    private final boolean[] isTouched;
+
+    /** Sums of the shower totals. */
+    private final double[] sums;
+
+    /** Sums of the squares of the shower totals. */
+    private final double[] sumSquares;
+
+    /** Number of completed showers. */
+    private long showerCount;
+
+
+
+    /**
+     * Creates a new <code>ShowerTally</code>.
+     *
+     * @param size
+     *            number of quantities
+     */
+    public ShowerTally(int size) {
+        if (size < 0)
+            throw new IllegalArgumentException("size < 0");
+        current = new double[size];
+        touched = new int[size];
+        isTouched = new boolean[size];
+        sums = new double[size];
+        sumSquares = new double[size];
+    }
+
+
+
+    /**
+     * Adds a value to a quantity of the current shower.
+     *
+     * @param index
+     *            index of the quantity
+     * @param value
+     *            value
+     */
+    public void add(int index, double value) {
+        if (!isTouched[index]) {
+            isTouched[index] = true;
+            touched[touchedCount++] = index;
+        }
+        current[index] += value;
+    }
+
+
+
+    /**
+     * Ends the current shower, adding its totals to the sums.
+     */
+    public void endShower() {
+        int index;
+        double value;
+        for (int i = 0; i < touchedCount; i++) {
+            index = touched[i];
+            value = current[index];
+            sums[index] += value;
+            sumSquares[index] += value * value;
+            current[index] = 0.0;
+            isTouched[index] = false;
+        }
+        touchedCount = 0;
+        showerCount++;
+    }
+
+
+
+    /**
+     * Clears the tally.
+     */
+    public void clear() {
+        Arrays.fill(current, 0.0);
+        Arrays.fill(isTouched, false);
+        Arrays.fill(sums, 0.0);
+        Arrays.fill(sumSquares, 0.0);
+        touchedCount = 0;
+        showerCount = 0;
+    }
+
+
+
+    /**
+     * Returns the number of quantities.
+     *
+     * @return number of quantities
+     */
+    public int size() {
+        return sums.length;
+    }
+
+
+
+    /**
+     * Returns the number of completed showers.
+     *
+     * @return number of showers
+     */
+    public long getShowerCount() {
+        return showerCount;
+    }
+
+
+
+    /**
+     * Returns the sum of a quantity, including the current shower.
+     *
+     * @param index
+     *            index of the quantity
+     * @return sum
+     */
+    public double getSum(int index) {
+        return sums[index] + current[index];
+    }
+
+
+
+    /**
+     * Returns the standard error of the mean per shower of a quantity, over
+     * the completed showers.
+     *
+     * @param index
+     *            index of the quantity
+     * @return standard error, 0 for less than two showers
+     */
+    public double getStandardError(int index) {
+        if (showerCount < 2)
+            return 0.0;
+        double n = showerCount;
+        double mean = sums[index] / n;
+        double variance = (sumSquares[index] / n - mean * mean) * n / (n - 1);
+        return Math.sqrt(Math.max(0.0, variance) / n);
+    }
+
+}
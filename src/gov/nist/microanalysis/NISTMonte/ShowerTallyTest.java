@@ -0,0 +1,67 @@
+package gov.nist.microanalysis.NISTMonte;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ShowerTallyTest {
+
+    private ShowerTally tally;
+
+
+
+    @Before
+    public void setUp() throws Exception {
+        tally = new ShowerTally(2);
+
+        // Shower totals of quantity 0: 1, 3, 5; quantity 1: 0, 0, 2
+        tally.add(0, 0.5);
+        tally.add(0, 0.5);
+        tally.endShower();
+
+        tally.add(0, 3.0);
+        tally.endShower();
+
+        tally.add(0, 5.0);
+        tally.add(1, 2.0);
+        tally.endShower();
+    }
+
+
+
+    @Test
+    public void testGetSum() {
+        assertEquals(9.0, tally.getSum(0), 1e-12);
+        assertEquals(2.0, tally.getSum(1), 1e-12);
+        assertEquals(3, tally.getShowerCount());
+
+        // Current shower is included
+        tally.add(1, 1.0);
+        assertEquals(3.0, tally.getSum(1), 1e-12);
+        assertEquals(3, tally.getShowerCount());
+    }
+
+
+
+    @Test
+    public void testGetStandardError() {
+        // Sample variance of (1, 3, 5) = 4, standard error = sqrt(4 / 3)
+        assertEquals(Math.sqrt(4.0 / 3.0), tally.getStandardError(0), 1e-12);
+        // Sample variance of (0, 0, 2) = 4 / 3, standard error = sqrt(4 / 9)
+        assertEquals(2.0 / 3.0, tally.getStandardError(1), 1e-12);
+    }
+
+
+
+    @Test
+    public void testClear() {
+        tally.add(0, 1.0);
+        tally.clear();
+
+        assertEquals(0.0, tally.getSum(0), 0.0);
+        assertEquals(0, tally.getShowerCount());
+        assertEquals(0.0, tally.getStandardError(0), 0.0);
+    }
+
+}
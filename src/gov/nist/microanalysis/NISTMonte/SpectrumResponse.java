@@ -0,0 +1,284 @@
+package gov.nist.microanalysis.NISTMonte;
+
+import gov.nist.microanalysis.EPQLibrary.Element;
+import gov.nist.microanalysis.EPQLibrary.MassAbsorptionCoefficient;
+import gov.nist.microanalysis.EPQLibrary.Material;
+import gov.nist.microanalysis.EPQLibrary.MaterialFactory;
+import gov.nist.microanalysis.EPQLibrary.ToSI;
+
+/**
+ * Response of an energy dispersive detector, applied once to an ideal
+ * accumulated spectrum (see {@link SpectrumXRayAccumulator}) instead of
+ * simulating the response of each photon. The response consists of, in order:
+ * <ul>
+ * <li>the absorption of an optional window;</li>
+ * <li>the Si K&alpha; escape peaks of a silicon detector, as a fraction of
+ * the intensity above the Si K edge decreasing with energy (see
+ * {@link #getEscapeFraction(double)});</li>
+ * <li>a Gaussian energy resolution, whose full width at half maximum (in eV)
+ * varies with energy as
+ * <code>sqrt(2.5 (E - 5898.7) + FWHM<sub>Mn</sub><sup>2</sup>)</code>
+ * (Fiori and Newbury).</li>
+ * </ul>
+ * As the width of the Gaussian varies with energy, the broadening is not a
+ * true convolution and is computed as a band-limited sum: the intensity of
+ * each channel is spread over the channels within a few standard deviations.
+ *
+ * @author ppinard
+ */
+public class SpectrumResponse {
+
+    /** Energy of Mn K&alpha; (in eV). */
+    private static final double MN_KA = 5898.7;
+
+    /** Energy of Si K&alpha; (in eV). */
+    private static final double SI_KA = 1740.0;
+
+    /** Energy of the Si K edge (in eV). */
+    private static final double SI_K_EDGE = 1838.9;
+
+    /** Silicon of the detector crystal. */
+    private static final Material SILICON = MaterialFactory
+            .createPureElement(Element.Si);
+
+    /** Number of standard deviations covered by the Gaussian band. */
+    private static final double BAND_WIDTH = 5.0;
+
+    /** Full width at half maximum at Mn K&alpha; (in eV). */
+    private final double fwhmMnKa;
+
+    /** Fraction of the intensity just above the Si K edge in escape peaks. */
+    private double escapeFraction = 0.0;
+
+    /** Window material, <code>null</code> if none. */
+    private Material windowMaterial = null;
+
+    /** Window thickness (in meters). */
+    private double windowThickness = 0.0;
+
+    /** Mass absorption coefficient of the window and of the crystal. */
+    private MassAbsorptionCoefficient mac =
+            MassAbsorptionCoefficient.Chantler2005;
+
+
+
+    /**
+     * Creates a new <code>SpectrumResponse</code> without window nor escape
+     * peaks.
+     *
+     * @param fwhmMnKa
+     *            full width at half maximum at Mn K&alpha; (in eV)
+     */
+    public SpectrumResponse(double fwhmMnKa) {
+        if (!(fwhmMnKa > 0.0))
+            throw new IllegalArgumentException("FWHM <= 0.0: " + fwhmMnKa);
+        this.fwhmMnKa = fwhmMnKa;
+    }
+
+
+
+    /**
+     * Sets the fraction of the intensity just above the Si K edge transferred
+     * to the escape peaks, 1740 eV below. The fraction decreases at higher
+     * energies (see {@link #getEscapeFraction(double)}).
+     *
+     * @param escapeFraction
+     *            fraction between 0 and 1
+     */
+    public void setEscapeFraction(double escapeFraction) {
+        if (escapeFraction < 0.0 || escapeFraction > 1.0)
+            throw new IllegalArgumentException(
+                    "Escape fraction must be between [0, 1]: "
+                            + escapeFraction);
+        this.escapeFraction = escapeFraction;
+    }
+
+
+
+    /**
+     * Returns the fraction of the intensity just above the Si K edge
+     * transferred to the escape peaks.
+     *
+     * @return fraction between 0 and 1
+     */
+    public double getEscapeFraction() {
+        return escapeFraction;
+    }
+
+
+
+    /**
+     * Returns the fraction of the intensity at an energy transferred to the
+     * escape peaks. Above the Si K edge, the fraction set by
+     * {@link #setEscapeFraction(double)} is scaled by the probability that a
+     * Si K&alpha; x-ray escapes through the front of the crystal, relative to
+     * this probability just above the edge. For a photon entering at normal
+     * incidence, this probability is proportional to
+     * <code>1 - (&mu;<sub>K&alpha;</sub> / &mu;<sub>E</sub>)
+     * ln(1 + &mu;<sub>E</sub> / &mu;<sub>K&alpha;</sub>)</code> (Reed and
+     * Ware), so the escape peaks fade as the photons are absorbed deeper.
+     *
+     * @param energy
+     *            energy (in eV)
+     * @return fraction between 0 and 1
+     */
+    public double getEscapeFraction(double energy) {
+        if (escapeFraction == 0.0 || energy <= SI_K_EDGE)
+            return 0.0;
+        return escapeFraction * getEscapeProbability(energy)
+                / getEscapeProbability(SI_K_EDGE + 1.0);
+    }
+
+
+
+    /**
+     * Returns the probability, up to a constant factor, that a Si K&alpha;
+     * x-ray produced by the absorption of a photon escapes the crystal.
+     *
+     * @param energy
+     *            energy of the absorbed photon (in eV)
+     * @return relative probability
+     */
+    private double getEscapeProbability(double energy) {
+        double ratio =
+                mac.compute(SILICON, ToSI.eV(SI_KA))
+                        / mac.compute(SILICON, ToSI.eV(energy));
+        return 1.0 - ratio * Math.log(1.0 + 1.0 / ratio);
+    }
+
+
+
+    /**
+     * Sets the window of the detector.
+     *
+     * @param material
+     *            window material (<code>null</code> for no window)
+     * @param thickness
+     *            window thickness (in meters)
+     */
+    public void setWindow(Material material, double thickness) {
+        if (thickness < 0.0)
+            throw new IllegalArgumentException("Thickness < 0.0: "
+                    + thickness);
+        windowMaterial = material;
+        windowThickness = material == null ? 0.0 : thickness;
+    }
+
+
+
+    /**
+     * Sets the mass absorption coefficient used for the window.
+     *
+     * @param mac
+     *            mass absorption coefficient
+     */
+    public void setMassAbsorptionCoefficient(MassAbsorptionCoefficient mac) {
+        if (mac == null)
+            throw new NullPointerException("mac == null");
+        this.mac = mac;
+    }
+
+
+
+    /**
+     * Returns the full width at half maximum at an energy.
+     *
+     * @param energy
+     *            energy (in eV)
+     * @return full width at half maximum (in eV)
+     */
+    public double getFWHM(double energy) {
+        double fwhm2 = 2.5 * (energy - MN_KA) + fwhmMnKa * fwhmMnKa;
+        return Math.sqrt(Math.max(fwhm2, 1e-6));
+    }
+
+
+
+    /**
+     * Returns the transmission of the window at an energy.
+     *
+     * @param energy
+     *            energy (in eV)
+     * @return transmission between 0 and 1
+     */
+    public double getWindowTransmission(double energy) {
+        if (windowMaterial == null || windowThickness == 0.0)
+            return 1.0;
+        double mu =
+                mac.compute(windowMaterial, ToSI.eV(energy))
+                        * windowMaterial.getDensity();
+        return Math.exp(-mu * windowThickness);
+    }
+
+
+
+    /**
+     * Applies the response to a spectrum. The first channel starts at 0 eV.
+     *
+     * @param counts
+     *            ideal intensities by channel
+     * @param channelWidth
+     *            width of a channel (in eV)
+     * @return detected intensities by channel
+     */
+    public double[] apply(double[] counts, double channelWidth) {
+        if (counts == null)
+            throw new NullPointerException("counts == null");
+        if (!(channelWidth > 0.0))
+            throw new IllegalArgumentException("Channel width <= 0.0: "
+                    + channelWidth);
+
+        int n = counts.length;
+
+        // Window absorption and escape peaks
+        double[] ideal = new double[n];
+        int escapeShift = (int) Math.round(SI_KA / channelWidth);
+        double energy, value, fraction;
+        for (int i = 0; i < n; i++) {
+            if (counts[i] == 0.0)
+                continue;
+
+            energy = (i + 0.5) * channelWidth;
+            value = counts[i] * getWindowTransmission(energy);
+
+            fraction = getEscapeFraction(energy);
+            if (fraction > 0.0 && i - escapeShift >= 0) {
+                ideal[i - escapeShift] += value * fraction;
+                value *= 1.0 - fraction;
+            }
+
+            ideal[i] += value;
+        }
+
+        // Band-limited Gaussian broadening
+        double[] detected = new double[n];
+        double[] weights = new double[n];
+        double sigma, sigma2, norm;
+        int band, start, end;
+        for (int i = 0; i < n; i++) {
+            if (ideal[i] == 0.0)
+                continue;
+
+            energy = (i + 0.5) * channelWidth;
+            sigma = getFWHM(energy) / (2.0 * Math.sqrt(2.0 * Math.log(2.0)))
+                    / channelWidth;
+            sigma2 = sigma * sigma;
+            band = (int) Math.ceil(BAND_WIDTH * sigma);
+            start = Math.max(0, i - band);
+            end = Math.min(n - 1, i + band);
+
+            // Normalized over the band, so that the intensity is conserved
+            norm = 0.0;
+            for (int j = start; j <= end; j++) {
+                weights[j] = Math.exp(-0.5 * (j - i) * (j - i) / sigma2);
+                norm += weights[j];
+            }
+
+            for (int j = start; j <= end; j++)
+                detected[j] += ideal[i] * weights[j] / norm;
+        }
+
+        return detected;
+    }
+
+}
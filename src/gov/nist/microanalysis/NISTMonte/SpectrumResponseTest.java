@@ -0,0 +1,108 @@
+package gov.nist.microanalysis.NISTMonte;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import gov.nist.microanalysis.EPQLibrary.Element;
+import gov.nist.microanalysis.EPQLibrary.MaterialFactory;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class SpectrumResponseTest {
+
+    private static final double CHANNEL_WIDTH = 5.0;
+
+    private SpectrumResponse response;
+
+    private double[] counts;
+
+
+
+    @Before
+    public void setUp() throws Exception {
+        response = new SpectrumResponse(130.0);
+
+        // Single line at Mn Ka
+        counts = new double[2000];
+        counts[1179] = 100.0; // 5897.5 eV
+    }
+
+
+
+    private static double sum(double[] values) {
+        double sum = 0.0;
+        for (double value : values)
+            sum += value;
+        return sum;
+    }
+
+
+
+    @Test
+    public void testGetFWHM() {
+        assertEquals(130.0, response.getFWHM(5898.7), 1e-6);
+        assertTrue(response.getFWHM(1740.0) < 130.0);
+        assertTrue(response.getFWHM(8040.0) > 130.0);
+    }
+
+
+
+    @Test
+    public void testApply() {
+        double[] detected = response.apply(counts, CHANNEL_WIDTH);
+
+        assertEquals(100.0, sum(detected), 1e-9);
+
+        // Width at half maximum, within a channel
+        double max = detected[1179];
+        int halfWidth = 0;
+        while (detected[1179 + halfWidth + 1] > max / 2.0)
+            halfWidth++;
+        assertEquals(130.0, (2 * halfWidth + 1) * CHANNEL_WIDTH,
+                2 * CHANNEL_WIDTH);
+    }
+
+
+
+    @Test
+    public void testApplyEscape() {
+        response.setEscapeFraction(0.01);
+        double[] detected = response.apply(counts, CHANNEL_WIDTH);
+
+        assertEquals(100.0, sum(detected), 1e-9);
+        // Escape peak at 5897.5 - 1740 eV
+        assertTrue(detected[831] > 0.0);
+        assertTrue(detected[831] > detected[700]);
+    }
+
+
+
+    @Test
+    public void testGetEscapeFraction() {
+        assertEquals(0.0, response.getEscapeFraction(5897.5), 0.0);
+
+        response.setEscapeFraction(0.01);
+        assertEquals(0.0, response.getEscapeFraction(1700.0), 0.0);
+        assertEquals(0.01, response.getEscapeFraction(1839.9), 1e-9);
+
+        // Fewer escapes as the photons are absorbed deeper
+        double fraction = response.getEscapeFraction(5897.5);
+        assertTrue(fraction > 0.0);
+        assertTrue(fraction < 0.01);
+        assertTrue(response.getEscapeFraction(8040.0) < fraction);
+    }
+
+
+
+    @Test
+    public void testApplyWindow() {
+        response.setWindow(MaterialFactory.createPureElement(Element.Be),
+                8e-6);
+        double[] detected = response.apply(counts, CHANNEL_WIDTH);
+
+        double transmission = response.getWindowTransmission(5897.5);
+        assertTrue(transmission < 1.0);
+        assertEquals(100.0 * transmission, sum(detected), 1e-9);
+    }
+
+}
@@ -0,0 +1,214 @@
+package gov.nist.microanalysis.NISTMonte;
+
+import gov.nist.microanalysis.EPQLibrary.FromSI;
+import gov.nist.microanalysis.NISTMonte.Gen3.BaseXRayGeneration3;
+import gov.nist.microanalysis.NISTMonte.Gen3.BaseXRayGeneration3.XRay;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.Arrays;
+
+/**
+ * Lightweight accumulator of x-ray spectra, replacing perfect
+ * {@link gov.nist.microanalysis.EPQLibrary.Detector.EDSDetector}s. Each
+ * registered source (x-ray transport or generation) is assigned a component
+ * and the intensity of every photon is binned once, by direct channel-index
+ * arithmetic, in the primitive array of its component. The total spectrum is
+ * the sum of the components.
+ * <p/>
+ * The first channel starts at 0 eV, as for a perfect EDS detector. Photons
+ * outside the channels are discarded.
+ *
+ * @author ppinard
+ */
+public class SpectrumXRayAccumulator implements ActionListener {
+
+    /** Width of a channel (in eV). */
+    private final double channelWidth;
+
+    /** Intensities by component and channel. */
+    private final double[][] components;
+
+    /** Registered sources. */
+    private BaseXRayGeneration3[] sources = new BaseXRayGeneration3[0];
+
+    /** Component of each registered source. */
+    private int[] sourceComponents = new int[0];
+
+
+
+    /**
+     * Creates a new <code>SpectrumXRayAccumulator</code>.
+     *
+     * @param componentCount
+     *            number of components
+     * @param channels
+     *            number of channels
+     * @param channelWidth
+     *            width of a channel (in eV)
+     */
+    public SpectrumXRayAccumulator(int componentCount, int channels,
+            double channelWidth) {
+        if (componentCount <= 0)
+            throw new IllegalArgumentException("Number of components <= 0: "
+                    + componentCount);
+        if (channels <= 0)
+            throw new IllegalArgumentException("Number of channels <= 0: "
+                    + channels);
+        if (!(channelWidth > 0.0))
+            throw new IllegalArgumentException("Channel width <= 0.0: "
+                    + channelWidth);
+
+        this.channelWidth = channelWidth;
+        components = new double[componentCount][channels];
+    }
+
+
+
+    /**
+     * Registers the accumulator to a source, whose photons are binned in the
+     * specified component.
+     *
+     * @param source
+     *            x-ray transport or generation
+     * @param component
+     *            index of the component
+     */
+    public void addSource(BaseXRayGeneration3 source, int component) {
+        if (source == null)
+            throw new NullPointerException("source == null");
+        if (component < 0 || component >= components.length)
+            throw new IllegalArgumentException("Invalid component: "
+                    + component);
+
+        int n = sources.length;
+        sources = Arrays.copyOf(sources, n + 1);
+        sourceComponents = Arrays.copyOf(sourceComponents, n + 1);
+        sources[n] = source;
+        sourceComponents[n] = component;
+
+        source.addXRayListener(this);
+    }
+
+
+
+    /**
+     * Returns the component of a source.
+     *
+     * @param source
+     *            source of an event
+     * @return index of the component, or -1 if the source is not registered
+     */
+    private int findComponent(Object source) {
+        // Few sources: an identity search is faster than a hash
+        for (int i = 0; i < sources.length; i++) {
+            if (sources[i] == source)
+                return sourceComponents[i];
+        }
+        return -1;
+    }
+
+
+
+    @Override
+    public void actionPerformed(ActionEvent ae) {
+        if (ae.getID() != BaseXRayGeneration3.XRayGeneration)
+            return;
+
+        int component = findComponent(ae.getSource());
+        if (component < 0)
+            return;
+
+        double[] channels = components[component];
+        double factor = 1.0 / channelWidth;
+        BaseXRayGeneration3 source = (BaseXRayGeneration3) ae.getSource();
+        XRay xray;
+        double position;
+        int channel;
+        for (int i = source.getEventCount() - 1; i >= 0; i--) {
+            xray = source.getXRay(i);
+
+            position = FromSI.eV(xray.getEnergy()) * factor;
+            if (!(position >= 0.0))
+                continue;
+            channel = (int) position;
+            if (channel >= channels.length)
+                continue;
+
+            channels[channel] += xray.getIntensity();
+        }
+    }
+
+
+
+    /**
+     * Clears the accumulated intensities.
+     */
+    public void clear() {
+        for (double[] channels : components)
+            Arrays.fill(channels, 0.0);
+    }
+
+
+
+    /**
+     * Returns the number of channels.
+     *
+     * @return number of channels
+     */
+    public int getChannelCount() {
+        return components[0].length;
+    }
+
+
+
+    /**
+     * Returns the width of a channel.
+     *
+     * @return width of a channel (in eV)
+     */
+    public double getChannelWidth() {
+        return channelWidth;
+    }
+
+
+
+    /**
+     * Returns the number of components.
+     *
+     * @return number of components
+     */
+    public int getComponentCount() {
+        return components.length;
+    }
+
+
+
+    /**
+     * Returns a copy of the intensities of a component.
+     *
+     * @param component
+     *            index of the component
+     * @return intensities by channel
+     */
+    public double[] getComponent(int component) {
+        return components[component].clone();
+    }
+
+
+
+    /**
+     * Returns the total intensities, summed over the components.
+     *
+     * @return intensities by channel
+     */
+    public double[] getTotal() {
+        double[] total = new double[getChannelCount()];
+        for (double[] channels : components) {
+            for (int i = 0; i < total.length; i++)
+                total[i] += channels[i];
+        }
+        return total;
+    }
+
+}
@@ -0,0 +1,83 @@
+package gov.nist.microanalysis.NISTMonte;
+
+import static org.junit.Assert.assertEquals;
+import gov.nist.microanalysis.EPQLibrary.Element;
+import gov.nist.microanalysis.EPQLibrary.MaterialFactory;
+import gov.nist.microanalysis.EPQLibrary.ToSI;
+import gov.nist.microanalysis.NISTMonte.Gen3.BremsstrahlungXRayGeneration3;
+import gov.nist.microanalysis.NISTMonte.Gen3.CharacteristicXRayGeneration3;
+import gov.nist.microanalysis.NISTMonte.Gen3.XRayTransport3;
+import gov.nist.microanalysis.Utility.Math2;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class SpectrumXRayAccumulatorTest {
+
+    private MonteCarloSS mcss;
+
+    private SpectrumXRayAccumulator accumulator;
+
+
+
+    @Before
+    public void setUp() throws Exception {
+        mcss = new MonteCarloSS();
+        mcss.setBeamEnergy(ToSI.keV(5.0));
+        new IndexedRegion(mcss.getChamber(), new BasicMaterialModel(
+                MaterialFactory.createPureElement(Element.Si)),
+                MultiPlaneShape.createSubstrate(Math2.Z_AXIS, Math2.ORIGIN_3D),
+                1);
+
+        double angle = Math.toRadians(40.0);
+        double[] position =
+                Math2.multiply(0.999 * MonteCarloSS.ChamberRadius,
+                        new double[] { Math.cos(angle), 0.0, Math.sin(angle) });
+
+        CharacteristicXRayGeneration3 characGen =
+                CharacteristicXRayGeneration3.create(mcss);
+        BremsstrahlungXRayGeneration3 bremssGen =
+                BremsstrahlungXRayGeneration3.create(mcss);
+
+        accumulator = new SpectrumXRayAccumulator(2, 500, 10.0);
+        accumulator.addSource(
+                XRayTransport3.create(mcss, position, characGen), 0);
+        accumulator.addSource(
+                XRayTransport3.create(mcss, position, bremssGen), 1);
+    }
+
+
+
+    @Test
+    public void testActionPerformed() throws Exception {
+        mcss.runMultipleTrajectories(50);
+
+        double[] charac = accumulator.getComponent(0);
+        double[] bremss = accumulator.getComponent(1);
+        double[] total = accumulator.getTotal();
+
+        assertEquals(500, total.length);
+        for (int i = 0; i < total.length; i++)
+            assertEquals(charac[i] + bremss[i], total[i], 1e-12);
+
+        // Si Ka (1.74 keV) is the most intense line
+        int max = 0;
+        for (int i = 1; i < charac.length; i++) {
+            if (charac[i] > charac[max])
+                max = i;
+        }
+        assertEquals(173, max);
+    }
+
+
+
+    @Test
+    public void testClear() throws Exception {
+        mcss.runMultipleTrajectories(10);
+        accumulator.clear();
+
+        for (double value : accumulator.getTotal())
+            assertEquals(0.0, value, 0.0);
+    }
+
+}
@@ -0,0 +1,409 @@
+package gov.nist.microanalysis.NISTMonte;
+
+import gov.nist.microanalysis.NISTMonte.MonteCarloSS.Region;
+import gov.nist.microanalysis.NISTMonte.MonteCarloSS.RegionBase;
+import gov.nist.microanalysis.NISTMonte.MonteCarloSS.Shape;
+import gov.nist.microanalysis.Utility.Math2;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Container of parallel planar layers (e.g. thin films on a substrate). The
+ * layers are stacked along an axis, each one starting where the previous one
+ * ends. Instead of testing the shape of every layer, the layer containing a
+ * position is found by a binary search on its depth along the axis, and the
+ * distance to the next boundary is computed in closed form from the depths of
+ * the two planes of the current layer.
+ * <p/>
+ * The shape of the container bounds the layers in the other directions (e.g.
+ * the sample surface for vertical layers). The space of the container outside
+ * the stack of layers is filled with the material of the container.
+ *
+ * @author ppinard
+ */
+public class StratifiedRegion extends Region implements
+        CopyableRegion {
+
+    /** Small displacement to find the region over a boundary. */
+    private static final double SMALL_DISP = 1.0e-15;
+
+    /** Layer of a stratified region. */
+    static class Layer extends IndexedRegion {
+
+        /** Position of the layer in the stack. */
+        public final int position;
+
+
+
+        public Layer(StratifiedRegion parent, IMaterialScatterModel msm,
+                Shape shape, int index, int position) {
+            super(parent, msm, shape, index);
+            this.position = position;
+        }
+
+
+
+        @Override
+        public RegionBase findEndOfStep(double[] pos0, double[] pos1) {
+            return ((StratifiedRegion) mParent).findEndOfStep(position, pos0,
+                    pos1);
+        }
+
+    }
+
+    /** Unit vector of the axis along which the depth increases. */
+    private double[] axis;
+
+    /** Origin of the axis. */
+    private double[] origin;
+
+    /** Outward normal of the sample surface, <code>null</code> if unknown. */
+    private double[] surfaceNormal = null;
+
+    /** Depths of the boundaries, the top of each layer and the bottom. */
+    private double[] depths;
+
+    /** Layers, from top to bottom. */
+    private final List<Layer> layers = new ArrayList<>();
+
+
+
+    /**
+     * Creates a new <code>StratifiedRegion</code>, initially without layer.
+     *
+     * @param parent
+     *            parent region
+     * @param msm
+     *            scatter model of the container outside the layers
+     * @param shape
+     *            shape of the container
+     * @param axis
+     *            axis along which the depth increases
+     * @param origin
+     *            origin of the axis
+     * @param start
+     *            depth of the top of the first layer
+     */
+    public StratifiedRegion(Region parent, IMaterialScatterModel msm,
+            Shape shape, double[] axis, double[] origin, double start) {
+        super(parent, msm, shape);
+
+        if (axis == null)
+            throw new NullPointerException("axis == null");
+        if (origin == null)
+            throw new NullPointerException("origin == null");
+        this.axis = Math2.normalize(axis);
+        this.origin = origin.clone();
+        this.depths = new double[] { start };
+    }
+
+
+
+    /**
+     * Adds a layer below the last one.
+     *
+     * @param msm
+     *            scatter model of the layer
+     * @param shape
+     *            shape of the layer, used by the other regions and listeners
+     *            (e.g. a film of the same thickness)
+     * @param thickness
+     *            thickness of the layer
+     * @param index
+     *            index of the layer
+     * @return region of the layer
+     */
+    public IndexedRegion addLayer(IMaterialScatterModel msm, Shape shape,
+            double thickness, int index) {
+        if (!(thickness > 0.0))
+            throw new IllegalArgumentException("thickness <= 0");
+
+        Layer layer = new Layer(this, msm, shape, index, layers.size());
+        layers.add(layer);
+
+        double[] newDepths = Arrays.copyOf(depths, depths.length + 1);
+        newDepths[depths.length] = depths[depths.length - 1] + thickness;
+        depths = newDepths;
+
+        return layer;
+    }
+
+
+
+    /**
+     * Returns the unit vector of the axis along which the depth increases.
+     *
+     * @return axis
+     */
+    public double[] getAxis() {
+        return axis.clone();
+    }
+
+
+
+    /**
+     * Sets the outward normal of the surface of the sample. It is rotated with
+     * the region.
+     *
+     * @param normal
+     *            outward normal of the surface (<code>null</code> if unknown)
+     */
+    public void setSurfaceNormal(double[] normal) {
+        surfaceNormal = normal == null ? null : Math2.normalize(normal);
+    }
+
+
+
+    /**
+     * Returns the outward normal of the surface of the sample.
+     *
+     * @return outward normal, <code>null</code> if unknown
+     */
+    public double[] getSurfaceNormal() {
+        return surfaceNormal == null ? null : surfaceNormal.clone();
+    }
+
+
+
+    /**
+     * Returns whether the layers are parallel to the surface of the sample,
+     * the depth increasing along the inward normal of the surface.
+     *
+     * @return <code>true</code> if the axis is the inward normal of the
+     *         surface, <code>false</code> otherwise or if the surface is
+     *         unknown
+     */
+    public boolean isAxisSurfaceNormal() {
+        if (surfaceNormal == null)
+            return false;
+        return Math2.dot(axis, surfaceNormal) < -1.0 + 1e-9;
+    }
+
+
+
+    /**
+     * Returns the origin of the axis.
+     *
+     * @return origin
+     */
+    public double[] getOrigin() {
+        return origin.clone();
+    }
+
+
+
+    /**
+     * Returns the depths of the boundaries of the layers: the top of each
+     * layer followed by the bottom of the last one.
+     *
+     * @return depths
+     */
+    public double[] getDepths() {
+        return depths.clone();
+    }
+
+
+
+    /**
+     * Returns the number of layers.
+     *
+     * @return number of layers
+     */
+    public int getLayerCount() {
+        return layers.size();
+    }
+
+
+
+    /**
+     * Returns the region of a layer.
+     *
+     * @param position
+     *            position of the layer in the stack, from the top
+     * @return region of the layer
+     */
+    public IndexedRegion getLayer(int position) {
+        return layers.get(position);
+    }
+
+
+
+    @Override
+    public RegionBase copy(Region parent,
+            Map<IMaterialScatterModel, IMaterialScatterModel> models) {
+        StratifiedRegion copy =
+                new StratifiedRegion(parent, RegionCopier.substitute(
+                        mScatterModel, models), mShape, axis, origin,
+                        depths[0]);
+
+        for (Layer layer : layers)
+            copy.layers.add(new Layer(copy, RegionCopier.substitute(
+                    layer.getScatterModel(), models), layer.getShape(),
+                    layer.getIndex(), layer.position));
+
+        copy.axis = axis.clone();
+        copy.depths = depths.clone();
+        copy.surfaceNormal =
+                surfaceNormal == null ? null : surfaceNormal.clone();
+
+        return copy;
+    }
+
+
+
+    /**
+     * Returns the depth of a position along the axis.
+     *
+     * @param pos
+     *            position
+     * @return depth
+     */
+    private double getDepth(double[] pos) {
+        return (pos[0] - origin[0]) * axis[0] + (pos[1] - origin[1]) * axis[1]
+                + (pos[2] - origin[2]) * axis[2];
+    }
+
+
+
+    /**
+     * Returns the position in the stack of a depth: -1 above the first layer,
+     * the number of layers below the last one. A depth on a boundary belongs
+     * to the layer below it.
+     *
+     * @param depth
+     *            depth
+     * @return position in the stack
+     */
+    private int getPosition(double depth) {
+        int index = Arrays.binarySearch(depths, depth);
+        if (index >= 0)
+            return index;
+        return -index - 2;
+    }
+
+
+
+    /**
+     * Returns the region at a position of the stack.
+     *
+     * @param position
+     *            position in the stack
+     * @return region
+     */
+    private RegionBase getRegion(int position) {
+        if (position < 0 || position >= layers.size())
+            return this;
+        return layers.get(position);
+    }
+
+
+
+    @Override
+    protected RegionBase containingSubRegion(double[] pos) {
+        if (!mShape.contains(pos))
+            return null;
+        return getRegion(getPosition(getDepth(pos)));
+    }
+
+
+
+    /**
+     * Finds the end of a step starting at the specified position of the
+     * stack.
+     *
+     * @param position
+     *            position in the stack (-1 above the first layer, number of
+     *            layers below the last one)
+     * @param pos0
+     *            start of the step
+     * @param pos1
+     *            end of the step (modified)
+     * @return region at the end of the step
+     */
+    protected RegionBase findEndOfStep(int position, double[] pos0,
+            double[] pos1) {
+        double s0 = getDepth(pos0);
+        double ds = getDepth(pos1) - s0;
+
+        // Closed-form distance to the boundaries of the current layer
+        double tLayer = Double.POSITIVE_INFINITY;
+        int next = position;
+        if (ds > 0.0 && position < layers.size()) {
+            tLayer = (depths[position + 1] - s0) / ds;
+            next = position + 1;
+        } else if (ds < 0.0 && position >= 0) {
+            tLayer = (depths[position] - s0) / ds;
+            next = position - 1;
+        }
+        if (tLayer < 0.0)
+            tLayer = 0.0;
+
+        // Exit of the container
+        double tShape = mShape.getFirstIntersection(pos0, pos1);
+
+        double t = Math.min(tLayer, tShape);
+        if (t > 1.0)
+            return getRegion(position);
+
+        // Put pos1 exactly on the boundary
+        double dx = pos1[0] - pos0[0];
+        double dy = pos1[1] - pos0[1];
+        double dz = pos1[2] - pos0[2];
+        pos1[0] = pos0[0] + t * dx;
+        pos1[1] = pos0[1] + t * dy;
+        pos1[2] = pos0[2] + t * dz;
+
+        if (tLayer < tShape)
+            return getRegion(next);
+
+        // Find the region just over the boundary
+        double norm = Math.sqrt(dx * dx + dy * dy + dz * dz);
+        double[] over =
+                new double[] { pos1[0] + SMALL_DISP * dx / norm,
+                        pos1[1] + SMALL_DISP * dy / norm,
+                        pos1[2] + SMALL_DISP * dz / norm };
+        RegionBase base = mParent;
+        RegionBase res;
+        while (base != null) {
+            res = base.containingSubRegion(over);
+            if (res != null)
+                return res;
+            base = base.mParent;
+        }
+
+        return null; // Not contained by the chamber
+    }
+
+
+
+    @Override
+    public RegionBase findEndOfStep(double[] pos0, double[] pos1) {
+        // Step starting in the container, outside the layers
+        double depth = getDepth(pos0);
+        int position = depth < depths[0] ? -1 : layers.size();
+        return findEndOfStep(position, pos0, pos1);
+    }
+
+
+
+    @Override
+    public void rotate(double[] pivot, double phi, double theta, double psi) {
+        super.rotate(pivot, phi, theta, psi);
+        origin = Transform3D.rotate(origin, pivot, phi, theta, psi);
+        axis = Transform3D.rotate(axis, phi, theta, psi);
+        if (surfaceNormal != null)
+            surfaceNormal = Transform3D.rotate(surfaceNormal, phi, theta, psi);
+    }
+
+
+
+    @Override
+    public void translate(double[] distance) {
+        super.translate(distance);
+        origin = Math2.plus(origin, distance);
+    }
+
+}
@@ -0,0 +1,147 @@
+package gov.nist.microanalysis.NISTMonte;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import gov.nist.microanalysis.NISTMonte.MonteCarloSS.RegionBase;
+import gov.nist.microanalysis.Utility.Math2;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class StratifiedRegionTest {
+
+    private StratifiedRegion region;
+
+    private IndexedRegion layer1;
+
+    private IndexedRegion layer2;
+
+    private IndexedRegion layer3;
+
+
+
+    @Before
+    public void setUp() throws Exception {
+        MultiPlaneShape shape =
+                MultiPlaneShape.createSubstrate(Math2.Z_AXIS, Math2.ORIGIN_3D);
+        region =
+                new StratifiedRegion(null, null, shape, Math2.MINUS_Z_AXIS,
+                        Math2.ORIGIN_3D, 0.0);
+
+        IMaterialScatterModel msm = new BlackBodyMaterialModel();
+        double depth = 0.0;
+        double[] thicknesses = new double[] { 1.0, 2.0, 3.0 };
+        IndexedRegion[] layers = new IndexedRegion[3];
+        for (int i = 0; i < 3; i++) {
+            shape =
+                    MultiPlaneShape.createFilm(Math2.Z_AXIS, new double[] {
+                            0.0, 0.0, -depth }, thicknesses[i]);
+            layers[i] = region.addLayer(msm, shape, thicknesses[i], i + 1);
+            depth += thicknesses[i];
+        }
+
+        layer1 = layers[0];
+        layer2 = layers[1];
+        layer3 = layers[2];
+    }
+
+
+
+    @Test
+    public void testIsAxisSurfaceNormal() {
+        assertFalse(region.isAxisSurfaceNormal());
+
+        region.setSurfaceNormal(Math2.Z_AXIS);
+        assertTrue(region.isAxisSurfaceNormal());
+
+        // Rotated with the region
+        region.rotate(Math2.ORIGIN_3D, 0.0, Math.toRadians(30.0), 0.0);
+        assertTrue(region.isAxisSurfaceNormal());
+
+        region.setSurfaceNormal(Math2.X_AXIS);
+        assertFalse(region.isAxisSurfaceNormal());
+    }
+
+
+
+    @Test
+    public void testAddLayer() {
+        assertEquals(3, region.getSubRegions().size());
+        assertEquals(2, layer2.getIndex());
+    }
+
+
+
+    @Test
+    public void testContainingSubRegion() {
+        assertSame(layer1,
+                region.containingSubRegion(new double[] { 0.0, 0.0, -0.5 }));
+        assertSame(layer2,
+                region.containingSubRegion(new double[] { 5.0, 0.0, -1.0 }));
+        assertSame(layer3,
+                region.containingSubRegion(new double[] { 0.0, 9.0, -4.0 }));
+        assertSame(region,
+                region.containingSubRegion(new double[] { 0.0, 0.0, -10.0 }));
+        assertNull(region.containingSubRegion(new double[] { 0.0, 0.0, 1.0 }));
+    }
+
+
+
+    @Test
+    public void testFindEndOfStepInside() {
+        double[] pos0 = new double[] { 0.0, 0.0, -2.0 };
+        double[] pos1 = new double[] { 0.5, 0.0, -2.5 };
+        RegionBase next = layer2.findEndOfStep(pos0, pos1);
+
+        assertSame(layer2, next);
+        assertArrayEquals(new double[] { 0.5, 0.0, -2.5 }, pos1, 1e-9);
+    }
+
+
+
+    @Test
+    public void testFindEndOfStepDown() {
+        double[] pos0 = new double[] { 0.0, 0.0, -0.5 };
+        double[] pos1 = new double[] { 1.0, 0.0, -1.5 };
+        RegionBase next = layer1.findEndOfStep(pos0, pos1);
+
+        assertSame(layer2, next);
+        assertArrayEquals(new double[] { 0.5, 0.0, -1.0 }, pos1, 1e-9);
+    }
+
+
+
+    @Test
+    public void testFindEndOfStepBottom() {
+        double[] pos0 = new double[] { 0.0, 0.0, -5.0 };
+        double[] pos1 = new double[] { 0.0, 0.0, -7.0 };
+        RegionBase next = layer3.findEndOfStep(pos0, pos1);
+
+        assertSame(region, next);
+        assertArrayEquals(new double[] { 0.0, 0.0, -6.0 }, pos1, 1e-9);
+
+        pos0 = pos1;
+        pos1 = new double[] { 0.0, 0.0, -5.0 };
+        next = region.findEndOfStep(pos0, pos1);
+
+        assertSame(layer3, next);
+        assertArrayEquals(new double[] { 0.0, 0.0, -6.0 }, pos1, 1e-9);
+    }
+
+
+
+    @Test
+    public void testFindEndOfStepSurface() {
+        double[] pos0 = new double[] { 0.0, 0.0, -0.5 };
+        double[] pos1 = new double[] { 0.0, 0.0, 0.5 };
+        RegionBase next = layer1.findEndOfStep(pos0, pos1);
+
+        assertNull(next); // No parent
+        assertArrayEquals(new double[] { 0.0, 0.0, 0.0 }, pos1, 1e-9);
+    }
+
+}
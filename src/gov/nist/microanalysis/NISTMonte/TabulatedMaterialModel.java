@@ -0,0 +1,351 @@
+package gov.nist.microanalysis.NISTMonte;
+
+import gov.nist.microanalysis.EPQLibrary.Element;
+import gov.nist.microanalysis.EPQLibrary.Material;
+import gov.nist.microanalysis.EPQLibrary.RandomizedScatterFactory;
+import gov.nist.microanalysis.NISTMonte.MonteCarloSS.RegionBase;
+import gov.nist.microanalysis.Utility.Math2;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Scattering model serving the mean free path and the energy loss of another
+ * model (typically a {@link BasicMaterialModel}) from tables precomputed at
+ * creation, instead of evaluating the cross sections at each step. The tables
+ * are spaced logarithmically in energy between the minimum energy for tracking
+ * and a maximum energy (e.g. the beam energy), and linearly interpolated.
+ * Outside this range, the calls are forwarded to the model.
+ * <p/>
+ * The scattering rate of each element is computed from the elastic cross
+ * section of the specified {@link RandomizedScatterFactory}, which must be the
+ * one used by the model to sample the scattering angles, and the energy loss
+ * from the model itself. The scattering angles are always computed by the
+ * model. The tables must therefore be built once the strategy of the
+ * simulation is applied (see {@link #tabulate(RegionBase, double, int)}).
+ *
+ * @author ppinard
+ */
+public class TabulatedMaterialModel implements IMaterialScatterModel {
+
+    /** Default number of points per decade of energy. */
+    public static final int DEFAULT_POINTS_PER_DECADE = 200;
+
+    /** Tabulated model. */
+    private final IMaterialScatterModel model;
+
+    /** Factory of the elastic cross sections. */
+    private final RandomizedScatterFactory rsf;
+
+    /** Elements of the material. */
+    private final Element[] elements;
+
+    /** Logarithm of the lowest energy of the tables. */
+    private final double logMinEnergy;
+
+    /** Interval between two points of the tables in logarithm of energy. */
+    private final double logStep;
+
+    /** Number of points of the tables. */
+    private final int points;
+
+    /** Scattering rate (1/m) of each element, by element then energy. */
+    private final double[][] rates;
+
+    /** Energy loss per unit length (J/m) by energy. */
+    private final double[] stoppingPowers;
+
+    /** Minimum energy for tracking. */
+    private double minEforTracking;
+
+
+
+    /**
+     * Creates a new <code>TabulatedMaterialModel</code> with
+     * {@link #DEFAULT_POINTS_PER_DECADE} points per decade.
+     *
+     * @param model
+     *            model to tabulate
+     * @param rsf
+     *            factory of the elastic cross sections
+     * @param maxEnergy
+     *            highest energy of the tables (in J)
+     */
+    public TabulatedMaterialModel(IMaterialScatterModel model,
+            RandomizedScatterFactory rsf, double maxEnergy) {
+        this(model, rsf, maxEnergy, DEFAULT_POINTS_PER_DECADE);
+    }
+
+
+
+    /**
+     * Creates a new <code>TabulatedMaterialModel</code>.
+     *
+     * @param model
+     *            model to tabulate
+     * @param rsf
+     *            factory of the elastic cross sections
+     * @param maxEnergy
+     *            highest energy of the tables (in J)
+     * @param pointsPerDecade
+     *            number of points per decade of energy
+     */
+    public TabulatedMaterialModel(IMaterialScatterModel model,
+            RandomizedScatterFactory rsf, double maxEnergy,
+            int pointsPerDecade) {
+        if (model == null)
+            throw new NullPointerException("model == null");
+        if (rsf == null)
+            throw new NullPointerException("rsf == null");
+        if (pointsPerDecade < 1)
+            throw new IllegalArgumentException("pointsPerDecade < 1");
+
+        this.model = model;
+        this.rsf = rsf;
+        minEforTracking = model.getMinEforTracking();
+
+        double minEnergy = minEforTracking;
+        if (!(minEnergy > 0.0))
+            throw new IllegalArgumentException(
+                    "Minimum energy for tracking must be greater than 0");
+        if (!(maxEnergy > minEnergy))
+            throw new IllegalArgumentException("Maximum energy must be "
+                    + "greater than the minimum energy for tracking");
+
+        double logRange = Math.log(maxEnergy) - Math.log(minEnergy);
+        points =
+                Math.max(2, (int) Math.ceil(logRange / Math.log(10.0)
+                        * pointsPerDecade) + 1);
+        logMinEnergy = Math.log(minEnergy);
+        logStep = logRange / (points - 1);
+
+        Material material = model.getMaterial();
+        elements =
+                material.getElementSet().toArray(
+                        new Element[material.getElementSet().size()]);
+
+        rates = new double[elements.length][points];
+        stoppingPowers = new double[points];
+
+        double energy;
+        Electron probe;
+        for (int n = 0; n < points; n++) {
+            energy = Math.exp(logMinEnergy + n * logStep);
+
+            for (int e = 0; e < elements.length; e++)
+                rates[e][n] =
+                        rsf.get(elements[e]).totalCrossSection(energy)
+                                * material.atomsPerCubicMeter(elements[e]);
+
+            probe = new Electron(new double[] { 0.0, 0.0, 0.0 }, energy);
+            stoppingPowers[n] = model.calculateEnergyLoss(1.0, probe);
+        }
+    }
+
+
+
+    /**
+     * Replaces the {@link BasicMaterialModel} of a region and its sub-regions
+     * by tabulated models. The factory of the elastic cross sections of each
+     * model is resolved like the model resolves it, from the global override
+     * then the default strategy of the model.
+     *
+     * @param region
+     *            region (e.g. chamber)
+     * @param maxEnergy
+     *            highest energy of the tables (in J), e.g. the beam energy
+     * @param pointsPerDecade
+     *            number of points per decade of energy
+     * @return number of tabulated models created
+     * @see #tabulate(RegionBase, RandomizedScatterFactory, double, int)
+     */
+    public static int tabulate(RegionBase region, double maxEnergy,
+            int pointsPerDecade) {
+        if (region == null)
+            throw new NullPointerException("region == null");
+
+        Map<IMaterialScatterModel, IMaterialScatterModel> tables =
+                new IdentityHashMap<>();
+        tabulate(region, null, maxEnergy, pointsPerDecade, tables);
+        return tables.size();
+    }
+
+
+
+    /**
+     * Replaces the {@link BasicMaterialModel} of a region and its sub-regions
+     * by tabulated models. Regions sharing a model share its tabulated model.
+     * The models of materials without elements (e.g. vacuum) are kept.
+     *
+     * @param region
+     *            region (e.g. chamber)
+     * @param rsf
+     *            factory of the elastic cross sections of the simulation
+     * @param maxEnergy
+     *            highest energy of the tables (in J), e.g. the beam energy
+     * @param pointsPerDecade
+     *            number of points per decade of energy
+     * @return number of tabulated models created
+     */
+    public static int tabulate(RegionBase region,
+            RandomizedScatterFactory rsf, double maxEnergy,
+            int pointsPerDecade) {
+        if (region == null)
+            throw new NullPointerException("region == null");
+        if (rsf == null)
+            throw new NullPointerException("rsf == null");
+
+        Map<IMaterialScatterModel, IMaterialScatterModel> tables =
+                new IdentityHashMap<>();
+        tabulate(region, rsf, maxEnergy, pointsPerDecade, tables);
+        return tables.size();
+    }
+
+
+
+    private static void tabulate(RegionBase region,
+            RandomizedScatterFactory rsf, double maxEnergy,
+            int pointsPerDecade,
+            Map<IMaterialScatterModel, IMaterialScatterModel> tables) {
+        IMaterialScatterModel model = region.getScatterModel();
+        if (model instanceof BasicMaterialModel
+                && !model.getMaterial().getElementSet().isEmpty()
+                && maxEnergy > model.getMinEforTracking()) {
+            IMaterialScatterModel table = tables.get(model);
+            if (table == null) {
+                RandomizedScatterFactory factory = rsf;
+                if (factory == null) {
+                    BasicMaterialModel basic = (BasicMaterialModel) model;
+                    factory =
+                            (RandomizedScatterFactory) basic.getAlgorithm(
+                                    RandomizedScatterFactory.class);
+                }
+                table =
+                        new TabulatedMaterialModel(model, factory, maxEnergy,
+                                pointsPerDecade);
+                tables.put(model, table);
+            }
+            region.mScatterModel = table;
+        }
+
+        for (RegionBase subRegion : region.getSubRegions())
+            tabulate(subRegion, rsf, maxEnergy, pointsPerDecade, tables);
+    }
+
+
+
+    /**
+     * Returns the tabulated model.
+     *
+     * @return tabulated model
+     */
+    public IMaterialScatterModel getModel() {
+        return model;
+    }
+
+
+
+    /**
+     * Returns the factory of the elastic cross sections of the tables.
+     *
+     * @return factory of the elastic cross sections
+     */
+    public RandomizedScatterFactory getScatterFactory() {
+        return rsf;
+    }
+
+
+
+    /**
+     * Returns the position of an energy in the tables: the integer part is
+     * the index of the point below and the fractional part the interpolation
+     * weight of the point above. A negative value is returned for an energy
+     * outside the tables.
+     *
+     * @param energy
+     *            energy (in J)
+     * @return position in the tables
+     */
+    private double getPosition(double energy) {
+        double u = (Math.log(energy) - logMinEnergy) / logStep;
+        if (!(u >= 0.0) || u > points - 1)
+            return -1.0;
+        return u;
+    }
+
+
+
+    @Override
+    public Material getMaterial() {
+        return model.getMaterial();
+    }
+
+
+
+    @Override
+    public double randomMeanPathLength(Electron pe) {
+        double u = getPosition(pe.getEnergy());
+        if (u < 0.0)
+            return model.randomMeanPathLength(pe);
+
+        int i = Math.min((int) u, points - 2);
+        double f = u - i;
+
+        // Choose the scattering element proportionally to its rate
+        double totalRate = 0.0;
+        double rate;
+        Element scatter = null;
+        for (int e = 0; e < elements.length; e++) {
+            rate = (1.0 - f) * rates[e][i] + f * rates[e][i + 1];
+            if (Math2.rgen.nextDouble() * (totalRate + rate) >= totalRate)
+                scatter = elements[e];
+            totalRate += rate;
+        }
+
+        pe.setScatteringElement(scatter);
+        return -Math.log(Math2.rgen.nextDouble()) / totalRate;
+    }
+
+
+
+    @Override
+    public Electron scatter(Electron pe) {
+        return model.scatter(pe);
+    }
+
+
+
+    @Override
+    public Electron barrierScatter(Electron pe, RegionBase nextRegion) {
+        return model.barrierScatter(pe, nextRegion);
+    }
+
+
+
+    @Override
+    public double calculateEnergyLoss(double len, Electron pe) {
+        double u = getPosition(pe.getEnergy());
+        if (u < 0.0)
+            return model.calculateEnergyLoss(len, pe);
+
+        int i = Math.min((int) u, points - 2);
+        double f = u - i;
+        return ((1.0 - f) * stoppingPowers[i] + f * stoppingPowers[i + 1])
+                * len;
+    }
+
+
+
+    @Override
+    public double getMinEforTracking() {
+        return minEforTracking;
+    }
+
+
+
+    @Override
+    public void setMinEforTracking(double minEforTracking) {
+        this.minEforTracking = minEforTracking;
+    }
+
+}
@@ -0,0 +1,194 @@
+package gov.nist.microanalysis.NISTMonte;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import gov.nist.microanalysis.EPQLibrary.AlgorithmUser;
+import gov.nist.microanalysis.EPQLibrary.Material;
+import gov.nist.microanalysis.EPQLibrary.MaterialFactory;
+import gov.nist.microanalysis.EPQLibrary.NISTMottScatteringAngle;
+import gov.nist.microanalysis.EPQLibrary.RandomizedScatterFactory;
+import gov.nist.microanalysis.EPQLibrary.ScreenedRutherfordScatteringAngle;
+import gov.nist.microanalysis.EPQLibrary.Strategy;
+import gov.nist.microanalysis.EPQLibrary.ToSI;
+import gov.nist.microanalysis.NISTMonte.MonteCarloSS.Region;
+import gov.nist.microanalysis.Utility.Math2;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TabulatedMaterialModelTest {
+
+    private IMaterialScatterModel direct;
+
+    private TabulatedMaterialModel tabulated;
+
+
+
+    @Before
+    public void setUp() throws Exception {
+        Strategy strategy = new Strategy();
+        strategy.addAlgorithm(RandomizedScatterFactory.class,
+                NISTMottScatteringAngle.Factory);
+        AlgorithmUser.applyGlobalOverride(strategy);
+
+        Material material = MaterialFactory.createCompound("Al2O3", 4.53);
+        direct = new BasicMaterialModel(material);
+        tabulated =
+                new TabulatedMaterialModel(direct,
+                        NISTMottScatteringAngle.Factory, ToSI.keV(30.0));
+    }
+
+
+
+    @After
+    public void tearDown() throws Exception {
+        AlgorithmUser.applyGlobalOverride(new Strategy());
+    }
+
+
+
+    private static Electron createElectron(double energy) {
+        return new Electron(new double[] { 0.0, 0.0, 0.0 }, energy);
+    }
+
+
+
+    @Test
+    public void testCalculateEnergyLoss() {
+        double energy, expected, actual;
+        for (int n = 0; n <= 100; n++) {
+            energy = ToSI.eV(100.0 + n * 299.0);
+            expected = direct.calculateEnergyLoss(1e-9, createElectron(energy));
+            actual =
+                    tabulated.calculateEnergyLoss(1e-9, createElectron(energy));
+            assertEquals(expected, actual, Math.abs(expected) * 1e-3);
+        }
+    }
+
+
+
+    @Test
+    public void testCalculateEnergyLossOutside() {
+        double energy = ToSI.keV(40.0);
+        double expected =
+                direct.calculateEnergyLoss(1e-9, createElectron(energy));
+        double actual =
+                tabulated.calculateEnergyLoss(1e-9, createElectron(energy));
+        assertEquals(expected, actual, 0.0);
+    }
+
+
+
+    @Test
+    public void testRandomMeanPathLength() {
+        int count = 20000;
+        double[] energies =
+                new double[] { ToSI.keV(1.0), ToSI.keV(5.0), ToSI.keV(15.0) };
+
+        double expected, actual;
+        Electron electron;
+        for (double energy : energies) {
+            expected = 0.0;
+            actual = 0.0;
+            for (int n = 0; n < count; n++) {
+                expected +=
+                        direct.randomMeanPathLength(createElectron(energy));
+
+                electron = createElectron(energy);
+                actual += tabulated.randomMeanPathLength(electron);
+                assertNotNull(electron.getScatteringElement());
+            }
+
+            // Mean free paths within 4 standard deviations
+            assertEquals(1.0, actual / expected, 4.0 * Math.sqrt(2.0 / count));
+        }
+    }
+
+
+
+    @Test
+    public void testTabulate() throws Exception {
+        Region chamber =
+                new Region(null, new BasicMaterialModel(Material.Null),
+                        new Sphere(Math2.ORIGIN_3D, 1.0));
+        Region region1 =
+                new Region(chamber, direct, MultiPlaneShape.createSubstrate(
+                        Math2.Z_AXIS, Math2.ORIGIN_3D));
+        Region region2 =
+                new Region(region1, direct, new Sphere(new double[] { 0.0,
+                        0.0, -0.5 }, 0.1));
+
+        int count =
+                TabulatedMaterialModel.tabulate(chamber,
+                        NISTMottScatteringAngle.Factory, ToSI.keV(30.0),
+                        TabulatedMaterialModel.DEFAULT_POINTS_PER_DECADE);
+
+        assertEquals(1, count);
+        assertTrue(chamber.getScatterModel() instanceof BasicMaterialModel);
+        assertTrue(region1.getScatterModel() instanceof TabulatedMaterialModel);
+        assertSame(region1.getScatterModel(), region2.getScatterModel());
+        assertSame(direct,
+                ((TabulatedMaterialModel) region1.getScatterModel())
+                        .getModel());
+    }
+
+
+
+    private static Region createChamber(IMaterialScatterModel model)
+            throws Exception {
+        Region chamber =
+                new Region(null, new BasicMaterialModel(Material.Null),
+                        new Sphere(Math2.ORIGIN_3D, 1.0));
+        new Region(chamber, model, MultiPlaneShape.createSubstrate(
+                Math2.Z_AXIS, Math2.ORIGIN_3D));
+        return chamber;
+    }
+
+
+
+    @Test
+    public void testTabulateStrategy() throws Exception {
+        Strategy strategy = new Strategy();
+        strategy.addAlgorithm(RandomizedScatterFactory.class,
+                ScreenedRutherfordScatteringAngle.Factory);
+        AlgorithmUser.applyGlobalOverride(strategy);
+
+        Material material = MaterialFactory.createCompound("Al2O3", 4.53);
+        Region chamber = createChamber(new BasicMaterialModel(material));
+
+        int count =
+                TabulatedMaterialModel.tabulate(chamber, ToSI.keV(30.0),
+                        TabulatedMaterialModel.DEFAULT_POINTS_PER_DECADE);
+
+        assertEquals(1, count);
+        TabulatedMaterialModel table =
+                (TabulatedMaterialModel) chamber.getSubRegions().get(0)
+                        .getScatterModel();
+        assertSame(ScreenedRutherfordScatteringAngle.Factory,
+                table.getScatterFactory());
+    }
+
+
+
+    @Test
+    public void testTabulateDefaultStrategy() throws Exception {
+        AlgorithmUser.applyGlobalOverride(new Strategy());
+
+        Material material = MaterialFactory.createCompound("Al2O3", 4.53);
+        BasicMaterialModel model = new BasicMaterialModel(material);
+        Region chamber = createChamber(model);
+
+        TabulatedMaterialModel.tabulate(chamber, ToSI.keV(30.0),
+                TabulatedMaterialModel.DEFAULT_POINTS_PER_DECADE);
+
+        TabulatedMaterialModel table =
+                (TabulatedMaterialModel) chamber.getSubRegions().get(0)
+                        .getScatterModel();
+        assertSame(model.getAlgorithm(RandomizedScatterFactory.class),
+                table.getScatterFactory());
+    }
+
+}
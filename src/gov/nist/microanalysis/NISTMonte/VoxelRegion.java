@@ -0,0 +1,861 @@
+package gov.nist.microanalysis.NISTMonte;
+
+import gov.nist.microanalysis.EPQLibrary.EPQException;
+import gov.nist.microanalysis.EPQLibrary.Material;
+import gov.nist.microanalysis.NISTMonte.MonteCarloSS.Region;
+import gov.nist.microanalysis.NISTMonte.MonteCarloSS.RegionBase;
+import gov.nist.microanalysis.NISTMonte.MonteCarloSS.Shape;
+import gov.nist.microanalysis.Utility.Math2;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact alternative to {@link CuboidRegion} for large voxel grids. Instead
+ * of one region object per voxel, the grid is stored as a volume of material
+ * labels (one byte per voxel, or two bytes if more than 256 materials are
+ * used) and a palette of scatter models. Each entry of the palette is a single
+ * sub-region (a <code>Phase</code>), whose index is the label plus one. The
+ * voxel containing an electron is computed from its position when needed.
+ * <p/>
+ * As for {@link CuboidRegion}, the region itself (the surrounding material)
+ * fills the space below <code>z1</code> outside the grid box, and the space
+ * above <code>z1</code> is outside this region. Since voxels of the same
+ * material belong to the same sub-region, an electron only stops at the
+ * boundaries where the material changes.
+ * <p/>
+ * A copy shares the label volume of this region until the labels of either
+ * region are modified.
+ *
+ * @author ppinard
+ */
+public class VoxelRegion extends IndexedRegion implements
+        CopyableRegion {
+
+    /** Maximum number of materials in the palette. */
+    public static final int MAX_MATERIALS = 65536;
+
+    /**
+     * Fraction of a voxel below which a position is considered to be on a
+     * voxel face.
+     */
+    private static final double FACE_TOLERANCE = 1e-9;
+
+    /**
+     * Shape of the voxels with the same label, which delegates to the label
+     * volume.
+     */
+    private static class PhaseShape implements Shape {
+
+        private final VoxelRegion parent;
+
+        private final int label;
+
+
+
+        public PhaseShape(VoxelRegion parent, int label) {
+            this.parent = parent;
+            this.label = label;
+        }
+
+
+
+        @Override
+        public boolean contains(double[] pos) {
+            return parent.containingSubRegion(pos) == parent.phases.get(label);
+        }
+
+
+
+        @Override
+        public double getFirstIntersection(double[] pos0, double[] pos1) {
+            return parent.getFirstIntersection(parent.phases.get(label), pos0,
+                    pos1);
+        }
+
+    }
+
+    /** Sub-region of all the voxels with the same label. */
+    static class Phase extends IndexedRegion {
+
+        /** Material label. */
+        public final int label;
+
+
+
+        public Phase(VoxelRegion parent, IMaterialScatterModel msm, int label) {
+            super(parent, msm, new PhaseShape(parent, label), label + 1);
+            this.label = label;
+        }
+
+
+
+        @Override
+        public RegionBase findEndOfStep(double[] pos0, double[] pos1) {
+            return ((VoxelRegion) mParent).findEndOfStep(label, pos0, pos1);
+        }
+
+
+
+        @Override
+        protected RegionBase containingSubRegion(double[] pos) {
+            return mParent.containingSubRegion(pos);
+        }
+
+    }
+
+    /** Material labels of the voxels (x fastest), if at most 256 materials. */
+    private byte[] byteLabels;
+
+    /** Material labels of the voxels (x fastest), if more than 256 materials. */
+    private short[] shortLabels;
+
+    /** Whether the label volume is shared with a copy. */
+    private boolean sharedLabels = false;
+
+    /** Sub-regions of the labels. */
+    protected final List<Phase> phases = new ArrayList<>();
+
+    protected final double dx, dy, dz;
+
+    protected final double x0, y0, z0;
+
+    protected final double x1, y1, z1;
+
+    protected final int nx, ny, nz;
+
+
+
+    /**
+     * Creates a new <code>VoxelRegion</code>. All voxels are initially of
+     * label 0, a null material.
+     *
+     * @param x0
+     *            lower limit in x
+     * @param x1
+     *            upper limit in x
+     * @param nx
+     *            number of voxels in x
+     * @param y0
+     *            lower limit in y
+     * @param y1
+     *            upper limit in y
+     * @param ny
+     *            number of voxels in y
+     * @param z0
+     *            lower limit in z
+     * @param z1
+     *            upper limit in z (surface)
+     * @param nz
+     *            number of voxels in z
+     * @throws EPQException
+     *             if the null material model cannot be created
+     */
+    public VoxelRegion(double x0, double x1, int nx,
+            double y0, double y1, int ny,
+            double z0, double z1, int nz) throws EPQException {
+        this(null, x0, x1, nx, y0, y1, ny, z0, z1, nz);
+    }
+
+
+
+    /**
+     * Creates a new <code>VoxelRegion</code> inside a parent region. All
+     * voxels are initially of label 0, a null material.
+     *
+     * @param parent
+     *            parent region (e.g. chamber)
+     * @param x0
+     *            lower limit in x
+     * @param x1
+     *            upper limit in x
+     * @param nx
+     *            number of voxels in x
+     * @param y0
+     *            lower limit in y
+     * @param y1
+     *            upper limit in y
+     * @param ny
+     *            number of voxels in y
+     * @param z0
+     *            lower limit in z
+     * @param z1
+     *            upper limit in z (surface)
+     * @param nz
+     *            number of voxels in z
+     * @throws EPQException
+     *             if the null material model cannot be created
+     */
+    public VoxelRegion(Region parent, double x0, double x1, int nx,
+            double y0, double y1, int ny,
+            double z0, double z1, int nz) throws EPQException {
+        super(parent, new BasicMaterialModel(Material.Null),
+                MultiPlaneShape.createSubstrate(Math2.Z_AXIS, new double[] {
+                        0.0, 0.0, z1 }), 0);
+
+        if (x1 <= x0)
+            throw new IllegalArgumentException("x1 must be greater than x0");
+        if (nx < 1)
+            throw new IllegalArgumentException(
+                    "nx must be greater or equal to 1");
+        this.x0 = x0;
+        this.x1 = x1;
+        this.nx = nx;
+        dx = (x1 - x0) / nx;
+
+        if (y1 <= y0)
+            throw new IllegalArgumentException("y1 must be greater than y0");
+        if (ny < 1)
+            throw new IllegalArgumentException(
+                    "ny must be greater or equal to 1");
+        this.y0 = y0;
+        this.y1 = y1;
+        this.ny = ny;
+        dy = (y1 - y0) / ny;
+
+        if (z1 <= z0)
+            throw new IllegalArgumentException("z1 must be greater than z0");
+        if (nz < 1)
+            throw new IllegalArgumentException(
+                    "nz must be greater or equal to 1");
+        this.z0 = z0;
+        this.z1 = z1;
+        this.nz = nz;
+        dz = (z1 - z0) / nz;
+
+        long count = (long) nx * ny * nz;
+        if (count > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Too many voxels: " + count);
+        byteLabels = new byte[(int) count];
+
+        addMaterial(new BasicMaterialModel(Material.Null));
+    }
+
+
+
+    /**
+     * Creates a copy of a <code>VoxelRegion</code> inside a parent region.
+     *
+     * @param parent
+     *            parent region of the copy
+     * @param region
+     *            region to copy
+     * @param models
+     *            replacement of the scatter models, a model without
+     *            replacement is shared
+     */
+    protected VoxelRegion(Region parent, VoxelRegion region,
+            Map<IMaterialScatterModel, IMaterialScatterModel> models) {
+        super(parent, RegionCopier.substitute(region.mScatterModel, models),
+                region.mShape, region.getIndex());
+
+        x0 = region.x0;
+        x1 = region.x1;
+        nx = region.nx;
+        dx = region.dx;
+        y0 = region.y0;
+        y1 = region.y1;
+        ny = region.ny;
+        dy = region.dy;
+        z0 = region.z0;
+        z1 = region.z1;
+        nz = region.nz;
+        dz = region.dz;
+
+        byteLabels = region.byteLabels;
+        shortLabels = region.shortLabels;
+        sharedLabels = region.sharedLabels = true;
+
+        for (Phase phase : region.phases)
+            phases.add(new Phase(this, RegionCopier.substitute(
+                    phase.getScatterModel(), models), phase.label));
+    }
+
+
+
+    @Override
+    public RegionBase copy(Region parent,
+            Map<IMaterialScatterModel, IMaterialScatterModel> models) {
+        return new VoxelRegion(parent, this, models);
+    }
+
+
+
+    /**
+     * Returns the number of voxels in x.
+     *
+     * @return number of voxels in x
+     */
+    public int getNx() {
+        return nx;
+    }
+
+
+
+    /**
+     * Returns the number of voxels in y.
+     *
+     * @return number of voxels in y
+     */
+    public int getNy() {
+        return ny;
+    }
+
+
+
+    /**
+     * Returns the number of voxels in z.
+     *
+     * @return number of voxels in z
+     */
+    public int getNz() {
+        return nz;
+    }
+
+
+
+    /**
+     * Adds a scatter model to the palette and returns its label. If the model
+     * is already in the palette, its existing label is returned.
+     *
+     * @param model
+     *            scatter model
+     * @return label of the model
+     */
+    public int addMaterial(IMaterialScatterModel model) {
+        if (model == null)
+            throw new NullPointerException("model == null");
+
+        for (Phase phase : phases)
+            if (phase.getScatterModel() == model)
+                return phase.label;
+
+        int label = phases.size();
+        if (label >= MAX_MATERIALS)
+            throw new IllegalStateException("Too many materials");
+
+        if (label == 256) { // Switch to two bytes per voxel
+            shortLabels = new short[byteLabels.length];
+            for (int n = 0; n < byteLabels.length; n++)
+                shortLabels[n] = (short) (byteLabels[n] & 0xFF);
+            byteLabels = null;
+            sharedLabels = false;
+        }
+
+        phases.add(new Phase(this, model, label));
+        return label;
+    }
+
+
+
+    /**
+     * Returns the label of a material in the palette. If no model of this
+     * material is in the palette, a {@link BasicMaterialModel} is created and
+     * added.
+     *
+     * @param material
+     *            material
+     * @return label of the material
+     * @throws EPQException
+     *             if the scatter model cannot be created
+     */
+    public int addMaterial(Material material) throws EPQException {
+        if (material == null)
+            throw new NullPointerException("material == null");
+
+        IMaterialScatterModel model;
+        for (Phase phase : phases) {
+            model = phase.getScatterModel();
+            if (model instanceof BasicMaterialModel
+                    && model.getMaterial().equals(material))
+                return phase.label;
+        }
+
+        return addMaterial(new BasicMaterialModel(material));
+    }
+
+
+
+    /**
+     * Returns the number of materials in the palette.
+     *
+     * @return number of materials
+     */
+    public int getMaterialCount() {
+        return phases.size();
+    }
+
+
+
+    /**
+     * Returns the scatter model of a label.
+     *
+     * @param label
+     *            material label
+     * @return scatter model
+     */
+    public IMaterialScatterModel getMaterialModel(int label) {
+        return phases.get(label).getScatterModel();
+    }
+
+
+
+    /**
+     * Returns the label of a voxel.
+     *
+     * @param i
+     *            index in x
+     * @param j
+     *            index in y
+     * @param k
+     *            index in z
+     * @return material label
+     */
+    public int getLabel(int i, int j, int k) {
+        return getLabel(getVoxelIndex(i, j, k));
+    }
+
+
+
+    /**
+     * Sets the label of a voxel.
+     *
+     * @param i
+     *            index in x
+     * @param j
+     *            index in y
+     * @param k
+     *            index in z
+     * @param label
+     *            material label, added with {@link #addMaterial}
+     */
+    public void setLabel(int i, int j, int k, int label) {
+        setLabel(getVoxelIndex(i, j, k), label);
+    }
+
+
+
+    /**
+     * Sets the label of all voxels.
+     *
+     * @param label
+     *            material label, added with {@link #addMaterial}
+     */
+    public void fill(int label) {
+        int size = (int) ((long) nx * ny * nz);
+        for (int n = 0; n < size; n++)
+            setLabel(n, label);
+    }
+
+
+
+    public void updateVoxelMaterial(int i, int j, int k,
+            IMaterialScatterModel model) {
+        setLabel(i, j, k, addMaterial(model));
+    }
+
+
+
+    public void updateVoxelMaterial(int i, int j, int k, Material material)
+            throws EPQException {
+        setLabel(i, j, k, addMaterial(material));
+    }
+
+
+
+    public void updateVoxelMaterial(IMaterialScatterModel model) {
+        fill(addMaterial(model));
+    }
+
+
+
+    public void updateVoxelMaterial(Material material) throws EPQException {
+        fill(addMaterial(material));
+    }
+
+
+
+    public void updateSurroundingMaterial(IMaterialScatterModel model) {
+        mScatterModel = model;
+    }
+
+
+
+    public void updateSurroundingMaterial(Material material)
+            throws EPQException {
+        updateSurroundingMaterial(new BasicMaterialModel(material));
+    }
+
+
+
+    /**
+     * Returns the linear index of a voxel, x varying the fastest.
+     *
+     * @param i
+     *            index in x
+     * @param j
+     *            index in y
+     * @param k
+     *            index in z
+     * @return linear index
+     */
+    protected int getVoxelIndex(int i, int j, int k) {
+        if (i < 0 || i >= nx)
+            throw new IndexOutOfBoundsException("i: " + i);
+        if (j < 0 || j >= ny)
+            throw new IndexOutOfBoundsException("j: " + j);
+        if (k < 0 || k >= nz)
+            throw new IndexOutOfBoundsException("k: " + k);
+        return (k * ny + j) * nx + i;
+    }
+
+
+
+    /**
+     * Returns the linear index (x fastest) of the voxel containing a position,
+     * or -1 if the position is outside the grid.
+     *
+     * @param pos
+     *            position
+     * @return voxel id
+     */
+    public int getVoxelId(double[] pos) {
+        int i = (int) Math.floor((pos[0] - x0) / dx);
+        int j = (int) Math.floor((pos[1] - y0) / dy);
+        int k = (int) Math.floor((pos[2] - z0) / dz);
+
+        if (i < 0 || i >= nx || j < 0 || j >= ny || k < 0 || k >= nz)
+            return -1;
+        return (k * ny + j) * nx + i;
+    }
+
+
+
+    /**
+     * Returns the label at a linear index.
+     *
+     * @param n
+     *            linear index
+     * @return material label
+     */
+    protected int getLabel(int n) {
+        if (byteLabels != null)
+            return byteLabels[n] & 0xFF;
+        else
+            return shortLabels[n] & 0xFFFF;
+    }
+
+
+
+    /**
+     * Sets the label at a linear index.
+     *
+     * @param n
+     *            linear index
+     * @param label
+     *            material label
+     */
+    protected void setLabel(int n, int label) {
+        if (label < 0 || label >= phases.size())
+            throw new IllegalArgumentException("Unknown label: " + label);
+
+        if (sharedLabels)
+            unshareLabels();
+
+        if (byteLabels != null)
+            byteLabels[n] = (byte) label;
+        else
+            shortLabels[n] = (short) label;
+    }
+
+
+
+    /**
+     * Copies the label volume if it is shared with another region, before it
+     * is modified.
+     */
+    private void unshareLabels() {
+        if (byteLabels != null)
+            byteLabels = byteLabels.clone();
+        else
+            shortLabels = shortLabels.clone();
+        sharedLabels = false;
+    }
+
+
+
+    /**
+     * Returns the index of the voxel containing a coordinate along one axis.
+     * A coordinate on a voxel face is attributed to the voxel in the direction
+     * of motion.
+     *
+     * @param p
+     *            coordinate
+     * @param origin
+     *            lower limit of the grid
+     * @param size
+     *            size of a voxel
+     * @param v
+     *            direction of motion
+     * @return voxel index
+     */
+    protected static int getCellIndex(double p, double origin, double size,
+            double v) {
+        double u = (p - origin) / size;
+        int index = (int) Math.floor(u);
+
+        if (v < 0.0 && u - index < FACE_TOLERANCE)
+            index--;
+        else if (v > 0.0 && index + 1 - u < FACE_TOLERANCE)
+            index++;
+
+        return index;
+    }
+
+
+
+    /**
+     * Returns the region at the voxel indices. If the indices are outside the
+     * grid, this region (surrounding material) is returned, or
+     * <code>null</code> if the voxel would be above the grid.
+     *
+     * @param i
+     *            index in x
+     * @param j
+     *            index in y
+     * @param k
+     *            index in z
+     * @return region
+     */
+    protected RegionBase getRegion(int i, int j, int k) {
+        if (k >= nz)
+            return null; // Vacuum (BSE)
+        if (i < 0 || i >= nx || j < 0 || j >= ny || k < 0)
+            return this;
+        return phases.get(getLabel((k * ny + j) * nx + i));
+    }
+
+
+
+    @Override
+    protected RegionBase containingSubRegion(double[] pos) {
+        if (pos[2] >= z1)
+            return null; // Vacuum (BSE)
+
+        int i = (int) Math.floor((pos[0] - x0) / dx);
+        int j = (int) Math.floor((pos[1] - y0) / dy);
+        int k = (int) Math.floor((pos[2] - z0) / dz);
+
+        return getRegion(i, j, k);
+    }
+
+
+
+    /**
+     * Finds the end of a step starting inside a voxel of the specified label.
+     * The voxels along the step are traversed (3D digital differential
+     * analyzer) until one of a different label, or the end of the grid, is
+     * reached. <code>pos1</code> is then moved to this boundary.
+     *
+     * @param label
+     *            material label of the current sub-region
+     * @param pos0
+     *            start of the step
+     * @param pos1
+     *            end of the step (modified)
+     * @return region at the end of the step
+     */
+    protected RegionBase findEndOfStep(int label, double[] pos0,
+            double[] pos1) {
+        double vx = pos1[0] - pos0[0];
+        double vy = pos1[1] - pos0[1];
+        double vz = pos1[2] - pos0[2];
+
+        int i = getCellIndex(pos0[0], x0, dx, vx);
+        int j = getCellIndex(pos0[1], y0, dy, vy);
+        int k = getCellIndex(pos0[2], z0, dz, vz);
+
+        double tx, ty, tz, t = 0.0;
+        RegionBase region = getRegion(i, j, k);
+        while (region == phases.get(label)) {
+            // Parametric distance to the exit face along each axis
+            tx = Double.POSITIVE_INFINITY;
+            if (vx > 0.0)
+                tx = (x0 + (i + 1) * dx - pos0[0]) / vx;
+            else if (vx < 0.0)
+                tx = (x0 + i * dx - pos0[0]) / vx;
+
+            ty = Double.POSITIVE_INFINITY;
+            if (vy > 0.0)
+                ty = (y0 + (j + 1) * dy - pos0[1]) / vy;
+            else if (vy < 0.0)
+                ty = (y0 + j * dy - pos0[1]) / vy;
+
+            tz = Double.POSITIVE_INFINITY;
+            if (vz > 0.0)
+                tz = (z0 + (k + 1) * dz - pos0[2]) / vz;
+            else if (vz < 0.0)
+                tz = (z0 + k * dz - pos0[2]) / vz;
+
+            t = Math.min(tx, Math.min(ty, tz));
+            if (t >= 1.0)
+                return region; // Step ends inside the sub-region
+            if (t < 0.0)
+                t = 0.0;
+
+            // Step to the neighbouring voxel(s)
+            if (tx == t)
+                i += vx > 0.0 ? 1 : -1;
+            if (ty == t)
+                j += vy > 0.0 ? 1 : -1;
+            if (tz == t)
+                k += vz > 0.0 ? 1 : -1;
+
+            region = getRegion(i, j, k);
+        }
+
+        // Update pos1
+        pos1[0] = pos0[0] + t * vx;
+        pos1[1] = pos0[1] + t * vy;
+        pos1[2] = pos0[2] + t * vz;
+
+        return region;
+    }
+
+
+
+    /**
+     * Returns the parametric distance along a step where it first enters or
+     * exits the voxels of a sub-region. The regions along the step are
+     * followed with their <code>findEndOfStep</code> until the step crosses
+     * the boundary of the sub-region.
+     *
+     * @param phase
+     *            sub-region
+     * @param pos0
+     *            start of the step
+     * @param pos1
+     *            end of the step
+     * @return parametric distance, or {@link Double#MAX_VALUE} if the step
+     *         does not cross the boundary of the sub-region
+     */
+    protected double getFirstIntersection(Phase phase, double[] pos0,
+            double[] pos1) {
+        double vx = pos1[0] - pos0[0];
+        double vy = pos1[1] - pos0[1];
+        double vz = pos1[2] - pos0[2];
+
+        // Axis of the largest displacement, to compute the distance
+        int axis = 0;
+        double v = vx;
+        if (Math.abs(vy) > Math.abs(v)) {
+            axis = 1;
+            v = vy;
+        }
+        if (Math.abs(vz) > Math.abs(v)) {
+            axis = 2;
+            v = vz;
+        }
+        if (v == 0.0)
+            return Double.MAX_VALUE;
+
+        RegionBase region =
+                getRegion(getCellIndex(pos0[0], x0, dx, vx),
+                        getCellIndex(pos0[1], y0, dy, vy),
+                        getCellIndex(pos0[2], z0, dz, vz));
+        boolean inside = region == phase;
+
+        double[] start = pos0.clone();
+        double[] end = pos1.clone();
+        RegionBase next;
+        int maxCrossings = nx + ny + nz + 2;
+        for (int n = 0; region != null && n < maxCrossings; n++) {
+            next = region.findEndOfStep(start, end);
+            if (next == region)
+                break; // Step ends in the region
+
+            if ((next == phase) != inside)
+                return (end[axis] - pos0[axis]) / v;
+
+            region = next;
+            start = end;
+            end = pos1.clone();
+        }
+
+        return Double.MAX_VALUE;
+    }
+
+
+
+    @Override
+    public RegionBase findEndOfStep(double[] pos0, double[] pos1) {
+        // Step starting in the surrounding material
+        double vx = pos1[0] - pos0[0];
+        double vy = pos1[1] - pos0[1];
+        double vz = pos1[2] - pos0[2];
+
+        // Entry in the grid (slab method)
+        double tEnter = 0.0;
+        double tExit = 1.0;
+        double ta, tb;
+
+        if (vx != 0.0) {
+            ta = (x0 - pos0[0]) / vx;
+            tb = (x1 - pos0[0]) / vx;
+            tEnter = Math.max(tEnter, Math.min(ta, tb));
+            tExit = Math.min(tExit, Math.max(ta, tb));
+        } else if (pos0[0] < x0 || pos0[0] > x1) {
+            tExit = -1.0;
+        }
+
+        if (vy != 0.0) {
+            ta = (y0 - pos0[1]) / vy;
+            tb = (y1 - pos0[1]) / vy;
+            tEnter = Math.max(tEnter, Math.min(ta, tb));
+            tExit = Math.min(tExit, Math.max(ta, tb));
+        } else if (pos0[1] < y0 || pos0[1] > y1) {
+            tExit = -1.0;
+        }
+
+        if (vz != 0.0) {
+            ta = (z0 - pos0[2]) / vz;
+            tb = (z1 - pos0[2]) / vz;
+            tEnter = Math.max(tEnter, Math.min(ta, tb));
+            tExit = Math.min(tExit, Math.max(ta, tb));
+        } else if (pos0[2] < z0 || pos0[2] > z1) {
+            tExit = -1.0;
+        }
+
+        if (tEnter <= tExit) {
+            pos1[0] = pos0[0] + tEnter * vx;
+            pos1[1] = pos0[1] + tEnter * vy;
+            pos1[2] = pos0[2] + tEnter * vz;
+
+            int i = (int) Math.floor((pos1[0] - x0) / dx);
+            int j = (int) Math.floor((pos1[1] - y0) / dy);
+            int k = (int) Math.floor((pos1[2] - z0) / dz);
+
+            // Correct round-off at the entry face
+            i = Math.min(Math.max(i, 0), nx - 1);
+            j = Math.min(Math.max(j, 0), ny - 1);
+            k = Math.min(Math.max(k, 0), nz - 1);
+
+            return getRegion(i, j, k);
+        }
+
+        // Exit to vacuum through the top surface
+        if (vz > 0.0) {
+            double t = (z1 - pos0[2]) / vz;
+            if (t <= 1.0) {
+                pos1[0] = pos0[0] + t * vx;
+                pos1[1] = pos0[1] + t * vy;
+                pos1[2] = z1;
+                return null; // Vacuum (BSE)
+            }
+        }
+
+        return this;
+    }
+
+}
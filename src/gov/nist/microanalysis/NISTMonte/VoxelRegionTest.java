@@ -0,0 +1,199 @@
+package gov.nist.microanalysis.NISTMonte;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import gov.nist.microanalysis.EPQLibrary.Material;
+import gov.nist.microanalysis.NISTMonte.MonteCarloSS.Region;
+import gov.nist.microanalysis.NISTMonte.MonteCarloSS.RegionBase;
+import gov.nist.microanalysis.NISTMonte.MonteCarloSS.Shape;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class VoxelRegionTest {
+
+    private VoxelRegion region;
+
+    private int label;
+
+
+
+    @Before
+    public void setUp() throws Exception {
+        region = new VoxelRegion(-1.0, 1.0, 4, -1.0, 1.0, 2, -2.0, 0.0, 2);
+
+        // Voxels with x > 0.5 are of another material
+        label = region.addMaterial(new BlackBodyMaterialModel());
+        for (int j = 0; j < 2; j++)
+            for (int k = 0; k < 2; k++)
+                region.setLabel(3, j, k, label);
+    }
+
+
+
+    @Test
+    public void testAddMaterial() throws Exception {
+        assertEquals(2, region.getMaterialCount());
+        assertEquals(0, region.addMaterial(Material.Null));
+        assertEquals(label, region.addMaterial(region.getMaterialModel(label)));
+        assertEquals(2, region.getSubRegions().size());
+    }
+
+
+
+    @Test
+    public void testAddMaterialShortLabels() throws Exception {
+        int last = 0;
+        for (int n = 0; n < 300; n++)
+            last = region.addMaterial(new BlackBodyMaterialModel());
+
+        assertEquals(301, last);
+        assertEquals(label, region.getLabel(3, 1, 1));
+        assertEquals(0, region.getLabel(0, 1, 1));
+
+        region.setLabel(0, 1, 1, last);
+        assertEquals(last, region.getLabel(0, 1, 1));
+    }
+
+
+
+    @Test
+    public void testCopy() {
+        Region chamber = new Region(null, null, null);
+        IMaterialScatterModel model = new BlackBodyMaterialModel();
+        Map<IMaterialScatterModel, IMaterialScatterModel> models =
+                new IdentityHashMap<>();
+        models.put(region.getMaterialModel(label), model);
+
+        VoxelRegion copy = (VoxelRegion) region.copy(chamber, models);
+
+        assertEquals(1, chamber.getSubRegions().size());
+        assertSame(copy, chamber.getSubRegions().get(0));
+        assertEquals(2, copy.getMaterialCount());
+        assertSame(region.getMaterialModel(0), copy.getMaterialModel(0));
+        assertSame(model, copy.getMaterialModel(label));
+        assertEquals(label, copy.getLabel(3, 1, 1));
+
+        // Labels are copied on write
+        copy.setLabel(0, 0, 0, label);
+        assertEquals(label, copy.getLabel(0, 0, 0));
+        assertEquals(0, region.getLabel(0, 0, 0));
+
+        region.setLabel(1, 0, 0, label);
+        assertEquals(label, region.getLabel(1, 0, 0));
+        assertEquals(0, copy.getLabel(1, 0, 0));
+    }
+
+
+
+    @Test
+    public void testContainingSubRegion() {
+        assertSame(region.phases.get(0),
+                region.containingSubRegion(new double[] { -0.5, -0.5, -0.5 }));
+        assertSame(region.phases.get(label),
+                region.containingSubRegion(new double[] { 0.75, 0.5, -1.5 }));
+        assertSame(region,
+                region.containingSubRegion(new double[] { 5.0, 0.0, -0.5 }));
+        assertNull(region.containingSubRegion(new double[] { 0.0, 0.0, 1.0 }));
+    }
+
+
+
+    @Test
+    public void testFindEndOfStepSameMaterial() {
+        // Crosses three voxel faces of the same material
+        double[] pos0 = new double[] { -0.9, -0.5, -0.5 };
+        double[] pos1 = new double[] { 0.25, -0.5, -0.5 };
+        RegionBase next = region.phases.get(0).findEndOfStep(pos0, pos1);
+
+        assertSame(region.phases.get(0), next);
+        assertArrayEquals(new double[] { 0.25, -0.5, -0.5 }, pos1, 1e-9);
+    }
+
+
+
+    @Test
+    public void testFindEndOfStepOtherMaterial() {
+        double[] pos0 = new double[] { -0.9, -0.5, -0.5 };
+        double[] pos1 = new double[] { 0.9, -0.5, -0.5 };
+        RegionBase next = region.phases.get(0).findEndOfStep(pos0, pos1);
+
+        assertSame(region.phases.get(label), next);
+        assertArrayEquals(new double[] { 0.5, -0.5, -0.5 }, pos1, 1e-9);
+
+        // Continue from the face
+        pos0 = pos1.clone();
+        pos1 = new double[] { 2.0, -0.5, -0.5 };
+        next = next.findEndOfStep(pos0, pos1);
+
+        assertSame(region, next);
+        assertArrayEquals(new double[] { 1.0, -0.5, -0.5 }, pos1, 1e-9);
+    }
+
+
+
+    @Test
+    public void testFindEndOfStepVacuum() {
+        double[] pos0 = new double[] { -0.5, -0.5, -1.5 };
+        double[] pos1 = new double[] { -0.5, -0.5, 1.0 };
+        RegionBase next = region.phases.get(0).findEndOfStep(pos0, pos1);
+
+        assertNull(next);
+        assertArrayEquals(new double[] { -0.5, -0.5, 0.0 }, pos1, 1e-9);
+    }
+
+
+
+    @Test
+    public void testFindEndOfStepSurroundingEnter() {
+        double[] pos0 = new double[] { 3.0, -0.5, -0.5 };
+        double[] pos1 = new double[] { 0.0, -0.5, -0.5 };
+        RegionBase next = region.findEndOfStep(pos0, pos1);
+
+        assertSame(region.phases.get(label), next);
+        assertArrayEquals(new double[] { 1.0, -0.5, -0.5 }, pos1, 1e-9);
+    }
+
+
+
+    @Test
+    public void testPhaseShape() {
+        Shape shape = region.phases.get(0).getShape();
+        Shape other = region.phases.get(label).getShape();
+        assertNotNull(shape);
+        assertNotNull(other);
+
+        assertTrue(shape.contains(new double[] { -0.5, -0.5, -0.5 }));
+        assertFalse(shape.contains(new double[] { 0.75, 0.5, -1.5 }));
+        assertTrue(other.contains(new double[] { 0.75, 0.5, -1.5 }));
+    }
+
+
+
+    @Test
+    public void testPhaseShapeGetFirstIntersection() {
+        double[] pos0 = new double[] { -0.9, -0.5, -0.5 };
+        double[] pos1 = new double[] { 0.9, -0.5, -0.5 };
+
+        // Exit of the first phase, entry in the other phase
+        Shape shape = region.phases.get(0).getShape();
+        assertEquals(1.4 / 1.8, shape.getFirstIntersection(pos0, pos1), 1e-9);
+        Shape other = region.phases.get(label).getShape();
+        assertEquals(1.4 / 1.8, other.getFirstIntersection(pos0, pos1), 1e-9);
+
+        // Step inside the first phase
+        pos1 = new double[] { 0.25, -0.5, -0.5 };
+        assertEquals(Double.MAX_VALUE, shape.getFirstIntersection(pos0, pos1),
+                0.0);
+        assertArrayEquals(new double[] { 0.25, -0.5, -0.5 }, pos1, 0.0);
+    }
+
+}
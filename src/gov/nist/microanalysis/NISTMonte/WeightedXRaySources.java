@@ -0,0 +1,121 @@
+package gov.nist.microanalysis.NISTMonte;
+
+import java.util.Arrays;
+
+/**
+ * Sources (x-ray transports or generations) registered to an accumulator,
+ * with the weight of their photons by transition index. The sources are few,
+ * so they are found by an identity search rather than a hash.
+ *
+ * @author ppinard
+ */
+class WeightedXRaySources {
+
+    /** Indices of the accumulated transitions. */
+    private final XRayTransitionIndex index;
+
+    /** Registered sources. */
+    private Object[] sources = new Object[0];
+
+    /** Weights by transition index of each registered source. */
+    private double[][] weights = new double[0][];
+
+
+
+    /**
+     * Creates a new <code>WeightedXRaySources</code>.
+     *
+     * @param index
+     *            indices of the accumulated transitions
+     */
+    public WeightedXRaySources(XRayTransitionIndex index) {
+        if (index == null)
+            throw new NullPointerException("index == null");
+        this.index = index;
+    }
+
+
+
+    /**
+     * Registers a source whose photons all have a weight of 1.
+     *
+     * @param source
+     *            x-ray transport or generation
+     */
+    public void add(Object source) {
+        double[] w = new double[index.size()];
+        Arrays.fill(w, 1.0);
+        add(source, w);
+    }
+
+
+
+    /**
+     * Registers a copy of a split fluorescence generation (or of its
+     * transport).
+     *
+     * @param source
+     *            x-ray transport or generation
+     * @param splitting
+     *            photon splitting
+     * @param copy
+     *            index of the copy
+     */
+    public void add(Object source, PhotonSplitting splitting, int copy) {
+        double[] w = new double[index.size()];
+        for (int t = 0; t < w.length; t++)
+            w[t] = splitting.getWeight(copy, index.get(t));
+        add(source, w);
+    }
+
+
+
+    /**
+     * Registers a source with the weights of its photons.
+     *
+     * @param source
+     *            x-ray transport or generation
+     * @param w
+     *            weights by transition index
+     */
+    private void add(Object source, double[] w) {
+        if (source == null)
+            throw new NullPointerException("source == null");
+
+        int n = sources.length;
+        sources = Arrays.copyOf(sources, n + 1);
+        weights = Arrays.copyOf(weights, n + 1);
+        sources[n] = source;
+        weights[n] = w;
+    }
+
+
+
+    /**
+     * Returns the weights of the photons of a source.
+     *
+     * @param source
+     *            source of an event
+     * @return weights by transition index, or <code>null</code> if the source
+     *         is not registered
+     */
+    public double[] find(Object source) {
+        for (int i = 0; i < sources.length; i++) {
+            if (sources[i] == source)
+                return weights[i];
+        }
+        return null;
+    }
+
+
+
+    /**
+     * Returns the number of registered sources.
+     *
+     * @return number of sources
+     */
+    public int size() {
+        return sources.length;
+    }
+
+}
@@ -0,0 +1,122 @@
+package gov.nist.microanalysis.NISTMonte;
+
+import gov.nist.microanalysis.EPQLibrary.XRayTransition;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Fixed set of x-ray transitions mapped to dense indices, so that the
+ * quantities of each transition can be stored in primitive arrays. The index
+ * of a transition is found from a table by atomic number and transition index,
+ * without any hashing.
+ *
+ * @author ppinard
+ */
+public class XRayTransitionIndex {
+
+    /** Transitions by index, in their natural order. */
+    private final XRayTransition[] transitions;
+
+    /** Index by atomic number then transition index, -1 if absent. */
+    private final int[][] indexes;
+
+
+
+    /**
+     * Creates a new <code>XRayTransitionIndex</code>.
+     *
+     * @param transitions
+     *            x-ray transitions
+     */
+    public XRayTransitionIndex(Collection<XRayTransition> transitions) {
+        if (transitions == null)
+            throw new NullPointerException("transitions == null");
+
+        this.transitions =
+                new TreeSet<>(transitions).toArray(new XRayTransition[0]);
+
+        int maxZ = 0;
+        for (XRayTransition xrt : this.transitions)
+            maxZ = Math.max(maxZ, xrt.getElement().getAtomicNumber());
+        indexes = new int[maxZ + 1][];
+
+        int z, t;
+        int[] row;
+        for (int i = 0; i < this.transitions.length; i++) {
+            z = this.transitions[i].getElement().getAtomicNumber();
+            t = this.transitions[i].getTransitionIndex();
+
+            row = indexes[z];
+            if (row == null || row.length <= t) {
+                int start = row == null ? 0 : row.length;
+                row = row == null ? new int[t + 1] : Arrays.copyOf(row, t + 1);
+                Arrays.fill(row, start, t + 1, -1);
+                indexes[z] = row;
+            }
+            row[t] = i;
+        }
+    }
+
+
+
+    /**
+     * Returns the index of a transition.
+     *
+     * @param xrt
+     *            x-ray transition (may be <code>null</code>)
+     * @return index, or -1 if the transition is not in the set
+     */
+    public int indexOf(XRayTransition xrt) {
+        if (xrt == null)
+            return -1;
+
+        int z = xrt.getElement().getAtomicNumber();
+        if (z >= indexes.length || indexes[z] == null)
+            return -1;
+
+        int t = xrt.getTransitionIndex();
+        if (t < 0 || t >= indexes[z].length)
+            return -1;
+        return indexes[z][t];
+    }
+
+
+
+    /**
+     * Returns the transition at an index.
+     *
+     * @param index
+     *            index
+     * @return x-ray transition
+     */
+    public XRayTransition get(int index) {
+        return transitions[index];
+    }
+
+
+
+    /**
+     * Returns the number of transitions.
+     *
+     * @return number of transitions
+     */
+    public int size() {
+        return transitions.length;
+    }
+
+
+
+    /**
+     * Returns the transitions, in the order of their indices.
+     *
+     * @return x-ray transitions
+     */
+    public List<XRayTransition> getTransitions() {
+        return Collections.unmodifiableList(Arrays.asList(transitions));
+    }
+
+}
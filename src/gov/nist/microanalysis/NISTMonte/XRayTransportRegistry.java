@@ -0,0 +1,271 @@
+package gov.nist.microanalysis.NISTMonte;
+
+import gov.nist.microanalysis.EPQLibrary.EPQException;
+import gov.nist.microanalysis.EPQLibrary.XRayTransition;
+import gov.nist.microanalysis.NISTMonte.Gen3.BaseXRayGeneration3;
+import gov.nist.microanalysis.NISTMonte.Gen3.XRayTransport3;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Registry of the x-ray transports and accumulators shared by the photon
+ * detectors of a simulation. A transport is created once per x-ray generation
+ * and detector position: two positions are the same if they are closer than a
+ * tolerance, so that detectors at numerically near-identical positions (e.g.
+ * calculated from angles) share their transport. Likewise, an accumulator is
+ * created once per transport and set of x-ray transitions.
+ *
+ * @author ppinard
+ */
+public class XRayTransportRegistry {
+
+    /** Default tolerance on the detector positions (in meters). */
+    public static final double DEFAULT_TOLERANCE = 1e-9;
+
+    /** Transport of a generation towards a detector position. */
+    private static class TransportEntry {
+
+        public final BaseXRayGeneration3 generation;
+
+        public final double[] position;
+
+        public final XRayTransport3 transport;
+
+
+
+        public TransportEntry(BaseXRayGeneration3 generation,
+                double[] position, XRayTransport3 transport) {
+            this.generation = generation;
+            this.position = position;
+            this.transport = transport;
+        }
+    }
+
+    /** Monte Carlo simulator. */
+    private final MonteCarloSS mcss;
+
+    /** Tolerance on the detector positions (in meters). */
+    private final double tolerance;
+
+    /** Created transports. */
+    private final List<TransportEntry> transports = new ArrayList<>();
+
+    /** Created accumulators by transport and transitions. */
+    private final Map<XRayTransport3, Map<Set<XRayTransition>, IndexedXRayAccumulator>> accumulators =
+            new IdentityHashMap<>();
+
+    /** Number of created accumulators. */
+    private int accumulatorCount;
+
+    /** Electron splitting weighting the x-rays, <code>null</code> if none. */
+    private ElectronSplitting electronSplitting = null;
+
+
+
+    /**
+     * Creates a new <code>XRayTransportRegistry</code> with the
+     * {@link #DEFAULT_TOLERANCE}.
+     *
+     * @param mcss
+     *            Monte Carlo simulator
+     */
+    public XRayTransportRegistry(MonteCarloSS mcss) {
+        this(mcss, DEFAULT_TOLERANCE);
+    }
+
+
+
+    /**
+     * Creates a new <code>XRayTransportRegistry</code>.
+     *
+     * @param mcss
+     *            Monte Carlo simulator
+     * @param tolerance
+     *            maximum distance between two positions considered the same
+     *            (in meters)
+     */
+    public XRayTransportRegistry(MonteCarloSS mcss, double tolerance) {
+        if (mcss == null)
+            throw new NullPointerException("mcss == null");
+        if (!(tolerance >= 0.0))
+            throw new IllegalArgumentException("tolerance < 0");
+        this.mcss = mcss;
+        this.tolerance = tolerance;
+    }
+
+
+
+    /**
+     * Sets the electron splitting applied to the accumulators created from
+     * now on.
+     *
+     * @param splitting
+     *            electron splitting (<code>null</code> for none)
+     */
+    public void setElectronSplitting(ElectronSplitting splitting) {
+        electronSplitting = splitting;
+    }
+
+
+
+    /**
+     * Returns whether two positions are closer than the tolerance.
+     *
+     * @param pos0
+     *            first position
+     * @param pos1
+     *            second position
+     * @return <code>true</code> if the positions are the same
+     */
+    private boolean isSamePosition(double[] pos0, double[] pos1) {
+        double dx = pos0[0] - pos1[0];
+        double dy = pos0[1] - pos1[1];
+        double dz = pos0[2] - pos1[2];
+        return dx * dx + dy * dy + dz * dz <= tolerance * tolerance;
+    }
+
+
+
+    /**
+     * Returns the transport of a generation towards a detector position,
+     * creating it if no transport of this generation exists at the same
+     * position.
+     *
+     * @param generation
+     *            x-ray generation (may be <code>null</code>)
+     * @param position
+     *            detector position (in meters)
+     * @return x-ray transport, or <code>null</code> if the generation is
+     *         <code>null</code>
+     * @throws EPQException
+     *             if the transport cannot be created
+     */
+    public XRayTransport3 getTransport(BaseXRayGeneration3 generation,
+            double[] position) throws EPQException {
+        if (position == null)
+            throw new NullPointerException("position == null");
+        if (generation == null)
+            return null;
+
+        for (TransportEntry entry : transports) {
+            if (entry.generation == generation
+                    && isSamePosition(entry.position, position))
+                return entry.transport;
+        }
+
+        XRayTransport3 transport =
+                XRayTransport3.create(mcss, position, generation);
+        transports.add(new TransportEntry(generation, position.clone(),
+                transport));
+        return transport;
+    }
+
+
+
+    /**
+     * Returns the accumulator of x-ray transitions listening to a transport,
+     * creating it if none exists for these transitions. A created accumulator
+     * is also registered to the Monte Carlo simulator to tally the intensities
+     * per shower.
+     *
+     * @param transport
+     *            x-ray transport
+     * @param transitions
+     *            x-ray transitions
+     * @return x-ray accumulator
+     */
+    public IndexedXRayAccumulator getAccumulator(XRayTransport3 transport,
+            Collection<XRayTransition> transitions) {
+        if (transport == null)
+            throw new NullPointerException("transport == null");
+        return getAccumulator(Collections.singletonList(transport), null,
+                transitions);
+    }
+
+
+
+    /**
+     * Returns the accumulator of x-ray transitions listening to the
+     * transports of the copies of a split fluorescence generation, creating
+     * it if none exists for these transitions. The accumulators are shared by
+     * the transport of the first copy.
+     *
+     * @param transports
+     *            x-ray transports, one per copy
+     * @param splitting
+     *            photon splitting (may be <code>null</code> if there is a
+     *            single transport)
+     * @param transitions
+     *            x-ray transitions
+     * @return x-ray accumulator
+     */
+    public IndexedXRayAccumulator getAccumulator(
+            List<XRayTransport3> transports, PhotonSplitting splitting,
+            Collection<XRayTransition> transitions) {
+        if (transports == null)
+            throw new NullPointerException("transports == null");
+        if (transports.isEmpty())
+            throw new IllegalArgumentException("No transport");
+        if (transports.size() > 1 && splitting == null)
+            throw new NullPointerException("splitting == null");
+        if (transitions == null)
+            throw new NullPointerException("transitions == null");
+
+        XRayTransport3 transport = transports.get(0);
+        Map<Set<XRayTransition>, IndexedXRayAccumulator> map =
+                accumulators.get(transport);
+        if (map == null) {
+            map = new HashMap<>();
+            accumulators.put(transport, map);
+        }
+
+        Set<XRayTransition> key = new HashSet<>(transitions);
+        IndexedXRayAccumulator accumulator = map.get(key);
+        if (accumulator == null) {
+            accumulator = new IndexedXRayAccumulator(key);
+            accumulator.setElectronSplitting(electronSplitting);
+            if (transports.size() == 1) {
+                accumulator.addSource(transport);
+            } else {
+                for (int i = 0; i < transports.size(); i++)
+                    accumulator.addSource(transports.get(i), splitting, i);
+            }
+            mcss.addActionListener(accumulator);
+            map.put(key, accumulator);
+            accumulatorCount++;
+        }
+
+        return accumulator;
+    }
+
+
+
+    /**
+     * Returns the number of created transports.
+     *
+     * @return number of transports
+     */
+    public int getTransportCount() {
+        return transports.size();
+    }
+
+
+
+    /**
+     * Returns the number of created accumulators.
+     *
+     * @return number of accumulators
+     */
+    public int getAccumulatorCount() {
+        return accumulatorCount;
+    }
+
+}
@@ -0,0 +1,91 @@
+package gov.nist.microanalysis.NISTMonte;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import gov.nist.microanalysis.EPQLibrary.Element;
+import gov.nist.microanalysis.EPQLibrary.MaterialFactory;
+import gov.nist.microanalysis.EPQLibrary.ToSI;
+import gov.nist.microanalysis.EPQLibrary.XRayTransition;
+import gov.nist.microanalysis.NISTMonte.Gen3.CharacteristicXRayGeneration3;
+import gov.nist.microanalysis.NISTMonte.Gen3.XRayTransport3;
+import gov.nist.microanalysis.Utility.Math2;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class XRayTransportRegistryTest {
+
+    private CharacteristicXRayGeneration3 characGen;
+
+    private XRayTransportRegistry registry;
+
+    private double[] position;
+
+
+
+    @Before
+    public void setUp() throws Exception {
+        MonteCarloSS mcss = new MonteCarloSS();
+        mcss.setBeamEnergy(ToSI.keV(20.0));
+        new IndexedRegion(mcss.getChamber(), new BasicMaterialModel(
+                MaterialFactory.createPureElement(Element.Si)),
+                MultiPlaneShape.createSubstrate(Math2.Z_AXIS, Math2.ORIGIN_3D),
+                1);
+
+        characGen = CharacteristicXRayGeneration3.create(mcss);
+        registry = new XRayTransportRegistry(mcss);
+
+        double angle = Math.toRadians(40.0);
+        position =
+                Math2.multiply(0.999 * MonteCarloSS.ChamberRadius,
+                        new double[] { Math.cos(angle), 0.0, Math.sin(angle) });
+    }
+
+
+
+    @Test
+    public void testGetTransport() throws Exception {
+        XRayTransport3 transport = registry.getTransport(characGen, position);
+
+        // Numerically near-identical position
+        double[] near = position.clone();
+        near[0] += 1e-15;
+        assertSame(transport, registry.getTransport(characGen, near));
+        assertEquals(1, registry.getTransportCount());
+
+        double[] other = new double[] { -position[0], 0.0, position[2] };
+        assertNotSame(transport, registry.getTransport(characGen, other));
+        assertEquals(2, registry.getTransportCount());
+
+        assertNull(registry.getTransport(null, position));
+        assertEquals(2, registry.getTransportCount());
+    }
+
+
+
+    @Test
+    public void testGetAccumulator() throws Exception {
+        XRayTransport3 transport = registry.getTransport(characGen, position);
+
+        XRayTransition ka = new XRayTransition(Element.Si, XRayTransition.KA1);
+        XRayTransition kb = new XRayTransition(Element.Si, XRayTransition.KB1);
+        Collection<XRayTransition> transitions = Arrays.asList(ka, kb);
+
+        IndexedXRayAccumulator accumulator =
+                registry.getAccumulator(transport, transitions);
+        assertSame(accumulator,
+                registry.getAccumulator(transport, Arrays.asList(kb, ka)));
+        assertEquals(1, registry.getAccumulatorCount());
+
+        assertNotSame(accumulator,
+                registry.getAccumulator(transport, Collections.singleton(ka)));
+        assertEquals(2, registry.getAccumulatorCount());
+    }
+
+}
@@ -0,0 +1,134 @@
+package pymontecarlo.fileformat;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.jdom2.Element;
+import org.jdom2.output.Format;
+import org.jdom2.output.XMLOutputter;
+
+/**
+ * Cache of objects extracted from XML elements, so that identical parts of
+ * options (e.g. materials or models) are only extracted once when several
+ * simulations are run in the same JVM. The objects are keyed by a hash of the
+ * content of their XML element. When the cache is full, the least recently
+ * used object is evicted. The cached objects must not be modified after they
+ * are put in the cache.
+ *
+ * @author ppinard
+ * @param <V>
+ *            type of cached objects
+ */
+public class ExtractorCache<V> {
+
+    /** Cached objects in access order. */
+    private final Map<String, V> entries;
+
+
+
+    /**
+     * Creates a new <code>ExtractorCache</code>.
+     *
+     * @param capacity
+     *            maximum number of cached objects
+     */
+    public ExtractorCache(final int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("capacity < 1");
+
+        entries = new LinkedHashMap<String, V>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = 1L;
+
+
+
+            @Override
+            protected boolean removeEldestEntry(Entry<String, V> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+
+
+    /**
+     * Returns the key of a XML element, a SHA-256 hash of its compact
+     * serialization.
+     *
+     * @param element
+     *            XML element
+     * @return key
+     */
+    public static String hash(Element element) {
+        XMLOutputter outputter = new XMLOutputter(Format.getCompactFormat());
+        byte[] bytes =
+                outputter.outputString(element).getBytes(
+                        StandardCharsets.UTF_8);
+
+        byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        StringBuilder sb = new StringBuilder(digest.length * 2);
+        for (byte b : digest)
+            sb.append(String.format("%02x", b));
+        return sb.toString();
+    }
+
+
+
+    /**
+     * Returns the cached object of the specified key, or <code>null</code> if
+     * none is cached.
+     *
+     * @param key
+     *            key
+     * @return cached object or <code>null</code>
+     */
+    public synchronized V get(String key) {
+        return entries.get(key);
+    }
+
+
+
+    /**
+     * Caches an object.
+     *
+     * @param key
+     *            key
+     * @param value
+     *            object
+     */
+    public synchronized void put(String key, V value) {
+        if (value == null)
+            throw new NullPointerException("value == null");
+        entries.put(key, value);
+    }
+
+
+
+    /**
+     * Removes all cached objects.
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+
+
+    /**
+     * Returns the number of cached objects.
+     *
+     * @return number of cached objects
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+}
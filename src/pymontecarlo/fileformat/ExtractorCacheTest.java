@@ -0,0 +1,57 @@
+package pymontecarlo.fileformat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import org.jdom2.Element;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ExtractorCacheTest {
+
+    private ExtractorCache<String> cache;
+
+
+
+    @Before
+    public void setUp() throws Exception {
+        cache = new ExtractorCache<>(2);
+    }
+
+
+
+    @Test
+    public void testHash() {
+        Element element1 = new Element("material");
+        element1.setAttribute("density", "8.96");
+        Element element2 = new Element("material");
+        element2.setAttribute("density", "8.96");
+        Element element3 = new Element("material");
+        element3.setAttribute("density", "2.7");
+
+        assertEquals(ExtractorCache.hash(element1),
+                ExtractorCache.hash(element2));
+        assertFalse(ExtractorCache.hash(element1).equals(
+                ExtractorCache.hash(element3)));
+    }
+
+
+
+    @Test
+    public void testGetPut() {
+        cache.put("a", "1");
+        cache.put("b", "2");
+        assertEquals("1", cache.get("a")); // a is now most recently used
+
+        cache.put("c", "3");
+        assertEquals(2, cache.size());
+        assertNull(cache.get("b"));
+        assertEquals("1", cache.get("a"));
+        assertEquals("3", cache.get("c"));
+
+        cache.clear();
+        assertEquals(0, cache.size());
+    }
+
+}
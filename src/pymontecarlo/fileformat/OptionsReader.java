@@ -0,0 +1,112 @@
+package pymontecarlo.fileformat;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.jdom2.Document;
+import org.jdom2.Element;
+import org.jdom2.JDOMException;
+import org.jdom2.input.StAXStreamBuilder;
+
+/**
+ * Reader of an options XML file. The file is read once in memory and parsed
+ * with a StAX stream reader. The original content is kept, so that it can be
+ * saved with the results without serializing the XML elements again. The base
+ * URI of the document is the options file, so that the paths referred in the
+ * options can be resolved against its directory.
+ *
+ * @author ppinard
+ */
+public class OptionsReader {
+
+    /** Factory of StAX stream readers. */
+    private static final XMLInputFactory factory = XMLInputFactory
+            .newInstance();
+
+    static {
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES,
+                false);
+    }
+
+    /** Root element of the options. */
+    private final Element rootElement;
+
+    /** Original content of the options file. */
+    private final String content;
+
+
+
+    /**
+     * Reads an options XML file.
+     *
+     * @param optionsFile
+     *            options XML file
+     * @throws IOException
+     *             if an error occurs while reading or parsing the file
+     */
+    public OptionsReader(File optionsFile) throws IOException {
+        if (optionsFile == null)
+            throw new NullPointerException("options file == null");
+
+        byte[] bytes = Files.readAllBytes(optionsFile.toPath());
+
+        String encoding;
+        try {
+            XMLStreamReader reader =
+                    factory.createXMLStreamReader(new ByteArrayInputStream(
+                            bytes));
+            try {
+                encoding = reader.getCharacterEncodingScheme();
+                if (encoding == null)
+                    encoding = reader.getEncoding();
+                Document document = new StAXStreamBuilder().build(reader);
+                document.setBaseURI(optionsFile.getAbsoluteFile().toURI()
+                        .toString());
+                rootElement = document.getRootElement();
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException | JDOMException e) {
+            throw new IOException(e);
+        }
+
+        Charset charset = StandardCharsets.UTF_8;
+        if (encoding != null && Charset.isSupported(encoding))
+            charset = Charset.forName(encoding);
+        String text = new String(bytes, charset);
+        if (text.startsWith("\uFEFF")) // Byte order mark
+            text = text.substring(1);
+        content = text;
+    }
+
+
+
+    /**
+     * Returns the root element of the options.
+     *
+     * @return root element
+     */
+    public Element getRootElement() {
+        return rootElement;
+    }
+
+
+
+    /**
+     * Returns the original content of the options file.
+     *
+     * @return content of the options file
+     */
+    public String getContent() {
+        return content;
+    }
+}
@@ -0,0 +1,51 @@
+package pymontecarlo.fileformat;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.jdom2.Element;
+import org.junit.Before;
+import org.junit.Test;
+
+import pymontecarlo.util.TestCase;
+
+public class OptionsReaderTest extends TestCase {
+
+    private static final String CONTENT =
+            "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                    + "<options name=\"sim\" uuid=\"abc\" version=\"6\">\n"
+                    + "  <beam><pencilBeam energy=\"15000.0\" /></beam>\n"
+                    + "</options>\n";
+
+    private File file;
+
+
+
+    @Before
+    public void setUp() throws Exception {
+        file = createTempFile("xml");
+        Files.write(file.toPath(), CONTENT.getBytes(StandardCharsets.UTF_8));
+    }
+
+
+
+    @Test
+    public void testOptionsReader() throws IOException {
+        OptionsReader reader = new OptionsReader(file);
+
+        Element root = reader.getRootElement();
+        assertEquals("options", root.getName());
+        assertEquals("abc", root.getAttributeValue("uuid"));
+        assertEquals("pencilBeam", root.getChild("beam").getChildren().get(0)
+                .getName());
+
+        assertEquals(CONTENT, reader.getContent());
+        assertEquals(file.getAbsoluteFile().toURI().toString(), root
+                .getDocument().getBaseURI());
+    }
+
+}
@@ -1,5 +1,12 @@
 package pymontecarlo.program;
 
+import java.io.File;
+import java.io.IOException;
+
+import pymontecarlo.util.hdf5.HDF5FileWriter;
+import pymontecarlo.util.hdf5.HDF5Group;
+import pymontecarlo.util.hdf5.HDF5SidecarFileWriter;
+
 /**
  * Runner for NistMonte.
  * 
@@ -10,6 +17,15 @@ public abstract class AbstractWorker implements Worker {
     /** Whether to run in quite mode. */
     private boolean quite = true;
 
+    /** Minimum number of elements of a dataset written in a sidecar file. */
+    private long sidecarThreshold = 0;
+
+    /** Maximum number of results waiting to be written in background. */
+    private int writeQueueDepth = 0;
+
+    /** Background writer of results (created on first write). */
+    private AsyncResultWriter asyncWriter = null;
+
 
 
     @Override
@@ -26,6 +42,95 @@ public abstract class AbstractWorker implements Worker {
 
 
 
+    @Override
+    public long getSidecarThreshold() {
+        return sidecarThreshold;
+    }
+
+
+
+    @Override
+    public void setSidecarThreshold(long threshold) {
+        if (threshold < 0)
+            throw new IllegalArgumentException("threshold < 0");
+        this.sidecarThreshold = threshold;
+    }
+
+
+
+    @Override
+    public int getWriteQueueDepth() {
+        return writeQueueDepth;
+    }
+
+
+
+    @Override
+    public void setWriteQueueDepth(int depth) {
+        if (depth < 0)
+            throw new IllegalArgumentException("depth < 0");
+        if (asyncWriter != null)
+            throw new IllegalStateException(
+                    "Results are being written, call flush() first");
+        this.writeQueueDepth = depth;
+    }
+
+
+
+    @Override
+    public void flush() throws IOException {
+        if (asyncWriter == null)
+            return;
+
+        try {
+            asyncWriter.close();
+        } finally {
+            asyncWriter = null;
+        }
+    }
+
+
+
+    /**
+     * Writes the results in a HDF5 file and, if enabled, its sidecar file. If
+     * the write queue is enabled, the results are written in background and
+     * this method returns as soon as they are queued. The results must then
+     * not be modified by the caller.
+     * 
+     * @param rootGroup
+     *            root group of the results
+     * @param resultsH5
+     *            location of the HDF5 file
+     * @throws IOException
+     *             if an error occurs while writing the results
+     */
+    protected void writeResults(final HDF5Group rootGroup,
+            final File resultsH5) throws IOException {
+        final long threshold = sidecarThreshold;
+        AsyncResultWriter.Task task = new AsyncResultWriter.Task() {
+
+            @Override
+            public void write() throws IOException {
+                if (threshold > 0)
+                    HDF5SidecarFileWriter.write(rootGroup, resultsH5, true,
+                            threshold);
+                else
+                    HDF5FileWriter.write(rootGroup, resultsH5, true);
+            }
+        };
+
+        if (writeQueueDepth == 0) {
+            task.write();
+            return;
+        }
+
+        if (asyncWriter == null)
+            asyncWriter = new AsyncResultWriter(writeQueueDepth);
+        asyncWriter.submit(task);
+    }
+
+
+
     /**
      * Report progress and status.
      * 
@@ -0,0 +1,166 @@
+package pymontecarlo.program;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes results on a background thread, so that the next simulation can
+ * start while the results of the previous one are compressed and written to
+ * disk. The number of pending writes is bounded: {@link #submit(Task)} blocks
+ * when the queue is full. Results are written in the order they are
+ * submitted.
+ *
+ * @author ppinard
+ */
+public class AsyncResultWriter {
+
+    /**
+     * Write operation executed on the background thread. The results must be
+     * a snapshot, i.e. they must not be modified after the task is submitted.
+     */
+    public interface Task {
+
+        /**
+         * Writes the results.
+         *
+         * @throws IOException
+         *             if an error occurs while writing the results
+         */
+        public void write() throws IOException;
+    }
+
+    /** Maximum number of pending writes. */
+    private final int depth;
+
+    /** Permits for the pending writes. */
+    private final Semaphore permits;
+
+    /** Background thread. */
+    private final ExecutorService executor;
+
+    /** First error that occurred while writing. */
+    private volatile IOException error = null;
+
+
+
+    /**
+     * Creates a new <code>AsyncResultWriter</code>.
+     *
+     * @param depth
+     *            maximum number of pending writes
+     */
+    public AsyncResultWriter(int depth) {
+        if (depth < 1)
+            throw new IllegalArgumentException("depth < 1");
+        this.depth = depth;
+        this.permits = new Semaphore(depth);
+
+        this.executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "AsyncResultWriter");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+
+
+    private void checkError() throws IOException {
+        IOException e = error;
+        if (e != null)
+            throw new IOException("Error while writing results", e);
+    }
+
+
+
+    /**
+     * Submits results to be written. The method blocks if the maximum number
+     * of pending writes is reached.
+     *
+     * @param task
+     *            write operation
+     * @throws IOException
+     *             if an error occurred while writing previous results
+     */
+    public void submit(final Task task) throws IOException {
+        if (task == null)
+            throw new NullPointerException("task == null");
+        checkError();
+
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+
+        executor.execute(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    if (error == null)
+                        task.write();
+                } catch (IOException e) {
+                    error = e;
+                } catch (RuntimeException e) {
+                    error = new IOException(e);
+                } finally {
+                    permits.release();
+                }
+            }
+        });
+    }
+
+
+
+    /**
+     * Waits until all pending results are written.
+     *
+     * @throws IOException
+     *             if an error occurred while writing results
+     */
+    public void flush() throws IOException {
+        try {
+            permits.acquire(depth);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+        permits.release(depth);
+
+        checkError();
+    }
+
+
+
+    /**
+     * Waits until all pending results are written and stops the background
+     * thread.
+     *
+     * @throws IOException
+     *             if an error occurred while writing results
+     */
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            executor.shutdown();
+        }
+
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+}
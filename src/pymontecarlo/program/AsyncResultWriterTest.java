@@ -0,0 +1,93 @@
+package pymontecarlo.program;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AsyncResultWriterTest {
+
+    private AsyncResultWriter writer;
+
+    private List<Integer> written;
+
+
+
+    private AsyncResultWriter.Task createTask(final int value) {
+        return new AsyncResultWriter.Task() {
+
+            @Override
+            public void write() throws IOException {
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                written.add(value);
+            }
+        };
+    }
+
+
+
+    @Before
+    public void setUp() throws Exception {
+        writer = new AsyncResultWriter(2);
+        written = Collections.synchronizedList(new ArrayList<Integer>());
+    }
+
+
+
+    @After
+    public void tearDown() throws Exception {
+        if (writer != null)
+            writer.close();
+    }
+
+
+
+    @Test
+    public void testSubmit() throws IOException {
+        for (int i = 0; i < 10; i++)
+            writer.submit(createTask(i));
+        writer.flush();
+
+        assertEquals(10, written.size());
+        for (int i = 0; i < 10; i++)
+            assertEquals(i, written.get(i).intValue());
+    }
+
+
+
+    @Test(expected = IOException.class)
+    public void testSubmitError() throws IOException {
+        writer.submit(new AsyncResultWriter.Task() {
+
+            @Override
+            public void write() throws IOException {
+                throw new IOException("Disk full");
+            }
+        });
+        writer.submit(createTask(1));
+
+        try {
+            writer.flush();
+        } finally {
+            assertEquals(0, written.size());
+
+            // Closing rethrows the write error
+            try {
+                writer.close();
+            } catch (IOException e) {
+            }
+            writer = null;
+        }
+    }
+
+}
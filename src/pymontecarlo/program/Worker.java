@@ -36,6 +36,61 @@ public interface Worker {
 
 
 
+    /**
+     * Returns the minimum number of elements for a numerical dataset of the
+     * results to be written in a raw sidecar file instead of the HDF5 file. A
+     * value of 0 means that all datasets are written in the HDF5 file.
+     * 
+     * @return minimum number of elements or 0 if disabled
+     */
+    public long getSidecarThreshold();
+
+
+
+    /**
+     * Sets the minimum number of elements for a numerical dataset of the
+     * results to be written in a raw sidecar file instead of the HDF5 file.
+     * 
+     * @param threshold
+     *            minimum number of elements or 0 to disable
+     */
+    public void setSidecarThreshold(long threshold);
+
+
+
+    /**
+     * Returns the maximum number of results waiting to be written in
+     * background. A value of 0 means that the results are written before
+     * {@link #run(File, File)} returns.
+     * 
+     * @return maximum number of pending writes or 0 if disabled
+     */
+    public int getWriteQueueDepth();
+
+
+
+    /**
+     * Sets the maximum number of results waiting to be written in background.
+     * When the queue is full, {@link #run(File, File)} waits until a write is
+     * completed. Call {@link #flush()} to wait for all pending writes.
+     * 
+     * @param depth
+     *            maximum number of pending writes or 0 to disable
+     */
+    public void setWriteQueueDepth(int depth);
+
+
+
+    /**
+     * Waits until the results of all previous runs are written.
+     * 
+     * @throws IOException
+     *             if an error occurred while writing results
+     */
+    public void flush() throws IOException;
+
+
+
     /**
      * Runs a simulation and saves the results
      * 
@@ -12,16 +12,12 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
 
-import org.jdom2.output.Format;
-import org.jdom2.output.XMLOutputter;
 import org.jdom2.Element;
-import org.jdom2.JDOMException;
-import org.jdom2.input.SAXBuilder;
 
+import pymontecarlo.fileformat.OptionsReader;
 import pymontecarlo.program.AbstractWorker;
 import pymontecarlo.program._analytical.fileformat.options.OptionsExtractor;
 import pymontecarlo.program._analytical.options.detector.Detector;
-import pymontecarlo.util.hdf5.HDF5FileWriter;
 import pymontecarlo.util.hdf5.HDF5Group;
 
 /**
@@ -48,13 +44,8 @@ public abstract class AbstractAnalyticalWorker extends AbstractWorker {
         // Extract from options XML file
         report(0.0, "Loading options file");
 
-        SAXBuilder builder = new SAXBuilder();
-        Element rootElement;
-        try {
-            rootElement = builder.build(optionsFile).getRootElement();
-        } catch (JDOMException e) {
-            throw new IOException(e);
-        }
+        OptionsReader reader = new OptionsReader(optionsFile);
+        Element rootElement = reader.getRootElement();
 
         OptionsExtractor extractor = new OptionsExtractor();
         extractor.extract(rootElement);
@@ -85,9 +76,10 @@ public abstract class AbstractAnalyticalWorker extends AbstractWorker {
         // Save results
         report(1.0, "Saving results");
         HDF5Group rootGroup =
-                createHDF5Group(props, detectors, rootElement, name);
+                createHDF5Group(props, detectors, rootElement,
+                        reader.getContent(), name);
         File resultsH5 = new File(resultsDir, name + ".h5");
-        HDF5FileWriter.write(rootGroup, resultsH5, true);
+        writeResults(rootGroup, resultsH5);
         report(1.0, "Complete");
     }
 
@@ -95,7 +87,8 @@ public abstract class AbstractAnalyticalWorker extends AbstractWorker {
 
     private HDF5Group createHDF5Group(SpectrumProperties props,
             Map<String, Detector> detectors,
-            Element rootElement, String name) throws IOException {
+            Element rootElement, String optionsStr, String name)
+            throws IOException {
         HDF5Group rootGroup = HDF5Group.createRoot();
 
         // Save version, class
@@ -125,8 +118,6 @@ public abstract class AbstractAnalyticalWorker extends AbstractWorker {
         resultsGroup.setAttribute("log", props.toString());
 
         // Save options
-        XMLOutputter outputter = new XMLOutputter(Format.getCompactFormat());
-        String optionsStr = outputter.outputString(rootElement);
         resultsGroup.setAttribute("options", optionsStr);
         rootGroup.setAttribute("options", optionsStr);
 
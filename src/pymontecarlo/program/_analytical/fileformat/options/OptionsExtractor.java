@@ -13,6 +13,7 @@ import java.util.Map;
 import org.jdom2.Element;
 
 import pymontecarlo.fileformat.Extractor;
+import pymontecarlo.fileformat.ExtractorCache;
 import pymontecarlo.fileformat.ExtractorManager;
 import pymontecarlo.fileformat.options.ModelExtractor;
 import pymontecarlo.fileformat.options.ModelExtractorFactory;
@@ -50,6 +51,10 @@ public class OptionsExtractor implements Extractor {
 
     public static final String VERSION = "6";
 
+    /** Cache of strategies, keyed by the hash of the models XML element. */
+    private static final ExtractorCache<Strategy> strategyCache =
+            new ExtractorCache<>(16);
+
     /** Name of the simulation. */
     private String name = null;
 
@@ -220,7 +225,12 @@ public class OptionsExtractor implements Extractor {
             EPQException {
         Element modelsRoot = root.getChild("models");
 
-        Strategy strategy = new Strategy();
+        String key = ExtractorCache.hash(modelsRoot);
+        Strategy strategy = strategyCache.get(key);
+        if (strategy != null)
+            return (Strategy) strategy.clone();
+
+        strategy = new Strategy();
 
         ModelExtractor extractor;
         for (Element modelElement : modelsRoot.getChildren()) {
@@ -230,6 +240,8 @@ public class OptionsExtractor implements Extractor {
             strategy.addAll(extractor.extract(modelElement));
         }
 
+        strategyCache.put(key, (Strategy) strategy.clone());
+
         return strategy;
     }
 
@@ -4,12 +4,21 @@ import gov.nist.microanalysis.EPQLibrary.AlgorithmClass;
 import gov.nist.microanalysis.EPQLibrary.AlgorithmUser;
 import gov.nist.microanalysis.EPQLibrary.EPQException;
 import gov.nist.microanalysis.EPQLibrary.FromSI;
+import gov.nist.microanalysis.EPQLibrary.MassAbsorptionCoefficient;
 import gov.nist.microanalysis.EPQLibrary.Material;
 import gov.nist.microanalysis.EPQLibrary.Strategy;
+import gov.nist.microanalysis.EPQLibrary.XRayTransition;
+import gov.nist.microanalysis.NISTMonte.ElectronSplitting;
 import gov.nist.microanalysis.NISTMonte.IMaterialScatterModel;
 import gov.nist.microanalysis.NISTMonte.MonteCarloSS;
 import gov.nist.microanalysis.NISTMonte.MonteCarloSS.ElectronGun;
 import gov.nist.microanalysis.NISTMonte.MonteCarloSS.RegionBase;
+import gov.nist.microanalysis.NISTMonte.PhotonSplitting;
+import gov.nist.microanalysis.NISTMonte.PlanarXRayAccumulator;
+import gov.nist.microanalysis.NISTMonte.StratifiedRegion;
+import gov.nist.microanalysis.NISTMonte.TabulatedMaterialModel;
+import gov.nist.microanalysis.NISTMonte.XRayTransportRegistry;
+import gov.nist.microanalysis.NISTMonte.Gen3.BaseXRayGeneration3;
 import gov.nist.microanalysis.NISTMonte.Gen3.BremsstrahlungXRayGeneration3;
 import gov.nist.microanalysis.NISTMonte.Gen3.CharacteristicXRayGeneration3;
 import gov.nist.microanalysis.NISTMonte.Gen3.FluorescenceXRayGeneration3;
@@ -20,28 +29,28 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.EnumSet;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
 import java.util.Set;
 
-import org.jdom2.output.Format;
-import org.jdom2.output.XMLOutputter;
 import org.jdom2.Element;
-import org.jdom2.JDOMException;
-import org.jdom2.input.SAXBuilder;
 
+import pymontecarlo.fileformat.OptionsReader;
 import pymontecarlo.program.AbstractWorker;
 import pymontecarlo.program.nistmonte.fileformat.options.OptionsExtractor;
 import pymontecarlo.program.nistmonte.options.beam.PencilBeam;
 import pymontecarlo.program.nistmonte.options.detector.Detector;
+import pymontecarlo.program.nistmonte.options.detector.ElectronWeightedDetector;
 import pymontecarlo.program.nistmonte.options.detector.PhotonDetector;
+import pymontecarlo.program.nistmonte.options.detector.PhotonIntensityDetector;
+import pymontecarlo.program.nistmonte.options.detector.XRayChannel;
 import pymontecarlo.program.nistmonte.options.limit.Limit;
 import pymontecarlo.program.nistmonte.options.limit.ShowersLimit;
 import pymontecarlo.program.nistmonte.options.model.FluorescenceMC;
-import pymontecarlo.util.hdf5.HDF5FileWriter;
 import pymontecarlo.util.hdf5.HDF5Group;
 
 /**
@@ -51,6 +60,25 @@ import pymontecarlo.util.hdf5.HDF5Group;
  */
 public class Worker extends AbstractWorker {
 
+    /** Number of x-ray transports created for the photon detectors. */
+    private int transportCount;
+
+    /** Number of x-ray accumulators shared through the transport registry. */
+    private int accumulatorCount;
+
+    /** Number of tabulated scatter models. */
+    private int tabulatedModelCount;
+
+    /** Number of copies of the fluorescence generations for the splitting. */
+    private int fluorescenceCopyCount;
+
+    /** Splitting of the fluorescence x-rays, <code>null</code> if none. */
+    private PhotonSplitting photonSplitting;
+
+    /** Splitting of the electrons at depth, <code>null</code> if none. */
+    private ElectronSplitting electronSplitting;
+
+
     @Override
     public void run(File optionsFile, File resultsDir) throws EPQException,
             IOException {
@@ -64,13 +92,8 @@ public class Worker extends AbstractWorker {
         // Extract from options XML file
         report(0.0, "Loading options file");
 
-        SAXBuilder builder = new SAXBuilder();
-        Element rootElement;
-        try {
-            rootElement = builder.build(optionsFile).getRootElement();
-        } catch (JDOMException e) {
-            throw new IOException(e);
-        }
+        OptionsReader reader = new OptionsReader(optionsFile);
+        Element rootElement = reader.getRootElement();
 
         OptionsExtractor extractor = new OptionsExtractor();
         extractor.extract(rootElement);
@@ -81,18 +104,33 @@ public class Worker extends AbstractWorker {
         Map<String, Detector> detectors = extractor.getDetectors();
         Set<Limit> limits = extractor.getLimits();
         Strategy strategy = extractor.getStrategy();
+        photonSplitting = extractor.getPhotonSplitting();
+        electronSplitting = extractor.getElectronSplitting();
 
         // Setup detectors
         report(0.0, "Setup detectors");
         setupDetectors(mcss, detectors.values(), strategy);
 
+        // Registered after the x-ray generations (see ElectronSplitting)
+        if (electronSplitting != null)
+            mcss.addActionListener(electronSplitting);
+
         // Register limits and get the number of showers
         report(0.0, "Setup limits");
         int showers = setupLimits(mcss, limits);
 
-        // Apply models' strategy
+        // Models' strategy already applied by the extractor, before the
+        // geometry
         report(0.0, "Setup models");
-        AlgorithmUser.applyGlobalOverride(strategy);
+
+        // Tabulate the scatter models, with the strategy applied and the
+        // elastic cross sections resolved by each model
+        tabulatedModelCount = 0;
+        int pointsPerDecade = extractor.getTabulationPointsPerDecade();
+        if (pointsPerDecade > 0)
+            tabulatedModelCount =
+                    TabulatedMaterialModel.tabulate(mcss.getChamber(), mcss
+                            .getElectronGun().getBeamEnergy(), pointsPerDecade);
 
         // Run
         report(0.0, "Running showers");
@@ -108,9 +146,10 @@ public class Worker extends AbstractWorker {
         // Save results
         report(1.0, "Saving results");
         HDF5Group rootGroup =
-                createHDF5Group(mcss, detectors, rootElement, name);
+                createHDF5Group(mcss, detectors, rootElement,
+                        reader.getContent(), name);
         File resultsH5 = new File(resultsDir, name + ".h5");
-        HDF5FileWriter.write(rootGroup, resultsH5, true);
+        writeResults(rootGroup, resultsH5);
 
         report(1.0, "Complete");
     }
@@ -120,10 +159,26 @@ public class Worker extends AbstractWorker {
     private void setupDetectors(MonteCarloSS mcss,
             Collection<Detector> detectors, Strategy strategy)
             throws EPQException {
+        transportCount = 0;
+        accumulatorCount = 0;
+        fluorescenceCopyCount = 0;
+
         // Register detector as action listener
         for (Detector det : detectors)
             mcss.addActionListener(det);
 
+        // Only detectors weighting their results support electron splitting
+        if (electronSplitting != null) {
+            for (Detector det : detectors) {
+                if (!(det instanceof ElectronWeightedDetector))
+                    throw new IllegalArgumentException(det.getClass()
+                            .getSimpleName()
+                            + " does not support electron splitting");
+                ((ElectronWeightedDetector) det)
+                        .setElectronSplitting(electronSplitting);
+            }
+        }
+
         // Split photon detectors from detectors
         Collection<Detector> dets = new ArrayList<>(detectors); // copy
         Collection<PhotonDetector> phDets = findPhotonDetectors(dets);
@@ -136,30 +191,35 @@ public class Worker extends AbstractWorker {
         if (phDets.isEmpty())
             return;
 
-        // Generation
+        // Channels required by at least one detector
         AlgorithmClass classFluo = strategy.getAlgorithm(FluorescenceMC.class);
         boolean hasFluo =
                 classFluo == FluorescenceMC.Fluorescence ||
                         classFluo == FluorescenceMC.FluorescenceCompton;
 
-        CharacteristicXRayGeneration3 characGen =
-                CharacteristicXRayGeneration3.create(mcss);
-        characGen.initialize(); // Bug fix
+        Set<XRayChannel> channels = EnumSet.noneOf(XRayChannel.class);
+        for (PhotonDetector det : phDets)
+            channels.addAll(det.getRequiredChannels());
+        if (!hasFluo) {
+            channels.remove(XRayChannel.CHARACTERISTIC_FLUORESCENCE);
+            channels.remove(XRayChannel.BREMSSTRAHLUNG_FLUORESCENCE);
+        }
+
+        // Generation, only for the required channels and their sources
+        CharacteristicXRayGeneration3 characGen = null;
+        if (channels.contains(XRayChannel.CHARACTERISTIC)
+                || channels.contains(XRayChannel.CHARACTERISTIC_FLUORESCENCE)) {
+            characGen = CharacteristicXRayGeneration3.create(mcss);
+            characGen.initialize(); // Bug fix
+        }
 
         BremsstrahlungXRayGeneration3 bremmsGen = null;
-        if (hasFluo)
+        if (channels.contains(XRayChannel.BREMSSTRAHLUNG)
+                || channels.contains(XRayChannel.BREMSSTRAHLUNG_FLUORESCENCE))
             bremmsGen = BremsstrahlungXRayGeneration3.create(mcss);
-        else {
-            for (PhotonDetector det : phDets) {
-                if (det.requiresBremmstrahlung()) {
-                    bremmsGen = BremsstrahlungXRayGeneration3.create(mcss);
-                    break;
-                }
-            }
-        }
 
         FluorescenceXRayGeneration3 characFluoGen = null;
-        if (hasFluo)
+        if (channels.contains(XRayChannel.CHARACTERISTIC_FLUORESCENCE))
             characFluoGen = FluorescenceXRayGeneration3.create(mcss, characGen);
 
 //        ComptonXRayGeneration3 characFluoComptonGen = null;
@@ -168,51 +228,306 @@ public class Worker extends AbstractWorker {
 //                    ComptonXRayGeneration3.create(mcss, characGen);
 
         FluorescenceXRayGeneration3 bremssFluoGen = null;
-        if (hasFluo) {
+        if (channels.contains(XRayChannel.BREMSSTRAHLUNG_FLUORESCENCE))
             bremssFluoGen = FluorescenceXRayGeneration3.create(mcss, bremmsGen);
+
+        // Copies of the fluorescence generations for the photon splitting
+        List<FluorescenceXRayGeneration3> characFluoGens =
+                createFluorescenceCopies(mcss, characGen, characFluoGen);
+        List<FluorescenceXRayGeneration3> bremssFluoGens =
+                createFluorescenceCopies(mcss, bremmsGen, bremssFluoGen);
+        if (photonSplitting != null && characFluoGens.isEmpty()
+                && bremssFluoGens.isEmpty())
+            report(0.0, "No detector requires the fluorescence, "
+                    + "ignoring the photon splitting");
+
+        // Planar transport, one accumulator per generation for all detectors
+        List<PhotonIntensityDetector> planarDets =
+                findPlanarDetectors(mcss, phDets);
+        if (!planarDets.isEmpty()) {
+            setupPlanarDetectors(mcss, planarDets, strategy, characGen,
+                    characFluoGens, bremssFluoGens);
+            phDets.removeAll(planarDets);
         }
 
-        // Transport and setup
-        Map<Integer, XRayTransport3> characMap = new HashMap<>();
-        Map<Integer, XRayTransport3> bremssMap = new HashMap<>();
-        Map<Integer, XRayTransport3> characFluoMap = new HashMap<>();
-        Map<Integer, XRayTransport3> bremssFluoMap = new HashMap<>();
+        // Transport and setup, shared by detectors at the same position
+        XRayTransportRegistry registry = new XRayTransportRegistry(mcss);
+        registry.setElectronSplitting(electronSplitting);
+        boolean split = characFluoGens.size() > 1 || bremssFluoGens.size() > 1;
 
-        Integer hashCode;
         double[] detPosition;
+        Set<XRayChannel> required;
         XRayTransport3 charac, bremss, characFluo, bremssFluo;
         for (PhotonDetector det : phDets) {
             detPosition = det.getDetectorPosition();
-            hashCode = Arrays.hashCode(detPosition);
+            required = det.getRequiredChannels();
+
+            charac =
+                    registry.getTransport(required
+                            .contains(XRayChannel.CHARACTERISTIC) ? characGen
+                            : null, detPosition);
+            bremss =
+                    registry.getTransport(required
+                            .contains(XRayChannel.BREMSSTRAHLUNG) ? bremmsGen
+                            : null, detPosition);
+            characFluo =
+                    registry.getTransport(required
+                            .contains(XRayChannel.CHARACTERISTIC_FLUORESCENCE)
+                            ? characFluoGen : null, detPosition);
+            bremssFluo =
+                    registry.getTransport(required
+                            .contains(XRayChannel.BREMSSTRAHLUNG_FLUORESCENCE)
+                            ? bremssFluoGen : null, detPosition);
+
+            if (det instanceof PhotonIntensityDetector && split)
+                ((PhotonIntensityDetector) det).setup(mcss, registry, charac,
+                        getTransports(registry, characFluo != null
+                                ? characFluoGens : null, detPosition),
+                        getTransports(registry, bremssFluo != null
+                                ? bremssFluoGens : null, detPosition),
+                        photonSplitting);
+            else if (det instanceof PhotonIntensityDetector)
+                ((PhotonIntensityDetector) det).setup(mcss, registry, charac,
+                        characFluo, bremssFluo);
+            else
+                det.setup(mcss, charac, bremss, characFluo, bremssFluo);
+        }
 
-            charac = characMap.get(hashCode);
-            if (charac == null) {
-                charac = XRayTransport3.create(mcss, detPosition, characGen);
-                characMap.put(hashCode, charac);
-            }
+        transportCount = registry.getTransportCount();
+        accumulatorCount = registry.getAccumulatorCount();
+        report(0.0, "Created " + transportCount + " x-ray transport(s) and "
+                + accumulatorCount + " accumulator(s)");
+        if (fluorescenceCopyCount > 0)
+            report(0.0, "Created " + fluorescenceCopyCount
+                    + " extra fluorescence generation(s) for the photon "
+                    + "splitting, each transporting all elements");
+    }
 
-            bremss = bremssMap.get(hashCode);
-            if (bremss == null && bremmsGen != null) {
-                bremss = XRayTransport3.create(mcss, detPosition, bremmsGen);
-                bremssMap.put(hashCode, bremss);
-            }
 
-            characFluo = characFluoMap.get(hashCode);
-            if (characFluo == null && characFluoGen != null) {
-                characFluo =
-                        XRayTransport3.create(mcss, detPosition, characFluoGen);
-                characFluoMap.put(hashCode, characFluo);
-            }
 
-            bremssFluo = bremssFluoMap.get(hashCode);
-            if (bremssFluo == null && bremssFluoGen != null) {
-                bremssFluo =
-                        XRayTransport3.create(mcss, detPosition, bremssFluoGen);
-                bremssFluoMap.put(hashCode, bremssFluo);
-            }
+    /**
+     * Returns the copies of a fluorescence generation required by the photon
+     * splitting. The first copy is the fluorescence generation itself; the
+     * others listen to the same primary generation and sample the
+     * fluorescence independently. Each copy generates and transports the
+     * fluorescence of all the elements, so the cost of the fluorescence grows
+     * with the splitting factor.
+     * 
+     * @param mcss
+     *            Monte Carlo simulation
+     * @param primaryGen
+     *            primary generation
+     * @param fluoGen
+     *            fluorescence generation (may be <code>null</code>)
+     * @return copies, empty if the fluorescence generation is
+     *         <code>null</code>
+     * @throws EPQException
+     *             if a copy cannot be created
+     */
+    private List<FluorescenceXRayGeneration3> createFluorescenceCopies(
+            MonteCarloSS mcss, BaseXRayGeneration3 primaryGen,
+            FluorescenceXRayGeneration3 fluoGen) throws EPQException {
+        List<FluorescenceXRayGeneration3> copies = new ArrayList<>();
+        if (fluoGen == null)
+            return copies;
+
+        copies.add(fluoGen);
+        if (photonSplitting == null)
+            return copies;
+
+        for (int i = 1; i < photonSplitting.getFactor(); i++)
+            copies.add(FluorescenceXRayGeneration3.create(mcss, primaryGen));
+        fluorescenceCopyCount += copies.size() - 1;
+
+        return copies;
+    }
+
+
 
-            det.setup(mcss, charac, bremss, characFluo, bremssFluo);
+    /**
+     * Returns the transports of copies of a fluorescence generation towards a
+     * detector position.
+     * 
+     * @param registry
+     *            registry of the shared transports
+     * @param gens
+     *            copies of the fluorescence generation (may be
+     *            <code>null</code>)
+     * @param position
+     *            detector position
+     * @return transports, empty if the copies are <code>null</code>
+     * @throws EPQException
+     *             if a transport cannot be created
+     */
+    private List<XRayTransport3> getTransports(XRayTransportRegistry registry,
+            List<FluorescenceXRayGeneration3> gens, double[] position)
+            throws EPQException {
+        List<XRayTransport3> transports = new ArrayList<>();
+        if (gens == null)
+            return transports;
+
+        for (FluorescenceXRayGeneration3 gen : gens)
+            transports.add(registry.getTransport(gen, position));
+
+        return transports;
+    }
+
+
+
+    /**
+     * Returns the photon intensity detectors requesting the planar transport,
+     * if the sample is a stratified region whose layers are parallel to its
+     * surface. Otherwise, these detectors use the regular x-ray transport.
+     * 
+     * @param mcss
+     *            Monte Carlo simulation
+     * @param phDets
+     *            photon detectors
+     * @return planar detectors, empty if the geometry is not stratified
+     *         parallel to the surface
+     */
+    private List<PhotonIntensityDetector> findPlanarDetectors(
+            MonteCarloSS mcss, Collection<PhotonDetector> phDets) {
+        List<PhotonIntensityDetector> planarDets = new ArrayList<>();
+        for (PhotonDetector det : phDets) {
+            if (det instanceof PhotonIntensityDetector
+                    && ((PhotonIntensityDetector) det).isPlanarTransport())
+                planarDets.add((PhotonIntensityDetector) det);
+        }
+        if (planarDets.isEmpty())
+            return planarDets;
+
+        StratifiedRegion region = findStratifiedRegion(mcss);
+        if (region == null || !region.isAxisSurfaceNormal()) {
+            report(0.0, "Planar transport requires horizontal layers, "
+                    + "using the regular x-ray transport");
+            planarDets.clear();
+        }
+
+        return planarDets;
+    }
+
+
+
+    /**
+     * Setups the planar detectors. A single accumulator per generation
+     * computes the emitted intensities towards all detectors in one pass over
+     * the generated x-rays.
+     * 
+     * @param mcss
+     *            Monte Carlo simulation
+     * @param planarDets
+     *            planar detectors
+     * @param strategy
+     *            strategy of the simulation
+     * @param characGen
+     *            generation of characteristic x-rays
+     * @param characFluoGens
+     *            copies of the generation of characteristic fluorescence
+     *            x-rays (empty if not required)
+     * @param bremssFluoGens
+     *            copies of the generation of Bremsstrahlung fluorescence
+     *            x-rays (empty if not required)
+     * @throws EPQException
+     *             if a mass absorption coefficient cannot be calculated
+     */
+    private void setupPlanarDetectors(MonteCarloSS mcss,
+            List<PhotonIntensityDetector> planarDets, Strategy strategy,
+            CharacteristicXRayGeneration3 characGen,
+            List<FluorescenceXRayGeneration3> characFluoGens,
+            List<FluorescenceXRayGeneration3> bremssFluoGens)
+            throws EPQException {
+        StratifiedRegion region = findStratifiedRegion(mcss);
+
+        MassAbsorptionCoefficient mac =
+                (MassAbsorptionCoefficient) strategy
+                        .getAlgorithm(MassAbsorptionCoefficient.class);
+        if (mac == null)
+            mac =
+                    (MassAbsorptionCoefficient) AlgorithmUser
+                            .getGlobalStrategy().getAlgorithm(
+                                    MassAbsorptionCoefficient.class);
+        if (mac == null)
+            mac = MassAbsorptionCoefficient.Chantler2005;
+
+        double[][] positions = new double[planarDets.size()][];
+        for (int i = 0; i < positions.length; i++)
+            positions[i] = planarDets.get(i).getDetectorPosition();
+
+        // Only the transitions recorded by at least one detector
+        Set<XRayTransition> transitions = new HashSet<>();
+        for (PhotonIntensityDetector det : planarDets)
+            transitions.addAll(det.findXRayTransitions(mcss));
+
+        PlanarXRayAccumulator charac =
+                new PlanarXRayAccumulator(region, positions, transitions, mac);
+        charac.setElectronSplitting(electronSplitting);
+        charac.addSource(characGen);
+        mcss.addActionListener(charac);
+
+        PlanarXRayAccumulator characFluo = null;
+        if (!characFluoGens.isEmpty()) {
+            characFluo =
+                    new PlanarXRayAccumulator(region, positions, transitions,
+                            mac);
+            characFluo.setElectronSplitting(electronSplitting);
+            addFluorescenceSources(characFluo, characFluoGens);
+            mcss.addActionListener(characFluo);
         }
+
+        PlanarXRayAccumulator bremssFluo = null;
+        if (!bremssFluoGens.isEmpty()) {
+            bremssFluo =
+                    new PlanarXRayAccumulator(region, positions, transitions,
+                            mac);
+            bremssFluo.setElectronSplitting(electronSplitting);
+            addFluorescenceSources(bremssFluo, bremssFluoGens);
+            mcss.addActionListener(bremssFluo);
+        }
+
+        for (int i = 0; i < positions.length; i++)
+            planarDets.get(i).setup(mcss, charac, characFluo, bremssFluo, i);
+    }
+
+
+
+    /**
+     * Registers a planar accumulator to the copies of a fluorescence
+     * generation, weighted by the photon splitting if there are several.
+     * 
+     * @param accumulator
+     *            planar accumulator
+     * @param gens
+     *            copies of the fluorescence generation
+     */
+    private void addFluorescenceSources(PlanarXRayAccumulator accumulator,
+            List<FluorescenceXRayGeneration3> gens) {
+        if (gens.size() == 1) {
+            accumulator.addSource(gens.get(0));
+            return;
+        }
+
+        for (int i = 0; i < gens.size(); i++)
+            accumulator.addSource(gens.get(i), photonSplitting, i);
+    }
+
+
+
+    /**
+     * Returns the stratified region containing the whole sample, if any.
+     * 
+     * @param mcss
+     *            Monte Carlo simulation
+     * @return stratified region or <code>null</code> if the sample is not
+     *         only made of a stack of layers
+     */
+    private StratifiedRegion findStratifiedRegion(MonteCarloSS mcss) {
+        List<RegionBase> regions = mcss.getChamber().getSubRegions();
+        if (regions.size() != 1)
+            return null;
+        if (!(regions.get(0) instanceof StratifiedRegion))
+            return null;
+        return (StratifiedRegion) regions.get(0);
     }
 
 
@@ -250,7 +565,8 @@ public class Worker extends AbstractWorker {
 
     private HDF5Group createHDF5Group(MonteCarloSS mcss,
             Map<String, Detector> detectors,
-            Element rootElement, String name) throws IOException {
+            Element rootElement, String optionsStr, String name)
+            throws IOException {
         HDF5Group rootGroup = HDF5Group.createRoot();
 
         // Save version, class
@@ -280,8 +596,6 @@ public class Worker extends AbstractWorker {
         resultsGroup.setAttribute("log", props.toString());
 
         // Save options
-        XMLOutputter outputter = new XMLOutputter(Format.getCompactFormat());
-        String optionsStr = outputter.outputString(rootElement);
         resultsGroup.setAttribute("options", optionsStr);
         rootGroup.setAttribute("options", optionsStr);
 
@@ -346,6 +660,36 @@ public class Worker extends AbstractWorker {
             props.setProperty("model." + algClass,
                     strategy.getAlgorithm(algClass).toString());
         }
+
+        props.setProperty("model.tabulated",
+                Integer.toString(tabulatedModelCount));
+
+        // X-ray transport
+        props.setProperty("xray.transports", Integer.toString(transportCount));
+        props.setProperty("xray.accumulators",
+                Integer.toString(accumulatorCount));
+
+        // Photon splitting
+        if (photonSplitting != null) {
+            props.setProperty("xray.splitting.factor",
+                    Integer.toString(photonSplitting.getFactor()));
+            props.setProperty("xray.splitting.elements", photonSplitting
+                    .getElements().toString());
+            props.setProperty("xray.splitting.copies",
+                    Integer.toString(fluorescenceCopyCount));
+        }
+
+        // Electron splitting
+        if (electronSplitting != null) {
+            props.setProperty("electron.splitting.factor",
+                    Integer.toString(electronSplitting.getFactor()));
+            props.setProperty("electron.splitting.depths",
+                    Arrays.toString(electronSplitting.getDepths()));
+            props.setProperty("electron.splitting.splits",
+                    Long.toString(electronSplitting.getSplitCount()));
+            props.setProperty("electron.splitting.kills",
+                    Long.toString(electronSplitting.getKillCount()));
+        }
     }
 
 }
@@ -1,9 +1,15 @@
 package pymontecarlo.program.nistmonte.fileformat.options;
 
 import gov.nist.microanalysis.EPQLibrary.EPQException;
+import gov.nist.microanalysis.EPQLibrary.MaterialFactory;
+import gov.nist.microanalysis.EPQLibrary.XRayTransition;
+import gov.nist.microanalysis.NISTMonte.SpectrumResponse;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
+import org.jdom2.Attribute;
 import org.jdom2.DataConversionException;
 import org.jdom2.Element;
 
@@ -14,6 +20,7 @@ import pymontecarlo.program.nistmonte.options.detector.PhotonEmissionMapDetector
 import pymontecarlo.program.nistmonte.options.detector.PhotonIntensityDetector;
 import pymontecarlo.program.nistmonte.options.detector.PhotonRadialDetector;
 import pymontecarlo.program.nistmonte.options.detector.PhotonSpectrumDetector;
+import pymontecarlo.program.nistmonte.options.detector.RegionTallyDetector;
 import pymontecarlo.program.nistmonte.options.detector.TimeDetector;
 import pymontecarlo.program.nistmonte.options.detector.TrajectoryDetector;
 
@@ -78,6 +85,69 @@ public class DetectorExtractorFactory {
             return (azimuthMin + azimuthMax) / 2.0;
         }
 
+
+
+        /**
+         * Extracts an integer attribute of a <code>transition</code> element.
+         * 
+         * @param transitionElement
+         *            XML element
+         * @param name
+         *            name of the attribute
+         * @return value of the attribute
+         * @throws IOException
+         *             if the attribute is missing or is not an integer
+         */
+        private int extractTransitionAttribute(Element transitionElement,
+                String name) throws IOException {
+            Attribute attribute = transitionElement.getAttribute(name);
+            if (attribute == null)
+                throw new IOException("Missing attribute of transition: "
+                        + name);
+
+            try {
+                return attribute.getIntValue();
+            } catch (DataConversionException e) {
+                throw new IOException(e);
+            }
+        }
+
+
+
+        /**
+         * Extracts the x-ray transitions recorded by the detector, from the
+         * optional <code>transition</code> children. The transitions are
+         * specified by the atomic number of the element (<code>z</code>) and
+         * the source and destination subshells (<code>src</code> and
+         * <code>dest</code>, starting at 1).
+         * 
+         * @param detectorElement
+         *            XML element
+         * @return x-ray transitions, empty to record all transitions
+         * @throws IOException
+         *             if an attribute of a transition is missing or is not an
+         *             integer
+         */
+        protected List<XRayTransition> extractTransitions(
+                Element detectorElement) throws IOException {
+            List<XRayTransition> transitions = new ArrayList<>();
+
+            int z, src, dest;
+            gov.nist.microanalysis.EPQLibrary.Element element;
+            for (Element subelement : detectorElement.getChildren("transition")) {
+                z = extractTransitionAttribute(subelement, "z");
+                src = extractTransitionAttribute(subelement, "src");
+                dest = extractTransitionAttribute(subelement, "dest");
+
+                element =
+                        gov.nist.microanalysis.EPQLibrary.Element
+                                .byAtomicNumber(z);
+                transitions.add(new XRayTransition(element, src - 1, dest - 1));
+            }
+
+            return transitions;
+        }
+
     }
 
     protected static class PhotonIntensityDetectorExtractor extends
@@ -88,8 +158,40 @@ public class DetectorExtractorFactory {
                 EPQException {
             double takeOffAngle = extractTakeOffAngle(detectorElement);
             double azimuthAngle = extractAzimuthAngle(detectorElement);
+            boolean planarTransport = extractPlanarTransport(detectorElement);
+
+            PhotonIntensityDetector detector =
+                    new PhotonIntensityDetector(takeOffAngle, azimuthAngle,
+                            planarTransport);
+            detector.setTransitionFilter(extractTransitions(detectorElement));
+            return detector;
+        }
+
 
-            return new PhotonIntensityDetector(takeOffAngle, azimuthAngle);
+
+        /**
+         * Extracts whether the absorption should be calculated in closed form
+         * for stratified geometries, from the optional <code>transport</code>
+         * attribute (<code>default</code> or <code>planar</code>).
+         * 
+         * @param detectorElement
+         *            XML element
+         * @return <code>true</code> for the planar transport
+         * @throws IOException
+         *             if the transport is unknown
+         */
+        protected boolean extractPlanarTransport(Element detectorElement)
+                throws IOException {
+            String transport =
+                    detectorElement.getAttributeValue("transport", "default");
+            switch (transport) {
+            case "default":
+                return false;
+            case "planar":
+                return true;
+            default:
+                throw new IOException("Unknown transport: " + transport);
+            }
         }
 
     }
@@ -136,7 +238,10 @@ public class DetectorExtractorFactory {
             double azimuthAngle = extractAzimuthAngle(detectorElement);
             int channels = extractChannels(detectorElement);
 
-            return new PhiZDetector(takeOffAngle, azimuthAngle, channels);
+            PhiZDetector detector =
+                    new PhiZDetector(takeOffAngle, azimuthAngle, channels);
+            detector.setTransitionFilter(extractTransitions(detectorElement));
+            return detector;
         }
 
     }
@@ -169,8 +274,11 @@ public class DetectorExtractorFactory {
             double azimuthAngle = extractAzimuthAngle(detectorElement);
             int channels = extractChannels(detectorElement);
 
-            return new PhotonRadialDetector(takeOffAngle, azimuthAngle,
-                    channels);
+            PhotonRadialDetector detector =
+                    new PhotonRadialDetector(takeOffAngle, azimuthAngle,
+                            channels);
+            detector.setTransitionFilter(extractTransitions(detectorElement));
+            return detector;
         }
 
     }
@@ -197,8 +305,11 @@ public class DetectorExtractorFactory {
                     Integer.parseInt(detectorElement.getChild("zbins")
                             .getText());
 
-            return new PhotonEmissionMapDetector(takeOffAngle, azimuthAngle,
-                    xBins, yBins, zBins);
+            PhotonEmissionMapDetector detector =
+                    new PhotonEmissionMapDetector(takeOffAngle, azimuthAngle,
+                            xBins, yBins, zBins);
+            detector.setTransitionFilter(extractTransitions(detectorElement));
+            return detector;
         }
 
     }
@@ -251,6 +362,85 @@ public class DetectorExtractorFactory {
 
 
 
+        /**
+         * Returns a required attribute of an element.
+         * 
+         * @param element
+         *            XML element
+         * @param name
+         *            name of the attribute
+         * @return attribute
+         * @throws IOException
+         *             if the attribute is missing
+         */
+        private Attribute extractRequiredAttribute(Element element,
+                String name) throws IOException {
+            Attribute attribute = element.getAttribute(name);
+            if (attribute == null)
+                throw new IOException("Missing attribute of "
+                        + element.getName() + ": " + name);
+            return attribute;
+        }
+
+
+
+        /**
+         * Extracts the optional detector response, from the
+         * <code>response</code> element. Its <code>fwhm</code> attribute is
+         * the resolution at Mn K&alpha; (in eV), the optional
+         * <code>escape</code> attribute the fraction in the escape peaks just
+         * above the Si K edge (decreasing at higher energies, see
+         * {@link SpectrumResponse#getEscapeFraction(double)}) and the
+         * optional <code>window</code> child the atomic number
+         * (<code>z</code>) and thickness (<code>thickness</code>, in meters)
+         * of a pure element window.
+         * 
+         * @param detectorElement
+         *            XML element
+         * @return detector response, or <code>null</code> if none
+         * @throws IOException
+         *             if a required attribute is missing or invalid
+         */
+        protected SpectrumResponse extractResponse(Element detectorElement)
+                throws IOException {
+            Element responseElement = detectorElement.getChild("response");
+            if (responseElement == null)
+                return null;
+
+            SpectrumResponse response;
+            try {
+                response =
+                        new SpectrumResponse(extractRequiredAttribute(
+                                responseElement, "fwhm").getDoubleValue());
+
+                if (responseElement.getAttribute("escape") != null)
+                    response.setEscapeFraction(responseElement.getAttribute(
+                            "escape").getDoubleValue());
+
+                Element windowElement = responseElement.getChild("window");
+                if (windowElement != null) {
+                    int z =
+                            extractRequiredAttribute(windowElement, "z")
+                                    .getIntValue();
+                    double thickness =
+                            extractRequiredAttribute(windowElement,
+                                    "thickness").getDoubleValue();
+                    gov.nist.microanalysis.EPQLibrary.Element element =
+                            gov.nist.microanalysis.EPQLibrary.Element
+                                    .byAtomicNumber(z);
+                    response.setWindow(
+                            MaterialFactory.createPureElement(element),
+                            thickness);
+                }
+            } catch (DataConversionException e) {
+                throw new IOException(e);
+            }
+
+            return response;
+        }
+
+
+
         @Override
         public Detector extract(Element detectorElement) throws IOException,
                 EPQException {
@@ -259,8 +449,11 @@ public class DetectorExtractorFactory {
             double channelWidth = extractChannelWidth(detectorElement);
             int channels = extractChannels(detectorElement);
 
-            return new PhotonSpectrumDetector(takeOffAngle, azimuthAngle,
-                    channelWidth, channels);
+            PhotonSpectrumDetector detector =
+                    new PhotonSpectrumDetector(takeOffAngle, azimuthAngle,
+                            channelWidth, channels);
+            detector.setResponse(extractResponse(detectorElement));
+            return detector;
         }
 
     }
@@ -318,4 +511,23 @@ public class DetectorExtractorFactory {
     /** Trajectory detector extractor. */
     public static final DetectorExtractor TRAJECTORY =
             new TrajectoryDetectorExtractor();
+
+    protected static class RegionTallyDetectorExtractor implements
+            DetectorExtractor {
+
+        @Override
+        public Detector extract(Element detectorElement) throws IOException,
+                EPQException {
+            boolean voxels =
+                    Boolean.parseBoolean(detectorElement.getAttributeValue(
+                            "voxels", "false"));
+
+            return new RegionTallyDetector(voxels);
+        }
+
+    }
+
+    /** Region tally detector extractor. */
+    public static final DetectorExtractor REGION_TALLY =
+            new RegionTallyDetectorExtractor();
 }
@@ -1,6 +1,7 @@
 package pymontecarlo.program.nistmonte.fileformat.options;
 
 import gov.nist.microanalysis.EPQLibrary.EPQException;
+import gov.nist.microanalysis.EPQLibrary.XRayTransition;
 
 import java.io.IOException;
 
@@ -8,7 +9,12 @@ import org.jdom2.Element;
 import org.junit.Test;
 
 import pymontecarlo.program.nistmonte.options.detector.PhotonIntensityDetector;
+import pymontecarlo.program.nistmonte.options.detector.PhotonSpectrumDetector;
+import pymontecarlo.program.nistmonte.options.detector.RegionTallyDetector;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 public class DetectorExtractorFactoryTest {
 
@@ -49,4 +55,173 @@ public class DetectorExtractorFactoryTest {
         assertEquals(Math.toRadians(90.0), Math.atan2(pos[1], pos[0]), 1e-4);
     }
 
+
+
+    @Test
+    public void testPHOTON_INTENSITYPlanar() throws IOException, EPQException {
+        Element element = createPhotonIntensityDetectorElement("det1");
+        DetectorExtractor extractor = DetectorExtractorFactory.PHOTON_INTENSITY;
+
+        PhotonIntensityDetector det =
+                (PhotonIntensityDetector) extractor.extract(element);
+        assertFalse(det.isPlanarTransport());
+
+        element.setAttribute("transport", "planar");
+        det = (PhotonIntensityDetector) extractor.extract(element);
+        assertTrue(det.isPlanarTransport());
+    }
+
+
+
+    @Test
+    public void testPHOTON_INTENSITYTransitions() throws IOException,
+            EPQException {
+        Element element = createPhotonIntensityDetectorElement("det1");
+        DetectorExtractor extractor = DetectorExtractorFactory.PHOTON_INTENSITY;
+
+        PhotonIntensityDetector det =
+                (PhotonIntensityDetector) extractor.extract(element);
+        assertNull(det.getTransitionFilter());
+
+        Element transitionElement = new Element("transition");
+        transitionElement.setAttribute("z", "29");
+        transitionElement.setAttribute("src", "4");
+        transitionElement.setAttribute("dest", "1");
+        element.addContent(transitionElement);
+
+        det = (PhotonIntensityDetector) extractor.extract(element);
+        XRayTransition cuKa1 =
+                new XRayTransition(
+                        gov.nist.microanalysis.EPQLibrary.Element.Cu,
+                        XRayTransition.KA1);
+        assertEquals(1, det.getTransitionFilter().size());
+        assertTrue(det.isRecorded(cuKa1));
+        assertFalse(det.isRecorded(new XRayTransition(
+                gov.nist.microanalysis.EPQLibrary.Element.Cu,
+                XRayTransition.KB1)));
+    }
+
+
+
+    @Test(expected = IOException.class)
+    public void testPHOTON_INTENSITYTransitionsMissingAttribute()
+            throws IOException, EPQException {
+        Element element = createPhotonIntensityDetectorElement("det1");
+
+        Element transitionElement = new Element("transition");
+        transitionElement.setAttribute("z", "29");
+        transitionElement.setAttribute("src", "4");
+        element.addContent(transitionElement);
+
+        DetectorExtractorFactory.PHOTON_INTENSITY.extract(element);
+    }
+
+
+
+    public static Element createPhotonSpectrumDetectorElement(String key) {
+        Element element = createPhotonIntensityDetectorElement(key);
+        element.setName("photonSpectrumDetector");
+
+        Element limitsElement = new Element("limits");
+        limitsElement.setAttribute("lower", "0.0");
+        limitsElement.setAttribute("upper", "10000.0");
+        element.addContent(limitsElement);
+
+        Element channelsElement = new Element("channels");
+        channelsElement.setText("1000");
+        element.addContent(channelsElement);
+
+        return element;
+    }
+
+
+
+    private static Element createResponseElement() {
+        Element responseElement = new Element("response");
+        responseElement.setAttribute("fwhm", "130.0");
+        responseElement.setAttribute("escape", "0.01");
+
+        Element windowElement = new Element("window");
+        windowElement.setAttribute("z", "4");
+        windowElement.setAttribute("thickness", "8e-6");
+        responseElement.addContent(windowElement);
+
+        return responseElement;
+    }
+
+
+
+    @Test
+    public void testPHOTON_SPECTRUMResponse() throws IOException,
+            EPQException {
+        Element element = createPhotonSpectrumDetectorElement("det1");
+        DetectorExtractor extractor = DetectorExtractorFactory.PHOTON_SPECTRUM;
+
+        PhotonSpectrumDetector det =
+                (PhotonSpectrumDetector) extractor.extract(element);
+        assertNull(det.getResponse());
+
+        element.addContent(createResponseElement());
+        det = (PhotonSpectrumDetector) extractor.extract(element);
+        assertEquals(130.0, det.getResponse().getFWHM(5898.7), 1e-6);
+        assertEquals(0.01, det.getResponse().getEscapeFraction(), 1e-9);
+        assertTrue(det.getResponse().getWindowTransmission(1000.0) < 1.0);
+    }
+
+
+
+    @Test(expected = IOException.class)
+    public void testPHOTON_SPECTRUMResponseMissingFWHM() throws IOException,
+            EPQException {
+        Element element = createPhotonSpectrumDetectorElement("det1");
+        Element responseElement = createResponseElement();
+        responseElement.removeAttribute("fwhm");
+        element.addContent(responseElement);
+
+        DetectorExtractorFactory.PHOTON_SPECTRUM.extract(element);
+    }
+
+
+
+    @Test(expected = IOException.class)
+    public void testPHOTON_SPECTRUMResponseMissingWindowThickness()
+            throws IOException, EPQException {
+        Element element = createPhotonSpectrumDetectorElement("det1");
+        Element responseElement = createResponseElement();
+        responseElement.getChild("window").removeAttribute("thickness");
+        element.addContent(responseElement);
+
+        DetectorExtractorFactory.PHOTON_SPECTRUM.extract(element);
+    }
+
+
+
+    @Test(expected = IOException.class)
+    public void testPHOTON_SPECTRUMResponseMissingWindowZ()
+            throws IOException, EPQException {
+        Element element = createPhotonSpectrumDetectorElement("det1");
+        Element responseElement = createResponseElement();
+        responseElement.getChild("window").removeAttribute("z");
+        element.addContent(responseElement);
+
+        DetectorExtractorFactory.PHOTON_SPECTRUM.extract(element);
+    }
+
+
+
+    @Test
+    public void testREGION_TALLY() throws IOException, EPQException {
+        Element element = new Element("regionTallyDetector");
+        element.setAttribute("_key", "det1");
+        DetectorExtractor extractor = DetectorExtractorFactory.REGION_TALLY;
+
+        RegionTallyDetector det =
+                (RegionTallyDetector) extractor.extract(element);
+        assertFalse(det.isVoxelTally());
+
+        element.setAttribute("voxels", "true");
+        det = (RegionTallyDetector) extractor.extract(element);
+        assertTrue(det.isVoxelTally());
+    }
+
 }
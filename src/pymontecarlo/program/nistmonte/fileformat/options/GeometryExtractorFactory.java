@@ -4,27 +4,39 @@ import gov.nist.microanalysis.EPQLibrary.Composition;
 import gov.nist.microanalysis.EPQLibrary.EPQException;
 import gov.nist.microanalysis.EPQLibrary.Material;
 import gov.nist.microanalysis.EPQLibrary.ToSI;
-import gov.nist.microanalysis.NISTMonte.BasicMaterialModel;
+import gov.nist.microanalysis.NISTMonte.GridContainerRegion;
 import gov.nist.microanalysis.NISTMonte.IMaterialScatterModel;
 import gov.nist.microanalysis.NISTMonte.MonteCarloSS.Region;
 import gov.nist.microanalysis.NISTMonte.MonteCarloSS.RegionBase;
 import gov.nist.microanalysis.NISTMonte.MonteCarloSS.Shape;
 import gov.nist.microanalysis.NISTMonte.MonteCarloSS.TransformableRegion;
 import gov.nist.microanalysis.NISTMonte.IndexedRegion;
+import gov.nist.microanalysis.NISTMonte.MaterialModelCache;
 import gov.nist.microanalysis.NISTMonte.MultiPlaneShape;
+import gov.nist.microanalysis.NISTMonte.OctreeVoxelRegion;
+import gov.nist.microanalysis.NISTMonte.RawLabelVolume;
 import gov.nist.microanalysis.NISTMonte.ShapeDifference;
 import gov.nist.microanalysis.NISTMonte.Sphere;
+import gov.nist.microanalysis.NISTMonte.StratifiedRegion;
+import gov.nist.microanalysis.NISTMonte.VoxelRegion;
 import gov.nist.microanalysis.Utility.Math2;
 
+import java.io.File;
 import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteOrder;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import org.jdom2.DataConversionException;
+import org.jdom2.Document;
 import org.jdom2.Element;
 
+import pymontecarlo.fileformat.ExtractorCache;
+
 /**
  * Factory of geometry extractors.
  * 
@@ -90,9 +102,84 @@ public class GeometryExtractorFactory {
     // }
     // }
 
+    /** Cache of materials, keyed by the hash of their XML element. */
+    private static final ExtractorCache<Material> materialCache =
+            new ExtractorCache<>(64);
+
+    /** Cache of geometries, keyed by the hash of their XML element. */
+    private static final ExtractorCache<GeometryTemplate> templateCache =
+            new ExtractorCache<>(8);
+
     protected abstract static class AbstractGeometryExtractor implements
             GeometryExtractor {
 
+        /**
+         * Extracts the geometry. The regions are built once per geometry XML
+         * element in a {@link GeometryTemplate}, which is then copied in the
+         * chamber with the scatter models of the materials extracted for this
+         * simulation.
+         */
+        @Override
+        public void extract(Element geometryElement, Region chamber)
+                throws IOException, EPQException {
+            Map<Integer, IMaterialScatterModel> materials =
+                    extractMaterials(geometryElement);
+
+            String key = getTemplateKey(geometryElement);
+            GeometryTemplate template = templateCache.get(key);
+            if (template == null) {
+                Region prototype =
+                        new Region(null, chamber.getScatterModel(),
+                                chamber.getShape());
+                build(geometryElement, prototype, materials);
+
+                template = new GeometryTemplate(prototype, materials);
+                templateCache.put(key, template);
+            }
+
+            template.instantiate(chamber, materials);
+        }
+
+
+
+        /**
+         * Returns the key of the geometry in the cache of templates. By
+         * default, the hash of the geometry XML element.
+         * 
+         * @param geometryElement
+         *            XML element
+         * @return key
+         * @throws IOException
+         *             if an error occurs while reading the options
+         */
+        protected String getTemplateKey(Element geometryElement)
+                throws IOException {
+            return ExtractorCache.hash(geometryElement);
+        }
+
+
+
+        /**
+         * Builds the regions of the geometry inside a chamber.
+         * 
+         * @param geometryElement
+         *            XML element
+         * @param chamber
+         *            region of the chamber
+         * @param materials
+         *            map of material index and material scatter model
+         * @throws IOException
+         *             if an error occurs while reading the options
+         * @throws EPQException
+         *             if an error occurs while setting up the geometry
+         */
+        protected abstract void build(Element geometryElement, Region chamber,
+                Map<Integer, IMaterialScatterModel> materials)
+                throws IOException, EPQException;
+
+
+
+
         /**
          * Extracts the composition from a material XML element.
          * 
@@ -159,12 +246,12 @@ public class GeometryExtractorFactory {
                 Element geometryElement) throws IOException, EPQException {
             Map<Integer, IMaterialScatterModel> materials =
                     new HashMap<Integer, IMaterialScatterModel>();
-            materials.put(0, new BasicMaterialModel(Material.Null));
+            materials.put(0, MaterialModelCache.get(Material.Null));
 
             Element materialsElement = geometryElement.getChild("materials");
 
             int index;
-            String name;
+            String name, key;
             double density, absorptionEnergyElectron;
             Composition composition;
             Material material;
@@ -197,14 +284,20 @@ public class GeometryExtractorFactory {
                             Double.parseDouble(absEnergyElement.getText());
                 }
 
-                composition = extractComposition(materialElement);
+                key = ExtractorCache.hash(materialElement);
+                material = materialCache.get(key);
+                if (material == null) {
+                    composition = extractComposition(materialElement);
 
-                material = new Material(composition, density);
-                material.setName(name);
+                    material = new Material(composition, density);
+                    material.setName(name);
 
-                scatterModel = new BasicMaterialModel(material);
-                scatterModel.setMinEforTracking(ToSI
-                        .eV(absorptionEnergyElectron));
+                    materialCache.put(key, material);
+                }
+
+                scatterModel =
+                        MaterialModelCache.get(material,
+                                ToSI.eV(absorptionEnergyElectron));
 
                 materials.put(index, scatterModel);
             }
@@ -312,6 +405,98 @@ public class GeometryExtractorFactory {
                 if (r instanceof TransformableRegion)
                     ((TransformableRegion) r).rotate(pivot, phi, theta, psi);
         }
+
+
+
+        /**
+         * Creates the container of layers specified by the
+         * <code>acceleration</code> attribute of a geometry XML element. With
+         * <code>grid</code>, the layers are added to a
+         * {@link GridContainerRegion} sorting them along the specified axis.
+         * With <code>stratified</code>, they are added to a
+         * {@link StratifiedRegion} stacking them along this axis, below a
+         * surface of normal +z. Otherwise
+         * (<code>none</code>, default), they are added directly to the
+         * chamber.
+         * 
+         * @param geometryElement
+         *            XML element
+         * @param chamber
+         *            region of the chamber as defined in
+         *            <code>MonteCarloSS</code>
+         * @param axis
+         *            axis perpendicular to the layers
+         * @param start
+         *            position of the first layer along the axis
+         * @return parent region of the layers
+         * @throws IOException
+         *             if the acceleration is unknown
+         */
+        protected Region createLayersContainer(Element geometryElement,
+                Region chamber, double[] axis, double start)
+                throws IOException {
+            String acceleration =
+                    geometryElement.getAttributeValue("acceleration", "none");
+            MultiPlaneShape shape;
+            switch (acceleration) {
+            case "none":
+                return chamber;
+            case "grid":
+                shape =
+                        MultiPlaneShape.createSubstrate(Math2.Z_AXIS,
+                                Math2.ORIGIN_3D);
+                return new GridContainerRegion(chamber,
+                        chamber.getScatterModel(), shape, axis,
+                        Math2.ORIGIN_3D);
+            case "stratified":
+                shape =
+                        MultiPlaneShape.createSubstrate(Math2.Z_AXIS,
+                                Math2.ORIGIN_3D);
+                StratifiedRegion region =
+                        new StratifiedRegion(chamber,
+                                chamber.getScatterModel(), shape, axis,
+                                Math2.ORIGIN_3D, start);
+                region.setSurfaceNormal(Math2.Z_AXIS);
+                return region;
+            default:
+                throw new IOException("Unknown acceleration: " + acceleration);
+            }
+        }
+
+
+
+        /**
+         * Creates a layer in its container. The layers must be created in
+         * order along the axis of the container.
+         * 
+         * @param parent
+         *            container of the layer, see
+         *            {@link #createLayersContainer}
+         * @param material
+         *            material of the layer
+         * @param shape
+         *            shape of the layer
+         * @param min
+         *            start of the layer along the axis
+         * @param max
+         *            end of the layer along the axis
+         * @param index
+         *            index of the layer
+         * @return region of the layer
+         */
+        protected RegionBase createLayer(Region parent,
+                IMaterialScatterModel material, Shape shape, double min,
+                double max, int index) {
+            if (parent instanceof StratifiedRegion)
+                return ((StratifiedRegion) parent).addLayer(material, shape,
+                        max - min, index);
+
+            RegionBase region =
+                    new IndexedRegion(parent, material, shape, index);
+            if (parent instanceof GridContainerRegion)
+                ((GridContainerRegion) parent).setExtent(region, min, max);
+            return region;
+        }
     }
 
     /** Substrate extractor. */
@@ -319,11 +504,9 @@ public class GeometryExtractorFactory {
             AbstractGeometryExtractor {
 
         @Override
-        public void extract(Element geometryElement, Region chamber)
+        protected void build(Element geometryElement, Region chamber,
+                Map<Integer, IMaterialScatterModel> materials)
                 throws IOException, EPQException {
-            Map<Integer, IMaterialScatterModel> materials =
-                    extractMaterials(geometryElement);
-
             // Get material
             Element bodyElement = geometryElement.getChild("body");
 
@@ -343,8 +526,11 @@ public class GeometryExtractorFactory {
             MultiPlaneShape shape =
                     MultiPlaneShape.createSubstrate(normal, pt);
 
-            // Add shape to chamber
-            new IndexedRegion(chamber, material, shape, 1);
+            // Add shape to chamber, as a stack of a single layer if requested
+            Region parent =
+                    createLayersContainer(geometryElement, chamber,
+                            Math2.MINUS_Z_AXIS, 0.0);
+            createLayer(parent, material, shape, 0.0, 0.1, 1); // 10 cm
 
             applyRotationTilt(geometryElement, chamber);
         }
@@ -359,11 +545,9 @@ public class GeometryExtractorFactory {
             AbstractGeometryExtractor {
 
         @Override
-        public void extract(Element geometryElement, Region chamber)
+        protected void build(Element geometryElement, Region chamber,
+                Map<Integer, IMaterialScatterModel> materials)
                 throws IOException, EPQException {
-            Map<Integer, IMaterialScatterModel> materials =
-                    extractMaterials(geometryElement);
-
             // Substrate
             Element substrateElement = geometryElement.getChild("substrate");
 
@@ -430,11 +614,9 @@ public class GeometryExtractorFactory {
             AbstractGeometryExtractor {
 
         @Override
-        public void extract(Element geometryElement, Region chamber)
+        protected void build(Element geometryElement, Region chamber,
+                Map<Integer, IMaterialScatterModel> materials)
                 throws IOException, EPQException {
-            Map<Integer, IMaterialScatterModel> materials =
-                    extractMaterials(geometryElement);
-
             // Layers
             MultiPlaneShape shape;
             double[] normal = Math2.Z_AXIS;
@@ -442,9 +624,14 @@ public class GeometryExtractorFactory {
 
             Element layersElement = geometryElement.getChild("layers");
 
+            Region parent =
+                    createLayersContainer(geometryElement, chamber,
+                            Math2.MINUS_Z_AXIS, 0.0);
+
             int materialIndex;
             IMaterialScatterModel material;
             double thickness;
+            double depth = 0.0;
             int layerIndex = 0;
             for (Element layerElement : layersElement.getChildren()) {
                 try {
@@ -461,7 +648,9 @@ public class GeometryExtractorFactory {
                 shape =
                         MultiPlaneShape
                                 .createFilm(normal, point, thickness);
-                new IndexedRegion(chamber, material, shape, ++layerIndex);
+                createLayer(parent, material, shape, depth, depth + thickness,
+                        ++layerIndex);
+                depth += thickness;
 
                 // Calculate next point
                 point =
@@ -486,8 +675,8 @@ public class GeometryExtractorFactory {
 
                 thickness = 0.1; // 10 cm
                 shape = MultiPlaneShape.createFilm(normal, point, thickness);
-                new IndexedRegion(chamber, substrateMaterial, shape,
-                        layerIndex + 1);
+                createLayer(parent, substrateMaterial, shape, depth, depth
+                        + thickness, layerIndex + 1);
             }
 
             applyRotationTilt(geometryElement, chamber);
@@ -530,11 +719,9 @@ public class GeometryExtractorFactory {
 
 
         @Override
-        public void extract(Element geometryElement, Region chamber)
+        protected void build(Element geometryElement, Region chamber,
+                Map<Integer, IMaterialScatterModel> materials)
                 throws IOException, EPQException {
-            Map<Integer, IMaterialScatterModel> materials =
-                    extractMaterials(geometryElement);
-
             // Setup layers
             double totalThickness = 0.0;
             List<Layer> layers = new ArrayList<>();
@@ -596,6 +783,10 @@ public class GeometryExtractorFactory {
             double[] point =
                     Math2.multiply(-totalThickness / 2.0, Math2.X_AXIS);
 
+            Region parent =
+                    createLayersContainer(geometryElement, chamber,
+                            Math2.X_AXIS, point[0]);
+
             int layerIndex = 0;
             for (Layer layer : layers) {
                 // FIXME: Depth not considered
@@ -604,7 +795,8 @@ public class GeometryExtractorFactory {
                         MultiPlaneShape.createFilm(layerNormal, point,
                                 layer.thickness);
                 shape.addPlane(surfaceNormal, origin); // surface
-                new IndexedRegion(chamber, layer.material, shape, ++layerIndex);
+                createLayer(parent, layer.material, shape, point[0], point[0]
+                        + layer.thickness, ++layerIndex);
 
                 // Calculate next point
                 point =
@@ -620,6 +812,196 @@ public class GeometryExtractorFactory {
     public static final GeometryExtractor VERTICAL_LAYERS =
             new VerticalLayersExtractor();
 
+    /**
+     * Raw volume extractor. The geometry is a grid of voxels whose materials
+     * are read from a raw label volume (e.g. a segmented tomogram). Setting
+     * <code>acceleration="octree"</code> builds an {@link OctreeVoxelRegion},
+     * which skips over homogeneous blocks of voxels.
+     */
+    protected static class RawVolumeGeometryExtractor extends
+            AbstractGeometryExtractor {
+
+        /**
+         * Returns the raw file. A relative path is resolved against the
+         * directory of the options file (base URI of the document), not the
+         * working directory.
+         *
+         * @param geometryElement
+         *            XML element
+         * @return raw file
+         * @throws IOException
+         *             if the file attribute is missing
+         */
+        protected File getFile(Element geometryElement) throws IOException {
+            String path = geometryElement.getAttributeValue("file");
+            if (path == null)
+                throw new IOException("No file specified for the raw volume");
+
+            File file = new File(path);
+            if (file.isAbsolute())
+                return file;
+
+            Document document = geometryElement.getDocument();
+            String baseURI = document == null ? null : document.getBaseURI();
+            if (baseURI == null)
+                return file;
+
+            File optionsFile;
+            try {
+                optionsFile = new File(new URI(baseURI));
+            } catch (URISyntaxException | IllegalArgumentException e) {
+                throw new IOException("Invalid base URI: " + baseURI, e);
+            }
+            return new File(optionsFile.getParentFile(), path);
+        }
+
+
+
+        /**
+         * Returns the key of the geometry, which also depends on the size and
+         * modification time of the raw file.
+         */
+        @Override
+        protected String getTemplateKey(Element geometryElement)
+                throws IOException {
+            File file = getFile(geometryElement);
+            return super.getTemplateKey(geometryElement) + ":"
+                    + file.getAbsolutePath() + ":" + file.length() + ":"
+                    + file.lastModified();
+        }
+
+
+
+        @Override
+        protected void build(Element geometryElement, Region chamber,
+                Map<Integer, IMaterialScatterModel> materials)
+                throws IOException, EPQException {
+            // The voxels are aligned with the axes
+            double rotation, tilt;
+            try {
+                rotation =
+                        geometryElement.getAttribute("rotation")
+                                .getDoubleValue();
+                tilt = geometryElement.getAttribute("tilt").getDoubleValue();
+            } catch (DataConversionException e) {
+                throw new IOException(e);
+            }
+            if (rotation != 0.0 || tilt != 0.0)
+                throw new IOException(
+                        "Rotation and tilt are not supported for raw volume");
+
+            // Grid
+            int nx, ny, nz;
+            double x0, x1, y0, y1, z0, z1;
+            try {
+                nx = geometryElement.getAttribute("nx").getIntValue();
+                ny = geometryElement.getAttribute("ny").getIntValue();
+                nz = geometryElement.getAttribute("nz").getIntValue();
+                x0 = geometryElement.getAttribute("x0").getDoubleValue();
+                x1 = geometryElement.getAttribute("x1").getDoubleValue();
+                y0 = geometryElement.getAttribute("y0").getDoubleValue();
+                y1 = geometryElement.getAttribute("y1").getDoubleValue();
+                z0 = geometryElement.getAttribute("z0").getDoubleValue();
+                z1 = geometryElement.getAttribute("z1").getDoubleValue();
+            } catch (DataConversionException e) {
+                throw new IOException(e);
+            }
+
+            // Raw file
+            File file = getFile(geometryElement);
+
+            int bytesPerVoxel;
+            String dtype = geometryElement.getAttributeValue("dtype", "uint8");
+            switch (dtype) {
+            case "uint8":
+                bytesPerVoxel = 1;
+                break;
+            case "uint16":
+                bytesPerVoxel = 2;
+                break;
+            default:
+                throw new IOException("Unknown data type: " + dtype);
+            }
+
+            ByteOrder order;
+            String byteOrder =
+                    geometryElement.getAttributeValue("byteOrder", "little");
+            switch (byteOrder) {
+            case "little":
+                order = ByteOrder.LITTLE_ENDIAN;
+                break;
+            case "big":
+                order = ByteOrder.BIG_ENDIAN;
+                break;
+            default:
+                throw new IOException("Unknown byte order: " + byteOrder);
+            }
+
+            // Material of each label
+            Map<Integer, IMaterialScatterModel> labels =
+                    new HashMap<Integer, IMaterialScatterModel>();
+
+            int value, materialIndex;
+            for (Element labelElement : geometryElement.getChild("labels")
+                    .getChildren()) {
+                try {
+                    value = labelElement.getAttribute("value").getIntValue();
+                    materialIndex =
+                            labelElement.getAttribute("material").getIntValue();
+                } catch (DataConversionException e) {
+                    throw new IOException(e);
+                }
+
+                if (!materials.containsKey(materialIndex))
+                    throw new IOException("Unknown material: " + materialIndex);
+                labels.put(value, materials.get(materialIndex));
+            }
+
+            // Create region, with an octree for mostly homogeneous volumes
+            VoxelRegion region;
+            String acceleration =
+                    geometryElement.getAttributeValue("acceleration", "none");
+            switch (acceleration) {
+            case "none":
+                region =
+                        new VoxelRegion(chamber, x0, x1, nx, y0, y1, ny, z0,
+                                z1, nz);
+                break;
+            case "octree":
+                region =
+                        new OctreeVoxelRegion(chamber, x0, x1, nx, y0, y1, ny,
+                                z0, z1, nz);
+                break;
+            default:
+                throw new IOException("Unknown acceleration: " + acceleration);
+            }
+
+            Element surroundingElement =
+                    geometryElement.getChild("surrounding");
+            if (surroundingElement != null) {
+                try {
+                    materialIndex =
+                            surroundingElement.getAttribute("material")
+                                    .getIntValue();
+                } catch (DataConversionException e) {
+                    throw new IOException(e);
+                }
+
+                if (materials.get(materialIndex) == null)
+                    throw new IOException("Unknown surrounding material: "
+                            + materialIndex);
+                region.updateSurroundingMaterial(materials.get(materialIndex));
+            }
+
+            new RawLabelVolume(file, nx, ny, nz, bytesPerVoxel, order).apply(
+                    region, labels);
+        }
+
+    }
+
+    public static final GeometryExtractor RAW_VOLUME =
+            new RawVolumeGeometryExtractor();
+
     // /** Thin grain boundaries extractor. */
     // protected static class ThinGrainBoundariesExtractor extends
     // AbstractGeometryExtractor {
@@ -2,6 +2,8 @@ package pymontecarlo.program.nistmonte.fileformat.options;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import gov.nist.microanalysis.EPQLibrary.EPQException;
 import gov.nist.microanalysis.EPQLibrary.FromSI;
@@ -9,13 +11,21 @@ import gov.nist.microanalysis.EPQLibrary.Material;
 import gov.nist.microanalysis.EPQLibrary.MaterialFactory;
 import gov.nist.microanalysis.EPQLibrary.ToSI;
 import gov.nist.microanalysis.NISTMonte.BasicMaterialModel;
+import gov.nist.microanalysis.NISTMonte.GridContainerRegion;
+import gov.nist.microanalysis.NISTMonte.IndexedRegion;
 import gov.nist.microanalysis.NISTMonte.IMaterialScatterModel;
 import gov.nist.microanalysis.NISTMonte.MonteCarloSS.Region;
 import gov.nist.microanalysis.NISTMonte.MonteCarloSS.RegionBase;
 import gov.nist.microanalysis.NISTMonte.MonteCarloSS.Shape;
+import gov.nist.microanalysis.NISTMonte.OctreeVoxelRegion;
+import gov.nist.microanalysis.NISTMonte.StratifiedRegion;
+import gov.nist.microanalysis.NISTMonte.VoxelRegion;
 
+import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 
+import org.jdom2.Document;
 import org.jdom2.Element;
 import org.junit.Before;
 import org.junit.Test;
@@ -133,6 +143,30 @@ public class GeometryExtractorFactoryTest {
 
 
 
+    @Test
+    public void testSUBSTRATE_STRATIFIED() throws IOException, EPQException {
+        // Setup
+        Element element = createSubstrateGeometryElement();
+        element.setAttribute("acceleration", "stratified");
+
+        // Extract
+        GeometryExtractor extractor = GeometryExtractorFactory.SUBSTRATE;
+        extractor.extract(element, chamber);
+
+        // Test
+        assertEquals(1, chamber.getSubRegions().size());
+        RegionBase container = chamber.getSubRegions().get(0);
+        assertTrue(container instanceof StratifiedRegion);
+        assertTrue(((StratifiedRegion) container).isAxisSurfaceNormal());
+        assertEquals(1, container.getSubRegions().size());
+
+        RegionBase region = container.getSubRegions().get(0);
+        assertEquals(1, ((IndexedRegion) region).getIndex());
+        assertEquals("Si3N4", region.getMaterial().getName());
+    }
+
+
+
     public static Element createInclusionGeometryElement() throws EPQException {
         Element element =
                 new Element("inclusion");
@@ -281,6 +315,92 @@ public class GeometryExtractorFactoryTest {
 
 
 
+    @Test
+    public void testMULTI_LAYERS_GRID() throws IOException, EPQException {
+        // Setup
+        Element element = createHorizontalLayersGeometryElement();
+        element.setAttribute("acceleration", "grid");
+
+        // Extract
+        GeometryExtractor extractor =
+                GeometryExtractorFactory.HORIZONTAL_LAYERS;
+        extractor.extract(element, chamber);
+
+        // Tests
+        assertEquals(1, chamber.getSubRegions().size());
+
+        RegionBase container = chamber.getSubRegions().get(0);
+        assertTrue(container instanceof GridContainerRegion);
+        assertEquals(3, container.getSubRegions().size());
+
+        Material mat = container.getSubRegions().get(1).getMaterial();
+        assertEquals("Al2O3", mat.getName());
+
+        mat = container.getSubRegions().get(2).getMaterial();
+        assertEquals("Pure gold", mat.getName());
+    }
+
+
+
+    @Test
+    public void testMULTI_LAYERS_STRATIFIED() throws IOException,
+            EPQException {
+        // Setup
+        Element element = createHorizontalLayersGeometryElement();
+        element.setAttribute("acceleration", "stratified");
+
+        // Extract
+        GeometryExtractor extractor =
+                GeometryExtractorFactory.HORIZONTAL_LAYERS;
+        extractor.extract(element, chamber);
+
+        // Tests
+        assertEquals(1, chamber.getSubRegions().size());
+
+        RegionBase container = chamber.getSubRegions().get(0);
+        assertTrue(container instanceof StratifiedRegion);
+        assertTrue(((StratifiedRegion) container).isAxisSurfaceNormal());
+        assertEquals(3, container.getSubRegions().size());
+
+        RegionBase region = container.getSubRegions().get(2);
+        assertEquals(3, ((IndexedRegion) region).getIndex());
+        assertEquals("Pure gold", region.getMaterial().getName());
+    }
+
+
+
+    @Test
+    public void testTemplate() throws IOException, EPQException {
+        // Setup
+        Element element = createHorizontalLayersGeometryElement();
+        element.setAttribute("acceleration", "stratified");
+        Region otherChamber = new Region(null, null, null);
+
+        // Extract
+        GeometryExtractor extractor =
+                GeometryExtractorFactory.HORIZONTAL_LAYERS;
+        extractor.extract(element, chamber);
+        extractor.extract(element, otherChamber);
+
+        // Tests
+        assertEquals(1, otherChamber.getSubRegions().size());
+
+        RegionBase container = chamber.getSubRegions().get(0);
+        RegionBase otherContainer = otherChamber.getSubRegions().get(0);
+        assertNotSame(container, otherContainer);
+        assertTrue(otherContainer instanceof StratifiedRegion);
+        assertEquals(3, otherContainer.getSubRegions().size());
+
+        RegionBase region = container.getSubRegions().get(2);
+        RegionBase otherRegion = otherContainer.getSubRegions().get(2);
+        assertSame(region.getShape(), otherRegion.getShape());
+        assertSame(region.getScatterModel(), otherRegion.getScatterModel());
+        assertEquals("Pure gold", otherRegion.getMaterial().getName());
+        assertEquals(3, ((IndexedRegion) otherRegion).getIndex());
+    }
+
+
+
     public static Element createVerticalLayersGeometryElement()
             throws EPQException {
         Element element =
@@ -311,6 +431,26 @@ public class GeometryExtractorFactoryTest {
 
 
 
+    @Test
+    public void testVERTICAL_LAYERS_STRATIFIED() throws IOException,
+            EPQException {
+        // Setup
+        Element element = createVerticalLayersGeometryElement();
+        element.setAttribute("acceleration", "stratified");
+
+        // Extract
+        GeometryExtractor extractor = GeometryExtractorFactory.VERTICAL_LAYERS;
+        extractor.extract(element, chamber);
+
+        // Test: the layers are perpendicular to the surface
+        assertEquals(1, chamber.getSubRegions().size());
+        RegionBase container = chamber.getSubRegions().get(0);
+        assertTrue(container instanceof StratifiedRegion);
+        assertFalse(((StratifiedRegion) container).isAxisSurfaceNormal());
+    }
+
+
+
     @Test
     public void testVERTICAL_LAYERS() throws IOException, EPQException {
         // Setup
@@ -373,4 +513,173 @@ public class GeometryExtractorFactoryTest {
         assertFalse(shape.contains(new double[] { 0.0, 0.0, -50e-8 })); // left
     }
 
+
+
+    public static Element createRawVolumeGeometryElement(File file)
+            throws EPQException {
+        Element element = new Element("rawVolume");
+        element.setAttribute("rotation", "0.0");
+        element.setAttribute("tilt", "0.0");
+        element.setAttribute("file", file.getAbsolutePath());
+        element.setAttribute("dtype", "uint8");
+        element.setAttribute("nx", "2");
+        element.setAttribute("ny", "1");
+        element.setAttribute("nz", "1");
+        element.setAttribute("x0", "-1e-6");
+        element.setAttribute("x1", "1e-6");
+        element.setAttribute("y0", "-1e-6");
+        element.setAttribute("y1", "1e-6");
+        element.setAttribute("z0", "-1e-6");
+        element.setAttribute("z1", "0.0");
+
+        element.addContent(createMaterialsElement());
+
+        Element labelsElement = new Element("labels");
+
+        Element labelElement = new Element("label");
+        labelElement.setAttribute("value", "0");
+        labelElement.setAttribute("material", "1");
+        labelsElement.addContent(labelElement);
+
+        labelElement = new Element("label");
+        labelElement.setAttribute("value", "5");
+        labelElement.setAttribute("material", "3");
+        labelsElement.addContent(labelElement);
+
+        element.addContent(labelsElement);
+
+        Element surroundingElement = new Element("surrounding");
+        surroundingElement.setAttribute("material", "2");
+        element.addContent(surroundingElement);
+
+        return element;
+    }
+
+
+
+    @Test
+    public void testRAW_VOLUME() throws IOException, EPQException {
+        // Setup
+        File file = File.createTempFile("tmp", ".raw");
+        file.deleteOnExit();
+        Files.write(file.toPath(), new byte[] { 0, 5 });
+
+        Element element = createRawVolumeGeometryElement(file);
+
+        // Extract
+        GeometryExtractor extractor = GeometryExtractorFactory.RAW_VOLUME;
+        extractor.extract(element, chamber);
+
+        // Test
+        assertEquals(1, chamber.getSubRegions().size());
+        VoxelRegion region = (VoxelRegion) chamber.getSubRegions().get(0);
+
+        assertEquals("Al2O3", region.getMaterial().getName());
+
+        Material mat =
+                region.getMaterialModel(region.getLabel(0, 0, 0)).getMaterial();
+        assertEquals("Si3N4", mat.getName());
+
+        mat = region.getMaterialModel(region.getLabel(1, 0, 0)).getMaterial();
+        assertEquals("Pure gold", mat.getName());
+    }
+
+
+
+    @Test
+    public void testRAW_VOLUMEOctree() throws IOException, EPQException {
+        // Setup
+        File file = File.createTempFile("tmp", ".raw");
+        file.deleteOnExit();
+        Files.write(file.toPath(), new byte[] { 0, 5 });
+
+        Element element = createRawVolumeGeometryElement(file);
+        element.setAttribute("acceleration", "octree");
+
+        // Extract
+        GeometryExtractor extractor = GeometryExtractorFactory.RAW_VOLUME;
+        extractor.extract(element, chamber);
+
+        // Test
+        assertEquals(1, chamber.getSubRegions().size());
+        RegionBase container = chamber.getSubRegions().get(0);
+        assertTrue(container instanceof OctreeVoxelRegion);
+
+        VoxelRegion region = (VoxelRegion) container;
+        Material mat =
+                region.getMaterialModel(region.getLabel(0, 0, 0)).getMaterial();
+        assertEquals("Si3N4", mat.getName());
+
+        mat = region.getMaterialModel(region.getLabel(1, 0, 0)).getMaterial();
+        assertEquals("Pure gold", mat.getName());
+    }
+
+
+
+    @Test(expected = IOException.class)
+    public void testRAW_VOLUMEUnknownAcceleration() throws IOException,
+            EPQException {
+        File file = File.createTempFile("tmp", ".raw");
+        file.deleteOnExit();
+        Files.write(file.toPath(), new byte[] { 0, 5 });
+
+        Element element = createRawVolumeGeometryElement(file);
+        element.setAttribute("acceleration", "grid");
+
+        GeometryExtractorFactory.RAW_VOLUME.extract(element, chamber);
+    }
+
+
+
+    @Test
+    public void testRAW_VOLUMERelativeFile() throws IOException, EPQException {
+        // Setup
+        File file = File.createTempFile("tmp", ".raw");
+        file.deleteOnExit();
+        Files.write(file.toPath(), new byte[] { 5, 0 });
+
+        Element element = createRawVolumeGeometryElement(file);
+        element.setAttribute("file", file.getName());
+
+        // Relative to the options file, not the working directory
+        Document document = new Document(element);
+        document.setBaseURI(new File(file.getParentFile(), "options.xml")
+                .toURI().toString());
+
+        // Extract
+        GeometryExtractorFactory.RAW_VOLUME.extract(element, chamber);
+
+        // Test
+        VoxelRegion region = (VoxelRegion) chamber.getSubRegions().get(0);
+        Material mat =
+                region.getMaterialModel(region.getLabel(0, 0, 0)).getMaterial();
+        assertEquals("Pure gold", mat.getName());
+    }
+
+
+
+    @Test(expected = IOException.class)
+    public void testRAW_VOLUMEMissingFile() throws IOException, EPQException {
+        File file = new File("tmp.raw");
+        Element element = createRawVolumeGeometryElement(file);
+        element.removeAttribute("file");
+
+        GeometryExtractorFactory.RAW_VOLUME.extract(element, chamber);
+    }
+
+
+
+    @Test(expected = IOException.class)
+    public void testRAW_VOLUMEUnknownSurrounding() throws IOException,
+            EPQException {
+        File file = File.createTempFile("tmp", ".raw");
+        file.deleteOnExit();
+        Files.write(file.toPath(), new byte[] { 0, 5 });
+
+        Element element = createRawVolumeGeometryElement(file);
+        element.getChild("surrounding").setAttribute("material", "99");
+
+        GeometryExtractorFactory.RAW_VOLUME.extract(element, chamber);
+    }
+
 }
@@ -0,0 +1,98 @@
+package pymontecarlo.program.nistmonte.fileformat.options;
+
+import gov.nist.microanalysis.NISTMonte.IMaterialScatterModel;
+import gov.nist.microanalysis.NISTMonte.MonteCarloSS.Region;
+import gov.nist.microanalysis.NISTMonte.MonteCarloSS.RegionBase;
+import gov.nist.microanalysis.NISTMonte.RegionCopier;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Geometry built once from a geometry XML element and shared by the
+ * simulations of the same sample (e.g. a sweep over the beam energy). The
+ * regions of the geometry are kept in a prototype chamber. Each simulation
+ * gets a copy of these regions in its own chamber, sharing their shapes and
+ * voxel labels, with the scatter models of the simulation swapped in.
+ * <p/>
+ * The regions of the prototype must not be modified once the template is
+ * created.
+ *
+ * @author ppinard
+ */
+public class GeometryTemplate {
+
+    /** Prototype chamber containing the regions of the geometry. */
+    private final Region prototype;
+
+    /** Scatter models used to build the prototype, by material index. */
+    private final Map<Integer, IMaterialScatterModel> materials;
+
+
+
+    /**
+     * Creates a new <code>GeometryTemplate</code>.
+     *
+     * @param prototype
+     *            prototype chamber containing the regions of the geometry
+     * @param materials
+     *            scatter models used to build the regions, by material index
+     * @throws IllegalArgumentException
+     *             if a region cannot be copied
+     */
+    public GeometryTemplate(Region prototype,
+            Map<Integer, IMaterialScatterModel> materials) {
+        if (prototype == null)
+            throw new NullPointerException("prototype == null");
+        if (materials == null)
+            throw new NullPointerException("materials == null");
+
+        for (RegionBase region : prototype.getSubRegions())
+            if (!RegionCopier.isCopyable(region))
+                throw new IllegalArgumentException(
+                        "Cannot copy region of type "
+                                + region.getClass().getName());
+
+        this.prototype = prototype;
+        this.materials = new HashMap<>(materials);
+    }
+
+
+
+    /**
+     * Copies the regions of the geometry inside a chamber. The scatter model
+     * of each material index is replaced by the one of the specified
+     * materials, and the scatter model of the prototype chamber by the one of
+     * the chamber.
+     *
+     * @param chamber
+     *            region of the chamber as defined in <code>MonteCarloSS</code>
+     * @param materials
+     *            scatter models of the simulation, by material index
+     */
+    public void instantiate(Region chamber,
+            Map<Integer, IMaterialScatterModel> materials) {
+        if (chamber == null)
+            throw new NullPointerException("chamber == null");
+        if (materials == null)
+            throw new NullPointerException("materials == null");
+
+        Map<IMaterialScatterModel, IMaterialScatterModel> models =
+                new IdentityHashMap<>();
+        models.put(prototype.getScatterModel(), chamber.getScatterModel());
+
+        IMaterialScatterModel replacement;
+        for (Entry<Integer, IMaterialScatterModel> entry : this.materials
+                .entrySet()) {
+            replacement = materials.get(entry.getKey());
+            if (replacement != null)
+                models.put(entry.getValue(), replacement);
+        }
+
+        for (RegionBase region : prototype.getSubRegions())
+            RegionCopier.copy(region, chamber, models);
+    }
+
+}
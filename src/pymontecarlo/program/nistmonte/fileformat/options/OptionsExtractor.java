@@ -1,12 +1,18 @@
 package pymontecarlo.program.nistmonte.fileformat.options;
 
+import gov.nist.microanalysis.EPQLibrary.AlgorithmClass;
+import gov.nist.microanalysis.EPQLibrary.AlgorithmUser;
 import gov.nist.microanalysis.EPQLibrary.EPQException;
 import gov.nist.microanalysis.EPQLibrary.Strategy;
+import gov.nist.microanalysis.NISTMonte.ElectronSplitting;
 import gov.nist.microanalysis.NISTMonte.MonteCarloSS;
 import gov.nist.microanalysis.NISTMonte.MonteCarloSS.ElectronGun;
 import gov.nist.microanalysis.NISTMonte.MonteCarloSS.Region;
+import gov.nist.microanalysis.NISTMonte.PhotonSplitting;
+import gov.nist.microanalysis.NISTMonte.TabulatedMaterialModel;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -14,14 +20,18 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import org.jdom2.Attribute;
+import org.jdom2.DataConversionException;
 import org.jdom2.Element;
 
 import pymontecarlo.fileformat.Extractor;
+import pymontecarlo.fileformat.ExtractorCache;
 import pymontecarlo.fileformat.ExtractorManager;
 import pymontecarlo.fileformat.options.ModelExtractor;
 import pymontecarlo.fileformat.options.ModelExtractorFactory;
 import pymontecarlo.program.nistmonte.options.detector.Detector;
 import pymontecarlo.program.nistmonte.options.limit.Limit;
+import pymontecarlo.program.nistmonte.options.model.FluorescenceMC;
 
 /**
  * Main extractor that extract all options from a options XML file.
@@ -47,6 +57,8 @@ public class OptionsExtractor implements Extractor {
                 GeometryExtractorFactory.HORIZONTAL_LAYERS);
         ExtractorManager.register("verticalLayers",
                 GeometryExtractorFactory.VERTICAL_LAYERS);
+        ExtractorManager.register("rawVolume",
+                GeometryExtractorFactory.RAW_VOLUME);
 
         // Detector
         ExtractorManager.register("photonIntensityDetector",
@@ -65,6 +77,8 @@ public class OptionsExtractor implements Extractor {
                 DetectorExtractorFactory.TRAJECTORY);
         ExtractorManager.register("backscatteredElectronRadialDetector",
                 DetectorExtractorFactory.BACKSCATTERED_ELECTRON_RADIAL);
+        ExtractorManager.register("regionTallyDetector",
+                DetectorExtractorFactory.REGION_TALLY);
 
         // Limit
         ExtractorManager
@@ -78,6 +92,10 @@ public class OptionsExtractor implements Extractor {
 
     public static final String VERSION = "6";
 
+    /** Cache of strategies, keyed by the hash of the models XML element. */
+    private static final ExtractorCache<Strategy> strategyCache =
+            new ExtractorCache<>(16);
+
     /** Name of the simulation. */
     private String name = null;
 
@@ -93,6 +111,15 @@ public class OptionsExtractor implements Extractor {
     /** Extracted model strategy. */
     private Strategy strategy = null;
 
+    /** Extracted photon splitting, <code>null</code> if none. */
+    private PhotonSplitting photonSplitting = null;
+
+    /** Extracted electron splitting, <code>null</code> if none. */
+    private ElectronSplitting electronSplitting = null;
+
+    /** Points per decade of the tabulated scatter models, 0 if none. */
+    private int tabulationPointsPerDecade = 0;
+
 
 
     /**
@@ -141,6 +168,11 @@ public class OptionsExtractor implements Extractor {
         mcss.setBeamEnergy(beam.getBeamEnergy());
         mcss.setElectronGun(beam);
 
+        // Models, applied before the geometry so that the scatter models of
+        // the regions are created (and cached) with the strategy of this run
+        strategy = extractModels(root);
+        AlgorithmUser.applyGlobalOverride(strategy);
+
         // Geometry
         extractGeometry(root, mcss.getChamber());
 
@@ -150,8 +182,15 @@ public class OptionsExtractor implements Extractor {
         // Limits
         limits = extractLimits(root);
 
-        // Models
-        strategy = extractModels(root);
+        // Variance reduction
+        photonSplitting = extractPhotonSplitting(root);
+        if (photonSplitting != null && !hasFluorescence(strategy))
+            throw new IOException(
+                    "Photon splitting requires a fluorescence model");
+        electronSplitting = extractElectronSplitting(root, mcss);
+
+        // Performance
+        tabulationPointsPerDecade = extractTabulation(root);
     }
 
 
@@ -301,7 +340,12 @@ public class OptionsExtractor implements Extractor {
             EPQException {
         Element modelsRoot = root.getChild("models");
 
-        Strategy strategy = new Strategy();
+        String key = ExtractorCache.hash(modelsRoot);
+        Strategy strategy = strategyCache.get(key);
+        if (strategy != null)
+            return (Strategy) strategy.clone();
+
+        strategy = new Strategy();
 
         ModelExtractor extractor;
         for (Element modelElement : modelsRoot.getChildren()) {
@@ -311,11 +355,146 @@ public class OptionsExtractor implements Extractor {
             strategy.addAll(extractor.extract(modelElement));
         }
 
+        strategyCache.put(key, (Strategy) strategy.clone());
+
         return strategy;
     }
 
 
 
+    /**
+     * Returns whether the strategy simulates the fluorescence x-rays.
+     * 
+     * @param strategy
+     *            strategy of the models
+     * @return <code>true</code> if the fluorescence is simulated
+     */
+    private static boolean hasFluorescence(Strategy strategy) {
+        AlgorithmClass classFluo = strategy.getAlgorithm(FluorescenceMC.class);
+        return classFluo == FluorescenceMC.Fluorescence
+                || classFluo == FluorescenceMC.FluorescenceCompton;
+    }
+
+
+
+    /**
+     * Parses the XML options and returns the optional splitting of the
+     * fluorescence x-rays, from the <code>photonSplitting</code> element. Its
+     * <code>factor</code> attribute is the splitting factor and its
+     * <code>element</code> children the atomic numbers (<code>z</code>) of
+     * the split elements. The splitting requires a fluorescence model.
+     * 
+     * @param root
+     *            XML options
+     * @return photon splitting, or <code>null</code> if none
+     * @throws IOException
+     *             if an error occurs while reading the options
+     */
+    protected PhotonSplitting extractPhotonSplitting(Element root)
+            throws IOException {
+        Element splittingElement = root.getChild("photonSplitting");
+        if (splittingElement == null)
+            return null;
+
+        int factor;
+        List<gov.nist.microanalysis.EPQLibrary.Element> elements =
+                new ArrayList<>();
+        try {
+            factor = splittingElement.getAttribute("factor").getIntValue();
+
+            int z;
+            for (Element element : splittingElement.getChildren("element")) {
+                z = element.getAttribute("z").getIntValue();
+                elements.add(gov.nist.microanalysis.EPQLibrary.Element
+                        .byAtomicNumber(z));
+            }
+        } catch (DataConversionException e) {
+            throw new IOException(e);
+        }
+
+        return new PhotonSplitting(factor, elements);
+    }
+
+
+
+    /**
+     * Parses the XML options and returns the optional splitting of the
+     * electrons at depth, from the <code>electronSplitting</code> element. Its
+     * <code>factor</code> attribute is the splitting factor and its
+     * <code>plane</code> children the depths (<code>depth</code>, in meters)
+     * of the planes.
+     * 
+     * @param root
+     *            XML options
+     * @param mcss
+     *            Monte Carlo simulator
+     * @return electron splitting, or <code>null</code> if none
+     * @throws IOException
+     *             if an error occurs while reading the options
+     */
+    protected ElectronSplitting extractElectronSplitting(Element root,
+            MonteCarloSS mcss) throws IOException {
+        Element splittingElement = root.getChild("electronSplitting");
+        if (splittingElement == null)
+            return null;
+
+        int factor;
+        List<Element> planeElements = splittingElement.getChildren("plane");
+        double[] depths = new double[planeElements.size()];
+        try {
+            factor = splittingElement.getAttribute("factor").getIntValue();
+
+            for (int i = 0; i < depths.length; i++)
+                depths[i] =
+                        planeElements.get(i).getAttribute("depth")
+                                .getDoubleValue();
+        } catch (DataConversionException e) {
+            throw new IOException(e);
+        }
+
+        return new ElectronSplitting(mcss, depths, factor);
+    }
+
+
+
+    /**
+     * Parses the XML options and returns whether the scatter models are
+     * tabulated (see {@link TabulatedMaterialModel}), from the optional
+     * <code>tabulatedModels</code> element. Its optional
+     * <code>pointsPerDecade</code> attribute is the number of points per
+     * decade of energy of the tables.
+     * 
+     * @param root
+     *            XML options
+     * @return number of points per decade, or 0 if the models are not
+     *         tabulated
+     * @throws IOException
+     *             if an error occurs while reading the options
+     */
+    protected int extractTabulation(Element root) throws IOException {
+        Element tabulationElement = root.getChild("tabulatedModels");
+        if (tabulationElement == null)
+            return 0;
+
+        Attribute pointsAttribute =
+                tabulationElement.getAttribute("pointsPerDecade");
+        if (pointsAttribute == null)
+            return TabulatedMaterialModel.DEFAULT_POINTS_PER_DECADE;
+
+        int points;
+        try {
+            points = pointsAttribute.getIntValue();
+        } catch (DataConversionException e) {
+            throw new IOException(e);
+        }
+        if (points < 1)
+            throw new IOException("Points per decade must be >= 1: " + points);
+
+        return points;
+    }
+
+
+
     /**
      * Returns the name of the simulation.
      * 
@@ -392,4 +571,53 @@ public class OptionsExtractor implements Extractor {
         return (Strategy) strategy.clone();
     }
 
+
+
+    /**
+     * Returns the splitting of the fluorescence x-rays after
+     * {@link #extract(Element)} was run.
+     * 
+     * @return photon splitting, or <code>null</code> if none
+     * @throws RuntimeException
+     *             if {@link #extract(Element)} was not run.
+     */
+    public PhotonSplitting getPhotonSplitting() {
+        if (mcss == null)
+            throw new RuntimeException("Call extract(Element) method first");
+        return photonSplitting;
+    }
+
+
+
+    /**
+     * Returns the splitting of the electrons at depth after
+     * {@link #extract(Element)} was run.
+     * 
+     * @return electron splitting, or <code>null</code> if none
+     * @throws RuntimeException
+     *             if {@link #extract(Element)} was not run.
+     */
+    public ElectronSplitting getElectronSplitting() {
+        if (mcss == null)
+            throw new RuntimeException("Call extract(Element) method first");
+        return electronSplitting;
+    }
+
+
+
+    /**
+     * Returns the number of points per decade of energy of the tabulated
+     * scatter models after {@link #extract(Element)} was run.
+     * 
+     * @return number of points per decade, or 0 if the scatter models are
+     *         not tabulated
+     * @throws RuntimeException
+     *             if {@link #extract(Element)} was not run.
+     */
+    public int getTabulationPointsPerDecade() {
+        if (mcss == null)
+            throw new RuntimeException("Call extract(Element) method first");
+        return tabulationPointsPerDecade;
+    }
+
 }
@@ -2,6 +2,7 @@ package pymontecarlo.program.nistmonte.fileformat.options;
 
 import gov.nist.microanalysis.EPQLibrary.AbsoluteIonizationCrossSection;
 import gov.nist.microanalysis.EPQLibrary.AlgorithmClass;
+import gov.nist.microanalysis.EPQLibrary.AlgorithmUser;
 import gov.nist.microanalysis.EPQLibrary.BetheElectronEnergyLoss;
 import gov.nist.microanalysis.EPQLibrary.EPQException;
 import gov.nist.microanalysis.EPQLibrary.FromSI;
@@ -12,11 +13,15 @@ import gov.nist.microanalysis.EPQLibrary.MeanIonizationPotential;
 import gov.nist.microanalysis.EPQLibrary.NISTMottScatteringAngle;
 import gov.nist.microanalysis.EPQLibrary.RandomizedScatterFactory;
 import gov.nist.microanalysis.EPQLibrary.Strategy;
+import gov.nist.microanalysis.NISTMonte.ElectronSplitting;
 import gov.nist.microanalysis.NISTMonte.IMaterialScatterModel;
 import gov.nist.microanalysis.NISTMonte.MonteCarloSS;
 import gov.nist.microanalysis.NISTMonte.MonteCarloSS.Region;
 import gov.nist.microanalysis.NISTMonte.MonteCarloSS.RegionBase;
+import gov.nist.microanalysis.NISTMonte.PhotonSplitting;
+import gov.nist.microanalysis.NISTMonte.TabulatedMaterialModel;
 
+import java.io.IOException;
 import java.util.Map;
 import java.util.Set;
 
@@ -30,6 +35,9 @@ import pymontecarlo.program.nistmonte.options.detector.Detector;
 import pymontecarlo.program.nistmonte.options.detector.PhotonIntensityDetector;
 import pymontecarlo.program.nistmonte.options.limit.Limit;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 public class OptionsExtractorTest {
 
@@ -200,4 +208,122 @@ public class OptionsExtractorTest {
         assertEquals(MassAbsorptionCoefficient.Null, alg);
     }
 
+
+
+    @Test
+    public void testExtractAppliesStrategy() {
+        Strategy global = AlgorithmUser.getGlobalStrategy();
+        assertEquals(MassAbsorptionCoefficient.Null,
+                global.getAlgorithm(MassAbsorptionCoefficient.class));
+        assertEquals(BetheElectronEnergyLoss.JoyLuo1989,
+                global.getAlgorithm(BetheElectronEnergyLoss.class));
+    }
+
+
+
+    @Test
+    public void testExtractModelsBeforeGeometry() throws Exception {
+        RegionBase region =
+                extractor.getMonteCarloSS().getChamber().getSubRegions()
+                        .get(0);
+
+        // Same sample, other energy loss model
+        Element root = createOptionsElement();
+        for (Element modelElement : root.getChild("models").getChildren()) {
+            if (modelElement.getAttributeValue("type").equals("energy loss"))
+                modelElement.setAttribute("name", "Bethe 1930");
+        }
+
+        OptionsExtractor other = new OptionsExtractor();
+        other.extract(root);
+        RegionBase otherRegion =
+                other.getMonteCarloSS().getChamber().getSubRegions().get(0);
+
+        assertNotSame(region.getScatterModel(), otherRegion.getScatterModel());
+        assertEquals(BetheElectronEnergyLoss.Bethe1930Strict, AlgorithmUser
+                .getGlobalStrategy().getAlgorithm(
+                        BetheElectronEnergyLoss.class));
+    }
+
+
+
+    @Test
+    public void testGetPhotonSplitting() throws Exception {
+        assertNull(extractor.getPhotonSplitting());
+
+        Element root = createPhotonSplittingOptionsElement();
+        root.getChild("models").addContent(
+                ModelExtractorFactoryTest.createFluorescenceModelElement());
+
+        extractor.extract(root);
+        PhotonSplitting splitting = extractor.getPhotonSplitting();
+        assertEquals(8, splitting.getFactor());
+        assertEquals(1, splitting.getElements().size());
+        assertTrue(splitting.getElements().contains(
+                gov.nist.microanalysis.EPQLibrary.Element.Fe));
+    }
+
+
+
+    @Test(expected = IOException.class)
+    public void testGetPhotonSplittingWithoutFluorescence() throws Exception {
+        extractor.extract(createPhotonSplittingOptionsElement());
+    }
+
+
+
+    private static Element createPhotonSplittingOptionsElement()
+            throws EPQException {
+        Element root = createOptionsElement();
+        Element splittingElement = new Element("photonSplitting");
+        splittingElement.setAttribute("factor", "8");
+        Element element = new Element("element");
+        element.setAttribute("z", "26");
+        splittingElement.addContent(element);
+        root.addContent(splittingElement);
+        return root;
+    }
+
+
+
+    @Test
+    public void testGetElectronSplitting() throws Exception {
+        assertNull(extractor.getElectronSplitting());
+
+        Element root = createOptionsElement();
+        Element splittingElement = new Element("electronSplitting");
+        splittingElement.setAttribute("factor", "2");
+        for (String depth : new String[] { "2e-6", "1e-6" }) {
+            Element planeElement = new Element("plane");
+            planeElement.setAttribute("depth", depth);
+            splittingElement.addContent(planeElement);
+        }
+        root.addContent(splittingElement);
+
+        extractor.extract(root);
+        ElectronSplitting splitting = extractor.getElectronSplitting();
+        assertEquals(2, splitting.getFactor());
+        assertEquals(1e-6, splitting.getDepths()[0], 1e-12);
+        assertEquals(2e-6, splitting.getDepths()[1], 1e-12);
+    }
+
+
+
+    @Test
+    public void testGetTabulationPointsPerDecade() throws Exception {
+        assertEquals(0, extractor.getTabulationPointsPerDecade());
+
+        Element root = createOptionsElement();
+        Element tabulationElement = new Element("tabulatedModels");
+        root.addContent(tabulationElement);
+
+        extractor.extract(root);
+        assertEquals(TabulatedMaterialModel.DEFAULT_POINTS_PER_DECADE,
+                extractor.getTabulationPointsPerDecade());
+
+        tabulationElement.setAttribute("pointsPerDecade", "50");
+        extractor.extract(root);
+        assertEquals(50, extractor.getTabulationPointsPerDecade());
+    }
+
 }
@@ -8,6 +8,8 @@ import gov.nist.microanalysis.NISTMonte.MonteCarloSS;
 import gov.nist.microanalysis.NISTMonte.MonteCarloSS.RegionBase;
 import gov.nist.microanalysis.Utility.Math2;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Properties;
 import java.util.Set;
@@ -23,6 +25,9 @@ public abstract class AbstractPhotonDetector extends AbstractDetector implements
     /** Position of the detector in meters. */
     private final double[] detectorPosition;
 
+    /** X-ray transitions recorded by the detector, <code>null</code> for all. */
+    private Set<XRayTransition> transitionFilter = null;
+
 
 
     /**
@@ -79,6 +84,9 @@ public abstract class AbstractPhotonDetector extends AbstractDetector implements
                 Double.toString(detectorPosition[1]));
         props.setProperty("detectorPosition.z",
                 Double.toString(detectorPosition[2]));
+
+        if (transitionFilter != null)
+            props.setProperty("transitions", transitionFilter.toString());
     }
 
 
@@ -90,6 +98,67 @@ public abstract class AbstractPhotonDetector extends AbstractDetector implements
 
 
 
+    /**
+     * Restricts the x-ray transitions recorded by the detector. The other
+     * transitions are neither accumulated nor binned.
+     * 
+     * @param transitions
+     *            x-ray transitions to record, <code>null</code> or empty to
+     *            record all transitions
+     */
+    public void setTransitionFilter(Collection<XRayTransition> transitions) {
+        if (transitions == null || transitions.isEmpty())
+            transitionFilter = null;
+        else
+            transitionFilter = new HashSet<>(transitions);
+    }
+
+
+
+    /**
+     * Returns the x-ray transitions recorded by the detector.
+     * 
+     * @return x-ray transitions, or <code>null</code> if all transitions are
+     *         recorded
+     */
+    public Set<XRayTransition> getTransitionFilter() {
+        if (transitionFilter == null)
+            return null;
+        return Collections.unmodifiableSet(transitionFilter);
+    }
+
+
+
+    /**
+     * Returns whether an x-ray transition is recorded by the detector.
+     * 
+     * @param transition
+     *            x-ray transition
+     * @return <code>true</code> if the transition is recorded
+     */
+    public boolean isRecorded(XRayTransition transition) {
+        return transitionFilter == null || transitionFilter.contains(transition);
+    }
+
+
+
+    /**
+     * Finds the x-ray transitions inside the geometry recorded by the
+     * detector.
+     * 
+     * @param mcss
+     *            Monte Carlo simulation
+     * @return set of x-ray transitions
+     */
+    public Set<XRayTransition> findXRayTransitions(MonteCarloSS mcss) {
+        Set<XRayTransition> transitions = findAllXRayTransitions(mcss);
+        if (transitionFilter != null)
+            transitions.retainAll(transitionFilter);
+        return transitions;
+    }
+
+
+
     /**
      * Finds all x-ray transitions inside the geometry.
      * 
@@ -97,7 +166,7 @@ public abstract class AbstractPhotonDetector extends AbstractDetector implements
      *            Monte Carlo simulation
      * @return set of x-ray transitions
      */
-    protected static Set<XRayTransition> findAllXRayTransitions(
+    public static Set<XRayTransition> findAllXRayTransitions(
             MonteCarloSS mcss) {
         double emax = mcss.getBeamEnergy();
 
@@ -13,6 +13,7 @@ import gov.nist.microanalysis.Utility.Math2;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.EnumSet;
 import java.util.Properties;
 import java.util.Set;
 
@@ -49,8 +50,8 @@ public class AbstractPhotonDetectorTest extends TestCase {
 
 
         @Override
-        public boolean requiresBremmstrahlung() {
-            return false;
+        public Set<XRayChannel> getRequiredChannels() {
+            return EnumSet.of(XRayChannel.CHARACTERISTIC);
         }
 
 
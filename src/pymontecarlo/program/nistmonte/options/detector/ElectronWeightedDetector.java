@@ -0,0 +1,23 @@
+package pymontecarlo.program.nistmonte.options.detector;
+
+import gov.nist.microanalysis.NISTMonte.ElectronSplitting;
+
+/**
+ * Detector whose results remain unbiased with an {@link ElectronSplitting}:
+ * the detector weights what it records by the weight of the electron being
+ * tracked, or records nothing that depends on the number of electrons.
+ *
+ * @author ppinard
+ */
+public interface ElectronWeightedDetector extends Detector {
+
+    /**
+     * Sets the electron splitting of the simulation. It must be called before
+     * the detector is setup.
+     *
+     * @param splitting
+     *            electron splitting (<code>null</code> for none)
+     */
+    public void setElectronSplitting(ElectronSplitting splitting);
+
+}
@@ -1,16 +1,21 @@
 package pymontecarlo.program.nistmonte.options.detector;
 
 import java.io.IOException;
+import java.util.EnumSet;
 import java.util.Properties;
+import java.util.Set;
 
 import pymontecarlo.util.hdf5.HDF5Group;
 import gov.nist.microanalysis.EPQLibrary.EPQException;
 import gov.nist.microanalysis.EPQLibrary.XRayTransition;
+import gov.nist.microanalysis.NISTMonte.ElectronSplitting;
 import gov.nist.microanalysis.NISTMonte.MonteCarloSS;
-import gov.nist.microanalysis.NISTMonte.Gen3.PhiRhoZ3;
+import gov.nist.microanalysis.NISTMonte.PhiRhoZListener;
 import gov.nist.microanalysis.NISTMonte.Gen3.XRayTransport3;
+import gov.nist.microanalysis.Utility.HistogramDouble;
 
-public class PhiZDetector extends AbstractPhotonDetector {
+public class PhiZDetector extends AbstractPhotonDetector implements
+        ElectronWeightedDetector {
 
     /** Number of channels in the PRZ distribution. */
     private final int channels;
@@ -19,7 +24,10 @@ public class PhiZDetector extends AbstractPhotonDetector {
     private double[] zs;
 
     /** PRZ distribution of characteristic x-rays. */
-    private PhiRhoZ3 przCharac = null;
+    private PhiRhoZListener przCharac = null;
+
+    /** Electron splitting of the simulation, <code>null</code> if none. */
+    private ElectronSplitting electronSplitting = null;
 
 
 
@@ -44,6 +52,13 @@ public class PhiZDetector extends AbstractPhotonDetector {
 
 
 
+    @Override
+    public void setElectronSplitting(ElectronSplitting splitting) {
+        electronSplitting = splitting;
+    }
+
+
+
     @Override
     public void setup(MonteCarloSS mcss, XRayTransport3 charac,
             XRayTransport3 bremss, XRayTransport3 characFluo,
@@ -59,7 +74,10 @@ public class PhiZDetector extends AbstractPhotonDetector {
         // Setup PRZs
         if (charac == null)
             throw new NullPointerException("charact == null");
-        przCharac = new PhiRhoZ3(charac, zMin, zMax, channels);
+        przCharac =
+                new PhiRhoZListener(charac, zMin, zMax, channels,
+                        getTransitionFilter());
+        przCharac.setElectronSplitting(electronSplitting);
         charac.addXRayListener(przCharac);
 
         // Setup zs
@@ -91,7 +109,7 @@ public class PhiZDetector extends AbstractPhotonDetector {
         double[][] gnf, gt, enf, et;
         HDF5Group transitionGroup;
         for (XRayTransition trans : przCharac.getTransitions()) {
-            if (!trans.isWellKnown())
+            if (!trans.isWellKnown() || !isRecorded(trans))
                 continue;
 
             transitionName = trans.getIUPACName();
@@ -103,13 +121,13 @@ public class PhiZDetector extends AbstractPhotonDetector {
             et = new double[2][channels];
 
             gnf[0] = zs;
-            gnf[1] = przCharac.getGenerated(trans);
+            gnf[1] = getSums(przCharac.getGeneratedDistribution(trans));
 
             gt[0] = zs;
             gt[1] = gnf[1].clone();
 
             enf[0] = zs;
-            enf[1] = przCharac.getEmitted(trans);
+            enf[1] = getSums(przCharac.getEmittedDistribution(trans));
 
             et[0] = zs;
             et[1] = enf[1].clone();
@@ -123,6 +141,16 @@ public class PhiZDetector extends AbstractPhotonDetector {
 
 
 
+    private double[] getSums(HistogramDouble distribution) {
+        double[] sums = new double[channels];
+        for (int i = 0; i < channels; i++) {
+            sums[i] = distribution.sum(i);
+        }
+        return sums;
+    }
+
+
+
     private double[][] transpose(double[][] a) {
         double[][] b = new double[a[0].length][a.length];
         for (int i = 0; i < a[0].length; i++) {
@@ -136,8 +164,8 @@ public class PhiZDetector extends AbstractPhotonDetector {
 
 
     @Override
-    public boolean requiresBremmstrahlung() {
-        return false;
+    public Set<XRayChannel> getRequiredChannels() {
+        return EnumSet.of(XRayChannel.CHARACTERISTIC);
     }
 
 
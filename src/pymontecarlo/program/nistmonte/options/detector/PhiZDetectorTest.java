@@ -6,6 +6,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.Properties;
 
+import gov.nist.microanalysis.NISTMonte.ElectronSplitting;
 import gov.nist.microanalysis.NISTMonte.MonteCarloSS;
 import gov.nist.microanalysis.NISTMonte.Gen3.XRayTransport3;
 
@@ -52,6 +53,27 @@ public class PhiZDetectorTest extends TestCase {
 
 
 
+    @Test
+    public void testSaveResultsElectronSplitting() throws Exception {
+        det = new PhiZDetector(getDetectorPosition(), 100);
+
+        MonteCarloSS mcss = getMonteCarloSS();
+        XRayTransport3 charac = getCharacteristicTransport(mcss);
+        ElectronSplitting splitting =
+                new ElectronSplitting(mcss, new double[] { 1e-8 }, 2);
+        det.setElectronSplitting(splitting);
+        det.setup(mcss, charac, null, null, null);
+        mcss.addActionListener(splitting);
+
+        mcss.runTrajectory();
+
+        HDF5Group root = HDF5Group.createRoot();
+        det.saveResults(root, "det1");
+        HDF5FileWriter.write(root, resultsFile, true);
+    }
+
+
+
     @Test
     public void testCreateLog() {
         Properties props = new Properties();
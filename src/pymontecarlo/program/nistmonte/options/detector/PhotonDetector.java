@@ -4,6 +4,8 @@ import gov.nist.microanalysis.EPQLibrary.EPQException;
 import gov.nist.microanalysis.NISTMonte.MonteCarloSS;
 import gov.nist.microanalysis.NISTMonte.Gen3.XRayTransport3;
 
+import java.util.Set;
+
 public interface PhotonDetector extends Detector {
 
     /**
@@ -39,12 +41,16 @@ public interface PhotonDetector extends Detector {
 
 
     /**
-     * Returns whether the detector requires generation of Bremsstrahlung
-     * x-rays.
+     * Returns the channels of x-rays recorded by the detector. Only the x-ray
+     * generations and transports of the channels required by at least one
+     * detector are created; the transports of the other channels are passed
+     * as null to
+     * {@link #setup(MonteCarloSS, XRayTransport3, XRayTransport3, XRayTransport3, XRayTransport3)}
+     * . The fluorescence channels are only generated if fluorescence is
+     * enabled in the simulation.
      * 
-     * @return <code>true</code> if Bremstrahlung x-rays should be generated,
-     *         <code>false</code> otherwise
+     * @return required x-ray channels
      */
-    public boolean requiresBremmstrahlung();
+    public Set<XRayChannel> getRequiredChannels();
 
 }
@@ -1,17 +1,21 @@
 package pymontecarlo.program.nistmonte.options.detector;
 
 import java.io.IOException;
+import java.util.EnumSet;
+import java.util.Set;
 
 import pymontecarlo.program.nistmonte.options.beam.GaussianFWHMBeam;
 import pymontecarlo.util.hdf5.HDF5Group;
 import gov.nist.microanalysis.EPQLibrary.EPQException;
 import gov.nist.microanalysis.EPQLibrary.XRayTransition;
+import gov.nist.microanalysis.NISTMonte.ElectronSplitting;
 import gov.nist.microanalysis.NISTMonte.MonteCarloSS;
 import gov.nist.microanalysis.NISTMonte.PhotonEmissionMapListener;
 import gov.nist.microanalysis.NISTMonte.Gen3.XRayTransport3;
 import gov.nist.microanalysis.NISTMonte.MonteCarloSS.ElectronGun;
 
-public class PhotonEmissionMapDetector extends AbstractPhotonDetector {
+public class PhotonEmissionMapDetector extends AbstractPhotonDetector
+        implements ElectronWeightedDetector {
 
     private final int xBins, yBins, zBins;
 
@@ -19,6 +23,9 @@ public class PhotonEmissionMapDetector extends AbstractPhotonDetector {
 
     private PhotonEmissionMapListener mapTotal;
 
+    /** Electron splitting of the simulation, <code>null</code> if none. */
+    private ElectronSplitting electronSplitting = null;
+
 
 
     public PhotonEmissionMapDetector(double takeOffAngle, double azimuthAngle,
@@ -59,6 +66,13 @@ public class PhotonEmissionMapDetector extends AbstractPhotonDetector {
 
 
 
+    @Override
+    public void setElectronSplitting(ElectronSplitting splitting) {
+        electronSplitting = splitting;
+    }
+
+
+
     @Override
     public void setup(MonteCarloSS mcss, XRayTransport3 charac,
             XRayTransport3 bremss, XRayTransport3 characFluo,
@@ -86,10 +100,14 @@ public class PhotonEmissionMapDetector extends AbstractPhotonDetector {
         // Create and register listener
         mapCharac =
                 new PhotonEmissionMapListener(charac, xMin, xMax, xBins,
-                        yMin, yMax, yBins, zMin, zMax, zBins);
+                        yMin, yMax, yBins, zMin, zMax, zBins,
+                        getTransitionFilter());
         mapTotal =
                 new PhotonEmissionMapListener(charac, xMin, xMax, xBins,
-                        yMin, yMax, yBins, zMin, zMax, zBins);
+                        yMin, yMax, yBins, zMin, zMax, zBins,
+                        getTransitionFilter());
+        mapCharac.setElectronSplitting(electronSplitting);
+        mapTotal.setElectronSplitting(electronSplitting);
         charac.addXRayListener(mapCharac);
         charac.addXRayListener(mapTotal);
 
@@ -103,8 +121,10 @@ public class PhotonEmissionMapDetector extends AbstractPhotonDetector {
 
 
     @Override
-    public boolean requiresBremmstrahlung() {
-        return false;
+    public Set<XRayChannel> getRequiredChannels() {
+        return EnumSet.of(XRayChannel.CHARACTERISTIC,
+                XRayChannel.CHARACTERISTIC_FLUORESCENCE,
+                XRayChannel.BREMSSTRAHLUNG_FLUORESCENCE);
     }
 
 
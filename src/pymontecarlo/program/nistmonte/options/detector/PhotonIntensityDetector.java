@@ -3,14 +3,19 @@ package pymontecarlo.program.nistmonte.options.detector;
 import gov.nist.microanalysis.EPQLibrary.EPQException;
 import gov.nist.microanalysis.EPQLibrary.Element;
 import gov.nist.microanalysis.EPQLibrary.XRayTransition;
+import gov.nist.microanalysis.NISTMonte.ElectronSplitting;
+import gov.nist.microanalysis.NISTMonte.IndexedXRayAccumulator;
 import gov.nist.microanalysis.NISTMonte.MonteCarloSS;
-import gov.nist.microanalysis.NISTMonte.Gen3.XRayAccumulator3;
+import gov.nist.microanalysis.NISTMonte.PhotonSplitting;
+import gov.nist.microanalysis.NISTMonte.PlanarXRayAccumulator;
+import gov.nist.microanalysis.NISTMonte.XRayTransportRegistry;
 import gov.nist.microanalysis.NISTMonte.Gen3.XRayTransport3;
 
 import java.awt.event.ActionEvent;
 import java.io.IOException;
-import java.util.Collection;
+import java.util.EnumSet;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Properties;
 import java.util.Set;
 
@@ -22,22 +27,50 @@ import pymontecarlo.util.hdf5.HDF5Group;
  * 
  * @author ppinard
  */
-public class PhotonIntensityDetector extends AbstractPhotonDetector {
+public class PhotonIntensityDetector extends AbstractPhotonDetector
+        implements ElectronWeightedDetector {
 
     /** Stores the <code>XRayAccumulator</code> for characteristic x-rays. */
-    private XRayAccumulator3 accumCharac = null;
+    private IndexedXRayAccumulator accumCharac = null;
 
     /**
      * Stores the <code>XRayAccumulator</code> for characteristic x-rays created
      * by fluorescence of characteristic x-rays.
      */
-    private XRayAccumulator3 accumCharacFluo = null;
+    private IndexedXRayAccumulator accumCharacFluo = null;
 
     /**
      * Stores the <code>XRayAccumulator</code> for characteristic x-rays created
      * by fluorescence of Bremsstrahlung x-rays.
      */
-    private XRayAccumulator3 accumBremssFluo = null;
+    private IndexedXRayAccumulator accumBremssFluo = null;
+
+    /** Planar accumulator for characteristic x-rays. */
+    private PlanarXRayAccumulator planarCharac = null;
+
+    /**
+     * Planar accumulator for characteristic x-rays created by fluorescence of
+     * characteristic x-rays.
+     */
+    private PlanarXRayAccumulator planarCharacFluo = null;
+
+    /**
+     * Planar accumulator for characteristic x-rays created by fluorescence of
+     * Bremsstrahlung x-rays.
+     */
+    private PlanarXRayAccumulator planarBremssFluo = null;
+
+    /** Index of the direction of this detector in the planar accumulators. */
+    private int planarDirection;
+
+    /** Electron splitting of the simulation, <code>null</code> if none. */
+    private ElectronSplitting electronSplitting = null;
+
+    /** Whether the planar transport should be used when possible. */
+    private final boolean planarTransport;
+
+    /** X-ray transitions recorded by the detector. */
+    private Set<XRayTransition> transitions = new HashSet<>();
 
     /** Counter for the number of trajectories. */
     private int trajectoryCount;
@@ -54,7 +87,28 @@ public class PhotonIntensityDetector extends AbstractPhotonDetector {
      *            plane (in radians)
      */
     public PhotonIntensityDetector(double takeOffAngle, double azimuthAngle) {
+        this(takeOffAngle, azimuthAngle, false);
+    }
+
+
+
+    /**
+     * Creates a new <code>PhotonIntensityDetector</code>.
+     * 
+     * @param takeOffAngle
+     *            elevation from the x-y plane (in radians)
+     * @param azimuthAngle
+     *            counter-clockwise angle from the positive x-axis in the x-y
+     *            plane (in radians)
+     * @param planarTransport
+     *            whether the absorption should be calculated in closed form
+     *            for a stratified geometry, see
+     *            {@link #setup(MonteCarloSS, PlanarXRayAccumulator, PlanarXRayAccumulator, PlanarXRayAccumulator, int)}
+     */
+    public PhotonIntensityDetector(double takeOffAngle, double azimuthAngle,
+            boolean planarTransport) {
         super(takeOffAngle, azimuthAngle);
+        this.planarTransport = planarTransport;
     }
 
 
@@ -67,6 +121,111 @@ public class PhotonIntensityDetector extends AbstractPhotonDetector {
      */
     public PhotonIntensityDetector(double[] position) {
         super(position);
+        planarTransport = false;
+    }
+
+
+
+    /**
+     * Returns whether the planar transport should be used when the geometry
+     * is stratified.
+     * 
+     * @return <code>true</code> if the planar transport should be used
+     */
+    public boolean isPlanarTransport() {
+        return planarTransport;
+    }
+
+
+
+    /**
+     * Returns the generated intensity of a transition recorded by either
+     * accumulator.
+     * 
+     * @param accum
+     *            x-ray accumulator (may be <code>null</code>)
+     * @param planar
+     *            planar accumulator (may be <code>null</code>)
+     * @param transition
+     *            x-ray transition
+     * @return generated intensity
+     */
+    private double getGenerated(IndexedXRayAccumulator accum,
+            PlanarXRayAccumulator planar, XRayTransition transition) {
+        if (planar != null)
+            return planar.getGenerated(transition);
+        if (accum != null)
+            return accum.getGenerated(transition);
+        return 0.0;
+    }
+
+
+
+    /**
+     * Returns the emitted intensity of a transition recorded by either
+     * accumulator.
+     * 
+     * @param accum
+     *            x-ray accumulator (may be <code>null</code>)
+     * @param planar
+     *            planar accumulator (may be <code>null</code>)
+     * @param transition
+     *            x-ray transition
+     * @return emitted intensity
+     */
+    private double getEmitted(IndexedXRayAccumulator accum,
+            PlanarXRayAccumulator planar, XRayTransition transition) {
+        if (planar != null)
+            return planar.getEmitted(planarDirection, transition);
+        if (accum != null)
+            return accum.getEmitted(transition);
+        return 0.0;
+    }
+
+
+
+    /**
+     * Returns the standard error of the generated intensity per shower of a
+     * transition recorded by either accumulator.
+     * 
+     * @param accum
+     *            x-ray accumulator (may be <code>null</code>)
+     * @param planar
+     *            planar accumulator (may be <code>null</code>)
+     * @param transition
+     *            x-ray transition
+     * @return standard error
+     */
+    private double getGeneratedError(IndexedXRayAccumulator accum,
+            PlanarXRayAccumulator planar, XRayTransition transition) {
+        if (planar != null)
+            return planar.getGeneratedError(transition);
+        if (accum != null)
+            return accum.getGeneratedError(transition);
+        return 0.0;
+    }
+
+
+
+    /**
+     * Returns the standard error of the emitted intensity per shower of a
+     * transition recorded by either accumulator.
+     * 
+     * @param accum
+     *            x-ray accumulator (may be <code>null</code>)
+     * @param planar
+     *            planar accumulator (may be <code>null</code>)
+     * @param transition
+     *            x-ray transition
+     * @return standard error
+     */
+    private double getEmittedError(IndexedXRayAccumulator accum,
+            PlanarXRayAccumulator planar, XRayTransition transition) {
+        if (planar != null)
+            return planar.getEmittedError(planarDirection, transition);
+        if (accum != null)
+            return accum.getEmittedError(transition);
+        return 0.0;
     }
 
 
@@ -76,10 +235,12 @@ public class PhotonIntensityDetector extends AbstractPhotonDetector {
         super.createLog(props);
 
         Set<Element> elements = new HashSet<>();
-        for (XRayTransition xrayTransition : accumCharac.getTransitions()) {
+        for (XRayTransition xrayTransition : transitions) {
             elements.add(xrayTransition.getElement());
         }
         props.setProperty("accumulators", elements.toString());
+        props.setProperty("transport", planarCharac != null ? "planar"
+                : "default");
     }
 
 
@@ -96,44 +257,72 @@ public class PhotonIntensityDetector extends AbstractPhotonDetector {
         HDF5Dataset ds;
         double gcf, gbf, gnf;
         double ecf, ebf, enf;
+        double gcfErr, gbfErr, gnfErr;
+        double ecfErr, ebfErr, enfErr;
         int[][] emptyData = new int[][] { { 0 } };
-        for (XRayTransition transition : accumCharac.getTransitions()) {
+        for (XRayTransition transition : transitions) {
             transitionName = transition.getIUPACName();
 
             ds = group.createDataset(transitionName, emptyData);
 
-            gnf = accumCharac.getGenerated(transition) / normFactor;
-            enf = accumCharac.getEmitted(transition) / normFactor;
-
-            gcf = ecf = 0.0;
-            if (accumCharacFluo != null) {
-                gcf = accumCharacFluo.getGenerated(transition) / normFactor;
-                ecf = accumCharacFluo.getEmitted(transition) / normFactor;
-            }
-
-            gbf = ebf = 0.0;
-            if (accumBremssFluo != null) {
-                gbf = accumBremssFluo.getGenerated(transition) / normFactor;
-                ebf = accumBremssFluo.getEmitted(transition) / normFactor;
-            }
-
-            ds.setAttribute("gcf", gcf, 0.0);
-            ds.setAttribute("gbf", gbf, 0.0);
-            ds.setAttribute("gnf", gnf, 0.0);
-            ds.setAttribute("gt", gnf + gcf + gbf, 0.0);
-
-            ds.setAttribute("ecf", ecf, 0.0);
-            ds.setAttribute("ebf", ebf, 0.0);
-            ds.setAttribute("enf", enf, 0.0);
-            ds.setAttribute("et", enf + ecf + ebf, 0.0);
+            gnf =
+                    getGenerated(accumCharac, planarCharac, transition)
+                            / normFactor;
+            enf =
+                    getEmitted(accumCharac, planarCharac, transition)
+                            / normFactor;
+            gnfErr = getGeneratedError(accumCharac, planarCharac, transition);
+            enfErr = getEmittedError(accumCharac, planarCharac, transition);
+
+            gcf =
+                    getGenerated(accumCharacFluo, planarCharacFluo,
+                            transition) / normFactor;
+            ecf =
+                    getEmitted(accumCharacFluo, planarCharacFluo, transition)
+                            / normFactor;
+            gcfErr =
+                    getGeneratedError(accumCharacFluo, planarCharacFluo,
+                            transition);
+            ecfErr =
+                    getEmittedError(accumCharacFluo, planarCharacFluo,
+                            transition);
+
+            gbf =
+                    getGenerated(accumBremssFluo, planarBremssFluo,
+                            transition) / normFactor;
+            ebf =
+                    getEmitted(accumBremssFluo, planarBremssFluo, transition)
+                            / normFactor;
+            gbfErr =
+                    getGeneratedError(accumBremssFluo, planarBremssFluo,
+                            transition);
+            ebfErr =
+                    getEmittedError(accumBremssFluo, planarBremssFluo,
+                            transition);
+
+            // Components are tallied separately; their errors are combined
+            // in quadrature for the totals
+            ds.setAttribute("gcf", gcf, gcfErr);
+            ds.setAttribute("gbf", gbf, gbfErr);
+            ds.setAttribute("gnf", gnf, gnfErr);
+            ds.setAttribute("gt", gnf + gcf + gbf, Math.sqrt(gnfErr * gnfErr
+                    + gcfErr * gcfErr + gbfErr * gbfErr));
+
+            ds.setAttribute("ecf", ecf, ecfErr);
+            ds.setAttribute("ebf", ebf, ebfErr);
+            ds.setAttribute("enf", enf, enfErr);
+            ds.setAttribute("et", enf + ecf + ebf, Math.sqrt(enfErr * enfErr
+                    + ecfErr * ecfErr + ebfErr * ebfErr));
         }
     }
 
 
 
     @Override
-    public boolean requiresBremmstrahlung() {
-        return false;
+    public Set<XRayChannel> getRequiredChannels() {
+        return EnumSet.of(XRayChannel.CHARACTERISTIC,
+                XRayChannel.CHARACTERISTIC_FLUORESCENCE,
+                XRayChannel.BREMSSTRAHLUNG_FLUORESCENCE);
     }
 
 
@@ -141,40 +330,152 @@ public class PhotonIntensityDetector extends AbstractPhotonDetector {
     @Override
     public void reset() {
         super.reset();
-        accumCharac.clear();
+        if (accumCharac != null)
+            accumCharac.clear();
         if (accumCharacFluo != null)
             accumCharacFluo.clear();
         if (accumBremssFluo != null)
             accumBremssFluo.clear();
+        if (planarCharac != null)
+            planarCharac.clear();
+        if (planarCharacFluo != null)
+            planarCharacFluo.clear();
+        if (planarBremssFluo != null)
+            planarBremssFluo.clear();
         trajectoryCount = 0;
     }
 
 
 
+    @Override
+    public void setElectronSplitting(ElectronSplitting splitting) {
+        electronSplitting = splitting;
+    }
+
+
+
     @Override
     public void setup(MonteCarloSS mcss, XRayTransport3 charac,
             XRayTransport3 bremss, XRayTransport3 characFluo,
             XRayTransport3 bremssFluo) throws EPQException {
-        Collection<XRayTransition> transitions = findAllXRayTransitions(mcss);
+        XRayTransportRegistry registry = new XRayTransportRegistry(mcss);
+        registry.setElectronSplitting(electronSplitting);
+        setup(mcss, registry, charac, characFluo, bremssFluo);
+    }
+
+
+
+    /**
+     * Setups the detector with accumulators shared through a registry: the
+     * detectors using the same transports share their accumulators. Note that
+     * some x-ray transports may be null if no fluorescence x-ray is required.
+     * 
+     * @param mcss
+     *            Monte Carlo simulation
+     * @param registry
+     *            registry of the shared transports and accumulators
+     * @param charac
+     *            x-ray transport object for characteristic x-rays
+     * @param characFluo
+     *            x-ray transport object for characteristic fluorescence x-rays
+     * @param bremssFluo
+     *            x-ray transport object for Bremsstrahlung fluorescence x-rays
+     */
+    public void setup(MonteCarloSS mcss, XRayTransportRegistry registry,
+            XRayTransport3 charac, XRayTransport3 characFluo,
+            XRayTransport3 bremssFluo) {
+        transitions = findXRayTransitions(mcss);
 
         if (charac == null)
             throw new NullPointerException("charact == null");
-        accumCharac = new XRayAccumulator3(transitions, "characteristic");
-        charac.addXRayListener(accumCharac);
+        accumCharac = registry.getAccumulator(charac, transitions);
 
-        if (characFluo != null) {
+        if (characFluo != null)
+            accumCharacFluo = registry.getAccumulator(characFluo, transitions);
+
+        if (bremssFluo != null)
+            accumBremssFluo = registry.getAccumulator(bremssFluo, transitions);
+    }
+
+
+
+    /**
+     * Setups the detector with accumulators shared through a registry, with
+     * split fluorescence x-rays: each fluorescence accumulator listens to the
+     * transports of all the copies of the fluorescence generation and weights
+     * their photons. Note that the lists of fluorescence transports may be
+     * empty if no fluorescence x-ray is required.
+     * 
+     * @param mcss
+     *            Monte Carlo simulation
+     * @param registry
+     *            registry of the shared transports and accumulators
+     * @param charac
+     *            x-ray transport object for characteristic x-rays
+     * @param characFluo
+     *            x-ray transport objects for characteristic fluorescence
+     *            x-rays, one per copy
+     * @param bremssFluo
+     *            x-ray transport objects for Bremsstrahlung fluorescence
+     *            x-rays, one per copy
+     * @param splitting
+     *            photon splitting
+     */
+    public void setup(MonteCarloSS mcss, XRayTransportRegistry registry,
+            XRayTransport3 charac, List<XRayTransport3> characFluo,
+            List<XRayTransport3> bremssFluo, PhotonSplitting splitting) {
+        transitions = findXRayTransitions(mcss);
+
+        if (charac == null)
+            throw new NullPointerException("charact == null");
+        accumCharac = registry.getAccumulator(charac, transitions);
+
+        if (!characFluo.isEmpty())
             accumCharacFluo =
-                    new XRayAccumulator3(transitions,
-                            "characteristic fluorescence");
-            characFluo.addXRayListener(accumCharacFluo);
-        }
+                    registry.getAccumulator(characFluo, splitting,
+                            transitions);
 
-        if (bremssFluo != null) {
+        if (!bremssFluo.isEmpty())
             accumBremssFluo =
-                    new XRayAccumulator3(transitions,
-                            "Bremmstrahlung fluorescence");
-            bremssFluo.addXRayListener(accumBremssFluo);
-        }
+                    registry.getAccumulator(bremssFluo, splitting,
+                            transitions);
+    }
+
+
+
+    /**
+     * Setups the detector to use planar accumulators, which calculate the
+     * absorption of the x-rays in closed form in a stratified geometry instead
+     * of transporting them. The accumulators may be shared by several
+     * detectors, each one reading the emitted intensities of its own
+     * direction. Note that the fluorescence accumulators may be null if no
+     * fluorescence x-ray is required.
+     * 
+     * @param mcss
+     *            Monte Carlo simulation
+     * @param charac
+     *            planar accumulator for characteristic x-rays
+     * @param characFluo
+     *            planar accumulator for characteristic fluorescence x-rays
+     * @param bremssFluo
+     *            planar accumulator for Bremsstrahlung fluorescence x-rays
+     * @param direction
+     *            index of the position of this detector in the accumulators
+     */
+    public void setup(MonteCarloSS mcss, PlanarXRayAccumulator charac,
+            PlanarXRayAccumulator characFluo, PlanarXRayAccumulator bremssFluo,
+            int direction) {
+        if (charac == null)
+            throw new NullPointerException("charact == null");
+        if (direction < 0 || direction >= charac.getDetectorCount())
+            throw new IllegalArgumentException("Invalid direction: "
+                    + direction);
+
+        transitions = findXRayTransitions(mcss);
+        planarCharac = charac;
+        planarCharacFluo = characFluo;
+        planarBremssFluo = bremssFluo;
+        planarDirection = direction;
     }
 
 
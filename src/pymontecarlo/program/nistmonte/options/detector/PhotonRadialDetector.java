@@ -1,6 +1,8 @@
 package pymontecarlo.program.nistmonte.options.detector;
 
 import java.io.IOException;
+import java.util.EnumSet;
+import java.util.Set;
 
 import pymontecarlo.program.nistmonte.options.beam.GaussianFWHMBeam;
 import pymontecarlo.util.hdf5.HDF5Group;
@@ -71,10 +73,10 @@ public class PhotonRadialDetector extends AbstractPhotonDetector {
             throw new NullPointerException("charact == null");
         radialCharac =
                 new PhotonRadialDistributionListener(charac, center, normal,
-                        rmax, channels, true);
+                        rmax, channels, true, getTransitionFilter());
         radialTotal =
                 new PhotonRadialDistributionListener(charac, center, normal,
-                        rmax, channels, true);
+                        rmax, channels, true, getTransitionFilter());
         charac.addXRayListener(radialCharac);
         charac.addXRayListener(radialTotal);
 
@@ -88,8 +90,10 @@ public class PhotonRadialDetector extends AbstractPhotonDetector {
 
 
     @Override
-    public boolean requiresBremmstrahlung() {
-        return false;
+    public Set<XRayChannel> getRequiredChannels() {
+        return EnumSet.of(XRayChannel.CHARACTERISTIC,
+                XRayChannel.CHARACTERISTIC_FLUORESCENCE,
+                XRayChannel.BREMSSTRAHLUNG_FLUORESCENCE);
     }
 
 
@@ -1,27 +1,32 @@
 package pymontecarlo.program.nistmonte.options.detector;
 
 import gov.nist.microanalysis.EPQLibrary.EPQException;
-import gov.nist.microanalysis.EPQLibrary.ISpectrumData;
-import gov.nist.microanalysis.EPQLibrary.Detector.EDSDetector;
 import gov.nist.microanalysis.NISTMonte.MonteCarloSS;
+import gov.nist.microanalysis.NISTMonte.SpectrumResponse;
+import gov.nist.microanalysis.NISTMonte.SpectrumXRayAccumulator;
 import gov.nist.microanalysis.NISTMonte.Gen3.XRayTransport3;
 
 import java.awt.event.ActionEvent;
 import java.io.IOException;
+import java.util.EnumSet;
+import java.util.Set;
 
 import pymontecarlo.util.hdf5.HDF5Group;
 
 public class PhotonSpectrumDetector extends AbstractPhotonDetector {
 
-    /** EDS detector that records all x rays (characteristic and background). */
-    private final EDSDetector detectorTotal;
-
-    /** EDS detector that records only background x rays. */
-    private final EDSDetector detectorBackground;
+    /**
+     * Spectrum accumulator with one component per channel of x-rays (see
+     * {@link XRayChannel#ordinal()}).
+     */
+    private final SpectrumXRayAccumulator accumulator;
 
     /** Counter for the number of trajectories. */
     private int trajectoryCount;
 
+    /** Detector response applied at save time, <code>null</code> if none. */
+    private SpectrumResponse response = null;
+
 
 
     public PhotonSpectrumDetector(double takeOffAngle, double azimuthAngle,
@@ -35,16 +40,9 @@ public class PhotonSpectrumDetector extends AbstractPhotonDetector {
             throw new IllegalArgumentException("Number of channels <= 0: "
                     + channels);
 
-        try {
-            detectorTotal =
-                    EDSDetector.createPerfectDetector(channels, channelWidth,
-                            getDetectorPosition());
-            detectorBackground =
-                    EDSDetector.createPerfectDetector(channels, channelWidth,
-                            getDetectorPosition());
-        } catch (EPQException ex) {
-            throw new IllegalArgumentException(ex);
-        }
+        accumulator =
+                new SpectrumXRayAccumulator(XRayChannel.values().length,
+                        channels, channelWidth);
     }
 
 
@@ -60,16 +58,9 @@ public class PhotonSpectrumDetector extends AbstractPhotonDetector {
             throw new IllegalArgumentException("Number of channels <= 0: "
                     + channels);
 
-        try {
-            detectorTotal =
-                    EDSDetector.createPerfectDetector(channels, channelWidth,
-                            getDetectorPosition());
-            detectorBackground =
-                    EDSDetector.createPerfectDetector(channels, channelWidth,
-                            getDetectorPosition());
-        } catch (EPQException ex) {
-            throw new IllegalArgumentException(ex);
-        }
+        accumulator =
+                new SpectrumXRayAccumulator(XRayChannel.values().length,
+                        channels, channelWidth);
     }
 
 
@@ -89,17 +80,16 @@ public class PhotonSpectrumDetector extends AbstractPhotonDetector {
 
 
 
-    private double[][] arrayFromSpectrum(ISpectrumData spectrum) {
-        double[][] array = new double[spectrum.getChannelCount()][2];
+    private double[][] arrayFromSpectrum(double[] counts) {
+        double[][] array = new double[counts.length][2];
 
-        double offset = spectrum.getZeroOffset();
-        double channelWidth = spectrum.getChannelWidth();
+        double channelWidth = accumulator.getChannelWidth();
 
         double factor = 1.0 / (channelWidth * trajectoryCount);
 
         for (int i = 0; i < array.length; i++) {
-            array[i][0] = offset + (i + 0.5) * channelWidth;
-            array[i][1] = spectrum.getCounts(i) * factor;
+            array[i][0] = (i + 0.5) * channelWidth;
+            array[i][1] = counts[i] * factor;
         }
 
         return array;
@@ -107,6 +97,32 @@ public class PhotonSpectrumDetector extends AbstractPhotonDetector {
 
 
 
+    /**
+     * Sets the detector response applied to the spectra when the results are
+     * saved. The ideal spectra are always saved; the detected spectra are
+     * saved in addition, with the suffix <code>_detected</code>.
+     * 
+     * @param response
+     *            detector response (<code>null</code> for none)
+     */
+    public void setResponse(SpectrumResponse response) {
+        this.response = response;
+    }
+
+
+
+    /**
+     * Returns the detector response applied to the spectra when the results
+     * are saved.
+     * 
+     * @return detector response, or <code>null</code> if none
+     */
+    public SpectrumResponse getResponse() {
+        return response;
+    }
+
+
+
     @Override
     public String getPythonResultClass() {
         return "PhotonSpectrumResult";
@@ -115,8 +131,8 @@ public class PhotonSpectrumDetector extends AbstractPhotonDetector {
 
 
     @Override
-    public boolean requiresBremmstrahlung() {
-        return true;
+    public Set<XRayChannel> getRequiredChannels() {
+        return EnumSet.allOf(XRayChannel.class);
     }
 
 
@@ -124,8 +140,7 @@ public class PhotonSpectrumDetector extends AbstractPhotonDetector {
     @Override
     public void reset() {
         super.reset();
-        detectorTotal.reset();
-        detectorBackground.reset();
+        accumulator.clear();
         trajectoryCount = 0;
     }
 
@@ -135,15 +150,32 @@ public class PhotonSpectrumDetector extends AbstractPhotonDetector {
     public void saveResults(HDF5Group root, String key) throws IOException {
         super.saveResults(root, key);
 
-        double[][] spectrumTotal =
-                arrayFromSpectrum(detectorTotal.getSpectrum(1.0));
-        double[][] spectrumBackground =
-                arrayFromSpectrum(detectorBackground.getSpectrum(1.0));
-
         HDF5Group group = root.requireSubgroup(key);
 
-        group.createDataset("total", spectrumTotal);
-        group.createDataset("background", spectrumBackground);
+        double[] total = accumulator.getTotal();
+        group.createDataset("total", arrayFromSpectrum(total));
+
+        // Background is the Bremsstrahlung component
+        double[][] spectrum;
+        for (XRayChannel channel : XRayChannel.values()) {
+            spectrum =
+                    arrayFromSpectrum(accumulator.getComponent(channel
+                            .ordinal()));
+            if (channel == XRayChannel.BREMSSTRAHLUNG)
+                group.createDataset("background", spectrum);
+            else
+                group.createDataset(channel.name().toLowerCase(), spectrum);
+        }
+
+        if (response != null) {
+            double channelWidth = accumulator.getChannelWidth();
+            group.createDataset("total_detected",
+                    arrayFromSpectrum(response.apply(total, channelWidth)));
+            group.createDataset("background_detected",
+                    arrayFromSpectrum(response.apply(accumulator
+                            .getComponent(XRayChannel.BREMSSTRAHLUNG
+                                    .ordinal()), channelWidth)));
+        }
     }
 
 
@@ -154,17 +186,18 @@ public class PhotonSpectrumDetector extends AbstractPhotonDetector {
             XRayTransport3 bremssFluo) throws EPQException {
         if (charac == null)
             throw new NullPointerException("charact == null");
-        charac.addXRayListener(detectorTotal);
+        accumulator.addSource(charac, XRayChannel.CHARACTERISTIC.ordinal());
 
         if (bremss == null)
             throw new NullPointerException("bremss == null");
-        bremss.addXRayListener(detectorTotal);
-        bremss.addXRayListener(detectorBackground);
+        accumulator.addSource(bremss, XRayChannel.BREMSSTRAHLUNG.ordinal());
 
         if (characFluo != null)
-            characFluo.addXRayListener(detectorTotal);
+            accumulator.addSource(characFluo,
+                    XRayChannel.CHARACTERISTIC_FLUORESCENCE.ordinal());
 
         if (bremssFluo != null)
-            bremssFluo.addXRayListener(detectorTotal);
+            accumulator.addSource(bremssFluo,
+                    XRayChannel.BREMSSTRAHLUNG_FLUORESCENCE.ordinal());
     }
 }
@@ -0,0 +1,132 @@
+package pymontecarlo.program.nistmonte.options.detector;
+
+import gov.nist.microanalysis.EPQLibrary.EPQException;
+import gov.nist.microanalysis.NISTMonte.MonteCarloSS;
+import gov.nist.microanalysis.NISTMonte.RegionTallyListener;
+
+import java.io.IOException;
+import java.util.Properties;
+
+import pymontecarlo.util.hdf5.HDF5Group;
+
+/**
+ * Detector recording the number of scattering events and the energy deposited
+ * in each region of the geometry and, optionally, in each voxel.
+ *
+ * @author ppinard
+ */
+public class RegionTallyDetector extends AbstractDetector {
+
+    /** Whether the tallies are also kept by voxel. */
+    private final boolean voxels;
+
+    /** Listener for the tallies. */
+    private RegionTallyListener tally;
+
+
+
+    /**
+     * Creates a new <code>RegionTallyDetector</code>.
+     *
+     * @param voxels
+     *            whether to also keep the tallies by voxel
+     */
+    public RegionTallyDetector(boolean voxels) {
+        this.voxels = voxels;
+    }
+
+
+
+    @Override
+    public void setup(MonteCarloSS mcss) throws EPQException {
+        super.setup(mcss);
+
+        tally = new RegionTallyListener(mcss, voxels);
+        mcss.addActionListener(tally);
+    }
+
+
+
+    @Override
+    public void reset() {
+        super.reset();
+        if (tally != null)
+            tally.reset();
+    }
+
+
+
+    /**
+     * Converts event counts to a dataset.
+     *
+     * @param counts
+     *            event counts
+     * @return data
+     */
+    private static double[] toData(long[] counts) {
+        double[] data = new double[counts.length];
+        for (int i = 0; i < counts.length; i++)
+            data[i] = counts[i];
+        return data;
+    }
+
+
+
+    @Override
+    public void saveResults(HDF5Group root, String key) throws IOException {
+        super.saveResults(root, key);
+
+        HDF5Group group = root.requireSubgroup(key);
+        group.setAttribute("trajectories", tally.getTrajectoryCount());
+
+        // Tallies by region index
+        group.createDataset("event_counts", toData(tally.getEventCounts()));
+        group.createDataset("energy_deposits_J", tally.getEnergyDeposits());
+
+        // Tallies by voxel id
+        if (voxels) {
+            group.createDataset("voxel_event_counts",
+                    toData(tally.getVoxelEventCounts()));
+            group.createDataset("voxel_energy_deposits_J",
+                    tally.getVoxelEnergyDeposits());
+        }
+    }
+
+
+
+    @Override
+    protected void createLog(Properties props) {
+        super.createLog(props);
+        props.setProperty("voxels", Boolean.toString(voxels));
+    }
+
+
+
+    /**
+     * Returns whether the tallies are also kept by voxel.
+     *
+     * @return <code>true</code> if the tallies are kept by voxel
+     */
+    public boolean isVoxelTally() {
+        return voxels;
+    }
+
+
+
+    /**
+     * Returns the listener of the tallies, once the detector is setup.
+     *
+     * @return listener
+     */
+    public RegionTallyListener getTally() {
+        return tally;
+    }
+
+
+
+    @Override
+    public String getPythonResultClass() {
+        return "RegionTallyResult";
+    }
+
+}
@@ -0,0 +1,81 @@
+package pymontecarlo.program.nistmonte.options.detector;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import gov.nist.microanalysis.NISTMonte.MonteCarloSS;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.Properties;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import pymontecarlo.util.TestCase;
+import pymontecarlo.util.hdf5.HDF5Dataset;
+import pymontecarlo.util.hdf5.HDF5FileWriter;
+import pymontecarlo.util.hdf5.HDF5Group;
+
+public class RegionTallyDetectorTest extends TestCase {
+
+    private RegionTallyDetector det;
+
+    private File resultsFile;
+
+
+
+    @Before
+    public void setUp() throws Exception {
+        det = new RegionTallyDetector(true);
+        resultsFile = createTempFile("h5");
+
+        MonteCarloSS mcss = getMonteCarloSS();
+        det.setup(mcss);
+
+        mcss.runTrajectory();
+    }
+
+
+
+    @Test
+    public void testGetTally() {
+        assertTrue(det.isVoxelTally());
+        assertTrue(det.getTally().isVoxelTally());
+        assertEquals(1, det.getTally().getTrajectoryCount());
+    }
+
+
+
+    @Test
+    public void testSaveResults() throws Exception {
+        HDF5Group root = HDF5Group.createRoot();
+        det.saveResults(root, "det1");
+
+        Set<String> names = new HashSet<>();
+        Iterator<Entry<String, HDF5Dataset>> it =
+                root.requireSubgroup("det1").iterateDatasets();
+        while (it.hasNext())
+            names.add(it.next().getKey());
+        assertEquals(new HashSet<>(Arrays.asList("event_counts",
+                "energy_deposits_J", "voxel_event_counts",
+                "voxel_energy_deposits_J")), names);
+
+        HDF5FileWriter.write(root, resultsFile, true);
+    }
+
+
+
+    @Test
+    public void testCreateLog() throws IOException {
+        Properties props = new Properties();
+        det.createLog(props);
+        assertEquals(1, props.size());
+        assertEquals("true", props.getProperty("voxels"));
+    }
+
+}
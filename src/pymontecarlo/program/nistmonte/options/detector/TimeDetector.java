@@ -1,5 +1,6 @@
 package pymontecarlo.program.nistmonte.options.detector;
 
+import gov.nist.microanalysis.NISTMonte.ElectronSplitting;
 import gov.nist.microanalysis.NISTMonte.MonteCarloSS;
 
 import java.awt.event.ActionEvent;
@@ -12,7 +13,8 @@ import pymontecarlo.util.hdf5.HDF5Group;
  * 
  * @author ppinard
  */
-public class TimeDetector extends AbstractDetector {
+public class TimeDetector extends AbstractDetector implements
+        ElectronWeightedDetector {
 
     /** System time when the simulation started. */
     private long startSimulationTime;
@@ -31,6 +33,13 @@ public class TimeDetector extends AbstractDetector {
 
 
 
+    @Override
+    public void setElectronSplitting(ElectronSplitting splitting) {
+        // Elapsed time does not depend on the weights of the electrons
+    }
+
+
+
     @Override
     public void reset() {
         super.reset();
@@ -45,6 +45,12 @@ public class TrajectoryDetector extends AbstractDetector {
 
     private final Stack<Trajectory> cachedTrajectories;
 
+    /** Region of the last interaction. */
+    private RegionBase lastRegion = null;
+
+    /** Index of the region of the last interaction. */
+    private double lastRegionIndex = IndexedRegion.NO_INDEX;
+
 
 
     /**
@@ -108,14 +114,16 @@ public class TrajectoryDetector extends AbstractDetector {
         double[] pos_m = electron.getPosition();
         double energy_eV = FromSI.eV(electron.getEnergy());
 
+        // Consecutive interactions mostly occur in the same region
         RegionBase region = electron.getCurrentRegion();
-        Double regionIndex = -1.0;
-        if (region instanceof IndexedRegion)
-            regionIndex = (double) ((IndexedRegion) region).getIndex();
+        if (region != lastRegion) {
+            lastRegion = region;
+            lastRegionIndex = IndexedRegion.indexOf(region);
+        }
 
         Double[] interaction =
                 new Double[] { pos_m[0], pos_m[1], pos_m[2], energy_eV, 0.0,
-                        regionIndex };
+                        lastRegionIndex };
         trajectory.interactions.add(interaction);
     }
 
@@ -132,6 +140,8 @@ public class TrajectoryDetector extends AbstractDetector {
     public void reset() {
         super.reset();
         trajectories.clear();
+        lastRegion = null;
+        lastRegionIndex = IndexedRegion.NO_INDEX;
     }
 
 
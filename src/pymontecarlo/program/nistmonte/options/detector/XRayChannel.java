@@ -0,0 +1,25 @@
+package pymontecarlo.program.nistmonte.options.detector;
+
+/**
+ * Channels of x-rays that a photon detector can record. Each channel
+ * corresponds to an x-ray generation of the simulation.
+ * 
+ * @author ppinard
+ */
+public enum XRayChannel {
+
+    /** Characteristic x-rays generated by the electrons. */
+    CHARACTERISTIC,
+
+    /** Bremsstrahlung x-rays generated by the electrons. */
+    BREMSSTRAHLUNG,
+
+    /** Characteristic x-rays created by fluorescence of characteristic x-rays. */
+    CHARACTERISTIC_FLUORESCENCE,
+
+    /**
+     * Characteristic x-rays created by fluorescence of Bremsstrahlung x-rays.
+     */
+    BREMSSTRAHLUNG_FLUORESCENCE;
+
+}
@@ -1,6 +1,7 @@
 package pymontecarlo.ui.cui;
 
 import java.io.File;
+import java.io.IOException;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -40,6 +41,16 @@ public abstract class AbstractMain {
                 .withDescription("Output directory").create('o'));
         options.addOption(OptionBuilder.withArgName("quite")
                 .withDescription("Quite mode").create('q'));
+        options.addOption(OptionBuilder.hasArg().withArgName("elements")
+                .withDescription(
+                        "Write datasets with at least this number of elements "
+                                + "in a raw sidecar file")
+                .withLongOpt("sidecar").create('s'));
+        options.addOption(OptionBuilder.hasArg().withArgName("depth")
+                .withDescription(
+                        "Write results in background with at most this "
+                                + "number of pending writes")
+                .withLongOpt("async").create('a'));
 
         CommandLineParser parser = new PosixParser();
 
@@ -54,7 +65,7 @@ public abstract class AbstractMain {
 
         if (cmd.hasOption('h')) {
             HelpFormatter formatter = new HelpFormatter();
-            formatter.printHelp("Main [options] OPTIONS_XML_FILE", options);
+            formatter.printHelp("Main [options] OPTIONS_XML_FILE...", options);
             return;
         }
 
@@ -70,23 +81,70 @@ public abstract class AbstractMain {
         if (cmd.hasOption('q'))
             quite = true;
 
-        String[] args = cmd.getArgs();
-        if (args.length == 0) {
-            System.err.println("Please specify one options XML file");
+        long sidecarThreshold = 0;
+        if (cmd.hasOption('s')) {
+            try {
+                sidecarThreshold = Long.parseLong(cmd.getOptionValue('s'));
+            } catch (NumberFormatException e) {
+                System.err.println("Invalid number of elements: "
+                        + cmd.getOptionValue('s'));
+                return;
+            }
+        }
+        if (sidecarThreshold < 0) {
+            System.err.println("Invalid number of elements: "
+                    + cmd.getOptionValue('s'));
             return;
-        } else if (args.length > 1) {
-            System.err.println("Please specify only one options XML file");
+        }
+
+        int writeQueueDepth = 0;
+        if (cmd.hasOption('a')) {
+            try {
+                writeQueueDepth = Integer.parseInt(cmd.getOptionValue('a'));
+            } catch (NumberFormatException e) {
+                System.err.println("Invalid number of pending writes: "
+                        + cmd.getOptionValue('a'));
+                return;
+            }
+        }
+        if (writeQueueDepth < 0) {
+            System.err.println("Invalid number of pending writes: "
+                    + cmd.getOptionValue('a'));
             return;
         }
 
-        File optionsFile = new File(args[0]);
-        if (!optionsFile.exists()) {
-            System.err.println("Options XML file does not exist: "
-                    + optionsFile);
+        String[] args = cmd.getArgs();
+        if (args.length == 0) {
+            System.err.println("Please specify at least one options XML file");
             return;
         }
 
+        File[] optionsFiles = new File[args.length];
+        for (int i = 0; i < args.length; i++) {
+            optionsFiles[i] = new File(args[i]);
+            if (!optionsFiles[i].exists()) {
+                System.err.println("Options XML file does not exist: "
+                        + optionsFiles[i]);
+                return;
+            }
+        }
+
         worker.setQuite(quite);
-        worker.run(optionsFile, outputDir);
+        worker.setSidecarThreshold(sidecarThreshold);
+        worker.setWriteQueueDepth(writeQueueDepth);
+        try {
+            for (File optionsFile : optionsFiles)
+                worker.run(optionsFile, outputDir);
+        } catch (Exception e) {
+            // Wait for the pending writes without hiding the run error
+            try {
+                worker.flush();
+            } catch (IOException flushError) {
+                e.addSuppressed(flushError);
+            }
+            throw e;
+        }
+
+        worker.flush();
     }
 }
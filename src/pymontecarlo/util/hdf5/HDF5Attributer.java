@@ -1,7 +1,7 @@
 package pymontecarlo.util.hdf5;
 
-import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 
@@ -12,7 +12,7 @@ public abstract class HDF5Attributer {
 
 
     public HDF5Attributer() {
-        attributes = new HashMap<>();
+        attributes = new LinkedHashMap<>();
     }
 
 
@@ -47,6 +47,14 @@ public abstract class HDF5Attributer {
 
 
 
+    public HDF5Attribute setAttribute(String name, long value) {
+        HDF5Attribute attr = new HDF5Attribute(HDF5Type.LONG, value);
+        attributes.put(name, attr);
+        return attr;
+    }
+
+
+
     public HDF5Attribute setAttribute(String name, double value) {
         HDF5Attribute attr = new HDF5Attribute(HDF5Type.FLOAT, value);
         attributes.put(name, attr);
@@ -63,6 +71,13 @@ public abstract class HDF5Attributer {
 
 
 
+    HDF5Attribute setAttribute(String name, HDF5Attribute attr) {
+        attributes.put(name, attr);
+        return attr;
+    }
+
+
+
     public Iterator<Entry<String, HDF5Attribute>> iterateAttributes() {
         return attributes.entrySet().iterator();
     }
@@ -3,8 +3,9 @@ package pymontecarlo.util.hdf5;
 import java.io.File;
 import java.io.IOException;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.EnumMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 
@@ -14,12 +15,21 @@ import edu.ucar.ral.nujan.hdf.HdfGroup;
 
 public class HDF5FileWriter {
 
-    private static final Map<HDF5Type, Integer> typeRegistry = new HashMap<>();
+    private static final Map<HDF5Type, Integer> typeRegistry =
+            new EnumMap<>(HDF5Type.class);
+
+    /**
+     * Modification time (in milliseconds) stamped in the file. A fixed value
+     * is used so that identical results produce byte-identical files. Note
+     * that nujan replaces a value of 0 by the current time.
+     */
+    private static final long MODIFICATION_TIME = 1000L;
 
     static {
         typeRegistry.put(HDF5Type.STRING, HdfGroup.DTYPE_STRING_VAR);
         typeRegistry.put(HDF5Type.FLOAT, HdfGroup.DTYPE_FLOAT64);
         typeRegistry.put(HDF5Type.INTEGER, HdfGroup.DTYPE_FIXED32);
+        typeRegistry.put(HDF5Type.LONG, HdfGroup.DTYPE_FIXED64);
         typeRegistry.put(HDF5Type.STRING_FIXED, HdfGroup.DTYPE_STRING_FIX);
     }
 
@@ -40,7 +50,9 @@ public class HDF5FileWriter {
 
         HdfFileWriter hdf5file;
         try {
-            hdf5file = new HdfFileWriter(path.toString(), optFlag);
+            hdf5file =
+                    new HdfFileWriter(path.toString(), optFlag, 0,
+                            MODIFICATION_TIME, null, null);
         } catch (HdfException e) {
             throw new IOException(e);
         }
@@ -169,7 +181,9 @@ public class HDF5FileWriter {
             throws IOException {
         HdfFileWriter writer = create(path, overwrite);
 
-        Map<HDF5Dataset, HdfGroup> datasetRegistry = new HashMap<>();
+        // Datasets are kept in layout order, so that their data is written
+        // sequentially in the file
+        Map<HDF5Dataset, HdfGroup> datasetRegistry = new LinkedHashMap<>();
 
         // Define group, attribute and datasets' table of content
         writeGroup(root, writer.getRootGroup(), datasetRegistry);
@@ -1,7 +1,11 @@
 package pymontecarlo.util.hdf5;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -47,6 +51,8 @@ public class HDF5FileWriterTest extends TestCase {
         String[][] data4 =
                 new String[][] { { "abc", "def" }, { "hij", "klm" } };
         subg2.createDataset("b4", data4);
+
+        subg2.createDataset("b5", new int[] { 7, 8, 9 });
     }
 
 
@@ -56,4 +62,27 @@ public class HDF5FileWriterTest extends TestCase {
         HDF5FileWriter.write(root, path, true);
     }
 
+
+
+    @Test
+    public void testCreateDatasetIntegerType() {
+        HDF5Dataset dataset =
+                root.requireSubgroup("group1").requireSubgroup("subgroup2")
+                        .createDataset("b6", new int[] { 1 });
+        assertEquals(HDF5Type.INTEGER, dataset.getType());
+    }
+
+
+
+    @Test
+    public void testWriteDeterministic() throws IOException {
+        File other = createTempFile("h5");
+
+        HDF5FileWriter.write(root, path, true);
+        HDF5FileWriter.write(root, other, true);
+
+        assertArrayEquals(Files.readAllBytes(path.toPath()),
+                Files.readAllBytes(other.toPath()));
+    }
+
 }
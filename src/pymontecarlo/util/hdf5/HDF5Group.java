@@ -1,7 +1,7 @@
 package pymontecarlo.util.hdf5;
 
-import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 
@@ -19,8 +19,8 @@ public class HDF5Group extends HDF5Attributer {
 
     private HDF5Group() {
         super();
-        subgroups = new HashMap<>();
-        datasets = new HashMap<>();
+        subgroups = new LinkedHashMap<>();
+        datasets = new LinkedHashMap<>();
     }
 
 
@@ -46,7 +46,7 @@ public class HDF5Group extends HDF5Attributer {
 
     public HDF5Dataset createDataset(String name, int[] data) {
         int[] dims = { data.length };
-        HDF5Dataset dataset = new HDF5Dataset(HDF5Type.FLOAT, data, dims);
+        HDF5Dataset dataset = new HDF5Dataset(HDF5Type.INTEGER, data, dims);
         if (datasets.put(name, dataset) != null)
             throw new IllegalArgumentException("Dataset already exists: "
                     + name);
@@ -111,6 +111,15 @@ public class HDF5Group extends HDF5Attributer {
 
 
 
+    HDF5Dataset addDataset(String name, HDF5Dataset dataset) {
+        if (datasets.put(name, dataset) != null)
+            throw new IllegalArgumentException("Dataset already exists: "
+                    + name);
+        return dataset;
+    }
+
+
+
     public Iterator<Entry<String, HDF5Group>> iterateSubgroups() {
         return subgroups.entrySet().iterator();
     }
@@ -0,0 +1,386 @@
+package pymontecarlo.util.hdf5;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+
+/**
+ * Writer of HDF5 file where the large numerical datasets are stored outside
+ * the HDF5 file, in a raw binary sidecar file. The arrays are written as
+ * little-endian C-ordered arrays through a memory-mapped file, so that they
+ * can be read back without copy (e.g. with <code>numpy.memmap</code>).
+ * <p/>
+ * In the HDF5 file, each external dataset is replaced by a placeholder
+ * dataset carrying its original attributes and the following ones:
+ * <ul>
+ * <li><code>_external_placeholder</code>: note that the value of the dataset
+ * is not the data</li>
+ * <li><code>_external_file</code>: name of the sidecar file (relative to the
+ * HDF5 file)</li>
+ * <li><code>_external_offset</code>: offset of the array in the sidecar file
+ * (in bytes)</li>
+ * <li><code>_external_dtype</code>: numpy data type of the array</li>
+ * <li><code>_external_shape</code>: dimensions of the array</li>
+ * </ul>
+ * The placeholder is a one-element array of the data type of the array, whose
+ * value (NaN for a floating point array, 0 for an integer array) must be
+ * ignored: the real dtype and shape are given by the attributes above. The
+ * same information is also written in a tab-separated manifest file next
+ * to the sidecar file.
+ *
+ * @author ppinard
+ */
+public class HDF5SidecarFileWriter {
+
+    /** Extension of the sidecar file. */
+    public static final String SIDECAR_EXTENSION = ".raw";
+
+    /** Extension of the manifest file. */
+    public static final String MANIFEST_EXTENSION = ".manifest";
+
+    /** Alignment of the arrays in the sidecar file (in bytes). */
+    private static final int ALIGNMENT = 64;
+
+    /** Maximum size of a mapped region of the sidecar file (in bytes). */
+    private static final int WINDOW_SIZE = 1 << 26;
+
+    /**
+     * Dataset stored in the sidecar file.
+     */
+    private static class ExternalDataset {
+
+        public final String path;
+
+        public final HDF5Dataset dataset;
+
+        public final String dtype;
+
+        public final int itemSize;
+
+        public final long offset;
+
+        public final long length;
+
+
+
+        public ExternalDataset(String path, HDF5Dataset dataset, String dtype,
+                int itemSize, long offset) {
+            this.path = path;
+            this.dataset = dataset;
+            this.dtype = dtype;
+            this.itemSize = itemSize;
+            this.offset = offset;
+
+            long count = 1;
+            for (int dim : dataset.getDimensions())
+                count *= dim;
+            this.length = count * itemSize;
+        }
+    }
+
+    /**
+     * Sequential writer over consecutive memory-mapped windows of a file.
+     */
+    private static class MappedOutput {
+
+        private final FileChannel channel;
+
+        private MappedByteBuffer buffer;
+
+        private long position;
+
+        private final long end;
+
+
+
+        public MappedOutput(FileChannel channel, long position, long length) {
+            this.channel = channel;
+            this.position = position;
+            this.end = position + length;
+        }
+
+
+
+        private void ensureCapacity(int itemSize) throws IOException {
+            if (buffer != null && buffer.remaining() >= itemSize)
+                return;
+
+            if (buffer != null)
+                position += buffer.position();
+
+            long size = Math.min(WINDOW_SIZE, end - position);
+            buffer = channel.map(MapMode.READ_WRITE, position, size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+
+
+        public void put(double[] values) throws IOException {
+            int i = 0;
+            int n;
+            while (i < values.length) {
+                ensureCapacity(8);
+                n = Math.min(values.length - i, buffer.remaining() / 8);
+                buffer.asDoubleBuffer().put(values, i, n);
+                buffer.position(buffer.position() + n * 8);
+                i += n;
+            }
+        }
+
+
+
+        public void put(int[] values) throws IOException {
+            int i = 0;
+            int n;
+            while (i < values.length) {
+                ensureCapacity(4);
+                n = Math.min(values.length - i, buffer.remaining() / 4);
+                buffer.asIntBuffer().put(values, i, n);
+                buffer.position(buffer.position() + n * 4);
+                i += n;
+            }
+        }
+
+
+
+        public void put(Object data) throws IOException {
+            if (data instanceof double[]) {
+                put((double[]) data);
+            } else if (data instanceof int[]) {
+                put((int[]) data);
+            } else if (data instanceof Object[]) {
+                for (Object row : (Object[]) data)
+                    put(row);
+            } else {
+                throw new IOException("Unsupported data type: "
+                        + data.getClass());
+            }
+        }
+    }
+
+
+
+    /**
+     * Returns the numpy data type of a dataset, or <code>null</code> if the
+     * dataset cannot be stored in the sidecar file.
+     *
+     * @param dataset
+     *            dataset
+     * @return numpy data type or <code>null</code>
+     */
+    private static String getDtype(HDF5Dataset dataset) {
+        Class<?> klass = dataset.getData().getClass();
+        while (klass.isArray()) {
+            if (klass == double[].class)
+                return "<f8";
+            if (klass == int[].class)
+                return "<i4";
+            klass = klass.getComponentType();
+        }
+        return null;
+    }
+
+
+
+    /**
+     * Creates a copy of the group where the large datasets are replaced by
+     * references to the sidecar file.
+     *
+     * @param group
+     *            original group
+     * @param copy
+     *            copy of the group
+     * @param path
+     *            path of the group
+     * @param sidecarName
+     *            name of the sidecar file
+     * @param threshold
+     *            minimum number of elements for a dataset to be stored in the
+     *            sidecar file
+     * @param externals
+     *            list where the external datasets are added
+     * @param offset
+     *            offset of the next external dataset in the sidecar file
+     * @return offset after the last external dataset
+     */
+    private static long copyGroup(HDF5Group group, HDF5Group copy,
+            String path, String sidecarName, long threshold,
+            List<ExternalDataset> externals, long offset) {
+        // Attributes
+        Entry<String, HDF5Attribute> attrEntry;
+        for (Iterator<Entry<String, HDF5Attribute>> iter =
+                group.iterateAttributes(); iter.hasNext();) {
+            attrEntry = iter.next();
+            copy.setAttribute(attrEntry.getKey(), attrEntry.getValue());
+        }
+
+        // Datasets
+        Entry<String, HDF5Dataset> datasetEntry;
+        String datasetPath;
+        HDF5Dataset dataset, reference;
+        String dtype;
+        int itemSize;
+        long count;
+        ExternalDataset external;
+        for (Iterator<Entry<String, HDF5Dataset>> iter =
+                group.iterateDatasets(); iter.hasNext();) {
+            datasetEntry = iter.next();
+            datasetPath = path + "/" + datasetEntry.getKey();
+            dataset = datasetEntry.getValue();
+
+            dtype = getDtype(dataset);
+            count = 1;
+            for (int dim : dataset.getDimensions())
+                count *= dim;
+
+            if (dtype == null || count < threshold) {
+                copy.addDataset(datasetEntry.getKey(), dataset);
+                continue;
+            }
+
+            itemSize = dtype.equals("<f8") ? 8 : 4;
+            external =
+                    new ExternalDataset(datasetPath, dataset, dtype, itemSize,
+                            offset);
+            externals.add(external);
+            offset += (external.length + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+
+            if (itemSize == 8)
+                reference = copy.createDataset(datasetEntry.getKey(),
+                        new double[] { Double.NaN });
+            else
+                reference = copy.createDataset(datasetEntry.getKey(),
+                        new int[] { 0 });
+            for (Iterator<Entry<String, HDF5Attribute>> iter2 =
+                    dataset.iterateAttributes(); iter2.hasNext();) {
+                attrEntry = iter2.next();
+                reference.setAttribute(attrEntry.getKey(),
+                        attrEntry.getValue());
+            }
+            reference.setAttribute("_external_placeholder",
+                    "Value is not the data, see _external_file");
+            reference.setAttribute("_external_file", sidecarName);
+            reference.setAttribute("_external_offset", external.offset);
+            reference.setAttribute("_external_dtype", dtype);
+            reference.setAttribute("_external_shape", dataset.getDimensions());
+        }
+
+        // Subgroups
+        Entry<String, HDF5Group> subgroupEntry;
+        for (Iterator<Entry<String, HDF5Group>> iter =
+                group.iterateSubgroups(); iter.hasNext();) {
+            subgroupEntry = iter.next();
+            offset =
+                    copyGroup(subgroupEntry.getValue(),
+                            copy.createSubgroup(subgroupEntry.getKey()),
+                            path + "/" + subgroupEntry.getKey(), sidecarName,
+                            threshold, externals, offset);
+        }
+
+        return offset;
+    }
+
+
+
+    private static void writeSidecar(File path, List<ExternalDataset> externals,
+            long size) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(path, "rw")) {
+            file.setLength(0);
+            file.setLength(size);
+
+            FileChannel channel = file.getChannel();
+            MappedOutput output;
+            for (ExternalDataset external : externals) {
+                output =
+                        new MappedOutput(channel, external.offset,
+                                external.length);
+                output.put(external.dataset.getData());
+            }
+        }
+    }
+
+
+
+    private static void writeManifest(File path, String sidecarName,
+            List<ExternalDataset> externals) throws IOException {
+        String eol = "\n";
+
+        try (Writer writer =
+                new OutputStreamWriter(new FileOutputStream(path),
+                        StandardCharsets.UTF_8)) {
+            writer.write("# file=" + sidecarName + eol);
+            writer.write("# path\tdtype\toffset\tshape" + eol);
+
+            StringBuilder shape;
+            for (ExternalDataset external : externals) {
+                shape = new StringBuilder();
+                for (int dim : external.dataset.getDimensions()) {
+                    if (shape.length() > 0)
+                        shape.append(',');
+                    shape.append(dim);
+                }
+
+                writer.write(external.path + "\t" + external.dtype + "\t"
+                        + external.offset + "\t" + shape + eol);
+            }
+        }
+    }
+
+
+
+    /**
+     * Writes the HDF5 file, its sidecar and manifest files. The sidecar and
+     * manifest files are named after the HDF5 file, with the extension
+     * {@link #SIDECAR_EXTENSION} and {@link #MANIFEST_EXTENSION} respectively.
+     *
+     * @param root
+     *            root group
+     * @param path
+     *            location of the HDF5 file
+     * @param overwrite
+     *            whether to overwrite an existing HDF5 file
+     * @param threshold
+     *            minimum number of elements for a numerical dataset to be
+     *            stored in the sidecar file
+     * @throws IOException
+     *             if an error occurs while writing the files
+     */
+    public static void write(HDF5Group root, File path, boolean overwrite,
+            long threshold) throws IOException {
+        if (threshold < 1)
+            throw new IllegalArgumentException("threshold < 1");
+
+        File sidecarPath =
+                new File(path.getParentFile(), path.getName()
+                        + SIDECAR_EXTENSION);
+        File manifestPath =
+                new File(path.getParentFile(), path.getName()
+                        + MANIFEST_EXTENSION);
+        if (!overwrite && (sidecarPath.exists() || manifestPath.exists()))
+            throw new IOException("Sidecar file already exists: "
+                    + sidecarPath);
+
+        List<ExternalDataset> externals = new ArrayList<>();
+        HDF5Group copy = HDF5Group.createRoot();
+        long size =
+                copyGroup(root, copy, "", sidecarPath.getName(), threshold,
+                        externals, 0);
+
+        writeSidecar(sidecarPath, externals, size);
+        writeManifest(manifestPath, sidecarPath.getName(), externals);
+
+        HDF5FileWriter.write(copy, path, overwrite);
+    }
+}
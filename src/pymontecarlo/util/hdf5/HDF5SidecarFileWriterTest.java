@@ -0,0 +1,83 @@
+package pymontecarlo.util.hdf5;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import pymontecarlo.util.TestCase;
+
+public class HDF5SidecarFileWriterTest extends TestCase {
+
+    HDF5Group root;
+
+    File path;
+
+
+
+    @Before
+    public void setUp() throws Exception {
+        path = createTempFile("h5");
+        root = HDF5Group.createRoot();
+
+        HDF5Group g1 = root.createSubgroup("group1");
+        g1.setAttribute("a1", "abc");
+
+        double[][][] data =
+                new double[][][] { { { 1, 2 }, { 3, 4 } },
+                        { { 5, 6 }, { 7, 8 } }, { { 9, 10 }, { 11, 12 } } };
+        HDF5Dataset d1 = g1.createDataset("b1", data);
+        d1.setAttribute("b1a", 1.1);
+
+        int[][] data2 = new int[][] { { 1, 2, 3 }, { 4, 5, 6 } };
+        g1.createDataset("b2", data2);
+
+        double[][] data3 = new double[][] { { 1.5 } };
+        g1.createDataset("b3", data3);
+    }
+
+
+
+    @Test
+    public void testWrite() throws IOException {
+        HDF5SidecarFileWriter.write(root, path, true, 6);
+
+        File sidecar =
+                new File(path.getParentFile(), path.getName()
+                        + HDF5SidecarFileWriter.SIDECAR_EXTENSION);
+        File manifest =
+                new File(path.getParentFile(), path.getName()
+                        + HDF5SidecarFileWriter.MANIFEST_EXTENSION);
+        sidecar.deleteOnExit();
+        manifest.deleteOnExit();
+
+        assertTrue(sidecar.exists());
+        assertTrue(manifest.exists());
+
+        // Manifest
+        List<String> lines =
+                Files.readAllLines(manifest.toPath(), StandardCharsets.UTF_8);
+        assertEquals(4, lines.size());
+        assertEquals("/group1/b1\t<f8\t0\t3,2,2", lines.get(2));
+        assertEquals("/group1/b2\t<i4\t128\t2,3", lines.get(3));
+
+        // Sidecar
+        ByteBuffer buffer =
+                ByteBuffer.wrap(Files.readAllBytes(sidecar.toPath()));
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(1.0, buffer.getDouble(0), 1e-6);
+        assertEquals(12.0, buffer.getDouble(11 * 8), 1e-6);
+        assertEquals(1, buffer.getInt(128));
+        assertEquals(6, buffer.getInt(128 + 5 * 4));
+    }
+
+}
@@ -1,7 +1,7 @@
 package pymontecarlo.util.hdf5;
 
 public enum HDF5Type {
-    INTEGER(0), FLOAT(0.0), STRING(null), STRING_FIXED(null);
+    INTEGER(0), LONG(0L), FLOAT(0.0), STRING(null), STRING_FIXED(null);
     
     private final Object fillValue;
     